@@ -0,0 +1,198 @@
+package au.com.kahaara.wf.orchestration.benchmarks;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.exception.WorkflowException;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.rules.def.WorkflowEnd;
+import au.com.kahaara.wf.orchestration.rules.def.WorkflowStart;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rules and rule set strings shared by the benchmarks. The rule map is built by hand rather than through
+ * {@link au.com.kahaara.wf.orchestration.rules.RuleList} so that there is no spring context or class path
+ * scan involved in any measurement.
+ * <P>Rule names are letters only because {@code RuleSet} strips digits followed by any character when it
+ * resolves a rule name.</P>
+ */
+public final class BenchmarkRules {
+
+	/**
+	 * The one rule in every rule map that returns false
+	 */
+	public static final String FAIL_RULE = "RuleFail";
+
+	private BenchmarkRules() {
+		// Nothing to see here
+	}
+
+	/**
+	 * A rule that does nothing and returns the configured result
+	 */
+	public static class NoopRule implements WorkflowRuleInterface {
+
+		private final boolean ok;
+
+		public NoopRule(boolean ok) {
+			this.ok = ok;
+		}
+
+		@Override
+		public RuleInfo getInfo() {
+			return new RuleInfo();
+		}
+
+		@Override
+		public RuleResult runRule(OrchestrationData request) throws RulesException {
+			return new RuleResult(ok);
+		}
+	}
+
+	/**
+	 * A small object graph to put through the orchestration data and its deep copy
+	 */
+	public static class Payload {
+
+		private String id = "payload";
+
+		private List<String> values = new ArrayList<>();
+
+		private Map<String, Integer> counts = new HashMap<>();
+
+		public Payload() {
+			for (int i = 0; i < 8; i++) {
+				values.add("value " + i);
+				counts.put("count " + i, i);
+			}
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public void setId(String id) {
+			this.id = id;
+		}
+
+		public List<String> getValues() {
+			return values;
+		}
+
+		public void setValues(List<String> values) {
+			this.values = values;
+		}
+
+		public Map<String, Integer> getCounts() {
+			return counts;
+		}
+
+		public void setCounts(Map<String, Integer> counts) {
+			this.counts = counts;
+		}
+	}
+
+	/**
+	 * The name of the nth generated rule, being Rule followed by a base 26 letter sequence
+	 *
+	 * @param n The rule number from 0
+	 * @return The rule name
+	 */
+	public static String ruleName(int n) {
+		StringBuilder sb = new StringBuilder();
+		int i = n;
+		do {
+			sb.insert(0, (char) ('A' + (i % 26)));
+			i = i / 26 - 1;
+		} while (i >= 0);
+		return "Rule" + sb;
+	}
+
+	/**
+	 * Build the available rules for the given number of passing no-op rules plus a single failing rule
+	 * called {@value #FAIL_RULE}
+	 *
+	 * @param count The number of rules
+	 * @return The rule map keyed by upper case rule name as {@code RuleList} does
+	 */
+	public static Map<String, RuleType> availableRules(int count) {
+		Map<String, RuleType> rules = new HashMap<>();
+		put(rules, new RuleType(OrchestrationConfig.WORKFLOW_START, new WorkflowStart()));
+		put(rules, new RuleType(OrchestrationConfig.WORKFLOW_END, new WorkflowEnd()));
+		NoopRule pass = new NoopRule(true);
+		for (int i = 0; i < count; i++) {
+			put(rules, new RuleType(ruleName(i), pass));
+		}
+		put(rules, new RuleType(FAIL_RULE, new NoopRule(false)));
+		return rules;
+	}
+
+	/**
+	 * A {@link RuleList} holding only the default START and END rules with the generated rules added
+	 * on top. Needed by the classes that take a rule list rather than a rule map.
+	 *
+	 * @param count The number of rules
+	 * @return The rule list
+	 * @throws WorkflowException If the default rules cannot be loaded
+	 */
+	public static RuleList ruleList(int count) throws WorkflowException {
+		RuleList ruleList = new RuleList(new StandardEnvironment(), null);
+		ruleList.getRuleList().putAll(availableRules(count));
+		return ruleList;
+	}
+
+	/**
+	 * A straight line of rules
+	 *
+	 * @param count The number of rules
+	 * @return The rule set string
+	 */
+	public static String linear(int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(ruleName(i));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Every other rule is a condition that jumps forward over the next rule on true. The failing
+	 * rule sits in the middle so a false branch is taken as well in every run.
+	 *
+	 * @param count The number of rules
+	 * @return The rule set string
+	 */
+	public static String branching(int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			if (i == count / 2) {
+				sb.append(FAIL_RULE).append('?').append(ruleName(i)).append(':').append(ruleName(i)).append(',');
+			}
+			sb.append(ruleName(i));
+			if (i % 2 == 0 && i + 2 < count) {
+				sb.append('?').append(ruleName(i + 2)).append(':').append(ruleName(i + 1));
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void put(Map<String, RuleType> rules, RuleType type) {
+		rules.put(type.getRuleName().toUpperCase(), type);
+	}
+
+}
@@ -0,0 +1,68 @@
+package au.com.kahaara.wf.orchestration.benchmarks;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading and writing {@link OrchestrationData} while rules are being processed, with deep copy of request
+ * data turned on and off. There is no current rule so the {@link au.com.kahaara.wf.orchestration.rules.RuleInfo}
+ * checks are skipped, see {@link RuleEnforcementBenchmark} for those. Deep copy is a JSON round trip so run
+ * with {@code -prof gc} to see what it allocates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrchestrationDataBenchmark {
+
+	@Param({"false", "true"})
+	boolean deepCopy;
+
+	OrchestrationData data;
+
+	BenchmarkRules.Payload payload;
+
+	@Setup
+	public void setup() throws RulesException {
+		OrchestrationConfig config = new OrchestrationConfig();
+		config.setDeepCopyAllowed(deepCopy);
+		data = new OrchestrationData(config, DefaultRuleSetType.CUSTOM);
+		payload = new BenchmarkRules.Payload();
+		data.putRequestData(payload);
+		data.putData(payload);
+		data.setProcessingRules(true);
+	}
+
+	@Benchmark
+	public Object getRequestData() {
+		return data.getRequestData(BenchmarkRules.Payload.class);
+	}
+
+	@Benchmark
+	public Object getData() throws RulesException {
+		return data.getData(BenchmarkRules.Payload.class);
+	}
+
+	@Benchmark
+	public void putData() throws RulesException {
+		data.putData(payload);
+	}
+
+}
@@ -0,0 +1,88 @@
+package au.com.kahaara.wf.orchestration.benchmarks;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationDataRule;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.Rule;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link RuleInfo} checks made by {@link OrchestrationDataRule} while a rule is running, both on every
+ * get and put of result data and as the up front check of all requirements. Enforcement off is the baseline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RuleEnforcementBenchmark {
+
+	private static final int OTHER_CLASSES = 8;
+
+	@Param({"false", "true"})
+	boolean enforce;
+
+	OrchestrationConfig config;
+
+	OrchestrationData data;
+
+	BenchmarkRules.Payload payload;
+
+	@Setup
+	public void setup() throws RulesException {
+		config = new OrchestrationConfig();
+		config.setRuleInfoEnforce(enforce);
+		config.setRuleInfoReported(enforce);
+		data = new OrchestrationData(config, DefaultRuleSetType.CUSTOM);
+		payload = new BenchmarkRules.Payload();
+		data.putRequestData(payload);
+		data.putData(payload);
+
+		// A realistic rule info where the class being checked is not the first one listed
+		RuleInfo info = new RuleInfo();
+		for (int i = 0; i < OTHER_CLASSES; i++) {
+			info.getOptionalResponseClasses().add("other.Class" + i);
+			info.getCreatedResponseClasses().add("other.Created" + i);
+		}
+		info.addExpectedRequestData(BenchmarkRules.Payload.class);
+		info.addExpectedResponseData(BenchmarkRules.Payload.class);
+		info.addModifiedResponseData(BenchmarkRules.Payload.class);
+
+		data.setProcessingRules(true);
+		data.setCurrentRule(new Rule(new RuleType("RuleA", new BenchmarkRules.NoopRule(true))));
+		data.setCurrentRuleInfo(info);
+	}
+
+	@Benchmark
+	public Object getData() throws RulesException {
+		return data.getData(BenchmarkRules.Payload.class);
+	}
+
+	@Benchmark
+	public void putData() throws RulesException {
+		data.putData(payload);
+	}
+
+	@Benchmark
+	public boolean testInfoRequirements() throws RulesException {
+		return OrchestrationDataRule.testInfoRequirements(config, data, "RuleA");
+	}
+
+}
@@ -0,0 +1,74 @@
+package au.com.kahaara.wf.orchestration.benchmarks;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationMode;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics;
+import au.com.kahaara.wf.orchestration.metrics.ResourceAccounting;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.Rule;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single rule run through {@link RuleRunner} against calling the rule directly. The difference is the
+ * per rule cost of the engine: the reflective invoke of runRule and getInfo, timing and accounting.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RuleRunnerBenchmark {
+
+	WorkflowRuleInterface noop;
+
+	Rule rule;
+
+	RuleRunner runner;
+
+	RuleRunner runnerNoAccounting;
+
+	OrchestrationData data;
+
+	@Setup
+	public void setup() {
+		noop = new BenchmarkRules.NoopRule(true);
+		rule = new Rule(new RuleType("RuleA", noop));
+		runner = new RuleRunner();
+		runnerNoAccounting = new RuleRunner(new OrchestrationMetrics(), new ResourceAccounting(false));
+		data = new OrchestrationData(new OrchestrationConfig(), DefaultRuleSetType.CUSTOM);
+	}
+
+	@Benchmark
+	public RuleResult direct() throws RulesException {
+		return noop.runRule(data);
+	}
+
+	@Benchmark
+	public RuleResult ruleRunner() throws RulesException {
+		return runner.run(data, rule, OrchestrationMode.NORMAL);
+	}
+
+	@Benchmark
+	public RuleResult ruleRunnerNoAccounting() throws RulesException {
+		return runnerNoAccounting.run(data, rule, OrchestrationMode.NORMAL);
+	}
+
+}
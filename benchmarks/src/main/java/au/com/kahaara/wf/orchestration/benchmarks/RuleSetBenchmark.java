@@ -0,0 +1,58 @@
+package au.com.kahaara.wf.orchestration.benchmarks;
+
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.RuleSet;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compiling a rule set string into the rule graph. This is what every cache miss pays.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuleSetBenchmark {
+
+	@Param({"4", "16", "64"})
+	int ruleCount;
+
+	Map<String, RuleType> available;
+
+	String linear;
+
+	String branching;
+
+	@Setup
+	public void setup() {
+		available = BenchmarkRules.availableRules(ruleCount);
+		linear = BenchmarkRules.linear(ruleCount);
+		branching = BenchmarkRules.branching(ruleCount);
+	}
+
+	@Benchmark
+	public RuleSet linear() throws RulesException {
+		return new RuleSet(linear, available);
+	}
+
+	@Benchmark
+	public RuleSet branching() throws RulesException {
+		return new RuleSet(branching, available);
+	}
+
+}
@@ -0,0 +1,76 @@
+package au.com.kahaara.wf.orchestration.benchmarks;
+
+import au.com.kahaara.wf.orchestration.cache.GenericCache;
+import au.com.kahaara.wf.orchestration.cache.RuleSetCacheService;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.exception.WorkflowException;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RuleSetCacheService#getRuleSet(String)} on a hit and on a miss, single threaded and contended.
+ * The service is shared by every benchmark thread as it is in an application. A miss is forced by a cache
+ * whose timeout has already passed so every entry is expired on the next lookup.
+ * <P>Run other thread counts with {@code -t}, for example {@code -t 8 RuleSetCacheBenchmark.hit}</P>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuleSetCacheBenchmark {
+
+	private static final int RULE_COUNT = 16;
+
+	String key;
+
+	RuleSetCacheService hitService;
+
+	RuleSetCacheService missService;
+
+	@Setup
+	public void setup() throws WorkflowException, RulesException {
+		RuleList ruleList = BenchmarkRules.ruleList(RULE_COUNT);
+		key = BenchmarkRules.branching(RULE_COUNT);
+		hitService = new RuleSetCacheService(ruleList, new GenericCache<>());
+		missService = new RuleSetCacheService(ruleList, new GenericCache<>(-1L));
+		hitService.getRuleSet(key);
+	}
+
+	@Benchmark
+	public RuleSet hit() throws RulesException {
+		return hitService.getRuleSet(key);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public RuleSet hitContended() throws RulesException {
+		return hitService.getRuleSet(key);
+	}
+
+	@Benchmark
+	public RuleSet miss() throws RulesException {
+		return missService.getRuleSet(key);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public RuleSet missContended() throws RulesException {
+		return missService.getRuleSet(key);
+	}
+
+}
@@ -0,0 +1,62 @@
+package au.com.kahaara.wf.orchestration.benchmarks;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationMode;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleSet;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WorkflowRunner#runRuleSet} over already compiled workflows made of no-op rules, so what is measured
+ * is the engine overhead per rule: the graph walk, reflective invoke, metrics and span handling.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WorkflowRunnerBenchmark {
+
+	@Param({"linear", "branching"})
+	String shape;
+
+	@Param({"8", "64"})
+	int ruleCount;
+
+	WorkflowRunner runner;
+
+	OrchestrationData data;
+
+	@Setup
+	public void setup() throws RulesException {
+		String rules = "linear".equals(shape) ? BenchmarkRules.linear(ruleCount) : BenchmarkRules.branching(ruleCount);
+		runner = new WorkflowRunner(new RuleRunner());
+		OrchestrationConfig config = new OrchestrationConfig();
+		data = new OrchestrationData(config, DefaultRuleSetType.CUSTOM);
+		data.setRuleSet(new RuleSet(rules, BenchmarkRules.availableRules(ruleCount)));
+	}
+
+	@Benchmark
+	public RuleResult runRuleSet() throws RulesException {
+		return runner.runRuleSet(data, OrchestrationMode.NORMAL, true);
+	}
+
+}
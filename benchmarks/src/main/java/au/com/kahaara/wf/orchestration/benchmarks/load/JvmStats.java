@@ -0,0 +1,97 @@
+package au.com.kahaara.wf.orchestration.benchmarks.load;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.Collection;
+
+/**
+ * A point in time reading of the GC and lock counters. Two readings are subtracted to get the cost over
+ * a load step.
+ * <P>Blocked is time spent waiting to enter a synchronized block, which is the monitor contention. Waited
+ * includes parking on java.util.concurrent locks but also idle pool threads waiting for work, so it is only
+ * meaningful when the workers are saturated.</P>
+ */
+final class JvmStats {
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	final long gcCount;
+
+	final long gcMillis;
+
+	final long blockedCount;
+
+	final long blockedMillis;
+
+	final long waitedCount;
+
+	final long waitedMillis;
+
+	private JvmStats(long gcCount, long gcMillis, long blockedCount, long blockedMillis, long waitedCount, long waitedMillis) {
+		this.gcCount = gcCount;
+		this.gcMillis = gcMillis;
+		this.blockedCount = blockedCount;
+		this.blockedMillis = blockedMillis;
+		this.waitedCount = waitedCount;
+		this.waitedMillis = waitedMillis;
+	}
+
+	/**
+	 * Turn on thread contention monitoring so blocked and waited times are available
+	 *
+	 * @return true if supported
+	 */
+	static boolean enableContentionMonitoring() {
+		if (!THREADS.isThreadContentionMonitoringSupported()) {
+			return false;
+		}
+		THREADS.setThreadContentionMonitoringEnabled(true);
+		return true;
+	}
+
+	/**
+	 * Read the counters now
+	 *
+	 * @param threadIds The worker threads to sum the lock counters over
+	 * @return The reading
+	 */
+	static JvmStats read(Collection<Long> threadIds) {
+		long count = 0;
+		long millis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, gc.getCollectionCount());
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		long bc = 0;
+		long bt = 0;
+		long wc = 0;
+		long wt = 0;
+		long[] ids = new long[threadIds.size()];
+		int i = 0;
+		for (Long id : threadIds) {
+			ids[i++] = id;
+		}
+		for (ThreadInfo info : THREADS.getThreadInfo(ids)) {
+			if (info != null) {
+				bc += info.getBlockedCount();
+				bt += Math.max(0, info.getBlockedTime());
+				wc += info.getWaitedCount();
+				wt += Math.max(0, info.getWaitedTime());
+			}
+		}
+		return new JvmStats(count, millis, bc, bt, wc, wt);
+	}
+
+	/**
+	 * @param before The earlier reading
+	 * @return The difference between this reading and the earlier one
+	 */
+	JvmStats minus(JvmStats before) {
+		return new JvmStats(gcCount - before.gcCount, gcMillis - before.gcMillis,
+				blockedCount - before.blockedCount, blockedMillis - before.blockedMillis,
+				waitedCount - before.waitedCount, waitedMillis - before.waitedMillis);
+	}
+
+}
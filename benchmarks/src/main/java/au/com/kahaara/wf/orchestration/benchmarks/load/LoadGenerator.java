@@ -0,0 +1,281 @@
+package au.com.kahaara.wf.orchestration.benchmarks.load;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.Orchestration;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.cache.GenericCache;
+import au.com.kahaara.wf.orchestration.cache.RuleSetCacheService;
+import au.com.kahaara.wf.orchestration.event.EventRecorder;
+import au.com.kahaara.wf.orchestration.exception.WorkflowException;
+import au.com.kahaara.wf.orchestration.metrics.HistogramSnapshot;
+import au.com.kahaara.wf.orchestration.metrics.LatencyHistogram;
+import au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics;
+import au.com.kahaara.wf.orchestration.metrics.Outcome;
+import au.com.kahaara.wf.orchestration.metrics.TimerSnapshot;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.tracing.Tracer;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives {@link Orchestration#run} with synthetic workflows at increasing load to find where a node saturates.
+ * <P>Closed loop runs a fixed number of threads each issuing the next request as soon as the last one
+ * finishes. Open loop issues requests at a fixed arrival rate regardless of how long they take and measures
+ * latency from when each request was due to start, so queueing delay is included rather than hidden.</P>
+ * <P>A step is saturated when the p99 latency goes over the SLO, when open loop cannot keep up with the
+ * target rate or when closed loop throughput stops growing with concurrency.</P>
+ * <pre>
+ * java -cp target/benchmarks.jar au.com.kahaara.wf.orchestration.benchmarks.load.LoadGenerator --mode=open --ramp=1000,1000,10
+ * </pre>
+ */
+public class LoadGenerator {
+
+	private static final double SATURATED_THROUGHPUT_RATIO = 0.95;
+
+	private static final double MIN_CLOSED_LOOP_GAIN = 1.05;
+
+	private final LoadOptions options;
+
+	private final PrintStream out;
+
+	private final OrchestrationConfig config;
+
+	private final OrchestrationMetrics metrics = new OrchestrationMetrics();
+
+	private final Orchestration orchestration;
+
+	private final String rules;
+
+	public LoadGenerator(LoadOptions options, PrintStream out) throws WorkflowException {
+		this.options = options;
+		this.out = out;
+		this.config = new OrchestrationConfig();
+		config.setRuleInfoReported(false);
+		config.setRuleInfoEnforce(false);
+
+		RuleList ruleList = new RuleList(new StandardEnvironment(), null);
+		this.rules = options.getShape().build(options.getSize(), options.getProfile(), config, ruleList.getRuleList());
+		RuleSetCacheService cache = options.isCache() ? new RuleSetCacheService(ruleList, new GenericCache<>()) : null;
+		this.orchestration = new Orchestration(new WorkflowRunner(new RuleRunner(metrics)), new EventRecorder(),
+				ruleList, cache, metrics, new Tracer());
+	}
+
+	public static void main(String[] args) throws Exception {
+		LoadOptions options;
+		try {
+			options = LoadOptions.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println(LoadOptions.USAGE);
+			System.exit(1);
+			return;
+		}
+		new LoadGenerator(options, System.out).run();
+	}
+
+	/**
+	 * Warm up then run every step of the ramp printing a line per step and the saturation point at the end
+	 *
+	 * @return The report for each step
+	 * @throws InterruptedException If interrupted
+	 * @throws ExecutionException If a load thread fails
+	 */
+	public List<StepReport> run() throws InterruptedException, ExecutionException {
+		int[] steps = options.getSteps();
+		boolean contention = JvmStats.enableContentionMonitoring();
+		out.printf("Workflow %s of %d rules, each %s%n", options.getShape(), options.getSize(), options.getProfile());
+		out.printf("%s loop, %ds per step, p99 SLO %.1fms, rule set cache %s, lock contention %s%n",
+				options.isOpenLoop() ? "Open" : "Closed", options.getDurationMillis() / 1000, options.getSloMillis(),
+				options.isCache() ? "on" : "off", contention ? "on" : "unsupported");
+		out.printf("Rules: %s%n", rules);
+
+		if (options.getWarmupMillis() > 0) {
+			runStep(steps[0], options.getWarmupMillis());
+		}
+
+		out.println(StepReport.HEADER);
+		List<StepReport> reports = new ArrayList<>();
+		StepReport saturated = null;
+		for (int level : steps) {
+			StepReport report = runStep(level, options.getDurationMillis());
+			out.println(report);
+			if (saturated == null && isSaturated(report, reports)) {
+				saturated = report;
+			}
+			reports.add(report);
+		}
+
+		if (saturated == null) {
+			out.println("Not saturated. Raise the ramp to find the saturation point");
+		} else {
+			StepReport last = reports.indexOf(saturated) > 0 ? reports.get(reports.indexOf(saturated) - 1) : null;
+			out.printf("Saturated at level %d. Last good level %s at %.1f requests/s%n", saturated.level,
+					last == null ? "none" : String.valueOf(last.level), last == null ? 0 : last.getThroughput());
+		}
+		return reports;
+	}
+
+	private boolean isSaturated(StepReport report, List<StepReport> previous) {
+		if (report.getP99Millis() > options.getSloMillis()) {
+			return true;
+		}
+		if (options.isOpenLoop()) {
+			return report.getThroughput() < report.target * SATURATED_THROUGHPUT_RATIO;
+		}
+		if (previous.isEmpty()) {
+			return false;
+		}
+		return report.getThroughput() < previous.get(previous.size() - 1).getThroughput() * MIN_CLOSED_LOOP_GAIN;
+	}
+
+	private StepReport runStep(int level, long millis) throws InterruptedException, ExecutionException {
+		metrics.reset();
+		return options.isOpenLoop() ? runOpen(level, millis) : runClosed(level, millis);
+	}
+
+	/**
+	 * Each thread issues the next request as soon as the previous one returns
+	 */
+	private StepReport runClosed(int concurrency, long millis) throws InterruptedException, ExecutionException {
+		Workers workers = new Workers(concurrency);
+		LatencyHistogram latency = new LatencyHistogram();
+		LongAdder completed = new LongAdder();
+		LongAdder errors = new LongAdder();
+		try {
+			JvmStats before = JvmStats.read(workers.ids);
+			long start = System.nanoTime();
+			long end = start + TimeUnit.MILLISECONDS.toNanos(millis);
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < concurrency; i++) {
+				futures.add(workers.pool.submit(() -> {
+					while (System.nanoTime() < end) {
+						long t0 = System.nanoTime();
+						boolean ok = runOne();
+						latency.recordValue(System.nanoTime() - t0);
+						completed.increment();
+						if (!ok) {
+							errors.increment();
+						}
+					}
+				}));
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+			long elapsed = System.nanoTime() - start;
+			JvmStats jvm = JvmStats.read(workers.ids).minus(before);
+			return new StepReport(concurrency, Double.NaN, completed.sum(), errors.sum(), elapsed,
+					latency.snapshot(), serviceTime(), jvm);
+		} finally {
+			workers.pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Requests are issued at a fixed rate from a single thread onto the worker pool. If the workers cannot
+	 * keep up the requests queue and the latency, being measured from the intended start, shows it.
+	 */
+	private StepReport runOpen(int rate, long millis) throws InterruptedException {
+		Workers workers = new Workers(options.getThreads());
+		LatencyHistogram latency = new LatencyHistogram();
+		LongAdder completed = new LongAdder();
+		LongAdder errors = new LongAdder();
+		try {
+			JvmStats before = JvmStats.read(workers.ids);
+			long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+			long start = System.nanoTime();
+			long end = start + TimeUnit.MILLISECONDS.toNanos(millis);
+			long issued = 0;
+			for (long due = start; due < end; due = start + issued * interval) {
+				long wait = due - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(wait);
+				}
+				final long intended = due;
+				workers.pool.execute(() -> {
+					boolean ok = runOne();
+					latency.recordValue(System.nanoTime() - intended);
+					completed.increment();
+					if (!ok) {
+						errors.increment();
+					}
+				});
+				issued++;
+			}
+			// Let the queue drain so the backlog is counted in the latency
+			long drainUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+			while (completed.sum() < issued && System.nanoTime() < drainUntil) {
+				TimeUnit.MILLISECONDS.sleep(1);
+			}
+			long elapsed = System.nanoTime() - start;
+			JvmStats jvm = JvmStats.read(workers.ids).minus(before);
+			return new StepReport(rate, rate, completed.sum(), errors.sum() + issued - completed.sum(), elapsed,
+					latency.snapshot(), serviceTime(), jvm);
+		} finally {
+			workers.pool.shutdownNow();
+		}
+	}
+
+	private boolean runOne() {
+		OrchestrationData data = new OrchestrationData(config, DefaultRuleSetType.CUSTOM);
+		data.setCustomRules(rules);
+		return orchestration.run(data);
+	}
+
+	/**
+	 * @return The time spent in Orchestration.run across every outcome as recorded by the engine
+	 */
+	private HistogramSnapshot serviceTime() {
+		List<TimerSnapshot> snapshots = metrics.getWorkflowSnapshots();
+		HistogramSnapshot pass = null;
+		for (TimerSnapshot s : snapshots) {
+			if (s.getOutcome() == Outcome.PASS) {
+				pass = s.getHistogram();
+			}
+		}
+		return pass == null ? new LatencyHistogram().snapshot() : pass;
+	}
+
+	/**
+	 * A pool of started worker threads whose ids are known so their lock counters can be read
+	 */
+	private static final class Workers {
+
+		private final Queue<Long> ids = new ConcurrentLinkedQueue<>();
+
+		private final ExecutorService pool;
+
+		Workers(int threads) {
+			AtomicInteger count = new AtomicInteger();
+			ThreadFactory factory = r -> {
+				Thread t = new Thread(r, "load-" + count.incrementAndGet());
+				t.setDaemon(true);
+				ids.add(t.getId());
+				return t;
+			};
+			ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+					new LinkedBlockingQueue<>(), factory);
+			executor.prestartAllCoreThreads();
+			this.pool = executor;
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+package au.com.kahaara.wf.orchestration.benchmarks.load;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The command line options of the {@link LoadGenerator} given as {@code --name=value}.
+ */
+public class LoadOptions {
+
+	static final String USAGE = String.join(System.lineSeparator(),
+			"Options, all given as --name=value",
+			"  --shape=linear|conditional|subflow  Workflow shape. Default linear",
+			"  --size=8                            Rules or levels in the workflow",
+			"  --latency=0                         Microseconds each rule waits as if on I/O",
+			"  --cpu=50                            Microseconds each rule spins on the CPU",
+			"  --alloc=1024                        Bytes each rule allocates",
+			"  --fail=0                            Ratio of rule runs that return false",
+			"  --mode=closed|open                  Closed loop concurrency or open loop arrival rate. Default closed",
+			"  --ramp=start,step,steps             Concurrency (closed) or requests per second (open) for each step",
+			"  --threads=64                        Worker threads for open loop",
+			"  --duration=10                       Seconds per step",
+			"  --warmup=5                          Seconds of warm up before the first step",
+			"  --slo=100                           p99 latency in milliseconds above which a step is saturated",
+			"  --cache=true                        Use the RuleSetCacheService as an application would");
+
+	private final Map<String, String> values = new HashMap<>();
+
+	/**
+	 * Parse the command line
+	 *
+	 * @param args The arguments
+	 * @return The options
+	 * @throws IllegalArgumentException If an argument is not in the form --name=value
+	 */
+	public static LoadOptions parse(String[] args) {
+		LoadOptions options = new LoadOptions();
+		for (String arg : args) {
+			int eq = arg.indexOf('=');
+			if (!arg.startsWith("--") || eq < 0) {
+				throw new IllegalArgumentException("Expected --name=value but got " + arg);
+			}
+			options.values.put(arg.substring(2, eq).toLowerCase(Locale.ROOT), arg.substring(eq + 1));
+		}
+		return options;
+	}
+
+	WorkflowShape getShape() {
+		return WorkflowShape.valueOf(get("shape", "linear").toUpperCase(Locale.ROOT));
+	}
+
+	int getSize() {
+		return Integer.parseInt(get("size", "8"));
+	}
+
+	RuleProfile getProfile() {
+		return new RuleProfile(Long.parseLong(get("latency", "0")), Long.parseLong(get("cpu", "50")),
+				Integer.parseInt(get("alloc", "1024")), Double.parseDouble(get("fail", "0")));
+	}
+
+	boolean isOpenLoop() {
+		return "open".equalsIgnoreCase(get("mode", "closed"));
+	}
+
+	/**
+	 * @return The load level of each step, being concurrency or requests per second
+	 */
+	int[] getSteps() {
+		String[] ramp = get("ramp", isOpenLoop() ? "500,500,8" : "1,1,8").split(",");
+		if (ramp.length != 3) {
+			throw new IllegalArgumentException("Expected --ramp=start,step,steps");
+		}
+		int start = Integer.parseInt(ramp[0].trim());
+		int step = Integer.parseInt(ramp[1].trim());
+		int[] steps = new int[Integer.parseInt(ramp[2].trim())];
+		for (int i = 0; i < steps.length; i++) {
+			steps[i] = start + i * step;
+		}
+		return steps;
+	}
+
+	int getThreads() {
+		return Integer.parseInt(get("threads", "64"));
+	}
+
+	long getDurationMillis() {
+		return (long) (Double.parseDouble(get("duration", "10")) * 1000);
+	}
+
+	long getWarmupMillis() {
+		return (long) (Double.parseDouble(get("warmup", "5")) * 1000);
+	}
+
+	double getSloMillis() {
+		return Double.parseDouble(get("slo", "100"));
+	}
+
+	boolean isCache() {
+		return Boolean.parseBoolean(get("cache", "true"));
+	}
+
+	private String get(String name, String defaultValue) {
+		return values.getOrDefault(name, defaultValue);
+	}
+
+}
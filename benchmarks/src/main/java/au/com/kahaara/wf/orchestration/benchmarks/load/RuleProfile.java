@@ -0,0 +1,50 @@
+package au.com.kahaara.wf.orchestration.benchmarks.load;
+
+/**
+ * What a synthetic rule does each time it runs.
+ */
+public class RuleProfile {
+
+	private final long latencyMicros;
+
+	private final long cpuMicros;
+
+	private final int allocateBytes;
+
+	private final double failRatio;
+
+	/**
+	 * @param latencyMicros Time spent parked as if waiting on I/O
+	 * @param cpuMicros Time spent spinning on the CPU
+	 * @param allocateBytes Heap allocated and made reachable for the length of the rule
+	 * @param failRatio The ratio of runs between 0 and 1 that return false
+	 */
+	public RuleProfile(long latencyMicros, long cpuMicros, int allocateBytes, double failRatio) {
+		this.latencyMicros = latencyMicros;
+		this.cpuMicros = cpuMicros;
+		this.allocateBytes = allocateBytes;
+		this.failRatio = failRatio;
+	}
+
+	public long getLatencyMicros() {
+		return latencyMicros;
+	}
+
+	public long getCpuMicros() {
+		return cpuMicros;
+	}
+
+	public int getAllocateBytes() {
+		return allocateBytes;
+	}
+
+	public double getFailRatio() {
+		return failRatio;
+	}
+
+	@Override
+	public String toString() {
+		return "latency=" + latencyMicros + "us cpu=" + cpuMicros + "us alloc=" + allocateBytes + "B fail=" + failRatio;
+	}
+
+}
@@ -0,0 +1,82 @@
+package au.com.kahaara.wf.orchestration.benchmarks.load;
+
+import au.com.kahaara.wf.orchestration.metrics.HistogramSnapshot;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The results of running a single load level.
+ */
+class StepReport {
+
+	static final String HEADER = String.format(Locale.ROOT,
+			"%8s %10s %10s %7s %9s %9s %9s %9s %9s %9s %5s %7s %6s %8s %8s %8s",
+			"level", "target/s", "actual/s", "errors", "p50ms", "p90ms", "p99ms", "p99.9ms", "maxms", "svc99ms",
+			"gc", "gcms", "gc%", "blocked", "blockms", "waitms");
+
+	final int level;
+
+	final double target;
+
+	final long completed;
+
+	final long errors;
+
+	final long elapsedNanos;
+
+	final HistogramSnapshot latency;
+
+	final HistogramSnapshot service;
+
+	final JvmStats jvm;
+
+	/**
+	 * @param level The concurrency or requests per second of the step
+	 * @param target The target throughput per second or NaN for closed loop
+	 * @param completed Requests completed
+	 * @param errors Requests where Orchestration.run returned false, plus for open loop any request not
+	 *               finished by the end of the drain time
+	 * @param elapsedNanos The length of the step
+	 * @param latency The response time from when each request was due to start
+	 * @param service The time inside Orchestration.run as recorded by the engine
+	 * @param jvm The GC and lock counters over the step
+	 */
+	StepReport(int level, double target, long completed, long errors, long elapsedNanos,
+	           HistogramSnapshot latency, HistogramSnapshot service, JvmStats jvm) {
+		this.level = level;
+		this.target = target;
+		this.completed = completed;
+		this.errors = errors;
+		this.elapsedNanos = elapsedNanos;
+		this.latency = latency;
+		this.service = service;
+		this.jvm = jvm;
+	}
+
+	double getThroughput() {
+		return elapsedNanos == 0 ? 0 : completed * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+	}
+
+	double getP99Millis() {
+		return millis(latency.getValueAtPercentile(99));
+	}
+
+	@Override
+	public String toString() {
+		double elapsedMillis = elapsedNanos / 1_000_000.0;
+		return String.format(Locale.ROOT,
+				"%8d %10s %10.1f %7d %9.3f %9.3f %9.3f %9.3f %9.3f %9.3f %5d %7d %6.2f %8d %8d %8d",
+				level, Double.isNaN(target) ? "-" : String.format(Locale.ROOT, "%.0f", target), getThroughput(), errors,
+				millis(latency.getValueAtPercentile(50)), millis(latency.getValueAtPercentile(90)),
+				getP99Millis(), millis(latency.getValueAtPercentile(99.9)), millis(latency.getMax()),
+				millis(service.getValueAtPercentile(99)),
+				jvm.gcCount, jvm.gcMillis, elapsedMillis == 0 ? 0 : 100.0 * jvm.gcMillis / elapsedMillis,
+				jvm.blockedCount, jvm.blockedMillis, jvm.waitedMillis);
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+
+}
@@ -0,0 +1,44 @@
+package au.com.kahaara.wf.orchestration.benchmarks.load;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+
+/**
+ * A rule that runs a child workflow through
+ * {@link au.com.kahaara.wf.orchestration.Orchestration#runSubRules Orchestration.runSubRules} the same way
+ * an application rule would.
+ */
+public class SubWorkflowRule implements WorkflowRuleInterface {
+
+	private final String rules;
+
+	private final OrchestrationConfig config;
+
+	/**
+	 * @param rules The rule set string of the child workflow
+	 * @param config The configuration for the child request
+	 */
+	public SubWorkflowRule(String rules, OrchestrationConfig config) {
+		this.rules = rules;
+		this.config = config;
+	}
+
+	@Override
+	public RuleInfo getInfo() {
+		return new RuleInfo();
+	}
+
+	@Override
+	public RuleResult runRule(OrchestrationData request) throws RulesException {
+		OrchestrationData subRequest = new OrchestrationData(config);
+		subRequest.setRuleSetType(DefaultRuleSetType.CUSTOM);
+		subRequest.setCustomRules(rules);
+		return request.getOrchestration().runSubRules(request, subRequest);
+	}
+
+}
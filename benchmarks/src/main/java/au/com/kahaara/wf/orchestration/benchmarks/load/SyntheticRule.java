@@ -0,0 +1,59 @@
+package au.com.kahaara.wf.orchestration.benchmarks.load;
+
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A rule that burns CPU, allocates and waits according to its {@link RuleProfile}. One instance is
+ * registered under many rule names so it holds no per run state.
+ */
+public class SyntheticRule implements WorkflowRuleInterface {
+
+	private final RuleProfile profile;
+
+	public SyntheticRule(RuleProfile profile) {
+		this.profile = profile;
+	}
+
+	@Override
+	public RuleInfo getInfo() {
+		return new RuleInfo();
+	}
+
+	@Override
+	public RuleResult runRule(OrchestrationData request) throws RulesException {
+		byte[] held = profile.getAllocateBytes() > 0 ? new byte[profile.getAllocateBytes()] : null;
+		long sum = spin(profile.getCpuMicros());
+		if (profile.getLatencyMicros() > 0) {
+			LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(profile.getLatencyMicros()));
+		}
+		if (held != null) {
+			// Touch the array after the wait so it stays reachable across it
+			held[held.length - 1] = (byte) sum;
+		}
+		boolean ok = profile.getFailRatio() <= 0 || ThreadLocalRandom.current().nextDouble() >= profile.getFailRatio();
+		return new RuleResult(ok);
+	}
+
+	private static long spin(long micros) {
+		if (micros <= 0) {
+			return 0;
+		}
+		long end = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(micros);
+		long sum = 0;
+		while (System.nanoTime() < end) {
+			for (int i = 0; i < 100; i++) {
+				sum += i * 31L ^ sum;
+			}
+		}
+		return sum;
+	}
+
+}
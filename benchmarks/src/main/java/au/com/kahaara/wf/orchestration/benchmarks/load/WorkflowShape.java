@@ -0,0 +1,101 @@
+package au.com.kahaara.wf.orchestration.benchmarks.load;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.benchmarks.BenchmarkRules;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+
+import java.util.Map;
+
+/**
+ * The shape of the generated workflow. Each shape registers the synthetic rules it needs and returns
+ * the rule set string to run.
+ */
+public enum WorkflowShape {
+
+	/**
+	 * size rules one after the other
+	 */
+	LINEAR {
+		@Override
+		String build(int size, RuleProfile profile, OrchestrationConfig config, Map<String, RuleType> rules) {
+			return chain("Step", size, new SyntheticRule(profile), rules);
+		}
+	},
+
+	/**
+	 * size levels of condition. A rule that fails takes its alternative which ends the workflow, so with a fail
+	 * ratio above 0 the number of rules run varies per request.
+	 */
+	CONDITIONAL {
+		@Override
+		String build(int size, RuleProfile profile, OrchestrationConfig config, Map<String, RuleType> rules) {
+			SyntheticRule rule = new SyntheticRule(profile);
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < size; i++) {
+				String level = register("Level", i, rule, rules);
+				String alt = register("Alt", i, rule, rules);
+				String next = i + 1 < size ? ruleName("Level", i + 1) : OrchestrationConfig.WORKFLOW_END;
+				if (i > 0) {
+					sb.append(',');
+				}
+				sb.append(level).append('?').append(next).append(':').append(alt).append(',');
+				sb.append(alt).append('?').append(OrchestrationConfig.WORKFLOW_END).append(':').append(OrchestrationConfig.WORKFLOW_END);
+			}
+			return sb.toString();
+		}
+	},
+
+	/**
+	 * size rules where every other rule runs a child workflow of size rules through runSubRules
+	 */
+	SUBFLOW {
+		@Override
+		String build(int size, RuleProfile profile, OrchestrationConfig config, Map<String, RuleType> rules) {
+			String child = chain("Child", size, new SyntheticRule(profile), rules);
+			SyntheticRule rule = new SyntheticRule(profile);
+			SubWorkflowRule sub = new SubWorkflowRule(child, config);
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < size; i++) {
+				if (i > 0) {
+					sb.append(',');
+				}
+				sb.append(i % 2 == 0 ? register("Step", i, rule, rules) : register("Sub", i, sub, rules));
+			}
+			return sb.toString();
+		}
+	};
+
+	/**
+	 * Register the rules for this shape and build its rule set string
+	 *
+	 * @param size The number of rules or levels
+	 * @param profile What each synthetic rule does
+	 * @param config The configuration for any child requests
+	 * @param rules The available rules to add to
+	 * @return The rule set string
+	 */
+	abstract String build(int size, RuleProfile profile, OrchestrationConfig config, Map<String, RuleType> rules);
+
+	private static String chain(String prefix, int size, Object rule, Map<String, RuleType> rules) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			if (i > 0) {
+				sb.append(',');
+			}
+			sb.append(register(prefix, i, rule, rules));
+		}
+		return sb.toString();
+	}
+
+	private static String register(String prefix, int i, Object rule, Map<String, RuleType> rules) {
+		String name = ruleName(prefix, i);
+		rules.put(name.toUpperCase(), new RuleType(name, rule));
+		return name;
+	}
+
+	private static String ruleName(String prefix, int i) {
+		// Rule names cannot hold digits so reuse the letter sequence of the benchmark rules
+		return prefix + BenchmarkRules.ruleName(i).substring("Rule".length());
+	}
+
+}
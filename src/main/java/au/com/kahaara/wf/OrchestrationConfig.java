@@ -21,6 +21,7 @@ public class OrchestrationConfig {
     public static final String PROPERTIES_BASE_PATH="orchestration.workflow";
     public static final String PROPERTIES_PACKAGES=PROPERTIES_BASE_PATH+".rules.packages";
     public static final String PROPERTIES_TIMEOUT=PROPERTIES_BASE_PATH+".cache.timeout";
+    public static final String PROPERTIES_SUB_WORKFLOWS=PROPERTIES_BASE_PATH+".subworkflows";
 
     public static final String WORKFLOW_START = "START";
     public static final String WORKFLOW_END = "END";
@@ -37,6 +38,105 @@ public class OrchestrationConfig {
     @Value("${orchestration.data.ruleinfo.preruletest}")
     private boolean ruleRunPreTest;
 
+    @Value("${orchestration.tracing.enabled:false}")
+    private boolean tracingEnabled;
+
+    @Value("${orchestration.tracing.sample.ratio:1.0}")
+    private double tracingSampleRatio = 1.0;
+
+    @Value("${orchestration.tracing.exporter:memory}")
+    private String tracingExporter = "memory";
+
+    @Value("${orchestration.tracing.file:orchestration-traces.json}")
+    private String tracingFile = "orchestration-traces.json";
+
+    @Value("${orchestration.metrics.resources.enabled:true}")
+    private boolean resourceAccountingEnabled = true;
+
+    @Value("${orchestration.checkpoint.enabled:false}")
+    private boolean checkpointEnabled;
+
+    @Value("${orchestration.checkpoint.store:file}")
+    private String checkpointStore = "file";
+
+    @Value("${orchestration.checkpoint.directory:checkpoints}")
+    private String checkpointDirectory = "checkpoints";
+
+    @Value("${orchestration.checkpoint.batch.size:100}")
+    private int checkpointBatchSize = 100;
+
+    @Value("${orchestration.checkpoint.flush.millis:50}")
+    private long checkpointFlushMillis = 50;
+
+    @Value("${orchestration.queue.enabled:false}")
+    private boolean queueEnabled;
+
+    @Value("${orchestration.queue.store:file}")
+    private String queueStore = "file";
+
+    @Value("${orchestration.queue.directory:queue}")
+    private String queueDirectory = "queue";
+
+    @Value("${orchestration.queue.workers:4}")
+    private int queueWorkers = 4;
+
+    @Value("${orchestration.queue.poll.millis:200}")
+    private long queuePollMillis = 200;
+
+    @Value("${orchestration.queue.visibility.millis:300000}")
+    private long queueVisibilityMillis = 300000;
+
+    @Value("${orchestration.queue.max.attempts:3}")
+    private int queueMaxAttempts = 3;
+
+    @Value("${orchestration.queue.retry.backoff.millis:1000}")
+    private long queueRetryBackoffMillis = 1000;
+
+    @Value("${orchestration.deadline.millis:0}")
+    private long deadlineMillis;
+
+    @Value("${orchestration.memoize.enabled:true}")
+    private boolean memoizeEnabled = true;
+
+    @Value("${orchestration.transaction.workflow:JOIN}")
+    private String transactionWorkflow = "JOIN";
+
+    @Value("${orchestration.prefetch.enabled:false}")
+    private boolean prefetchEnabled;
+
+    @Value("${orchestration.prefetch.threads:4}")
+    private int prefetchThreads = 4;
+
+    @Value("${orchestration.prefetch.lookahead:0}")
+    private int prefetchLookahead;
+
+    @Value("${orchestration.foreach.threads:0}")
+    private int forEachThreads;
+
+    @Value("${orchestration.foreach.parallelism:4}")
+    private int forEachParallelism = 4;
+
+    @Value("${orchestration.resilience.timeout.threads:64}")
+    private int resilienceTimeoutThreads = 64;
+
+    @Value("${orchestration.admission.enabled:false}")
+    private boolean admissionEnabled;
+
+    @Value("${orchestration.admission.limit.initial:20}")
+    private int admissionInitialLimit = 20;
+
+    @Value("${orchestration.admission.limit.min:2}")
+    private int admissionMinLimit = 2;
+
+    @Value("${orchestration.admission.limit.max:500}")
+    private int admissionMaxLimit = 500;
+
+    @Value("${orchestration.admission.backoff.ratio:0.9}")
+    private double admissionBackoffRatio = 0.9;
+
+    @Value("${orchestration.admission.latency.tolerance:2.0}")
+    private double admissionLatencyTolerance = 2.0;
+
     public boolean isDeepCopyAllowed() {
         return deepCopyAllowed;
     }
@@ -53,6 +153,142 @@ public class OrchestrationConfig {
         return ruleRunPreTest;
     }
 
+    public boolean isTracingEnabled() {
+        return tracingEnabled;
+    }
+
+    public double getTracingSampleRatio() {
+        return tracingSampleRatio;
+    }
+
+    public String getTracingExporter() {
+        return tracingExporter;
+    }
+
+    public String getTracingFile() {
+        return tracingFile;
+    }
+
+    public boolean isResourceAccountingEnabled() {
+        return resourceAccountingEnabled;
+    }
+
+    public boolean isCheckpointEnabled() {
+        return checkpointEnabled;
+    }
+
+    public String getCheckpointStore() {
+        return checkpointStore;
+    }
+
+    public String getCheckpointDirectory() {
+        return checkpointDirectory;
+    }
+
+    public int getCheckpointBatchSize() {
+        return checkpointBatchSize;
+    }
+
+    public long getCheckpointFlushMillis() {
+        return checkpointFlushMillis;
+    }
+
+    public boolean isQueueEnabled() {
+        return queueEnabled;
+    }
+
+    public String getQueueStore() {
+        return queueStore;
+    }
+
+    public String getQueueDirectory() {
+        return queueDirectory;
+    }
+
+    public int getQueueWorkers() {
+        return queueWorkers;
+    }
+
+    public long getQueuePollMillis() {
+        return queuePollMillis;
+    }
+
+    public long getQueueVisibilityMillis() {
+        return queueVisibilityMillis;
+    }
+
+    public int getQueueMaxAttempts() {
+        return queueMaxAttempts;
+    }
+
+    public long getQueueRetryBackoffMillis() {
+        return queueRetryBackoffMillis;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    public boolean isMemoizeEnabled() {
+        return memoizeEnabled;
+    }
+
+    public String getTransactionWorkflow() {
+        return transactionWorkflow;
+    }
+
+    public boolean isPrefetchEnabled() {
+        return prefetchEnabled;
+    }
+
+    public int getPrefetchThreads() {
+        return prefetchThreads;
+    }
+
+    public int getPrefetchLookahead() {
+        return prefetchLookahead;
+    }
+
+    public int getForEachThreads() {
+        return forEachThreads;
+    }
+
+    public int getForEachParallelism() {
+        return forEachParallelism;
+    }
+
+    public int getResilienceTimeoutThreads() {
+        return resilienceTimeoutThreads;
+    }
+
+    public boolean isAdmissionEnabled() {
+        return admissionEnabled;
+    }
+
+    public int getAdmissionInitialLimit() {
+        return admissionInitialLimit;
+    }
+
+    public int getAdmissionMinLimit() {
+        return admissionMinLimit;
+    }
+
+    public int getAdmissionMaxLimit() {
+        return admissionMaxLimit;
+    }
+
+    public double getAdmissionBackoffRatio() {
+        return admissionBackoffRatio;
+    }
+
+    public double getAdmissionLatencyTolerance() {
+        return admissionLatencyTolerance;
+    }
+
+
+    public void setDeepCopyAllowed(boolean b) {
+        this.deepCopyAllowed = b;
+    }
 
     public void setRuleInfoReported(boolean b) {
         this.ruleinfoReport = b;
@@ -60,4 +296,24 @@ public class OrchestrationConfig {
     public void setRuleInfoEnforce(boolean b) {
         this.ruleinfoEnforce = b;
     }
+
+    public void setQueueWorkers(int queueWorkers) {
+        this.queueWorkers = queueWorkers;
+    }
+
+    public void setQueuePollMillis(long queuePollMillis) {
+        this.queuePollMillis = queuePollMillis;
+    }
+
+    public void setQueueMaxAttempts(int queueMaxAttempts) {
+        this.queueMaxAttempts = queueMaxAttempts;
+    }
+
+    public void setQueueRetryBackoffMillis(long queueRetryBackoffMillis) {
+        this.queueRetryBackoffMillis = queueRetryBackoffMillis;
+    }
+
+    public void setDeadlineMillis(long deadlineMillis) {
+        this.deadlineMillis = deadlineMillis;
+    }
 }
@@ -0,0 +1,235 @@
+package au.com.kahaara.wf.orchestration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The request or result data of a sub request laid over the data of the request it was started from. Reads fall
+ * through to the parent data and writes are kept in the layer, so creating one copies nothing and sub requests
+ * started from the same request can run side by side without seeing each other's writes.
+ * <P>When the sub request succeeds {@link #commit()} writes the layer into the parent data. When it fails the
+ * layer is {@link #discard() discarded} and the parent data is as it was.
+ * <P>A layer is used by one sub request at a time. The parent data must not change while layers over it are
+ * being read, so the thread that owns the parent commits the layers once the sub requests are done. A sub request
+ * that is left running is {@link #detach() detached} first so it no longer reads the parent data.
+ */
+public class LayeredData extends AbstractMap<String, Object> {
+
+	public static final Logger log = LoggerFactory.getLogger(LayeredData.class);
+
+	private Map<String, Object> parent;
+
+	/**
+	 * The data the sub request was given before it was started. Read before the parent data but never committed.
+	 */
+	private final Map<String, Object> own;
+
+	/**
+	 * The writes of the sub request. Created on the first write.
+	 */
+	private Map<String, Object> layer;
+
+	/**
+	 * The keys of the parent data the sub request has removed. Created on the first removal.
+	 */
+	private Set<String> removed;
+
+	/**
+	 * @param parent The data of the request the sub request was started from
+	 */
+	public LayeredData(Map<String, Object> parent) {
+		this(parent, Collections.<String, Object>emptyMap());
+	}
+
+	/**
+	 * @param parent The data of the request the sub request was started from
+	 * @param own The data the sub request was given, e.g. the element of a MAP construct. It is seen by the sub
+	 * request but not written into the parent data
+	 */
+	public LayeredData(Map<String, Object> parent, Map<String, Object> own) {
+		this.parent = parent;
+		this.own = own;
+	}
+
+	/**
+	 * @return The data the layer is over
+	 */
+	public synchronized Map<String, Object> getParent() {
+		return parent;
+	}
+
+	/**
+	 * @return The writes of the sub request that are not in the parent data yet
+	 */
+	public synchronized Map<String, Object> getLayer() {
+		return layer == null ? Collections.<String, Object>emptyMap() : Collections.unmodifiableMap(layer);
+	}
+
+	/**
+	 * @return true if the sub request has written or removed anything
+	 */
+	public synchronized boolean isChanged() {
+		return (layer != null && !layer.isEmpty()) || (removed != null && !removed.isEmpty());
+	}
+
+	/**
+	 * Write the layer into the parent data and empty it
+	 *
+	 * @return The number of entries written or removed
+	 */
+	public synchronized int commit() {
+		int changes = 0;
+		if (removed != null) {
+			for (String key : removed) {
+				parent.remove(key);
+			}
+			changes += removed.size();
+			removed = null;
+		}
+		if (layer != null) {
+			parent.putAll(layer);
+			changes += layer.size();
+			layer = null;
+		}
+		log.trace("Committed {} changes to the parent data", changes);
+		return changes;
+	}
+
+	/**
+	 * Drop the layer leaving the parent data as it was
+	 */
+	public synchronized void discard() {
+		layer = null;
+		removed = null;
+	}
+
+	/**
+	 * Discard the layer and stop reading the parent data. Waits for a read in progress so the parent data can be
+	 * changed once it returns. The sub request then only sees what it writes from here on.
+	 */
+	public synchronized void detach() {
+		discard();
+		parent = Collections.emptyMap();
+	}
+
+	@Override
+	public synchronized Object get(Object key) {
+		if (layer != null && layer.containsKey(key)) {
+			return layer.get(key);
+		}
+		if (removed != null && removed.contains(key)) {
+			return null;
+		}
+		Object value = own.get(key);
+		return value != null || own.containsKey(key) ? value : parent.get(key);
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		if (layer != null && layer.containsKey(key)) {
+			return true;
+		}
+		return (removed == null || !removed.contains(key)) && (own.containsKey(key) || parent.containsKey(key));
+	}
+
+	@Override
+	public synchronized Object put(String key, Object value) {
+		Object previous = get(key);
+		if (layer == null) {
+			layer = new HashMap<>();
+		}
+		layer.put(key, value);
+		if (removed != null) {
+			removed.remove(key);
+		}
+		return previous;
+	}
+
+	@Override
+	public synchronized Object remove(Object key) {
+		Object previous = get(key);
+		if (layer != null) {
+			layer.remove(key);
+		}
+		if (key instanceof String && (own.containsKey(key) || parent.containsKey(key))) {
+			if (removed == null) {
+				removed = new HashSet<>();
+			}
+			removed.add((String) key);
+		}
+		return previous;
+	}
+
+	@Override
+	public synchronized void clear() {
+		layer = null;
+		removed = new HashSet<>(parent.keySet());
+		removed.addAll(own.keySet());
+	}
+
+	/**
+	 * The entries as the sub request sees them. Iterating builds the merged view so it costs the size of the
+	 * parent data.
+	 */
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return new AbstractSet<Entry<String, Object>>() {
+			@Override
+			public Iterator<Entry<String, Object>> iterator() {
+				Iterator<Entry<String, Object>> merged = merge().entrySet().iterator();
+				return new Iterator<Entry<String, Object>>() {
+					private Entry<String, Object> last;
+
+					@Override
+					public boolean hasNext() {
+						return merged.hasNext();
+					}
+
+					@Override
+					public Entry<String, Object> next() {
+						Entry<String, Object> entry = merged.next();
+						last = new SimpleImmutableEntry<>(entry);
+						return last;
+					}
+
+					@Override
+					public void remove() {
+						if (last == null) {
+							throw new IllegalStateException();
+						}
+						LayeredData.this.remove(last.getKey());
+						last = null;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return merge().size();
+			}
+		};
+	}
+
+	private synchronized Map<String, Object> merge() {
+		Map<String, Object> merged = new LinkedHashMap<>(parent);
+		merged.putAll(own);
+		if (removed != null) {
+			merged.keySet().removeAll(removed);
+		}
+		if (layer != null) {
+			merged.putAll(layer);
+		}
+		return merged;
+	}
+
+}
@@ -1,19 +1,43 @@
 package au.com.kahaara.wf.orchestration;
 
+import au.com.kahaara.wf.orchestration.admission.AdmissionController;
+import au.com.kahaara.wf.orchestration.checkpoint.Checkpoint;
+import au.com.kahaara.wf.orchestration.checkpoint.Checkpointer;
+import au.com.kahaara.wf.orchestration.coalesce.RequestCoalescer;
 import au.com.kahaara.wf.orchestration.event.EventRecorder;
 import au.com.kahaara.wf.orchestration.event.EventRecorderInterface;
 import au.com.kahaara.wf.orchestration.event.EventType;
 import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics;
+import au.com.kahaara.wf.orchestration.metrics.Outcome;
 import au.com.kahaara.wf.orchestration.rules.RuleList;
 import au.com.kahaara.wf.orchestration.rules.RuleResult;
 import au.com.kahaara.wf.orchestration.rules.RuleSet;
 import au.com.kahaara.wf.orchestration.rules.RuleSetTypeInterface;
+import au.com.kahaara.wf.orchestration.subflow.SubWorkflow;
+import au.com.kahaara.wf.orchestration.tracing.Span;
+import au.com.kahaara.wf.orchestration.tracing.Tracer;
 import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
 import au.com.kahaara.wf.orchestration.cache.RuleSetCacheService;
+import au.com.kahaara.wf.orchestration.cache.WorkflowResultCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * This is the main entry point to the orchestration.
  * Prior to calling this class there should be a {@link OrchestrationData} request wrapper
@@ -34,6 +58,17 @@ import org.springframework.stereotype.Component;
  * <pre>
  * ValidateMRZ,CheckPACE_EMR?CheckAlerts:CheckTRIPS,CheckAlerts,etc
  * </pre>
+ * <P>The end to end latency of each run is recorded against the rule set type name in
+ * {@link OrchestrationMetrics}. Each run is also the root {@link Span} of a trace when tracing is turned on.
+ * <P>A run stops at the deadline of the request, see {@link OrchestrationData#setDeadline(java.time.Instant)}.
+ * <P>When checkpointing is turned on each run is given a workflow id and can be carried on with
+ * {@link #resume(String)} if it did not finish.
+ * <P>When admission control is turned on a run is turned away straight away, with an ORCH2006 error event, if
+ * too many workflows are running. See {@link AdmissionController}.
+ * <P>Identical requests of rule set types registered with the {@link RequestCoalescer} run once at a time and
+ * share the outcome.
+ * <P>Rule set types registered with the {@link WorkflowResultCache} are answered from the cache, without
+ * running any rules, when the same request was run recently.
  *  
  * @author (excdsn) Simon Haddon
  *
@@ -51,16 +86,72 @@ public class Orchestration {
 
 	private final RuleSetCacheService ruleSetService;
 
+	private final OrchestrationMetrics metrics;
+
+	private final Tracer tracer;
+
+	private final Checkpointer checkpointer;
+
+	private final AdmissionController admission;
+
+	private final RequestCoalescer coalescer;
+
+	private final WorkflowResultCache resultCache;
+
 	private OrchestrationMode mode = OrchestrationMode.NORMAL;
 
 	private static final String ERROR_UNABLE_CREATE_LOG_STR = "Unable to create orchestration rule set from {}. {}";
 	private static final String ERROR_UNABLE_CREATE_STR = "Unable to create orchestration rule set from ";
 
+	private static final String SPAN_WORKFLOW = "workflow ";
+	private static final String SPAN_SUB_RULES = "subRules";
+	private static final String SPAN_EVENTS = "recordEvents";
+
 	public Orchestration(WorkflowRunner rules, EventRecorderInterface eventRecorder, RuleList availableRules, RuleSetCacheService ruleSetService) {
+		this(rules, eventRecorder, availableRules, ruleSetService, new OrchestrationMetrics(), new Tracer());
+	}
+
+	public Orchestration(WorkflowRunner rules, EventRecorderInterface eventRecorder, RuleList availableRules,
+	                     RuleSetCacheService ruleSetService, OrchestrationMetrics metrics, Tracer tracer) {
+		this(rules, eventRecorder, availableRules, ruleSetService, metrics, tracer, new Checkpointer());
+	}
+
+	public Orchestration(WorkflowRunner rules, EventRecorderInterface eventRecorder, RuleList availableRules,
+	                     RuleSetCacheService ruleSetService, OrchestrationMetrics metrics, Tracer tracer,
+	                     Checkpointer checkpointer) {
+		this(rules, eventRecorder, availableRules, ruleSetService, metrics, tracer, checkpointer,
+				new AdmissionController());
+	}
+
+	public Orchestration(WorkflowRunner rules, EventRecorderInterface eventRecorder, RuleList availableRules,
+	                     RuleSetCacheService ruleSetService, OrchestrationMetrics metrics, Tracer tracer,
+	                     Checkpointer checkpointer, AdmissionController admission) {
+		this(rules, eventRecorder, availableRules, ruleSetService, metrics, tracer, checkpointer, admission,
+				new RequestCoalescer());
+	}
+
+	public Orchestration(WorkflowRunner rules, EventRecorderInterface eventRecorder, RuleList availableRules,
+	                     RuleSetCacheService ruleSetService, OrchestrationMetrics metrics, Tracer tracer,
+	                     Checkpointer checkpointer, AdmissionController admission, RequestCoalescer coalescer) {
+		this(rules, eventRecorder, availableRules, ruleSetService, metrics, tracer, checkpointer, admission,
+				coalescer, new WorkflowResultCache());
+	}
+
+	@Autowired
+	public Orchestration(WorkflowRunner rules, EventRecorderInterface eventRecorder, RuleList availableRules,
+	                     RuleSetCacheService ruleSetService, OrchestrationMetrics metrics, Tracer tracer,
+	                     Checkpointer checkpointer, AdmissionController admission, RequestCoalescer coalescer,
+	                     WorkflowResultCache resultCache) {
 		this.rules = rules;
 		this.eventRecorder = eventRecorder;
 		this.availableRules = availableRules;
 		this.ruleSetService = ruleSetService;
+		this.metrics = metrics;
+		this.tracer = tracer;
+		this.checkpointer = checkpointer;
+		this.admission = admission;
+		this.coalescer = coalescer;
+		this.resultCache = resultCache;
 	}
 
 	/**
@@ -73,22 +164,129 @@ public class Orchestration {
 	 * @param orchestrationData The is the {@link OrchestrationData} request as a result of successfully
 	 * performing the mapping of the service request to our internal objects
 	 * 
-	 * @return true if the orchestration completed without exception otherwise false.
+	 * @return true if the orchestration completed without exception otherwise false. It is also false if the
+	 * run was turned away by admission control
 	 */
 	public boolean run (OrchestrationData orchestrationData) {
 
+		// Followers wait for the leader within the deadline, so it starts before they join
+		orchestrationData.startDeadline();
+		String cacheKey = resultCache.key(orchestrationData);
+		if (resultCache.replay(cacheKey, orchestrationData)) {
+			return true;
+		}
+		RequestCoalescer.Flight flight = coalescer.join(orchestrationData);
+		if (flight != null && !flight.isLeader()) {
+			return coalescer.follow(flight, orchestrationData);
+		}
+		boolean status = false;
+		try {
+			long start = System.nanoTime();
+			status = admit(orchestrationData, start) && runAdmitted(orchestrationData, start);
+		} finally {
+			resultCache.store(cacheKey, orchestrationData, status);
+			if (flight != null) {
+				coalescer.land(flight, orchestrationData, status);
+			}
+		}
+		return status;
+	}
+
+	/**
+	 * Run the workflow on the given executor. Admission control is applied on the calling thread so a request
+	 * that is turned away never takes up a place on the executor. Use an executor with a bounded number of threads.
+	 *
+	 * @param orchestrationData The orchestration data as for {@link #run(OrchestrationData)}
+	 * @param executor The executor to run the workflow on
+	 * @return A future completed with the result of {@link #run(OrchestrationData)}
+	 */
+	public CompletableFuture<Boolean> runAsync(OrchestrationData orchestrationData, Executor executor) {
+
+		// Followers wait for the leader within the deadline, so it starts before they join
+		orchestrationData.startDeadline();
+		String cacheKey = resultCache.key(orchestrationData);
+		if (resultCache.replay(cacheKey, orchestrationData)) {
+			return CompletableFuture.completedFuture(true);
+		}
+		RequestCoalescer.Flight flight = coalescer.join(orchestrationData);
+		if (flight != null && !flight.isLeader()) {
+			return coalescer.followAsync(flight, orchestrationData);
+		}
+		CompletableFuture<Boolean> future = submit(orchestrationData, executor);
+		if (flight == null && cacheKey == null) {
+			return future;
+		}
+		return future.whenComplete((ok, e) -> {
+			resultCache.store(cacheKey, orchestrationData, Boolean.TRUE.equals(ok));
+			if (flight != null) {
+				coalescer.land(flight, orchestrationData, Boolean.TRUE.equals(ok));
+			}
+		});
+	}
+
+	private CompletableFuture<Boolean> submit(OrchestrationData orchestrationData, Executor executor) {
+
+		long start = System.nanoTime();
+		if (!admit(orchestrationData, start)) {
+			return CompletableFuture.completedFuture(false);
+		}
+		try {
+			return CompletableFuture.supplyAsync(() -> runAdmitted(orchestrationData, start), executor);
+		} catch (RejectedExecutionException e) {
+			admission.release(orchestrationData.getRuleSetType(), System.nanoTime() - start, true);
+			reject(orchestrationData, start, "The executor is full");
+			return CompletableFuture.completedFuture(false);
+		}
+	}
+
+	/**
+	 * Ask admission control if the request can run
+	 *
+	 * @param orchestrationData The orchestration data
+	 * @param start When the request arrived
+	 * @return true if it can run
+	 */
+	private boolean admit(OrchestrationData orchestrationData, long start) {
+		if (admission.tryAcquire(orchestrationData.getRuleSetType())) {
+			return true;
+		}
+		reject(orchestrationData, start, "Concurrency limit of " + admission.getLimit() + " reached");
+		return false;
+	}
+
+	private void reject(OrchestrationData orchestrationData, long start, String reason) {
+		String workflowName = orchestrationData.getRuleSetType().getEnumName();
+		log.debug("Rejected workflow {}. {}", workflowName, reason);
+		orchestrationData.getStatus().addEvent(InfoType.ERROR, EventType.RULE, OrchestrationErrorCode.ORCH2006,
+				"Workflow " + workflowName + " rejected", reason);
+		metrics.recordWorkflow(workflowName, Outcome.REJECTED, System.nanoTime() - start);
+	}
+
+	/**
+	 * Run a workflow that admission control has let in and release its place when done
+	 */
+	private boolean runAdmitted(OrchestrationData orchestrationData, long start) {
+
 		boolean status = false;
+		String workflowName = orchestrationData.getRuleSetType().getEnumName();
+		Span span = tracer.startTrace(SPAN_WORKFLOW + workflowName);
+		orchestrationData.setSpan(span);
 
 		// Allows sub-rules to run
 		orchestrationData.setOrchestration(this);
 		orchestrationData.setProcessingRules(true);
+		if (checkpointer.isEnabled() && orchestrationData.getWorkflowId() == null) {
+			orchestrationData.setWorkflowId(UUID.randomUUID().toString());
+		}
 
 		try {
 			// Get rule set even if the status is not OK.
 			RuleSet ruleSet = getRuleSet(orchestrationData);
 			orchestrationData.setRuleSet(ruleSet);
 			
-			if (!InfoType.ERROR.equals(orchestrationData.getStatus().getStatus())) {
+			// A resumed workflow carries on as it was even if an earlier rule recorded an error
+			if (!InfoType.ERROR.equals(orchestrationData.getStatus().getStatus())
+					|| orchestrationData.getResumeRule() != null) {
 				// Everything ok to proceed
 				rules.processRules(orchestrationData, mode);
 			}
@@ -96,56 +294,361 @@ public class Orchestration {
 			
 		} catch (RulesException e) {
 			log.error("Unable to process orchestration {}",e.getMessage());
+			span.recordException(e);
 			orchestrationData.getStatus().addEvent(InfoType.ERROR, EventType.RULE, OrchestrationErrorCode.ORCH1001,
 					"Unable to process orchestration engine rules", e.getMessage());
 			
 		} finally {
-			eventRecorder.recordEvents(orchestrationData);
+			recordEvents(orchestrationData, span);
+			checkpointer.release(orchestrationData.getWorkflowId());
 			orchestrationData.setProcessingRules(false);
 			orchestrationData.setCurrentRule(null);
+			Outcome outcome = workflowOutcome(status, orchestrationData);
+			metrics.recordWorkflow(workflowName, outcome, System.nanoTime() - start);
+			if (span.isSampled()) {
+				span.setAttribute("workflow.type", workflowName);
+				span.setAttribute("workflow.outcome", outcome.name());
+				span.setAttribute("workflow.status", orchestrationData.getStatusInfoType().name());
+			}
+			span.end();
+			orchestrationData.setSpan(Span.NOOP);
+			admission.release(orchestrationData.getRuleSetType(), System.nanoTime() - start,
+					orchestrationData.isDeadlineExpired());
 		}
 		
 		return status;
 	}
 
+	/**
+	 * Carry on a workflow that did not finish from the rule after the last one that completed. The request
+	 * data, result data and status events are restored from the checkpoint and the workflow is then run as
+	 * with {@link #run(OrchestrationData)}.
+	 *
+	 * @param workflowId The id of the workflow given when it was first run
+	 * @return The restored orchestration data after it has run. Check its status for the outcome
+	 * @throws RulesException If checkpointing is off, there is no checkpoint for the workflow or it cannot be restored
+	 */
+	public OrchestrationData resume(String workflowId) throws RulesException {
+		OrchestrationData orchestrationData = restore(workflowId);
+		run(orchestrationData);
+		return orchestrationData;
+	}
+
+	/**
+	 * Rebuild the orchestration data of a workflow from its checkpoint without running it
+	 *
+	 * @param workflowId The id of the workflow given when it was first run
+	 * @return The restored orchestration data ready to {@link #run(OrchestrationData)} from the next rule
+	 * @throws RulesException If checkpointing is off, there is no checkpoint for the workflow or it cannot be restored
+	 */
+	public OrchestrationData restore(String workflowId) throws RulesException {
+		Checkpoint checkpoint = checkpointer.load(workflowId)
+				.orElseThrow(() -> new RulesException("There is no checkpoint for workflow " + workflowId));
+		log.info("Resuming workflow {} from {} after checkpoint {}", workflowId, checkpoint.getNextRule(),
+				checkpoint.getSequence());
+		return checkpointer.restore(checkpoint);
+	}
+
+	/**
+	 * @param workflowId The workflow id
+	 * @return true if checkpointing is on and there is a checkpoint to {@link #resume(String)} the workflow from
+	 */
+	public boolean canResume(String workflowId) {
+		if (!checkpointer.isEnabled() || workflowId == null) {
+			return false;
+		}
+		try {
+			return checkpointer.load(workflowId).isPresent();
+		} catch (RulesException e) {
+			log.warn("Unable to check for a checkpoint of workflow {}. {}", workflowId, e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Record the events through the {@link EventRecorderInterface} in its own trace span
+	 *
+	 * @param orchestrationData The orchestration data
+	 * @param parent The workflow span
+	 */
+	private void recordEvents(OrchestrationData orchestrationData, Span parent) {
+		Span span = parent.startChild(SPAN_EVENTS);
+		try {
+			span.setAttribute("event.count", orchestrationData.getStatus().getEvents().size());
+			eventRecorder.recordEvents(orchestrationData);
+		} finally {
+			span.end();
+		}
+	}
+
+	/**
+	 * Work out the outcome of the workflow for recording in the metrics
+	 *
+	 * @param completed Did the orchestration complete normally
+	 * @param orchestrationData The orchestration data
+	 * @return The {@link Outcome}
+	 */
+	private Outcome workflowOutcome(boolean completed, OrchestrationData orchestrationData) {
+		if (!completed) {
+			return Outcome.EXCEPTION;
+		}
+		return InfoType.ERROR.equals(orchestrationData.getStatusInfoType()) ? Outcome.FAIL : Outcome.PASS;
+	}
+
 	/**
 	 * Run a subset of rules that can be defined previously and available to process. The difference between this
 	 * call and the {@link #run(OrchestrationData)} is following
 	 * <ol>
 	 *     <li>It is not in a separate transaction as it is expected to be called from a rule only</li>
-	 *     <li>The orchestrationData mapped data is carried through</li>
-	 *     <li>The response data is carried through</li>
+	 *     <li>The orchestrationData mapped data and the response data are carried through as a {@link LayeredData}
+	 *     over those of the parent. What the sub rules write is put into the parent data when they succeed and
+	 *     dropped when they throw or end with an ERROR status. Request data put on the sub request beforehand is
+	 *     seen by its rules only</li>
 	 *     <li>If any events of type error occur and are recorded in the event logger then it wil return false</li>
+	 *     <li>The deadline of the request is carried through unless the sub request has an earlier one</li>
+	 *     <li>Changes registered with the write-behind unit are added to the unit of the parent along with the data
+	 *     and written when the top level workflow ends</li>
 	 * </ol>
 	 * @param request The orchestration data from the parent request
 	 * @param subRequest The orchestration data from the sub request
 	 */
 	public RuleResult runSubRules(OrchestrationData request, OrchestrationData subRequest) throws RulesException {
-		RuleSet ruleSet;
 		RuleResult result = new RuleResult(true);
+		Span span = request.getSpan().startChild(SPAN_SUB_RULES);
+		LayeredData requestLayer = new LayeredData(request.getRequestData(), subRequest.getRequestData());
+		LayeredData resultLayer = new LayeredData(request.getResultData());
 		try {
-			ruleSet = this.getRuleSet(subRequest);
-			subRequest.setRuleSet(ruleSet);
-			subRequest.setRequestData(request.getRequestData());
-			subRequest.setResultData(request.getResultData());
-			subRequest.setOrchestrationConfig(request.getOrchestrationConfig());
-			subRequest.setOrchestration(request.getOrchestration());
+			prepareSubRules(request, subRequest, requestLayer, resultLayer, span);
 			result = rules.runRuleSet(subRequest, mode, false);
+			if (InfoType.ERROR.equals(subRequest.getStatusInfoType())) {
+				requestLayer.discard();
+				resultLayer.discard();
+			} else {
+				requestLayer.commit();
+				resultLayer.commit();
+				request.commitWriteBehind(subRequest);
+			}
 
 		} catch (RulesException e) {
 			log.error("Unable to process orchestration {}",e.getMessage());
+			span.recordException(e);
 			request.getStatus().addEvent(InfoType.ERROR, EventType.RULE, OrchestrationErrorCode.ORCH1001,
 					"Unable to process orchestration engine sub rules", e.getMessage());
 			throw new RulesException("Unable to process orchestration engine sub rules from "
 					+request.getCurrentRule()+ ". " + e.getMessage());
+		} finally {
+			span.end();
+			subRequest.setSpan(Span.NOOP);
 		}
 		return result;
 	}
 
+	/**
+	 * Run sub-workflows side by side on the executor, e.g. one for each item in the request. Each sub request is set
+	 * up as for {@link #runSubRules(OrchestrationData, OrchestrationData)}, with its own layer over the data of the
+	 * parent, and the calling rule waits until
+	 * <ul>
+	 *     <li>every sub request has finished</li>
+	 *     <li>with failFast, the first one throws or ends with an ERROR status</li>
+	 *     <li>the timeout or the deadline of the parent passes</li>
+	 * </ul>
+	 * <P>The data of the sub requests that succeeded is put into the parent data in the order they were given.
+	 * Sub requests not started yet are cancelled and the ones still running are told to stop before their next
+	 * rule and no longer see the parent data. What they write is dropped. They are cut off from the parent data
+	 * before the data of any sub request is put into it. A failure is recorded on the parent
+	 * status as {@link #runSubRules(OrchestrationData, OrchestrationData)} does but not thrown, so the rule can
+	 * decide whether the partial results are good enough.
+	 * <P>The calling thread is blocked while waiting so don't use the executor the parent workflow runs on unless
+	 * it has threads to spare.
+	 * <P>A transaction is bound to the thread that started it, so the sub requests run outside the transaction of
+	 * the parent workflow. Their rules that use the database need a transaction policy of their own, or register
+	 * their changes with the write-behind unit, which is written in the transaction of the parent.
+	 *
+	 * @param request The orchestration data from the parent request
+	 * @param subRequests The orchestration data of each sub request
+	 * @param executor The executor to run the sub requests on
+	 * @param timeoutMillis The most millis to wait or 0 to wait until the deadline of the parent
+	 * @param failFast Stop waiting at the first sub request that fails
+	 * @return The outcome of each sub request and the merged result data
+	 * @throws RulesException If a sub request could not be set up. None are run then
+	 */
+	public SubRulesResult runSubRules(OrchestrationData request, List<OrchestrationData> subRequests,
+	                                  Executor executor, long timeoutMillis, boolean failFast) throws RulesException {
+		return runSubRules(request, subRequests, executor, timeoutMillis, failFast, true);
+	}
+
+	/**
+	 * Run sub-workflows side by side as {@link #runSubRules(OrchestrationData, List, Executor, long, boolean)} does
+	 * but with the choice of leaving the parent request alone. Without merging nothing is written to the parent,
+	 * neither data nor events, and the caller works from what each part wrote. Only the write-behind changes of the
+	 * sub requests that succeeded are added to the unit of the parent, e.g. when every sub request writes
+	 * the same result class for a different element.
+	 *
+	 * @param request The orchestration data from the parent request
+	 * @param subRequests The orchestration data of each sub request
+	 * @param executor The executor to run the sub requests on
+	 * @param timeoutMillis The most millis to wait or 0 to wait until the deadline of the parent
+	 * @param failFast Stop waiting at the first sub request that fails
+	 * @param merge Put the data of the sub requests that succeeded into the parent and record failures on it
+	 * @return The outcome of each sub request and the merged result data
+	 * @throws RulesException If a sub request could not be set up. None are run then
+	 */
+	public SubRulesResult runSubRules(OrchestrationData request, List<OrchestrationData> subRequests,
+	                                  Executor executor, long timeoutMillis, boolean failFast, boolean merge)
+			throws RulesException {
+		AtomicInteger completions = new AtomicInteger();
+		List<SubRulesResult.Part> parts = new ArrayList<>(subRequests.size());
+		List<Span> spans = new ArrayList<>(subRequests.size());
+		try {
+			for (OrchestrationData subRequest : subRequests) {
+				Span span = request.getSpan().startChild(SPAN_SUB_RULES);
+				spans.add(span);
+				SubRulesResult.Part part = new SubRulesResult.Part(subRequest,
+						new LayeredData(request.getRequestData(), subRequest.getRequestData()),
+						new LayeredData(request.getResultData()), completions);
+				prepareSubRules(request, subRequest, part.requestLayer, part.resultLayer, span);
+				if (timeoutMillis > 0) {
+					subRequest.limitDeadline(timeoutMillis);
+				}
+				parts.add(part);
+			}
+		} catch (RulesException e) {
+			log.error("Unable to process orchestration {}",e.getMessage());
+			for (Span span : spans) {
+				span.recordException(e);
+				span.end();
+			}
+			request.getStatus().addEvent(InfoType.ERROR, EventType.RULE, OrchestrationErrorCode.ORCH1001,
+					"Unable to process orchestration engine sub rules", e.getMessage());
+			throw new RulesException("Unable to process orchestration engine sub rules from "
+					+request.getCurrentRule()+ ". " + e.getMessage());
+		}
+
+		CompletableFuture<Void> failed = new CompletableFuture<>();
+		List<CompletableFuture<Void>> futures = new ArrayList<>(parts.size());
+		for (int i = 0; i < parts.size(); i++) {
+			SubRulesResult.Part part = parts.get(i);
+			Span span = spans.get(i);
+			try {
+				futures.add(CompletableFuture.runAsync(() -> {
+					runPart(part, span);
+					if (failFast && !part.isSucceeded()) {
+						failed.complete(null);
+					}
+				}, executor));
+			} catch (RejectedExecutionException e) {
+				part.finish(null, new RulesException("Unable to run sub rules. The executor is full"));
+				span.end();
+				part.getRequest().setSpan(Span.NOOP);
+				futures.add(CompletableFuture.completedFuture(null));
+				if (failFast) {
+					failed.complete(null);
+				}
+			}
+		}
+
+		boolean timedOut = false;
+		long wait = timeoutMillis > 0 ? Math.min(timeoutMillis, request.getRemainingMillis()) : request.getRemainingMillis();
+		try {
+			CompletableFuture.anyOf(CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])), failed)
+					.get(wait, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			timedOut = true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.warn("Interrupted waiting for sub rules from {}", request.getCurrentRule());
+		} catch (ExecutionException e) {
+			log.warn("Unable to wait for sub rules from {}. {}", request.getCurrentRule(), e.getMessage());
+		}
+
+		// Detach every part still running before any is committed, as they read the parent data through their layers
+		boolean[] finished = new boolean[parts.size()];
+		for (int i = 0; i < parts.size(); i++) {
+			SubRulesResult.Part part = parts.get(i);
+			finished[i] = part.isFinished();
+			if (!finished[i]) {
+				futures.get(i).cancel(false);
+				part.getRequest().expireDeadline();
+				part.requestLayer.detach();
+				part.resultLayer.detach();
+			}
+		}
+		Map<String, Object> resultData = new LinkedHashMap<>();
+		for (int i = 0; i < parts.size(); i++) {
+			SubRulesResult.Part part = parts.get(i);
+			if (!finished[i]) {
+				continue;
+			} else if (!merge) {
+				if (part.isSucceeded()) {
+					resultData.putAll(part.resultLayer.getLayer());
+					request.commitWriteBehind(part.getRequest());
+				}
+			} else if (part.isSucceeded()) {
+				resultData.putAll(part.resultLayer.getLayer());
+				part.requestLayer.commit();
+				part.resultLayer.commit();
+				request.commitWriteBehind(part.getRequest());
+			} else {
+				part.requestLayer.discard();
+				part.resultLayer.discard();
+				if (part.getFailure() != null) {
+					request.getStatus().addEvent(InfoType.ERROR, EventType.RULE, OrchestrationErrorCode.ORCH1001,
+							"Unable to process orchestration engine sub rules", part.getFailure().getMessage());
+				}
+			}
+		}
+		if (timedOut && merge) {
+			request.getStatus().addEvent(InfoType.WARNING, EventType.RULE, OrchestrationErrorCode.ORCH2005,
+					"Sub rules did not finish in time", "Sub rules from " + request.getCurrentRule()
+							+ " did not finish within " + wait + "ms");
+		}
+		return new SubRulesResult(parts, resultData, timedOut);
+	}
+
+	/**
+	 * Run the rules of one of the sub requests run side by side
+	 */
+	private void runPart(SubRulesResult.Part part, Span span) {
+		OrchestrationData subRequest = part.getRequest();
+		try {
+			part.finish(rules.runRuleSet(subRequest, mode, false), null);
+		} catch (RulesException e) {
+			log.error("Unable to process orchestration {}",e.getMessage());
+			span.recordException(e);
+			part.finish(null, e);
+		} catch (RuntimeException e) {
+			log.error("Unable to process orchestration {}",e.getMessage());
+			span.recordException(e);
+			part.finish(null, new RulesException(e.getMessage(), e));
+		} finally {
+			span.end();
+			subRequest.setSpan(Span.NOOP);
+		}
+	}
+
+	/**
+	 * Set up a sub request to run in the parent request
+	 */
+	private void prepareSubRules(OrchestrationData request, OrchestrationData subRequest, LayeredData requestLayer,
+	                             LayeredData resultLayer, Span span) throws RulesException {
+		subRequest.setRuleSet(this.getRuleSet(subRequest));
+		subRequest.setRequestData(requestLayer);
+		subRequest.setResultData(resultLayer);
+		subRequest.setOrchestrationConfig(request.getOrchestrationConfig());
+		subRequest.setOrchestration(request.getOrchestration());
+		subRequest.setSpan(span);
+		subRequest.inheritDeadline(request);
+		subRequest.inheritWriteBehind(request);
+		subRequest.sharePrefetches(request);
+		if (span.isSampled()) {
+			span.setAttribute("workflow.type", subRequest.getRuleSetType().getEnumName());
+		}
+	}
+
 	/**
 	 * Get the orchestration rules from either the cache or, if no cache
 	 * entry then use the default ruleset from {@link RuleSetTypeInterface} that applies
-	 * to this request.
+	 * to this request. A request for a registered {@link SubWorkflow} already has its compiled rules.
 	 *
 	 * @param request The rule request wrapper that contains the orchestration 
 	 * {@link RuleSetTypeInterface}
@@ -154,6 +657,10 @@ public class Orchestration {
 	 */
 	private RuleSet getRuleSet(OrchestrationData request) throws RulesException {
 		
+		if (request.getSubWorkflow() != null) {
+			return request.getSubWorkflow().getRuleSet();
+		}
+
 		String ruleStr;
 		RuleSet ruleSet;
 
@@ -2,13 +2,28 @@ package au.com.kahaara.wf.orchestration;
 
 import au.com.kahaara.wf.OrchestrationConfig;
 import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.jfr.DeepCopyEvent;
+import au.com.kahaara.wf.orchestration.persist.WriteBehind;
 import au.com.kahaara.wf.orchestration.rules.*;
+import au.com.kahaara.wf.orchestration.subflow.SubWorkflow;
+import au.com.kahaara.wf.orchestration.tracing.Span;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Configurable;
@@ -26,6 +41,9 @@ import org.springframework.util.Assert;
  *  TravelDocument td = (TravelDocument) data.getRequestData(TravelDocument.class);
  *  data.putData(td);
  * </pre>
+ * <P>A request can be given a deadline, either as an absolute time with {@link #setDeadline(Instant)} or relative
+ * to the start of the run with {@link #setTimeout(long)}. Once it has passed the workflow goes straight to END.
+ * Rules can use {@link #getRemainingMillis()} to bound their own calls to other services.
  * 
  * @author excdsn
  *
@@ -36,6 +54,12 @@ public class OrchestrationData {
 	
 	public static final Logger log = LoggerFactory.getLogger(OrchestrationData.class);
 
+	private static final String COPY_SOURCE_REQUEST = "request";
+	private static final String COPY_SOURCE_RESULT = "result";
+	private static final String SPAN_REQUEST_READ = "data.request.read";
+	private static final String SPAN_DATA_READ = "data.result.read";
+	private static final String SPAN_DATA_WRITTEN = "data.result.written";
+
 	/**
 	 * Config bean . It is used to tell if deep copy is allowed.
 	 */
@@ -76,6 +100,11 @@ public class OrchestrationData {
 	 */
 	private RuleSet ruleSet;
 
+	/**
+	 * The registered sub-workflow this request runs, with its rule set already compiled
+	 */
+	private SubWorkflow subWorkflow;
+
 	/**
 	 * String containing the original request serialised.
 	 */
@@ -115,6 +144,66 @@ public class OrchestrationData {
 	 */
 	private Orchestration orchestration;
 
+	/**
+	 * The current trace span. This is the workflow span or the span of the rule currently running.
+	 * It is {@link Span#NOOP} when the request is not being traced.
+	 */
+	private Span span = Span.NOOP;
+
+	/**
+	 * Identifies this run of the workflow for checkpointing. Set when the workflow starts if checkpointing
+	 * is on and not already set by the caller.
+	 */
+	private String workflowId;
+
+	/**
+	 * The rule to start from when a workflow is resumed from a checkpoint. Cleared once the workflow starts.
+	 */
+	private String resumeRule;
+
+	/**
+	 * Deadlines further out than this are treated as no sooner than this so the nano time arithmetic can't overflow
+	 */
+	private static final long MAX_DEADLINE_MILLIS = TimeUnit.DAYS.toMillis(365);
+
+	/**
+	 * The deadline as a {@link System#nanoTime()} value. Only used if {@link #deadlineSet} is true.
+	 */
+	private volatile long deadlineNanos;
+
+	private volatile boolean deadlineSet;
+
+	/**
+	 * A deadline relative to the start of the run. 0 for none.
+	 */
+	private long timeoutMillis;
+
+	/**
+	 * The changes to write once the workflow ends. Created when a rule first asks for it.
+	 */
+	private WriteBehind writeBehind;
+
+	/**
+	 * Why the write-behind unit can't be used or null if it can
+	 */
+	private String writeBehindRefused;
+
+	/**
+	 * Request data still being fetched or not yet materialized, by class name. Created when the first fetch is
+	 * started or supplier is added.
+	 */
+	private volatile Map<String, Future<?>> pendingRequestData;
+
+	/**
+	 * The pending request data belongs to the request this one was started from
+	 */
+	private boolean prefetchesShared;
+
+	/**
+	 * Check data read and written by the rules against their {@link RuleInfo}, as configured
+	 */
+	private boolean ruleInfoChecked = true;
+
 	/**
 	 * Instantiate a new instance of a RuleRequestWrapper object.
 	 *
@@ -136,6 +225,21 @@ public class OrchestrationData {
 		this.orchestrationConfig = orchestrationConfig;
 	}
 
+	/**
+	 * Instantiate a new instance to run a registered sub-workflow. Its rule set was compiled when it was
+	 * registered so it is not looked up again.
+	 *
+	 * @param orchestrationConfig  The orchestration configuration data
+	 * @param subWorkflow The {@link SubWorkflow} from the
+	 * {@link au.com.kahaara.wf.orchestration.subflow.SubWorkflowRegistry}
+	 */
+	public OrchestrationData(OrchestrationConfig orchestrationConfig, SubWorkflow subWorkflow) {
+		this.orchestrationConfig = orchestrationConfig;
+		this.type = subWorkflow.getType();
+		this.customRules = subWorkflow.getCustomRules();
+		this.subWorkflow = subWorkflow;
+	}
+
 	/**
 	 * Instantiate a new instance of a RuleRequestWrapper object.
 	 * This defaults the rule {@link RuleSetTypeInterface} to UNKNOWN.
@@ -162,6 +266,235 @@ public class OrchestrationData {
 		this.orchestration = orchestration;
 	}
 
+	/**
+	 * Get the current trace span. Rules can use this to add their own attributes or child spans.
+	 *
+	 * @return The current {@link Span} which is {@link Span#NOOP} if not tracing
+	 */
+	public Span getSpan() {
+		return span;
+	}
+
+	/**
+	 * Used internally by the orchestration to set the current trace span
+	 *
+	 * @param span The current {@link Span}
+	 */
+	public void setSpan(Span span) {
+		this.span = span == null ? Span.NOOP : span;
+	}
+
+	/**
+	 * @return The id of this workflow run or null if it is not checkpointed
+	 */
+	public String getWorkflowId() {
+		return workflowId;
+	}
+
+	/**
+	 * Set the id of this workflow run. A caller can set its own id, such as a business key, before running
+	 * the workflow so it can resume it by that id.
+	 *
+	 * @param workflowId The workflow id
+	 */
+	public void setWorkflowId(String workflowId) {
+		this.workflowId = workflowId;
+	}
+
+	/**
+	 * @return The name of the rule to resume the workflow from or null to start from the beginning
+	 */
+	public String getResumeRule() {
+		return resumeRule;
+	}
+
+	/**
+	 * Used when restoring from a checkpoint to set the rule the workflow starts from
+	 *
+	 * @param resumeRule The name of the rule in the rule set, e.g. 1.RuleA
+	 */
+	public void setResumeRule(String resumeRule) {
+		this.resumeRule = resumeRule;
+	}
+
+	/**
+	 * Set the time by which the workflow must finish. The deadline is not saved in a checkpoint so a resumed
+	 * workflow only has the configured default.
+	 *
+	 * @param deadline The deadline or null for none
+	 */
+	public void setDeadline(Instant deadline) {
+		if (deadline == null) {
+			deadlineSet = false;
+			return;
+		}
+		long millis = Math.max(0, Instant.now().until(deadline, ChronoUnit.MILLIS));
+		deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.min(millis, MAX_DEADLINE_MILLIS));
+		deadlineSet = true;
+	}
+
+	/**
+	 * @return The deadline or null if there is none
+	 */
+	public Instant getDeadline() {
+		if (!deadlineSet) {
+			return null;
+		}
+		return Instant.now().plusNanos(deadlineNanos - System.nanoTime());
+	}
+
+	/**
+	 * Set a deadline relative to when {@link Orchestration#run(OrchestrationData)} starts. It replaces the configured
+	 * orchestration.deadline.millis. If the request also has an absolute deadline the earlier of the two applies.
+	 *
+	 * @param timeoutMillis The millis the workflow may run for or 0 for no limit
+	 */
+	public void setTimeout(long timeoutMillis) {
+		this.timeoutMillis = Math.max(0, timeoutMillis);
+	}
+
+	/**
+	 * @return The millis the workflow may run for or 0 if not set
+	 */
+	public long getTimeout() {
+		return timeoutMillis;
+	}
+
+	/**
+	 * @return true if the workflow has a deadline
+	 */
+	public boolean hasDeadline() {
+		return deadlineSet;
+	}
+
+	/**
+	 * @return The millis left until the deadline, 0 if it has passed or {@link Long#MAX_VALUE} if there is none
+	 */
+	public long getRemainingMillis() {
+		if (!deadlineSet) {
+			return Long.MAX_VALUE;
+		}
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+	}
+
+	/**
+	 * @return true if the deadline has passed
+	 */
+	public boolean isDeadlineExpired() {
+		return deadlineSet && System.nanoTime() - deadlineNanos >= 0;
+	}
+
+	/**
+	 * Start the relative deadline when the run starts. This is the timeout of the request or, if it has none,
+	 * the configured default.
+	 */
+	void startDeadline() {
+		long millis = timeoutMillis;
+		if (millis <= 0 && orchestrationConfig != null) {
+			millis = orchestrationConfig.getDeadlineMillis();
+		}
+		if (millis > 0) {
+			tightenDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.min(millis, MAX_DEADLINE_MILLIS)));
+		}
+	}
+
+	/**
+	 * Give a sub request or branch the deadline of the request it was started from, unless it already has
+	 * an earlier one
+	 *
+	 * @param parent The request it was started from
+	 */
+	void inheritDeadline(OrchestrationData parent) {
+		if (parent.deadlineSet) {
+			tightenDeadline(parent.deadlineNanos);
+		}
+	}
+
+	/**
+	 * Rules register the changes to write to the database here rather than writing them as they go
+	 *
+	 * @return The {@link WriteBehind} unit of this workflow
+	 * @throws IllegalStateException If the workflow can't use one, e.g. because it is checkpointed
+	 */
+	public synchronized WriteBehind getWriteBehind() {
+		if (writeBehindRefused != null) {
+			throw new IllegalStateException(writeBehindRefused);
+		}
+		if (writeBehind == null) {
+			writeBehind = new WriteBehind();
+		}
+		return writeBehind;
+	}
+
+	/**
+	 * @return true if a rule has asked for the {@link WriteBehind} unit
+	 */
+	public synchronized boolean hasWriteBehind() {
+		return writeBehind != null;
+	}
+
+	/**
+	 * Stop the rules of this workflow and its sub workflows from using the write-behind unit
+	 *
+	 * @param reason The message of the exception thrown when a rule asks for it
+	 */
+	public synchronized void refuseWriteBehind(String reason) {
+		writeBehindRefused = reason;
+		writeBehind = null;
+	}
+
+	/**
+	 * Give a sub request a write-behind unit of its own, created when first asked for, which is added to the unit
+	 * of the request it was started from by {@link #commitWriteBehind(OrchestrationData)}
+	 *
+	 * @param parent The request it was started from
+	 */
+	void inheritWriteBehind(OrchestrationData parent) {
+		String refused;
+		synchronized (parent) {
+			refused = parent.writeBehindRefused;
+		}
+		synchronized (this) {
+			writeBehind = null;
+			writeBehindRefused = refused;
+		}
+	}
+
+	/**
+	 * Add the changes of a sub request to the write-behind unit of this request once its data has been committed
+	 *
+	 * @param sub The sub request
+	 */
+	void commitWriteBehind(OrchestrationData sub) {
+		if (sub.hasWriteBehind() && !sub.getWriteBehind().isEmpty()) {
+			getWriteBehind().append(sub.getWriteBehind());
+		}
+	}
+
+	/**
+	 * Bring the deadline forward so the workflow finishes within the timeout, unless it has an earlier one
+	 *
+	 * @param timeoutMillis The millis the workflow may still run for
+	 */
+	void limitDeadline(long timeoutMillis) {
+		tightenDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.min(timeoutMillis, MAX_DEADLINE_MILLIS)));
+	}
+
+	/**
+	 * Make the deadline pass now so the workflow stops before its next rule. Can be called from another thread.
+	 */
+	void expireDeadline() {
+		deadlineNanos = System.nanoTime();
+		deadlineSet = true;
+	}
+
+	private void tightenDeadline(long nanos) {
+		if (!deadlineSet || nanos - deadlineNanos < 0) {
+			deadlineNanos = nanos;
+			deadlineSet = true;
+		}
+	}
+
 	/**
 	 * @return the request type
 	 */
@@ -174,6 +507,14 @@ public class OrchestrationData {
 	 */
 	public void setRuleSetType(RuleSetTypeInterface type) {
 		this.type = type;
+		this.subWorkflow = null;
+	}
+
+	/**
+	 * @return The registered sub-workflow this request runs or null if its rule set is looked up by its type
+	 */
+	public SubWorkflow getSubWorkflow() {
+		return subWorkflow;
 	}
 
 	/**
@@ -268,7 +609,10 @@ public class OrchestrationData {
 			deepcopy = false;
 		}
 		log.trace("Get request for {}. deep copy={}",objectClass.getName(),deepcopy);
-		Object data = requestData.get(objectClass.getName());
+		if (span.isSampled()) {
+			span.addAttributeValue(SPAN_REQUEST_READ, objectClass.getName());
+		}
+		Object data = resolveRequestData(objectClass.getName());
 		if (required) {
 			Assert.notNull(data, objectClass.getSimpleName() + " must not be null!");
 		}
@@ -276,7 +620,7 @@ public class OrchestrationData {
 			return data;
 		}
 		try {
-			return objectMapper.readValue(objectMapper.writeValueAsString(data), objectClass);
+			return deepCopy(data, objectClass, COPY_SOURCE_REQUEST);
 		} catch (JsonProcessingException e) {
 			log.error("Unable to deep copy object {} {}",objectClass,e);
 		}
@@ -306,6 +650,224 @@ public class OrchestrationData {
 		requestData.put(data.getClass().getName(), data);
 	}
 
+	/**
+	 * Add request data that is only made when a rule first reads it. The supplier is called at most once, on the
+	 * thread that first reads the data, and any other thread reading it at the same time waits for it. The data
+	 * is then in the request data like any other, so deep copies and the rule info checks apply as usual.
+	 * <P>Use it for request data that is costly to build and that only some paths through the rule set read.
+	 *
+	 * @param objectClass The class of the data
+	 * @param supplier Makes the data
+	 * @param <T> The object type
+	 */
+	public <T> void putRequestData(Class<T> objectClass, Supplier<? extends T> supplier) {
+		if (processingRules) {
+			log.error("Unable to put data into orchestration request data once processing rules");
+			return;
+		}
+		log.trace("Set lazy request for {}",objectClass.getName());
+		requestData.remove(objectClass.getName());
+		pendingRequestData().put(objectClass.getName(), new LazyRequestData(supplier));
+	}
+
+	/**
+	 * Add request data that is parsed from the request message when a rule first reads it
+	 *
+	 * @see #putRequestData(Class, Supplier)
+	 *
+	 * @param objectClass The class of the data
+	 * @param parser Parses the request message
+	 * @param <T> The object type
+	 */
+	public <T> void putRequestMessageData(Class<T> objectClass, Function<String, ? extends T> parser) {
+		putRequestData(objectClass, () -> parser.apply(requestMessage));
+	}
+
+	/**
+	 * Make all the request data that has not been read yet, e.g. before the request data is serialized. Request
+	 * data still being fetched is left alone.
+	 */
+	public void materializeRequestData() {
+		if (pendingRequestData == null) {
+			return;
+		}
+		for (Map.Entry<String, Future<?>> entry : pendingRequestData.entrySet()) {
+			if (entry.getValue() instanceof LazyRequestData) {
+				resolveRequestData(entry.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Add request data that is still being fetched. It is put into the request data when it is first read and
+	 * reading it waits for it, but no longer than the deadline. Ignored if the request data is already there.
+	 *
+	 * @param className The class name of the data
+	 * @param data The data when it has been fetched
+	 */
+	public void prefetchRequestData(String className, Future<?> data) {
+		if (requestData.containsKey(className)) {
+			return;
+		}
+		pendingRequestData().putIfAbsent(className, data);
+	}
+
+	/**
+	 * @param className The class name of the data
+	 * @return true if the request data is there or being fetched
+	 */
+	public boolean hasRequestData(String className) {
+		return requestData.containsKey(className)
+				|| (pendingRequestData != null && pendingRequestData.containsKey(className));
+	}
+
+	/**
+	 * @param className The class name of the data
+	 * @return true if the request data is being fetched and is not in the request data yet
+	 */
+	public boolean isRequestDataPending(String className) {
+		return pendingRequestData != null && pendingRequestData.containsKey(className)
+				&& !requestData.containsKey(className);
+	}
+
+	/**
+	 * Get request data by class name, waiting for it if it is still being fetched. No deep copy is made.
+	 * <P>Data fetched for the request a sub request was started from is put into the request data of the sub
+	 * request but left pending for the parent, as the sub request's data is dropped when it fails. The parent then
+	 * gets the same object without fetching it again.
+	 *
+	 * @param className The class name of the data
+	 * @return The data or null if there is none or it could not be fetched in time
+	 */
+	public Object resolveRequestData(String className) {
+		Object data = requestData.get(className);
+		if (data != null || pendingRequestData == null) {
+			return data;
+		}
+		Future<?> pending = pendingRequestData.get(className);
+		if (pending == null) {
+			return null;
+		}
+		if (pending instanceof LazyRequestData) {
+			((LazyRequestData) pending).run();
+		}
+		try {
+			data = pending.get(getRemainingMillis(), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.warn("Interrupted waiting for request data {}", className);
+			return null;
+		} catch (TimeoutException e) {
+			log.warn("Deadline passed waiting for request data {}", className);
+			return null;
+		} catch (ExecutionException | CancellationException e) {
+			log.warn("Unable to fetch request data {}. {}", className,
+					e.getCause() == null ? e.getMessage() : e.getCause().getMessage());
+			if (!prefetchesShared) {
+				pendingRequestData.remove(className, pending);
+			}
+			return null;
+		}
+		if (data != null) {
+			requestData.put(className, data);
+		}
+		if (!prefetchesShared) {
+			pendingRequestData.remove(className, pending);
+		}
+		return data;
+	}
+
+	/**
+	 * Cancel the fetches of request data that no rule has read. Request data added with a supplier is kept.
+	 */
+	public void cancelPrefetches() {
+		if (pendingRequestData == null) {
+			return;
+		}
+		pendingRequestData.values().removeIf(pending -> {
+			if (pending instanceof LazyRequestData) {
+				return false;
+			}
+			pending.cancel(true);
+			return true;
+		});
+	}
+
+	/**
+	 * Give a sub request the request data being fetched for the request it was started from. Only the parent
+	 * takes the data off the pending request data once it has it.
+	 *
+	 * @param parent The request it was started from
+	 */
+	void sharePrefetches(OrchestrationData parent) {
+		pendingRequestData = parent.pendingRequestData();
+		prefetchesShared = true;
+	}
+
+	/**
+	 * Create a view of this request for work that may be abandoned part way through, e.g. a rule attempt that runs
+	 * past its timeout on another thread. The view reads the data of this request through {@link LayeredData} layers
+	 * and records events, the rule info and its span on itself, so nothing it does reaches this request until
+	 * {@link #commitOverlay(OrchestrationData)}. This request must not change while the view is running unless the
+	 * view has been {@link #abandonOverlay(OrchestrationData) abandoned}.
+	 *
+	 * @return The view. Its span is {@link Span#NOOP} until it is given one
+	 */
+	public OrchestrationData newOverlay() {
+		OrchestrationData overlay = new OrchestrationData(orchestrationConfig, type);
+		overlay.customRules = customRules;
+		overlay.subWorkflow = subWorkflow;
+		overlay.ruleSet = ruleSet;
+		overlay.requestMessage = requestMessage;
+		overlay.requestData = new LayeredData(requestData);
+		overlay.resultData = new LayeredData(resultData);
+		overlay.currentRule = currentRule;
+		overlay.currentRuleInfo = currentRuleInfo;
+		overlay.processingRules = processingRules;
+		overlay.orchestration = orchestration;
+		overlay.workflowId = workflowId;
+		overlay.timeoutMillis = timeoutMillis;
+		overlay.ruleInfoChecked = ruleInfoChecked;
+		overlay.inheritDeadline(this);
+		overlay.inheritWriteBehind(this);
+		overlay.sharePrefetches(this);
+		return overlay;
+	}
+
+	/**
+	 * Put what a view from {@link #newOverlay()} did into this request: its data, its write-behind changes, its
+	 * events and the rule info of the rule it ran
+	 *
+	 * @param overlay The view, which has finished
+	 */
+	public void commitOverlay(OrchestrationData overlay) {
+		((LayeredData) overlay.requestData).commit();
+		((LayeredData) overlay.resultData).commit();
+		commitWriteBehind(overlay);
+		status.addEvents(overlay.status);
+		currentRuleInfo = overlay.currentRuleInfo;
+	}
+
+	/**
+	 * Drop what a view from {@link #newOverlay()} did and cut it off from this request. It no longer reads the data
+	 * of this request and any sub rules it runs stop before their next rule, so this request can carry on while the
+	 * view is still running.
+	 *
+	 * @param overlay The view, which may still be running
+	 */
+	public void abandonOverlay(OrchestrationData overlay) {
+		overlay.expireDeadline();
+		((LayeredData) overlay.requestData).detach();
+		((LayeredData) overlay.resultData).detach();
+	}
+
+	private synchronized Map<String, Future<?>> pendingRequestData() {
+		if (pendingRequestData == null) {
+			pendingRequestData = new ConcurrentHashMap<>();
+		}
+		return pendingRequestData;
+	}
+
 	/**
 	 * @return the requestData
 	 */
@@ -353,7 +915,7 @@ public class OrchestrationData {
 
 		boolean required = true;
 
-		if (this.isProcessingRules() && this.getCurrentRule() != null) {
+		if (ruleInfoChecked && this.isProcessingRules() && this.getCurrentRule() != null) {
 
 			// Test and throw an exception or report the problem depending on settings
 			OrchestrationDataRule.testDataReadRequirements(orchestrationConfig, this, objectClass.getName());
@@ -401,6 +963,9 @@ public class OrchestrationData {
 	private  <T> Object getData(Class<T> objectClass, boolean deepcopy, boolean required) {
 
 		log.trace("Get response for {}. deep copy={}",objectClass.getName(),deepcopy);
+		if (span.isSampled()) {
+			span.addAttributeValue(SPAN_DATA_READ, objectClass.getName());
+		}
 
 		if (!this.isDeepCopyAvailable()) {
 			deepcopy = false;
@@ -415,13 +980,43 @@ public class OrchestrationData {
 			return data;
 		}
 		try {
-			return objectMapper.readValue(objectMapper.writeValueAsString(data), objectClass);
+			return deepCopy(data, objectClass, COPY_SOURCE_RESULT);
 		} catch (JsonProcessingException e) {
 			log.error("Unable to deep copy object {} from response {}", objectClass, e.getMessage());
 			return null;
 		}
 	}
 
+	/**
+	 * Deep copy an object by writing it to JSON and reading it back. Emits a {@link DeepCopyEvent} so
+	 * the cost of copying shows up in a flight recording.
+	 *
+	 * @param data The object to copy
+	 * @param objectClass The class to read back as
+	 * @param source Either request or result
+	 * @param <T> The object type
+	 * @return The copy
+	 * @throws JsonProcessingException If the object cannot be written or read
+	 */
+	private <T> T deepCopy(Object data, Class<T> objectClass, String source) throws JsonProcessingException {
+		DeepCopyEvent event = new DeepCopyEvent();
+		event.begin();
+		boolean success = false;
+		try {
+			T copy = objectMapper.readValue(objectMapper.writeValueAsString(data), objectClass);
+			success = true;
+			return copy;
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.dataClass = objectClass.getName();
+				event.source = source;
+				event.success = success;
+				event.commit();
+			}
+		}
+	}
+
 	/**
 	 * Set the {@link #resultData} for that object class type &lt;T&gt;.
 	 * If the map previously
@@ -456,11 +1051,14 @@ public class OrchestrationData {
 
 	private <T> void putData(T data, boolean force) throws RulesException {
 
-		if (!force && this.isProcessingRules() && this.getCurrentRule() != null) {
+		if (!force && ruleInfoChecked && this.isProcessingRules() && this.getCurrentRule() != null) {
 			OrchestrationDataRule.testDataWriteRequirements(orchestrationConfig, this, data.getClass().getName());
 		}
 
 		log.trace("Set response data for {}",data.getClass().getName());
+		if (span.isSampled()) {
+			span.addAttributeValue(SPAN_DATA_WRITTEN, data.getClass().getName());
+		}
 		this.resultData.put(data.getClass().getName(), data);
 	}
 
@@ -506,6 +1104,7 @@ public class OrchestrationData {
 	 */
 	public void setCustomRules(String customRules) {
 		this.customRules = customRules;
+		this.subWorkflow = null;
 	}
 
 	/**
@@ -539,6 +1138,30 @@ public class OrchestrationData {
 	}
 
 
+	/**
+	 * @return true if the data the rules read and write is checked against their {@link RuleInfo}
+	 */
+	public boolean isRuleInfoChecked() {
+		return ruleInfoChecked;
+	}
+
+	/**
+	 * @return true if the {@link RuleInfo} checks are made for this request and throw when they fail
+	 */
+	public boolean isRuleInfoEnforced() {
+		return ruleInfoChecked && orchestrationConfig != null && orchestrationConfig.isRuleInfoEnforce();
+	}
+
+	/**
+	 * Turn the {@link RuleInfo} checks off for this request whatever the configuration says, e.g. for the many
+	 * sub requests of a MAP construct
+	 *
+	 * @param ruleInfoChecked false to skip the checks
+	 */
+	public void setRuleInfoChecked(boolean ruleInfoChecked) {
+		this.ruleInfoChecked = ruleInfoChecked;
+	}
+
 	/**
 	 * Answers if deep copying is allowed .
 	 * The null check is put in place to support a large number of existing unit test.
@@ -580,4 +1203,16 @@ public class OrchestrationData {
 	void setOrchestrationConfig(OrchestrationConfig orchestrationConfig) {
 		this.orchestrationConfig = orchestrationConfig;
 	}
+
+	/**
+	 * Request data made by its supplier on the thread that first reads it
+	 */
+	private static final class LazyRequestData extends FutureTask<Object> {
+
+		LazyRequestData(Supplier<?> supplier) {
+			super(supplier::get);
+		}
+
+	}
+
 }
@@ -331,7 +331,7 @@ public class OrchestrationDataRule {
 		boolean ok = true; // default to true if empty list
 		log.trace("Testing if mapped data present");
 		for (String i : info.getExpectedRequestClasses()) {
-			if (request.getRequestData().containsKey(i)) {
+			if (request.hasRequestData(i)) {
 				log.trace("Found mapped request data for {}",i);
 				ok = true;
 			} else {
@@ -10,6 +10,19 @@ public enum OrchestrationErrorCode implements ErrorCodeInterface {
 
 	/** System error codes */
 	ORCH1001("Unknown exception caught."),
+	/** Rule resilience policy outcomes */
+	ORCH2001("Rule attempt failed and will be retried"),
+	ORCH2002("Rule attempt timed out"),
+	ORCH2003("Rule circuit breaker is open"),
+	ORCH2004("Rule failed after all attempts"),
+	/** The workflow ran out of time */
+	ORCH2005("Workflow deadline passed"),
+	/** The workflow was turned away as the orchestration is at its concurrency limit */
+	ORCH2006("Workflow rejected by admission control"),
+	/** The rule is running as many times at once as its bulkhead allows */
+	ORCH2007("Rule bulkhead is full"),
+	/** Every thread that times rule attempts is busy */
+	ORCH2008("No thread free to time the rule attempt"),
 	/** Missing Attribute in Request */
 	ORCH5003("Missing attribute in request"),
 	UNKNOWN ("Unknown Error");
@@ -131,6 +131,29 @@ public class Status {
 		events.add(e);
 	}
 
+	/**
+	 * Add copies of the events of another status. This status is raised to the level of the other if it is higher.
+	 *
+	 * @param other The status to copy the events from
+	 */
+	public void addEvents(Status other) {
+		for (Event e : other.getEvents()) {
+			events.add(new Event(e));
+		}
+		if (other.getStatus().compareTo(infoStatus) > 0) {
+			infoStatus = other.getStatus();
+		}
+	}
+
+	/**
+	 * @return A copy of this status with copies of its events
+	 */
+	public Status copy() {
+		Status copy = new Status();
+		copy.addEvents(this);
+		return copy;
+	}
+
 	/**
 	 * @return the status
 	 */
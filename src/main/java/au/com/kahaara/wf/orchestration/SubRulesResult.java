@@ -0,0 +1,172 @@
+package au.com.kahaara.wf.orchestration;
+
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The outcome of sub-workflows run side by side with
+ * {@link Orchestration#runSubRules(OrchestrationData, List, java.util.concurrent.Executor, long, boolean, boolean)}.
+ * It has a {@link Part} for each sub request, in the order they were given, and the result data written by the
+ * ones that succeeded. When the run stopped early, on a failure or the timeout, the parts that had finished are
+ * still there as partial results.
+ */
+public class SubRulesResult {
+
+	public static final Logger log = LoggerFactory.getLogger(SubRulesResult.class);
+
+	private final List<Part> parts;
+
+	private final Map<String, Object> resultData;
+
+	private final boolean timedOut;
+
+	SubRulesResult(List<Part> parts, Map<String, Object> resultData, boolean timedOut) {
+		this.parts = Collections.unmodifiableList(parts);
+		this.resultData = Collections.unmodifiableMap(resultData);
+		this.timedOut = timedOut;
+	}
+
+	/**
+	 * @return The outcome of each sub request in the order they were given
+	 */
+	public List<Part> getParts() {
+		return parts;
+	}
+
+	/**
+	 * @return The result data written by the sub requests that succeeded. When they are merged it is also in the
+	 * result data of the parent request
+	 */
+	public Map<String, Object> getResultData() {
+		return resultData;
+	}
+
+	/**
+	 * @return true if the timeout passed before every sub request finished
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+	/**
+	 * @return true if every sub request finished
+	 */
+	public boolean isComplete() {
+		return parts.stream().allMatch(Part::isFinished);
+	}
+
+	/**
+	 * @return true if every sub request finished, succeeded and its rules returned true
+	 */
+	public boolean isOk() {
+		return parts.stream().allMatch(Part::isOk);
+	}
+
+	/**
+	 * The outcome of one sub request
+	 */
+	public static final class Part {
+
+		private final OrchestrationData request;
+
+		final LayeredData requestLayer;
+
+		final LayeredData resultLayer;
+
+		private volatile RuleResult result;
+
+		private volatile RulesException failure;
+
+		private volatile boolean finished;
+
+		private final AtomicInteger completions;
+
+		private volatile int completionOrder;
+
+		Part(OrchestrationData request, LayeredData requestLayer, LayeredData resultLayer, AtomicInteger completions) {
+			this.request = request;
+			this.requestLayer = requestLayer;
+			this.resultLayer = resultLayer;
+			this.completions = completions;
+		}
+
+		void finish(RuleResult result, RulesException failure) {
+			this.result = result;
+			this.failure = failure;
+			this.completionOrder = completions.incrementAndGet();
+			this.finished = true;
+		}
+
+		/**
+		 * @return The sub request
+		 */
+		public OrchestrationData getRequest() {
+			return request;
+		}
+
+		/**
+		 * @return The result of the rules or null if they threw or did not finish
+		 */
+		public RuleResult getResult() {
+			return result;
+		}
+
+		/**
+		 * @return The status of the sub request with its events
+		 */
+		public Status getStatus() {
+			return request.getStatus();
+		}
+
+		/**
+		 * @return The result data the rules wrote. Once it is merged into the parent request it is empty
+		 */
+		public Map<String, Object> getResultData() {
+			return resultLayer.getLayer();
+		}
+
+		/**
+		 * @return 1 for the first sub request to finish, 2 for the next and so on. 0 if it did not finish
+		 */
+		public int getCompletionOrder() {
+			return completionOrder;
+		}
+
+		/**
+		 * @return What the rules threw or null
+		 */
+		public RulesException getFailure() {
+			return failure;
+		}
+
+		/**
+		 * @return true if the rules finished, whether they succeeded or not
+		 */
+		public boolean isFinished() {
+			return finished;
+		}
+
+		/**
+		 * @return true if the rules finished without throwing and without an ERROR status
+		 */
+		public boolean isSucceeded() {
+			return finished && failure == null && !InfoType.ERROR.equals(request.getStatusInfoType());
+		}
+
+		/**
+		 * @return true if it succeeded and its rules returned true
+		 */
+		public boolean isOk() {
+			return isSucceeded() && result != null && result.isOk();
+		}
+
+	}
+
+}
@@ -0,0 +1,147 @@
+package au.com.kahaara.wf.orchestration.admission;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A concurrency limit that adapts to the latency of the workflows it lets through, using additive increase
+ * and multiplicative decrease (AIMD).
+ * <P>Each type of workflow has its own baseline, the lowest latency seen for it, taken as its latency on an
+ * unloaded system. It drifts up towards the smoothed latency of the type so a lasting change in the work itself
+ * is picked up. When a workflow takes longer than the baseline of its type times the tolerance, or is reported
+ * as overloaded, the limit is multiplied by the backoff ratio, at most once per smoothed latency of the type so
+ * a burst of slow responses doesn't collapse it. Otherwise, while at least half of the limit is in use, it grows
+ * by about one for every limit's worth of workflows.
+ * <P>The methods are synchronized. They only update a few fields so the lock is held for well under a
+ * microsecond.
+ */
+public class AdaptiveLimiter {
+
+	/** How much of the gap to the smoothed latency the baseline closes on each sample */
+	private static final double BASELINE_DRIFT = 0.01;
+
+	/** The weight of each sample in the smoothed latency */
+	private static final double SMOOTHING = 0.1;
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final double backoffRatio;
+
+	private final double tolerance;
+
+	private double limit;
+
+	private int inFlight;
+
+	private final Map<String, Latency> latencies = new HashMap<>();
+
+	private long lastDecrease;
+
+	private boolean decreased;
+
+	/**
+	 * @param initialLimit The limit to start with
+	 * @param minLimit The limit never goes below this
+	 * @param maxLimit The limit never goes above this
+	 * @param backoffRatio What the limit is multiplied by when latency is too high, between 0.5 and 1
+	 * @param tolerance How many times the baseline latency a workflow can take before the limit is cut
+	 */
+	public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double tolerance) {
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.backoffRatio = Math.min(1.0, Math.max(0.5, backoffRatio));
+		this.tolerance = Math.max(1.0, tolerance);
+		this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+	}
+
+	/**
+	 * Ask to start a workflow. Every call that returns true must be followed by {@link #release(long, boolean)}.
+	 *
+	 * @param priority The priority of the workflow
+	 * @return true if it can run
+	 */
+	public synchronized boolean tryAcquire(Priority priority) {
+		int allowed = Math.max(1, (int) (limit * priority.getShare()));
+		if (inFlight >= allowed) {
+			return false;
+		}
+		inFlight++;
+		return true;
+	}
+
+	/**
+	 * A workflow has finished
+	 *
+	 * @param type The type of workflow, e.g. the name of its rule set type
+	 * @param latencyNanos How long it took from being let in
+	 * @param overloaded true if it failed in a way that shows the system is overloaded, such as running out of time
+	 */
+	public synchronized void release(String type, long latencyNanos, boolean overloaded) {
+		inFlight--;
+		Latency latency = latencies.computeIfAbsent(type, k -> new Latency());
+		latency.add(Math.max(1, latencyNanos));
+
+		if (overloaded || latencyNanos > latency.baselineNanos * tolerance) {
+			long now = System.nanoTime();
+			if (!decreased || now - lastDecrease >= (long) latency.smoothedNanos) {
+				limit = Math.max(minLimit, limit * backoffRatio);
+				lastDecrease = now;
+				decreased = true;
+			}
+		} else if (inFlight * 2 >= limit) {
+			limit = Math.min(maxLimit, limit + 1.0 / limit);
+		}
+	}
+
+	/**
+	 * @return The current limit
+	 */
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	/**
+	 * @return The number of workflows running
+	 */
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * @param type The type of workflow
+	 * @return The baseline latency of the type in nanos or 0 before the first workflow of the type finishes
+	 */
+	public synchronized long getBaselineNanos(String type) {
+		Latency latency = latencies.get(type);
+		return latency == null ? 0 : latency.baselineNanos;
+	}
+
+	/**
+	 * The latency of one type of workflow
+	 */
+	private static class Latency {
+
+		long baselineNanos;
+
+		double smoothedNanos;
+
+		void add(long latencyNanos) {
+			if (baselineNanos == 0) {
+				baselineNanos = latencyNanos;
+				smoothedNanos = latencyNanos;
+				return;
+			}
+			smoothedNanos += (latencyNanos - smoothedNanos) * SMOOTHING;
+			if (latencyNanos < baselineNanos) {
+				baselineNanos = latencyNanos;
+			} else if (smoothedNanos > baselineNanos) {
+				baselineNanos = Math.max(baselineNanos + 1,
+						(long) (baselineNanos + (smoothedNanos - baselineNanos) * BASELINE_DRIFT));
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,110 @@
+package au.com.kahaara.wf.orchestration.admission;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.rules.RuleSetTypeInterface;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides whether {@link au.com.kahaara.wf.orchestration.Orchestration} takes on a workflow. Workflows are let in
+ * up to the share of the {@link AdaptiveLimiter} limit allowed for the {@link Priority} of their rule set type and
+ * the rest are turned away straight away, so a slow dependency doesn't leave every thread waiting on it.
+ * <P>Configured from the orchestration properties
+ * <ul>
+ *     <li>orchestration.admission.enabled - Turn admission control on or off. Default is off</li>
+ *     <li>orchestration.admission.limit.initial - The concurrency limit to start with</li>
+ *     <li>orchestration.admission.limit.min - The lowest the limit can go</li>
+ *     <li>orchestration.admission.limit.max - The highest the limit can go</li>
+ *     <li>orchestration.admission.backoff.ratio - What the limit is multiplied by when latency goes up</li>
+ *     <li>orchestration.admission.latency.tolerance - How many times the baseline latency is too slow</li>
+ * </ul>
+ * </P>
+ */
+@Component
+public class AdmissionController {
+
+	public static final Logger log = LoggerFactory.getLogger(AdmissionController.class);
+
+	private final AdaptiveLimiter limiter;
+
+	/**
+	 * Admission control that lets everything in
+	 */
+	public AdmissionController() {
+		this.limiter = null;
+	}
+
+	/**
+	 * Admission control that is turned on with the given limiter
+	 *
+	 * @param limiter The {@link AdaptiveLimiter}
+	 */
+	public AdmissionController(AdaptiveLimiter limiter) {
+		this.limiter = limiter;
+	}
+
+	/**
+	 * The bean constructor used by spring-boot
+	 *
+	 * @param config The orchestration configuration
+	 */
+	@Autowired
+	public AdmissionController(OrchestrationConfig config) {
+		if (config.isAdmissionEnabled()) {
+			this.limiter = new AdaptiveLimiter(config.getAdmissionInitialLimit(), config.getAdmissionMinLimit(),
+					config.getAdmissionMaxLimit(), config.getAdmissionBackoffRatio(),
+					config.getAdmissionLatencyTolerance());
+			log.info("Orchestration admission control enabled with a limit of {} between {} and {}",
+					limiter.getLimit(), config.getAdmissionMinLimit(), config.getAdmissionMaxLimit());
+		} else {
+			this.limiter = null;
+		}
+	}
+
+	/**
+	 * @return true if workflows can be turned away
+	 */
+	public boolean isEnabled() {
+		return limiter != null;
+	}
+
+	/**
+	 * Ask to run a workflow. Every call that returns true must be followed by {@link #release(long, boolean)}.
+	 *
+	 * @param type The rule set type of the workflow
+	 * @return true if it can run
+	 */
+	public boolean tryAcquire(RuleSetTypeInterface type) {
+		return limiter == null || limiter.tryAcquire(type.getPriority());
+	}
+
+	/**
+	 * A workflow that was let in has finished
+	 *
+	 * @param type The rule set type of the workflow
+	 * @param latencyNanos How long it took from being let in
+	 * @param overloaded true if it ran out of time
+	 */
+	public void release(RuleSetTypeInterface type, long latencyNanos, boolean overloaded) {
+		if (limiter != null) {
+			limiter.release(type.getEnumName(), latencyNanos, overloaded);
+		}
+	}
+
+	/**
+	 * @return The current limit or 0 if admission control is off
+	 */
+	public int getLimit() {
+		return limiter == null ? 0 : limiter.getLimit();
+	}
+
+	/**
+	 * @return The limiter or null if admission control is off
+	 */
+	public AdaptiveLimiter getLimiter() {
+		return limiter;
+	}
+
+}
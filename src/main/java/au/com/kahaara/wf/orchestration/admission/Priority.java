@@ -0,0 +1,33 @@
+package au.com.kahaara.wf.orchestration.admission;
+
+/**
+ * The priority class of a rule set type. When the {@link AdaptiveLimiter} is near its limit the lower
+ * classes are turned away first. Each class can only use its share of the limit
+ * <ul>
+ *     <li>{@link #CRITICAL} - All of it</li>
+ *     <li>{@link #HIGH} - 90%</li>
+ *     <li>{@link #NORMAL} - 75%</li>
+ *     <li>{@link #LOW} - 50%</li>
+ * </ul>
+ */
+public enum Priority {
+
+	CRITICAL(1.0),
+	HIGH(0.9),
+	NORMAL(0.75),
+	LOW(0.5);
+
+	private final double share;
+
+	Priority(double share) {
+		this.share = share;
+	}
+
+	/**
+	 * @return The fraction of the concurrency limit requests of this priority can use
+	 */
+	public double getShare() {
+		return share;
+	}
+
+}
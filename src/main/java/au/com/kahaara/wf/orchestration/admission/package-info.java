@@ -0,0 +1,5 @@
+/**
+ * Admission control in front of the orchestration. See
+ * {@link au.com.kahaara.wf.orchestration.admission.AdmissionController}.
+ */
+package au.com.kahaara.wf.orchestration.admission;
@@ -0,0 +1,66 @@
+package au.com.kahaara.wf.orchestration.cache;
+
+import au.com.kahaara.wf.orchestration.workflow.Memoize;
+
+import java.util.Objects;
+
+/**
+ * The memoize settings of a rule as read from its {@link Memoize} annotation, or created directly for
+ * rules that are added without one.
+ */
+public class MemoizePolicy {
+
+	private final int maxEntries;
+
+	private final long ttlMillis;
+
+	/**
+	 * See {@link Memoize} for what each value does
+	 */
+	public MemoizePolicy(int maxEntries, long ttlMillis) {
+		this.maxEntries = Math.max(1, maxEntries);
+		this.ttlMillis = Math.max(1, ttlMillis);
+	}
+
+	/**
+	 * @param annotation The annotation
+	 * @return The policy or null if the rule is not memoized
+	 */
+	public static MemoizePolicy from(Memoize annotation) {
+		if (annotation == null || annotation.maxEntries() <= 0) {
+			return null;
+		}
+		return new MemoizePolicy(annotation.maxEntries(), annotation.ttlMillis());
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	public long getTtlMillis() {
+		return ttlMillis;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof MemoizePolicy)) {
+			return false;
+		}
+		MemoizePolicy other = (MemoizePolicy) o;
+		return maxEntries == other.maxEntries && ttlMillis == other.ttlMillis;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(maxEntries, ttlMillis);
+	}
+
+	@Override
+	public String toString() {
+		return "MemoizePolicy[maxEntries=" + maxEntries + ", ttlMillis=" + ttlMillis + "]";
+	}
+
+}
@@ -0,0 +1,274 @@
+package au.com.kahaara.wf.orchestration.cache;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.Rule;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.serial.DataSerializer;
+import au.com.kahaara.wf.orchestration.serial.JsonDataSerializer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Memoizes the results of rules that have a {@link MemoizePolicy}. Each rule has its own {@link TtlLruCache} keyed
+ * by a SHA-256 hash of the JSON of the inputs it declares in its {@link RuleInfo}. The cached value is the rule
+ * result and a serialized copy of the data the rule created or modified, which is put back into the result data
+ * when the same inputs are seen again.
+ * <P>The cache of a rule is sized by its policy. If the rule comes back with a different policy, e.g. from a rule
+ * list that has been loaded again, its cache is replaced by one sized for the new policy.
+ * <P>Configured from the orchestration properties
+ * <ul>
+ *     <li>orchestration.memoize.enabled - Turn memoizing on or off for every rule. Default is on</li>
+ * </ul>
+ * </P>
+ */
+@Component
+public class RuleMemoizer {
+
+	public static final Logger log = LoggerFactory.getLogger(RuleMemoizer.class);
+
+	private static final String REQUEST_PREFIX = "request:";
+	private static final String RESULT_PREFIX = "result:";
+
+	/**
+	 * Runs the rule when there is no memoized result
+	 */
+	public interface Invocation {
+		RuleResult run() throws RulesException;
+	}
+
+	private final boolean enabled;
+
+	/** Sorted so equal inputs always give the same JSON */
+	private final ObjectMapper keyMapper = JsonMapper.builder()
+			.enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+			.enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+			.build();
+
+	private final DataSerializer serializer = new JsonDataSerializer();
+
+	private final Map<String, RuleCache> caches = new ConcurrentHashMap<>();
+
+	/**
+	 * A memoizer that is turned on
+	 */
+	public RuleMemoizer() {
+		this(true);
+	}
+
+	/**
+	 * @param enabled false to always run the rules
+	 */
+	public RuleMemoizer(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * The bean constructor used by spring-boot
+	 *
+	 * @param config The orchestration configuration
+	 */
+	@Autowired
+	public RuleMemoizer(OrchestrationConfig config) {
+		this(config.isMemoizeEnabled());
+	}
+
+	/**
+	 * Return the memoized result of the rule for its current inputs, or run it and memoize the result
+	 *
+	 * @param rule The rule
+	 * @param policy The rule's memoize policy
+	 * @param info The rule's declared inputs and outputs
+	 * @param request The orchestration data
+	 * @param invocation Runs the rule
+	 * @return The rule result
+	 * @throws RulesException If the rule throws
+	 */
+	public RuleResult run(Rule rule, MemoizePolicy policy, RuleInfo info, OrchestrationData request,
+	                      Invocation invocation) throws RulesException {
+		if (!enabled || info == null) {
+			return invocation.run();
+		}
+		String key = key(info, request);
+		if (key == null) {
+			return invocation.run();
+		}
+		String name = rule.getRuleType().getRuleName();
+		TtlLruCache<String, Memo> cache = cache(name, policy);
+
+		Optional<Memo> memo = cache.get(key);
+		if (memo.isPresent()) {
+			RuleResult result = replay(memo.get(), request);
+			if (result != null) {
+				log.debug("Memoized result for rule {}", name);
+				return result;
+			}
+			cache.remove(key);
+		}
+
+		int events = request.getStatus().getEvents().size();
+		RuleResult result = invocation.run();
+		if (request.getStatus().getEvents().size() == events) {
+			store(cache, key, info, request, result);
+		}
+		return result;
+	}
+
+	/**
+	 * @param ruleName The rule type name
+	 * @return The cache of the rule, to see its hits and misses, or null if nothing has been memoized for it
+	 */
+	public TtlLruCache<String, ?> getCache(String ruleName) {
+		RuleCache ruleCache = caches.get(ruleName.toUpperCase(Locale.ROOT));
+		return ruleCache == null ? null : ruleCache.cache;
+	}
+
+	/**
+	 * Forget every memoized result, e.g. when reference data has changed
+	 */
+	public void clear() {
+		caches.values().forEach(c -> c.cache.clear());
+	}
+
+	/**
+	 * Get the cache of the rule for its policy, replacing one that was sized for another policy
+	 */
+	private TtlLruCache<String, Memo> cache(String name, MemoizePolicy policy) {
+		String key = name.toUpperCase(Locale.ROOT);
+		RuleCache ruleCache = caches.get(key);
+		if (ruleCache == null || !ruleCache.policy.equals(policy)) {
+			ruleCache = caches.compute(key, (k, current) -> {
+				if (current != null && current.policy.equals(policy)) {
+					return current;
+				}
+				if (current != null) {
+					log.info("Memoize policy of rule {} changed to {}. Starting a new cache", name, policy);
+				}
+				return new RuleCache(policy);
+			});
+		}
+		return ruleCache.cache;
+	}
+
+	/**
+	 * Hash the declared inputs of the rule
+	 *
+	 * @return The key or null if an input can't be written as JSON
+	 */
+	private String key(RuleInfo info, OrchestrationData request) {
+		ObjectNode node = keyMapper.createObjectNode();
+		try {
+			for (String name : new TreeSet<>(info.getExpectedRequestClasses())) {
+				node.set(REQUEST_PREFIX + name, keyMapper.valueToTree(request.resolveRequestData(name)));
+			}
+			TreeSet<String> results = new TreeSet<>(info.getExpectedResponseClasses());
+			results.addAll(info.getOptionalResponseClasses());
+			results.addAll(info.getModifiedResponseClasses());
+			for (String name : results) {
+				node.set(RESULT_PREFIX + name, keyMapper.valueToTree(request.getResultData().get(name)));
+			}
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(keyMapper.writeValueAsBytes(node));
+			return Base64.getEncoder().encodeToString(digest);
+		} catch (IllegalArgumentException | JsonProcessingException | NoSuchAlgorithmException e) {
+			log.debug("Unable to build the memoize key. {}", e.getMessage());
+			return null;
+		}
+	}
+
+	private void store(TtlLruCache<String, Memo> cache, String key, RuleInfo info, OrchestrationData request,
+	                   RuleResult result) {
+		Map<String, Object> outputs = new LinkedHashMap<>();
+		for (String name : info.getCreatedResponseClasses()) {
+			addOutput(outputs, name, request);
+		}
+		for (String name : info.getModifiedResponseClasses()) {
+			addOutput(outputs, name, request);
+		}
+		try {
+			cache.put(key, new Memo(result.isOk(), result.getResultInfo(), result.getOutcome(),
+					serializer.serialize(outputs)));
+		} catch (IOException e) {
+			log.debug("Unable to memoize the result data. {}", e.getMessage());
+		}
+	}
+
+	private static void addOutput(Map<String, Object> outputs, String name, OrchestrationData request) {
+		Object value = request.getResultData().get(name);
+		if (value != null) {
+			outputs.put(name, value);
+		}
+	}
+
+	/**
+	 * @return The memoized result or null if the data can't be read back
+	 */
+	private RuleResult replay(Memo memo, OrchestrationData request) {
+		try {
+			request.getResultData().putAll(serializer.deserialize(memo.outputs));
+		} catch (IOException e) {
+			log.warn("Unable to read memoized result data. {}", e.getMessage());
+			return null;
+		}
+		RuleResult result = new RuleResult(memo.ok, memo.outcome);
+		result.setResultInfo(memo.resultInfo);
+		return result;
+	}
+
+	/**
+	 * The cache of a rule and the policy it was sized for
+	 */
+	private static final class RuleCache {
+
+		final MemoizePolicy policy;
+
+		final TtlLruCache<String, Memo> cache;
+
+		RuleCache(MemoizePolicy policy) {
+			this.policy = policy;
+			this.cache = new TtlLruCache<>(policy.getMaxEntries(), policy.getTtlMillis());
+		}
+	}
+
+	/**
+	 * A memoized result
+	 */
+	private static final class Memo {
+
+		final boolean ok;
+
+		final String resultInfo;
+
+		final String outcome;
+
+		final byte[] outputs;
+
+		Memo(boolean ok, String resultInfo, String outcome, byte[] outputs) {
+			this.ok = ok;
+			this.resultInfo = resultInfo;
+			this.outcome = outcome;
+			this.outputs = outputs;
+		}
+	}
+
+}
@@ -1,6 +1,7 @@
 package au.com.kahaara.wf.orchestration.cache;
 
 import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.jfr.RuleSetCacheEvent;
 import au.com.kahaara.wf.orchestration.rules.RuleList;
 import au.com.kahaara.wf.orchestration.rules.RuleSet;
 import org.slf4j.Logger;
@@ -42,11 +43,37 @@ public class RuleSetCacheService {
      * @return a rule set from either the cache or newly created
      * @throws RulesException If unable to create the ruleset
      */
-    public synchronized RuleSet getRuleSet(String key) throws RulesException {
+    public RuleSet getRuleSet(String key) throws RulesException {
+        RuleSetCacheEvent event = new RuleSetCacheEvent();
+        event.begin();
+        boolean[] hit = new boolean[1];
+        try {
+            return lookup(key, hit);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.key = key;
+                event.hit = hit[0];
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * The synchronized cache lookup. Kept separate so the flight recorder event also covers the
+     * time spent waiting for the lock.
+     *
+     * @param key the cache key which is the name of the rule set
+     * @param hit set to true if the rule set was already in the cache
+     * @return a rule set from either the cache or newly created
+     * @throws RulesException If unable to create the ruleset
+     */
+    private synchronized RuleSet lookup(String key, boolean[] hit) throws RulesException {
         Optional<RuleSet> ruleSet = this.cache.get(key);
         if (!ruleSet.isPresent()) {
             ruleSet = this.fromRuleList(key);
         } else {
+            hit[0] = true;
             log.info("Pulled workflow rules {} from cache", key);
         }
         return ruleSet.orElseGet(RuleSet::new);
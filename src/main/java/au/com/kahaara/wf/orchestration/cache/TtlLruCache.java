@@ -0,0 +1,146 @@
+package au.com.kahaara.wf.orchestration.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * A thread safe cache bounded by both size and age. Entries expire a fixed time after they were put and, once
+ * the cache is full, the least recently used entry is dropped to make room. Counts of hits and misses are kept.
+ * <P>All the methods synchronize on the cache. Each call is a single hash lookup so it suits caches read
+ * many times per write, such as memoized rule results.
+ *
+ * @param <K> Key The key name
+ * @param <V> Value The value / object
+ */
+public class TtlLruCache<K, V> implements GenericCacheInterface<K, V> {
+
+    private final int maxEntries;
+
+    private final long ttlNanos;
+
+    private final LinkedHashMap<K, Entry<V>> map;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * @param maxEntries The most entries kept
+     * @param ttlMillis How long an entry is kept after it is put
+     */
+    public TtlLruCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, ttlMillis));
+        this.map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > TtlLruCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Remove the expired entries
+     */
+    @Override
+    public synchronized void clean() {
+        long now = System.nanoTime();
+        Iterator<Entry<V>> it = map.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isExpired(now)) {
+                it.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    @Override
+    public synchronized boolean containsKey(K key) {
+        Entry<V> e = map.get(key);
+        return e != null && !e.isExpired(System.nanoTime());
+    }
+
+    @Override
+    public synchronized Optional<V> get(K key) {
+        Entry<V> e = map.get(key);
+        if (e == null) {
+            misses++;
+            return Optional.empty();
+        }
+        if (e.isExpired(System.nanoTime())) {
+            map.remove(key);
+            misses++;
+            return Optional.empty();
+        }
+        hits++;
+        return Optional.of(e.value);
+    }
+
+    @Override
+    public synchronized void put(K key, V value) {
+        map.put(key, new Entry<>(value, System.nanoTime() + ttlNanos));
+    }
+
+    @Override
+    public synchronized void remove(K key) {
+        map.remove(key);
+    }
+
+    /**
+     * Remove every entry whose key matches
+     *
+     * @param filter Selects the keys to remove
+     * @return The number of entries removed
+     */
+    public synchronized int removeIf(Predicate<? super K> filter) {
+        int removed = 0;
+        Iterator<K> it = map.keySet().iterator();
+        while (it.hasNext()) {
+            if (filter.test(it.next())) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return The number of entries including any expired ones not removed yet
+     */
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private static final class Entry<V> {
+
+        final V value;
+
+        final long expiresAt;
+
+        Entry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+
+}
@@ -0,0 +1,228 @@
+package au.com.kahaara.wf.orchestration.cache;
+
+import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.Status;
+import au.com.kahaara.wf.orchestration.rules.RuleSetTypeInterface;
+import au.com.kahaara.wf.orchestration.serial.DataSerializer;
+import au.com.kahaara.wf.orchestration.serial.JsonDataSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Caches the outcome of whole workflows so a repeated request is answered without running any rules. A hit
+ * gives the request a copy of the result data and of the events on the status of the run that was cached.
+ * <P>Only use it for workflows that don't change anything, as none of their rules run on a hit. It is turned on
+ * for a rule set type by registering a digest function for it along with the size and age of its cache. The
+ * digest is built from the request data that decides the outcome and null means the request is not cached.
+ * <pre>
+ * resultCache.register(MyRuleSetType.LOOKUP, data -&gt; ((Lookup) data.getRequestData(Lookup.class)).getNumber(),
+ *         1000, 60000);
+ * </pre>
+ * <P>The key of a request is the rule set type name, any custom rules and the digest joined by a '/' so
+ * {@link #invalidate(String)} can drop everything for a type with "LOOKUP/" or a single request with its full
+ * key. Runs that returned false or ended with an ERROR status are never cached.
+ */
+@Component
+public class WorkflowResultCache {
+
+	public static final Logger log = LoggerFactory.getLogger(WorkflowResultCache.class);
+
+	/** Joins the parts of a key */
+	public static final String KEY_SEPARATOR = "/";
+
+	private final Map<RuleSetTypeInterface, Registration> registrations = new ConcurrentHashMap<>();
+
+	private final DataSerializer serializer;
+
+	/**
+	 * The bean constructor used by spring-boot. Result data is copied as JSON.
+	 */
+	public WorkflowResultCache() {
+		this(new JsonDataSerializer());
+	}
+
+	/**
+	 * @param serializer Copies the result data in and out of the cache
+	 */
+	public WorkflowResultCache(DataSerializer serializer) {
+		this.serializer = serializer;
+	}
+
+	/**
+	 * Cache the outcome of workflows of this rule set type
+	 *
+	 * @param type The rule set type
+	 * @param digest Builds the digest of a request. Requests with equal digests get the same outcome
+	 * @param maxEntries The most outcomes kept for the type
+	 * @param ttlMillis How long an outcome is kept
+	 */
+	public void register(RuleSetTypeInterface type, Function<OrchestrationData, String> digest,
+	                     int maxEntries, long ttlMillis) {
+		registrations.put(type, new Registration(digest, new TtlLruCache<>(maxEntries, ttlMillis)));
+	}
+
+	/**
+	 * Stop caching workflows of this rule set type and drop what is cached for it
+	 *
+	 * @param type The rule set type
+	 */
+	public void unregister(RuleSetTypeInterface type) {
+		registrations.remove(type);
+	}
+
+	/**
+	 * Build the cache key of a request
+	 *
+	 * @param data The request about to run
+	 * @return The key or null if the request is not cached
+	 */
+	public String key(OrchestrationData data) {
+		if (registrations.isEmpty()) {
+			return null;
+		}
+		Registration registration = registrations.get(data.getRuleSetType());
+		if (registration == null) {
+			return null;
+		}
+		String digest;
+		try {
+			digest = registration.digest.apply(data);
+		} catch (RuntimeException e) {
+			log.warn("Unable to build the result cache digest for {}. {}", data.getRuleSetType().getEnumName(), e.getMessage());
+			return null;
+		}
+		if (digest == null) {
+			return null;
+		}
+		StringBuilder key = new StringBuilder(data.getRuleSetType().getEnumName()).append(KEY_SEPARATOR);
+		if (data.getCustomRules() != null) {
+			key.append(data.getCustomRules()).append(KEY_SEPARATOR);
+		}
+		return key.append(digest).toString();
+	}
+
+	/**
+	 * Give the request the cached outcome if there is one
+	 *
+	 * @param key The key from {@link #key(OrchestrationData)}
+	 * @param data The request which gets a copy of the cached result data and events
+	 * @return true on a hit, false if the workflow has to run
+	 */
+	public boolean replay(String key, OrchestrationData data) {
+		Registration registration = registrations.get(data.getRuleSetType());
+		if (key == null || registration == null) {
+			return false;
+		}
+		Optional<CachedResult> cached = registration.cache.get(key);
+		if (!cached.isPresent()) {
+			return false;
+		}
+		Map<String, Object> resultData;
+		try {
+			resultData = serializer.deserialize(cached.get().resultBytes);
+		} catch (IOException e) {
+			log.warn("Unable to read the cached result of {}. {}", key, e.getMessage());
+			registration.cache.remove(key);
+			return false;
+		}
+		data.setResultData(resultData);
+		data.getStatus().addEvents(cached.get().status);
+		log.debug("Workflow {} answered from the result cache", key);
+		return true;
+	}
+
+	/**
+	 * Cache the outcome of a workflow that has run
+	 *
+	 * @param key The key from {@link #key(OrchestrationData)}
+	 * @param data The orchestration data after the run
+	 * @param ok The result of the run
+	 */
+	public void store(String key, OrchestrationData data, boolean ok) {
+		Registration registration = registrations.get(data.getRuleSetType());
+		if (key == null || registration == null || !ok || InfoType.ERROR.equals(data.getStatusInfoType())) {
+			return;
+		}
+		try {
+			registration.cache.put(key, new CachedResult(serializer.serialize(data.getResultData()),
+					data.getStatus().copy()));
+		} catch (IOException e) {
+			log.debug("Not caching the result of {}. {}", key, e.getMessage());
+		}
+	}
+
+	/**
+	 * Drop the cached outcomes whose key starts with the prefix
+	 *
+	 * @param prefix The start of the keys, e.g. "LOOKUP/" for every outcome of the LOOKUP rule set type
+	 * @return The number of outcomes dropped
+	 */
+	public int invalidate(String prefix) {
+		int removed = 0;
+		for (Registration registration : registrations.values()) {
+			removed += registration.cache.removeIf(key -> key.startsWith(prefix));
+		}
+		return removed;
+	}
+
+	/**
+	 * @param type The rule set type
+	 * @return The cache of the rule set type or null if it is not registered
+	 */
+	public TtlLruCache<String, CachedResult> getCache(RuleSetTypeInterface type) {
+		Registration registration = registrations.get(type);
+		return registration == null ? null : registration.cache;
+	}
+
+	/**
+	 * @return The number of requests answered from the cache across every rule set type
+	 */
+	public long getHits() {
+		return registrations.values().stream().mapToLong(r -> r.cache.getHits()).sum();
+	}
+
+	/**
+	 * @return The number of cached requests that had to run across every rule set type
+	 */
+	public long getMisses() {
+		return registrations.values().stream().mapToLong(r -> r.cache.getMisses()).sum();
+	}
+
+	/**
+	 * The outcome of a run kept in the cache
+	 */
+	public static final class CachedResult {
+
+		private final byte[] resultBytes;
+
+		private final Status status;
+
+		private CachedResult(byte[] resultBytes, Status status) {
+			this.resultBytes = resultBytes;
+			this.status = status;
+		}
+
+	}
+
+	private static final class Registration {
+
+		final Function<OrchestrationData, String> digest;
+
+		final TtlLruCache<String, CachedResult> cache;
+
+		Registration(Function<OrchestrationData, String> digest, TtlLruCache<String, CachedResult> cache) {
+			this.digest = digest;
+			this.cache = cache;
+		}
+
+	}
+
+}
@@ -0,0 +1,145 @@
+package au.com.kahaara.wf.orchestration.checkpoint;
+
+import au.com.kahaara.wf.orchestration.InfoType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The saved state of a workflow after a rule has completed. The data maps are held already serialized by
+ * the {@link au.com.kahaara.wf.orchestration.serial.DataSerializer} so a store only has to move bytes.
+ */
+public class Checkpoint {
+
+	private String workflowId;
+
+	private String ruleSetType;
+
+	private String customRules;
+
+	private String lastRule;
+
+	private String nextRule;
+
+	private long sequence;
+
+	private byte[] requestData;
+
+	private byte[] resultData;
+
+	private InfoType status = InfoType.OK;
+
+	private List<CheckpointEvent> events = new ArrayList<>();
+
+	private long updated;
+
+	/**
+	 * @return The id of the workflow run
+	 */
+	public String getWorkflowId() {
+		return workflowId;
+	}
+
+	public void setWorkflowId(String workflowId) {
+		this.workflowId = workflowId;
+	}
+
+	/**
+	 * @return The rule set type as created by {@link au.com.kahaara.wf.orchestration.serial.RuleSetTypes#toKey}
+	 */
+	public String getRuleSetType() {
+		return ruleSetType;
+	}
+
+	public void setRuleSetType(String ruleSetType) {
+		this.ruleSetType = ruleSetType;
+	}
+
+	public String getCustomRules() {
+		return customRules;
+	}
+
+	public void setCustomRules(String customRules) {
+		this.customRules = customRules;
+	}
+
+	/**
+	 * @return The name in the rule set of the rule that last completed
+	 */
+	public String getLastRule() {
+		return lastRule;
+	}
+
+	public void setLastRule(String lastRule) {
+		this.lastRule = lastRule;
+	}
+
+	/**
+	 * @return The name in the rule set of the rule to run when the workflow is resumed
+	 */
+	public String getNextRule() {
+		return nextRule;
+	}
+
+	public void setNextRule(String nextRule) {
+		this.nextRule = nextRule;
+	}
+
+	/**
+	 * @return The number of checkpoints taken for this workflow. A later checkpoint always has a higher number
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	public byte[] getRequestData() {
+		return requestData;
+	}
+
+	public void setRequestData(byte[] requestData) {
+		this.requestData = requestData;
+	}
+
+	public byte[] getResultData() {
+		return resultData;
+	}
+
+	public void setResultData(byte[] resultData) {
+		this.resultData = resultData;
+	}
+
+	/**
+	 * @return The overall status of the workflow when the checkpoint was taken
+	 */
+	public InfoType getStatus() {
+		return status;
+	}
+
+	public void setStatus(InfoType status) {
+		this.status = status;
+	}
+
+	public List<CheckpointEvent> getEvents() {
+		return events;
+	}
+
+	public void setEvents(List<CheckpointEvent> events) {
+		this.events = events;
+	}
+
+	/**
+	 * @return When the checkpoint was taken in epoch millis
+	 */
+	public long getUpdated() {
+		return updated;
+	}
+
+	public void setUpdated(long updated) {
+		this.updated = updated;
+	}
+
+}
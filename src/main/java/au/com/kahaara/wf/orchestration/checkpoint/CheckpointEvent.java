@@ -0,0 +1,149 @@
+package au.com.kahaara.wf.orchestration.checkpoint;
+
+import au.com.kahaara.wf.orchestration.ErrorCodeInterface;
+import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.event.Event;
+import au.com.kahaara.wf.orchestration.event.EventType;
+
+import java.util.Date;
+
+/**
+ * The stored form of a status {@link Event}. The error code is an application enum so it is kept as the enum
+ * class and constant name. If that cannot be found when the event is restored the code becomes
+ * {@link OrchestrationErrorCode#UNKNOWN}.
+ */
+public class CheckpointEvent {
+
+	private InfoType infoType;
+
+	private EventType eventType;
+
+	private Long transactionId;
+
+	private String codeClass;
+
+	private String code;
+
+	private String message;
+
+	private String details;
+
+	private long timestamp;
+
+	public CheckpointEvent() {
+		// For serialization
+	}
+
+	/**
+	 * @param event The event to store
+	 * @return The stored form
+	 */
+	public static CheckpointEvent from(Event event) {
+		CheckpointEvent e = new CheckpointEvent();
+		e.infoType = event.getInfoType();
+		e.eventType = event.getEventType();
+		e.transactionId = event.getTransactionId();
+		ErrorCodeInterface c = event.getCode();
+		if (c instanceof Enum) {
+			e.codeClass = ((Enum<?>) c).getDeclaringClass().getName();
+			e.code = ((Enum<?>) c).name();
+		}
+		e.message = event.getMessage();
+		e.details = event.getDetails();
+		e.timestamp = event.getTimestamp() == null ? 0 : event.getTimestamp().getTime();
+		return e;
+	}
+
+	/**
+	 * @return The restored event
+	 */
+	public Event toEvent() {
+		Event event = new Event(infoType, eventType, restoreCode(), message, details);
+		event.setTransactionId(transactionId);
+		event.setTimestamp(new Date(timestamp));
+		return event;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private ErrorCodeInterface restoreCode() {
+		if (codeClass == null || code == null) {
+			return OrchestrationErrorCode.UNKNOWN;
+		}
+		try {
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			Class<?> c = Class.forName(codeClass, true, loader == null ? getClass().getClassLoader() : loader);
+			if (c.isEnum() && ErrorCodeInterface.class.isAssignableFrom(c)) {
+				return (ErrorCodeInterface) Enum.valueOf((Class<Enum>) c, code);
+			}
+		} catch (ClassNotFoundException | IllegalArgumentException e) {
+			Checkpointer.log.warn("Unable to restore event code {}.{}. Using UNKNOWN", codeClass, code);
+		}
+		return OrchestrationErrorCode.UNKNOWN;
+	}
+
+	public InfoType getInfoType() {
+		return infoType;
+	}
+
+	public void setInfoType(InfoType infoType) {
+		this.infoType = infoType;
+	}
+
+	public EventType getEventType() {
+		return eventType;
+	}
+
+	public void setEventType(EventType eventType) {
+		this.eventType = eventType;
+	}
+
+	public Long getTransactionId() {
+		return transactionId;
+	}
+
+	public void setTransactionId(Long transactionId) {
+		this.transactionId = transactionId;
+	}
+
+	public String getCodeClass() {
+		return codeClass;
+	}
+
+	public void setCodeClass(String codeClass) {
+		this.codeClass = codeClass;
+	}
+
+	public String getCode() {
+		return code;
+	}
+
+	public void setCode(String code) {
+		this.code = code;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	public void setMessage(String message) {
+		this.message = message;
+	}
+
+	public String getDetails() {
+		return details;
+	}
+
+	public void setDetails(String details) {
+		this.details = details;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public void setTimestamp(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+}
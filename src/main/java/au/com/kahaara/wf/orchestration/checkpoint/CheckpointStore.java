@@ -0,0 +1,37 @@
+package au.com.kahaara.wf.orchestration.checkpoint;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Where checkpoints are kept. The {@link CheckpointWriter} calls the store from a single background thread
+ * with batches so an implementation can write a batch in one go.
+ */
+public interface CheckpointStore {
+
+	/**
+	 * Insert or replace the checkpoints. There is at most one checkpoint per workflow id in a batch.
+	 *
+	 * @param checkpoints The checkpoints to save
+	 * @throws IOException If the checkpoints cannot be saved
+	 */
+	void save(List<Checkpoint> checkpoints) throws IOException;
+
+	/**
+	 * @param workflowId The workflow id
+	 * @return The latest checkpoint for the workflow if there is one
+	 * @throws IOException If the store cannot be read
+	 */
+	Optional<Checkpoint> load(String workflowId) throws IOException;
+
+	/**
+	 * Remove the checkpoints of completed workflows. Ids without a checkpoint are ignored.
+	 *
+	 * @param workflowIds The workflow ids
+	 * @throws IOException If the checkpoints cannot be removed
+	 */
+	void delete(Collection<String> workflowIds) throws IOException;
+
+}
@@ -0,0 +1,215 @@
+package au.com.kahaara.wf.orchestration.checkpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes checkpoints to a {@link CheckpointStore} on a single background thread so a workflow never waits for
+ * the store. Only the latest checkpoint of a workflow is kept while it waits to be written, so a workflow
+ * that runs several rules within one flush window costs a single write.
+ * <P>A batch is written as soon as {@code batchSize} workflows are waiting, or {@code flushMillis} after the
+ * first one arrived. A failed write is logged and dropped. The workflow carries on and its next checkpoint
+ * replaces the lost one.
+ */
+public class CheckpointWriter implements AutoCloseable {
+
+	public static final Logger log = LoggerFactory.getLogger(CheckpointWriter.class);
+
+	private static final Object DELETE = new Object();
+
+	private final CheckpointStore store;
+
+	private final int batchSize;
+
+	private final long flushNanos;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition work = lock.newCondition();
+
+	private final Condition idle = lock.newCondition();
+
+	/** Workflow id to its latest {@link Checkpoint} or {@link #DELETE} */
+	private final Map<String, Object> pending = new LinkedHashMap<>();
+
+	private final Thread thread;
+
+	private boolean inFlight = false;
+
+	private int flushWaiters = 0;
+
+	private volatile boolean running = true;
+
+	/**
+	 * @param store The store to write to
+	 * @param batchSize The most checkpoints written in one batch
+	 * @param flushMillis How long the first waiting checkpoint can wait for a batch to fill
+	 */
+	public CheckpointWriter(CheckpointStore store, int batchSize, long flushMillis) {
+		this.store = store;
+		this.batchSize = Math.max(1, batchSize);
+		this.flushNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, flushMillis));
+		this.thread = new Thread(this::writeLoop, "orchestration-checkpoint-writer");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Queue a checkpoint, replacing any earlier one for the same workflow that has not been written yet
+	 *
+	 * @param checkpoint The checkpoint
+	 */
+	public void save(Checkpoint checkpoint) {
+		enqueue(checkpoint.getWorkflowId(), checkpoint);
+	}
+
+	/**
+	 * Queue the removal of a workflow's checkpoint, replacing any checkpoint for it that has not been written yet
+	 *
+	 * @param workflowId The workflow id
+	 */
+	public void delete(String workflowId) {
+		enqueue(workflowId, DELETE);
+	}
+
+	/**
+	 * Wait until everything queued before this call has been written
+	 */
+	public void flush() {
+		lock.lock();
+		try {
+			flushWaiters++;
+			work.signal();
+			while ((!pending.isEmpty() || inFlight) && thread.isAlive()) {
+				idle.await(100, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			flushWaiters--;
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Write anything still queued and stop the background thread
+	 */
+	@Override
+	public void close() {
+		running = false;
+		lock.lock();
+		try {
+			work.signal();
+		} finally {
+			lock.unlock();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void enqueue(String workflowId, Object value) {
+		if (!running) {
+			log.warn("Checkpoint writer is closed. Dropping checkpoint for {}", workflowId);
+			return;
+		}
+		lock.lock();
+		try {
+			// Remove first so the workflow moves to the back of the queue
+			pending.remove(workflowId);
+			pending.put(workflowId, value);
+			if (pending.size() == 1 || pending.size() >= batchSize) {
+				work.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void writeLoop() {
+		while (true) {
+			List<Checkpoint> saves = new ArrayList<>();
+			List<String> deletes = new ArrayList<>();
+			lock.lock();
+			try {
+				if (!awaitBatch()) {
+					return;
+				}
+				Iterator<Map.Entry<String, Object>> it = pending.entrySet().iterator();
+				while (it.hasNext() && saves.size() + deletes.size() < batchSize) {
+					Map.Entry<String, Object> entry = it.next();
+					if (entry.getValue() == DELETE) {
+						deletes.add(entry.getKey());
+					} else {
+						saves.add((Checkpoint) entry.getValue());
+					}
+					it.remove();
+				}
+				inFlight = true;
+			} finally {
+				lock.unlock();
+			}
+
+			write(saves, deletes);
+
+			lock.lock();
+			try {
+				inFlight = false;
+				idle.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Wait with the lock held until there is a batch to write
+	 *
+	 * @return false if the writer is closed and there is nothing left to write
+	 */
+	private boolean awaitBatch() {
+		try {
+			while (pending.isEmpty()) {
+				if (!running) {
+					return false;
+				}
+				work.await(100, TimeUnit.MILLISECONDS);
+			}
+			long remaining = flushNanos;
+			while (remaining > 0 && running && flushWaiters == 0 && pending.size() < batchSize) {
+				remaining = work.awaitNanos(remaining);
+			}
+		} catch (InterruptedException e) {
+			// Write what there is and let close finish off
+			Thread.currentThread().interrupt();
+			running = false;
+		}
+		return true;
+	}
+
+	private void write(List<Checkpoint> saves, List<String> deletes) {
+		try {
+			if (!saves.isEmpty()) {
+				store.save(saves);
+			}
+			if (!deletes.isEmpty()) {
+				store.delete(deletes);
+			}
+			log.debug("Wrote {} checkpoints and removed {}", saves.size(), deletes.size());
+		} catch (Exception e) {
+			log.error("Unable to write {} checkpoints and remove {}. {}", saves.size(), deletes.size(), e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,334 @@
+package au.com.kahaara.wf.orchestration.checkpoint;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.Status;
+import au.com.kahaara.wf.orchestration.event.Event;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.Rule;
+import au.com.kahaara.wf.orchestration.serial.DataSerializer;
+import au.com.kahaara.wf.orchestration.serial.JsonDataSerializer;
+import au.com.kahaara.wf.orchestration.serial.RuleSetTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Saves the state of a workflow after each rule so it can be resumed from the next rule if the node running
+ * it dies. The {@link au.com.kahaara.wf.orchestration.workflow.WorkflowRunner} takes a checkpoint after
+ * every rule of a top level workflow that has a workflow id, and removes it once the END rule has run.
+ * <P>The data is serialized on the workflow thread so the checkpoint is a consistent copy, then handed to a
+ * {@link CheckpointWriter} which writes in batches on its own thread. Checkpoints are therefore written
+ * outside the workflow transaction and the last one or two rules of a crashed workflow may run again on resume.
+ * Rules that have side effects outside the transaction need to be safe to repeat.
+ * <P>Rules are recorded by their name in the rule set, e.g. 1.RuleA or @Pricing/RuleA, so a rule that appears more
+ * than once is resumed at the right place.
+ * <P>The serialized request data is reused from one checkpoint to the next and only serialized again when an entry
+ * has been added, removed or replaced since, e.g. when request data that was lazy or being prefetched is first read.
+ * Checkpointing never makes or waits for request data, so request data that no rule has read yet is not in the
+ * checkpoint and a resumed workflow only has it if it is fetched again.
+ * <P>Configured from the orchestration properties
+ * <ul>
+ *     <li>orchestration.checkpoint.enabled - Turn checkpointing on or off. Default is off</li>
+ *     <li>orchestration.checkpoint.store - file or jdbc. jdbc uses the application DataSource and expects
+ *     the {@value JdbcCheckpointStore#TABLE} table to exist</li>
+ *     <li>orchestration.checkpoint.directory - The directory for the file store</li>
+ *     <li>orchestration.checkpoint.batch.size - The most checkpoints written in one batch</li>
+ *     <li>orchestration.checkpoint.flush.millis - How long a checkpoint can wait for a batch to fill</li>
+ * </ul>
+ * </P>
+ */
+@Component
+public class Checkpointer implements DisposableBean {
+
+	public static final Logger log = LoggerFactory.getLogger(Checkpointer.class);
+
+	public static final String STORE_JDBC = "jdbc";
+
+	private final boolean enabled;
+
+	private final OrchestrationConfig config;
+
+	private final CheckpointStore store;
+
+	private final DataSerializer serializer;
+
+	private final CheckpointWriter writer;
+
+	private final Map<String, WorkflowState> workflows = new ConcurrentHashMap<>();
+
+	/**
+	 * A checkpointer that never checkpoints
+	 */
+	public Checkpointer() {
+		this.enabled = false;
+		this.config = null;
+		this.store = null;
+		this.serializer = null;
+		this.writer = null;
+	}
+
+	/**
+	 * Create a checkpointer that is turned on
+	 *
+	 * @param store The {@link CheckpointStore}
+	 * @param serializer The {@link DataSerializer} for the request and result data
+	 * @param config The orchestration configuration given to restored workflows
+	 * @param batchSize The most checkpoints written in one batch
+	 * @param flushMillis How long a checkpoint can wait for a batch to fill
+	 */
+	public Checkpointer(CheckpointStore store, DataSerializer serializer, OrchestrationConfig config,
+	                    int batchSize, long flushMillis) {
+		this.enabled = true;
+		this.config = config;
+		this.store = store;
+		this.serializer = serializer;
+		this.writer = new CheckpointWriter(store, batchSize, flushMillis);
+	}
+
+	/**
+	 * The bean constructor used by spring-boot
+	 *
+	 * @param config The orchestration configuration
+	 * @param dataSource The application data source which is only needed for the jdbc store
+	 */
+	@Autowired
+	public Checkpointer(OrchestrationConfig config, ObjectProvider<DataSource> dataSource) {
+		this.enabled = config.isCheckpointEnabled();
+		this.config = config;
+		if (!enabled) {
+			this.store = null;
+			this.serializer = null;
+			this.writer = null;
+			return;
+		}
+		if (STORE_JDBC.equalsIgnoreCase(config.getCheckpointStore())) {
+			DataSource ds = dataSource.getIfAvailable();
+			if (ds == null) {
+				throw new IllegalStateException("Checkpoint store is jdbc but there is no DataSource available");
+			}
+			this.store = new JdbcCheckpointStore(ds);
+		} else {
+			try {
+				this.store = new FileCheckpointStore(Paths.get(config.getCheckpointDirectory()));
+			} catch (IOException e) {
+				throw new UncheckedIOException("Unable to create checkpoint directory " + config.getCheckpointDirectory(), e);
+			}
+		}
+		this.serializer = new JsonDataSerializer();
+		this.writer = new CheckpointWriter(store, config.getCheckpointBatchSize(), config.getCheckpointFlushMillis());
+		log.info("Orchestration checkpointing enabled to {}", store.getClass().getSimpleName());
+	}
+
+	/**
+	 * @return true if checkpoints are being taken
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Take a checkpoint of the workflow after a rule has run. Nothing happens if checkpointing is off or the
+	 * workflow has no id. A checkpoint that cannot be serialized is logged and skipped as the workflow
+	 * itself is fine.
+	 *
+	 * @param data The orchestration data
+	 * @param lastRule The rule that has just run
+	 * @param nextRule The rule to run next
+	 */
+	public void checkpoint(OrchestrationData data, Rule lastRule, Rule nextRule) {
+		String id = data.getWorkflowId();
+		if (!enabled || id == null) {
+			return;
+		}
+		try {
+			WorkflowState state = workflows.get(id);
+			if (state == null) {
+				state = new WorkflowState(0);
+				workflows.put(id, state);
+			}
+			state.update(data.getRequestData(), serializer);
+			Checkpoint cp = new Checkpoint();
+			cp.setWorkflowId(id);
+			cp.setRuleSetType(RuleSetTypes.toKey(data.getRuleSetType()));
+			cp.setCustomRules(data.getCustomRules());
+			cp.setLastRule(lastRule == null ? null : lastRule.getRuleName());
+			cp.setNextRule(nextRule == null ? null : nextRule.getRuleName());
+			cp.setSequence(++state.sequence);
+			cp.setRequestData(state.requestData);
+			cp.setResultData(serializer.serialize(data.getResultData()));
+			cp.setStatus(data.getStatusInfoType());
+			List<CheckpointEvent> events = new ArrayList<>(data.getStatus().getEvents().size());
+			for (Event e : data.getStatus().getEvents()) {
+				events.add(CheckpointEvent.from(e));
+			}
+			cp.setEvents(events);
+			cp.setUpdated(System.currentTimeMillis());
+			writer.save(cp);
+		} catch (IOException | RuntimeException e) {
+			log.warn("Unable to checkpoint workflow {} after {}. {}", id, lastRule, e.getMessage());
+		}
+	}
+
+	/**
+	 * The workflow has finished so its checkpoint is no longer needed
+	 *
+	 * @param data The orchestration data
+	 */
+	public void complete(OrchestrationData data) {
+		String id = data.getWorkflowId();
+		if (!enabled || id == null) {
+			return;
+		}
+		workflows.remove(id);
+		writer.delete(id);
+	}
+
+	/**
+	 * Forget what is held in memory for a workflow that has stopped running. The checkpoint itself is kept.
+	 *
+	 * @param workflowId The workflow id
+	 */
+	public void release(String workflowId) {
+		if (workflowId != null) {
+			workflows.remove(workflowId);
+		}
+	}
+
+	/**
+	 * Load the latest checkpoint of a workflow. Anything still waiting to be written is written first.
+	 *
+	 * @param workflowId The workflow id
+	 * @return The checkpoint if there is one
+	 * @throws RulesException If checkpointing is off or the store cannot be read
+	 */
+	public Optional<Checkpoint> load(String workflowId) throws RulesException {
+		if (!enabled) {
+			throw new RulesException("Checkpointing is not enabled");
+		}
+		writer.flush();
+		try {
+			return store.load(workflowId);
+		} catch (IOException e) {
+			throw new RulesException("Unable to load checkpoint for workflow " + workflowId, e);
+		}
+	}
+
+	/**
+	 * Rebuild the orchestration data of a workflow from its checkpoint so it can be run again from the next rule
+	 *
+	 * @param checkpoint The checkpoint
+	 * @return The orchestration data with the resume rule set
+	 * @throws RulesException If the rule set type or data cannot be restored
+	 */
+	public OrchestrationData restore(Checkpoint checkpoint) throws RulesException {
+		OrchestrationData data = new OrchestrationData(config, RuleSetTypes.fromKey(checkpoint.getRuleSetType()));
+		data.setWorkflowId(checkpoint.getWorkflowId());
+		data.setCustomRules(checkpoint.getCustomRules());
+		data.setResumeRule(checkpoint.getNextRule());
+		try {
+			data.setRequestData(serializer.deserialize(checkpoint.getRequestData()));
+			data.setResultData(serializer.deserialize(checkpoint.getResultData()));
+		} catch (IOException e) {
+			throw new RulesException("Unable to restore the data of workflow " + checkpoint.getWorkflowId(), e);
+		}
+		Status status = new Status();
+		for (CheckpointEvent e : checkpoint.getEvents()) {
+			status.addEvent(e.toEvent());
+		}
+		status.setStatus(checkpoint.getStatus());
+		data.setStatus(status);
+		WorkflowState state = new WorkflowState(checkpoint.getSequence());
+		state.restored(data.getRequestData(), checkpoint.getRequestData());
+		workflows.put(checkpoint.getWorkflowId(), state);
+		return data;
+	}
+
+	/**
+	 * Wait until every checkpoint taken so far has been written
+	 */
+	public void flush() {
+		if (enabled) {
+			writer.flush();
+		}
+	}
+
+	/**
+	 * @return The store or null if checkpointing is off
+	 */
+	public CheckpointStore getStore() {
+		return store;
+	}
+
+	@Override
+	public void destroy() {
+		if (enabled) {
+			writer.close();
+		}
+	}
+
+	/**
+	 * What is kept in memory while a workflow runs
+	 */
+	private static class WorkflowState {
+
+		private byte[] requestData;
+
+		/**
+		 * The request data entries as they were when last serialized
+		 */
+		private Map<String, Object> serialized;
+
+		private long sequence;
+
+		WorkflowState(long sequence) {
+			this.sequence = sequence;
+		}
+
+		/**
+		 * Serialize the request data again if an entry has been added, removed or replaced. The entries are
+		 * compared by identity, which costs far less than serializing them.
+		 */
+		void update(Map<String, Object> current, DataSerializer serializer) throws IOException {
+			if (requestData != null && sameEntries(current)) {
+				return;
+			}
+			Map<String, Object> snapshot = new HashMap<>(current);
+			requestData = serializer.serialize(snapshot);
+			serialized = snapshot;
+		}
+
+		void restored(Map<String, Object> current, byte[] requestData) {
+			this.requestData = requestData;
+			this.serialized = new HashMap<>(current);
+		}
+
+		private boolean sameEntries(Map<String, Object> current) {
+			if (current.size() != serialized.size()) {
+				return false;
+			}
+			for (Map.Entry<String, Object> e : current.entrySet()) {
+				if (serialized.get(e.getKey()) != e.getValue()
+						|| (e.getValue() == null && !serialized.containsKey(e.getKey()))) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+}
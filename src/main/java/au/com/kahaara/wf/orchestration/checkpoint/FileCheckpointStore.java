@@ -0,0 +1,117 @@
+package au.com.kahaara.wf.orchestration.checkpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps each checkpoint as a JSON file in a directory. A checkpoint is written to a temporary file first and
+ * then moved over the old one so a crash part way through a write leaves the previous checkpoint intact.
+ * <P>The file is named after the workflow id. Characters other than lower case letters, digits, '.' and '-' are
+ * written as '_' followed by the hex of their UTF-8 bytes, so every id has a file of its own even on a file system
+ * that ignores case. Ids that only use those characters, such as the generated UUIDs, are the file name as they were
+ * before ids were encoded.
+ * <P>This is meant for a single node or a shared file system. Use {@link JdbcCheckpointStore} when several
+ * nodes need to resume each other's workflows.
+ */
+public class FileCheckpointStore implements CheckpointStore {
+
+	public static final Logger log = LoggerFactory.getLogger(FileCheckpointStore.class);
+
+	private static final String SUFFIX = ".json";
+	private static final String TMP_SUFFIX = ".tmp";
+
+	/**
+	 * Leaves room for the suffixes within the usual limit of 255 characters for a file name
+	 */
+	private static final int MAX_FILE_NAME = 240;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final Path directory;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	/**
+	 * @param directory The directory to keep the checkpoints in. It is created if it does not exist
+	 * @throws IOException If the directory cannot be created
+	 */
+	public FileCheckpointStore(Path directory) throws IOException {
+		this.directory = Files.createDirectories(directory);
+	}
+
+	@Override
+	public void save(List<Checkpoint> checkpoints) throws IOException {
+		for (Checkpoint checkpoint : checkpoints) {
+			Path file;
+			try {
+				file = file(checkpoint.getWorkflowId());
+			} catch (IOException e) {
+				// Don't lose the rest of the batch
+				log.warn("Unable to checkpoint workflow. {}", e.getMessage());
+				continue;
+			}
+			Path tmp = directory.resolve(file.getFileName() + TMP_SUFFIX);
+			objectMapper.writeValue(tmp.toFile(), checkpoint);
+			try {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+	}
+
+	@Override
+	public Optional<Checkpoint> load(String workflowId) throws IOException {
+		Path file = file(workflowId);
+		if (!Files.exists(file)) {
+			return Optional.empty();
+		}
+		return Optional.of(objectMapper.readValue(file.toFile(), Checkpoint.class));
+	}
+
+	@Override
+	public void delete(Collection<String> workflowIds) throws IOException {
+		for (String id : workflowIds) {
+			Files.deleteIfExists(file(id));
+		}
+	}
+
+	/**
+	 * @return The directory the checkpoints are kept in
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * The workflow id comes from the caller so anything that is not safe in a file name is encoded
+	 *
+	 * @throws IOException If the id is too long for a file name
+	 */
+	private Path file(String workflowId) throws IOException {
+		StringBuilder sb = new StringBuilder(workflowId.length() + SUFFIX.length());
+		for (byte b : workflowId.getBytes(StandardCharsets.UTF_8)) {
+			if ((b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b == '.' || b == '-') {
+				sb.append((char) b);
+			} else {
+				sb.append('_').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+			}
+		}
+		if (sb.length() > MAX_FILE_NAME) {
+			throw new IOException("Workflow id " + workflowId + " is too long for the file checkpoint store");
+		}
+		return directory.resolve(sb.append(SUFFIX).toString());
+	}
+
+}
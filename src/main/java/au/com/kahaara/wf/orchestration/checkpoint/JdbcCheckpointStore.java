@@ -0,0 +1,176 @@
+package au.com.kahaara.wf.orchestration.checkpoint;
+
+import au.com.kahaara.wf.orchestration.InfoType;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps the checkpoints in the {@value #TABLE} table. The table can be created with {@link #createTable()}
+ * or by the application's own schema scripts using {@link #CREATE_TABLE}.
+ * <P>A batch is saved in one transaction with one batched update and then one batched insert for the workflows
+ * that did not have a row yet. This works on any database without relying on a vendor specific merge statement.
+ * A driver that doesn't report how many rows each statement of the batch updated has the rows it gives no count
+ * for updated again one at a time to find out.
+ */
+public class JdbcCheckpointStore implements CheckpointStore {
+
+	public static final Logger log = LoggerFactory.getLogger(JdbcCheckpointStore.class);
+
+	public static final String TABLE = "orchestration_checkpoint";
+
+	public static final String CREATE_TABLE = "CREATE TABLE " + TABLE + " ("
+			+ "workflow_id VARCHAR(128) NOT NULL PRIMARY KEY, "
+			+ "rule_set_type VARCHAR(512), "
+			+ "custom_rules VARCHAR(4000), "
+			+ "last_rule VARCHAR(256), "
+			+ "next_rule VARCHAR(256), "
+			+ "seq BIGINT NOT NULL, "
+			+ "status VARCHAR(16), "
+			+ "request_data BLOB, "
+			+ "result_data BLOB, "
+			+ "events CLOB, "
+			+ "updated_at TIMESTAMP NOT NULL)";
+
+	private static final String UPDATE = "UPDATE " + TABLE + " SET rule_set_type = ?, custom_rules = ?, "
+			+ "last_rule = ?, next_rule = ?, seq = ?, status = ?, request_data = ?, result_data = ?, events = ?, updated_at = ? "
+			+ "WHERE workflow_id = ?";
+
+	private static final String INSERT = "INSERT INTO " + TABLE + " (rule_set_type, custom_rules, last_rule, "
+			+ "next_rule, seq, status, request_data, result_data, events, updated_at, workflow_id) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String SELECT = "SELECT workflow_id, rule_set_type, custom_rules, last_rule, next_rule, "
+			+ "seq, status, request_data, result_data, events, updated_at FROM " + TABLE + " WHERE workflow_id = ?";
+
+	private static final String DELETE = "DELETE FROM " + TABLE + " WHERE workflow_id = ?";
+
+	private static final TypeReference<List<CheckpointEvent>> EVENT_LIST = new TypeReference<List<CheckpointEvent>>() { };
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	public JdbcCheckpointStore(DataSource dataSource) {
+		this(new JdbcTemplate(dataSource));
+	}
+
+	public JdbcCheckpointStore(JdbcTemplate jdbcTemplate) {
+		this(jdbcTemplate, new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+	}
+
+	/**
+	 * @param jdbcTemplate The template to run the statements with
+	 * @param transactionManager The transaction manager of the template's data source
+	 */
+	public JdbcCheckpointStore(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * Create the checkpoint table
+	 */
+	public void createTable() {
+		jdbcTemplate.execute(CREATE_TABLE);
+	}
+
+	@Override
+	public void save(List<Checkpoint> checkpoints) throws IOException {
+		List<Object[]> rows = new ArrayList<>(checkpoints.size());
+		for (Checkpoint c : checkpoints) {
+			rows.add(new Object[]{c.getRuleSetType(), c.getCustomRules(), c.getLastRule(), c.getNextRule(),
+					c.getSequence(), c.getStatus() == null ? null : c.getStatus().name(), c.getRequestData(), c.getResultData(),
+					objectMapper.writeValueAsString(c.getEvents()), new Timestamp(c.getUpdated()), c.getWorkflowId()});
+		}
+		try {
+			transactionTemplate.executeWithoutResult(status -> write(rows));
+		} catch (DataAccessException e) {
+			throw new IOException("Unable to save " + checkpoints.size() + " checkpoints", e);
+		}
+	}
+
+	private void write(List<Object[]> rows) {
+		int[] updated = jdbcTemplate.batchUpdate(UPDATE, rows);
+		List<Object[]> inserts = new ArrayList<>();
+		for (int i = 0; i < updated.length; i++) {
+			if (updated[i] > 0) {
+				continue;
+			}
+			if (updated[i] == Statement.SUCCESS_NO_INFO && jdbcTemplate.update(UPDATE, rows.get(i)) > 0) {
+				continue;
+			}
+			inserts.add(rows.get(i));
+		}
+		if (!inserts.isEmpty()) {
+			jdbcTemplate.batchUpdate(INSERT, inserts);
+		}
+	}
+
+	@Override
+	public Optional<Checkpoint> load(String workflowId) throws IOException {
+		List<Checkpoint> found;
+		try {
+			found = jdbcTemplate.query(SELECT, (rs, i) -> {
+				Checkpoint c = new Checkpoint();
+				c.setWorkflowId(rs.getString("workflow_id"));
+				c.setRuleSetType(rs.getString("rule_set_type"));
+				c.setCustomRules(rs.getString("custom_rules"));
+				c.setLastRule(rs.getString("last_rule"));
+				c.setNextRule(rs.getString("next_rule"));
+				c.setSequence(rs.getLong("seq"));
+				String status = rs.getString("status");
+				c.setStatus(status == null ? InfoType.OK : InfoType.valueOf(status));
+				c.setRequestData(rs.getBytes("request_data"));
+				c.setResultData(rs.getBytes("result_data"));
+				c.setUpdated(rs.getTimestamp("updated_at").getTime());
+				String events = rs.getString("events");
+				if (events != null) {
+					try {
+						c.setEvents(objectMapper.readValue(events, EVENT_LIST));
+					} catch (IOException e) {
+						log.warn("Unable to read the events of checkpoint {}. {}", c.getWorkflowId(), e.getMessage());
+					}
+				}
+				return c;
+			}, workflowId);
+		} catch (DataAccessException e) {
+			throw new IOException("Unable to load checkpoint " + workflowId, e);
+		}
+		return found.isEmpty() ? Optional.empty() : Optional.of(found.get(0));
+	}
+
+	@Override
+	public void delete(Collection<String> workflowIds) throws IOException {
+		if (workflowIds.isEmpty()) {
+			return;
+		}
+		List<Object[]> rows = new ArrayList<>(workflowIds.size());
+		for (String id : workflowIds) {
+			rows.add(new Object[]{id});
+		}
+		try {
+			jdbcTemplate.batchUpdate(DELETE, rows);
+		} catch (DataAccessException e) {
+			throw new IOException("Unable to delete " + workflowIds.size() + " checkpoints", e);
+		}
+	}
+
+}
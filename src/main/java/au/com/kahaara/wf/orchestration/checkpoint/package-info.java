@@ -0,0 +1,5 @@
+/**
+ * Checkpointing of running workflows so a workflow can be resumed from the rule after the last one that
+ * completed. See {@link au.com.kahaara.wf.orchestration.checkpoint.Checkpointer}.
+ */
+package au.com.kahaara.wf.orchestration.checkpoint;
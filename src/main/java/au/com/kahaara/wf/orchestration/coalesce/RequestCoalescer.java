@@ -0,0 +1,299 @@
+package au.com.kahaara.wf.orchestration.coalesce;
+
+import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.Status;
+import au.com.kahaara.wf.orchestration.event.EventType;
+import au.com.kahaara.wf.orchestration.rules.RuleSetTypeInterface;
+import au.com.kahaara.wf.orchestration.serial.DataSerializer;
+import au.com.kahaara.wf.orchestration.serial.JsonDataSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Lets only one of a number of identical workflows run at a time. The others wait for it to finish and are then
+ * given a copy of its result data and the events on its status, as if they had run it themselves.
+ * <P>It is turned on for a rule set type by registering a key function for it. Two requests are identical when
+ * they have the same rule set type, the same custom rules and equal keys. The key should be built from the request
+ * data that decides the outcome, e.g. a document number, and null means the request is never coalesced.
+ * <pre>
+ * coalescer.register(MyRuleSetType.LOOKUP, data -&gt; ((Lookup) data.getRequestData(Lookup.class)).getNumber());
+ * </pre>
+ * <P>The result data is copied with the {@link DataSerializer}, falling back to a shallow copy of the map if it
+ * can't be written. A waiting request gives up at its own deadline, whether it waits on its own thread or not.
+ */
+@Component
+public class RequestCoalescer implements DisposableBean {
+
+	public static final Logger log = LoggerFactory.getLogger(RequestCoalescer.class);
+
+	private final Map<RuleSetTypeInterface, Function<OrchestrationData, ?>> keyFunctions = new ConcurrentHashMap<>();
+
+	private final Map<List<Object>, Call> calls = new ConcurrentHashMap<>();
+
+	private final AtomicLong coalesced = new AtomicLong();
+
+	private final DataSerializer serializer;
+
+	/** Ends the wait of requests following without blocking once their deadline passes */
+	private volatile ScheduledThreadPoolExecutor timer;
+
+	/**
+	 * The bean constructor used by spring-boot. Result data is copied as JSON.
+	 */
+	public RequestCoalescer() {
+		this(new JsonDataSerializer());
+	}
+
+	/**
+	 * @param serializer Copies the result data for each waiting request
+	 */
+	public RequestCoalescer(DataSerializer serializer) {
+		this.serializer = serializer;
+	}
+
+	/**
+	 * Coalesce identical requests of this rule set type
+	 *
+	 * @param type The rule set type
+	 * @param keyFunction Builds the key of a request. Requests with equal keys are identical
+	 */
+	public void register(RuleSetTypeInterface type, Function<OrchestrationData, ?> keyFunction) {
+		keyFunctions.put(type, keyFunction);
+	}
+
+	/**
+	 * Stop coalescing requests of this rule set type
+	 *
+	 * @param type The rule set type
+	 */
+	public void unregister(RuleSetTypeInterface type) {
+		keyFunctions.remove(type);
+	}
+
+	/**
+	 * Join the workflow already running for an identical request or become the one that runs it
+	 *
+	 * @param data The request about to run
+	 * @return null if the request is not coalesced, otherwise a {@link Flight} that is the leader if the request
+	 * has to run the workflow
+	 */
+	public Flight join(OrchestrationData data) {
+		if (keyFunctions.isEmpty()) {
+			return null;
+		}
+		Function<OrchestrationData, ?> keyFunction = keyFunctions.get(data.getRuleSetType());
+		if (keyFunction == null) {
+			return null;
+		}
+		Object requestKey;
+		try {
+			requestKey = keyFunction.apply(data);
+		} catch (RuntimeException e) {
+			log.warn("Unable to build the coalescing key for {}. {}", data.getRuleSetType().getEnumName(), e.getMessage());
+			return null;
+		}
+		if (requestKey == null) {
+			return null;
+		}
+		List<Object> key = Arrays.asList(data.getRuleSetType().getEnumName(), data.getCustomRules(), requestKey);
+		Call call = new Call();
+		Call running = calls.putIfAbsent(key, call);
+		if (running != null) {
+			log.debug("Waiting for the identical workflow {} already running", key);
+			return new Flight(key, running, false);
+		}
+		return new Flight(key, call, true);
+	}
+
+	/**
+	 * The leader has finished. Hand its outcome to every request waiting on it.
+	 *
+	 * @param flight The leader's flight
+	 * @param data The leader's orchestration data
+	 * @param ok The result of the run
+	 */
+	public void land(Flight flight, OrchestrationData data, boolean ok) {
+		if (!flight.leader) {
+			return;
+		}
+		Call call = flight.call;
+		call.ok = ok;
+		call.status = data.getStatus().copy();
+		try {
+			call.resultBytes = serializer.serialize(data.getResultData());
+		} catch (IOException e) {
+			log.warn("Unable to copy the result data of {}. Waiting requests share it. {}", flight.key, e.getMessage());
+			call.resultData = data.getResultData();
+		}
+		calls.remove(flight.key, call);
+		call.done.complete(null);
+	}
+
+	/**
+	 * Wait for the leader and take a copy of its outcome
+	 *
+	 * @param flight The follower's flight
+	 * @param data The follower's orchestration data which gets the result data and status
+	 * @return The result of the leader's run or false if the deadline passed first
+	 */
+	public boolean follow(Flight flight, OrchestrationData data) {
+		try {
+			flight.call.done.get(data.getRemainingMillis(), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			data.getStatus().addEvent(InfoType.ERROR, EventType.RULE, OrchestrationErrorCode.ORCH2005,
+					"Workflow deadline passed waiting for an identical workflow");
+			return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			data.getStatus().addEvent(InfoType.ERROR, EventType.RULE, OrchestrationErrorCode.ORCH1001,
+					"Interrupted waiting for an identical workflow");
+			return false;
+		} catch (ExecutionException e) {
+			// Never completed exceptionally
+			return false;
+		}
+		return take(flight.call, data);
+	}
+
+	/**
+	 * The same as {@link #follow(Flight, OrchestrationData)} without blocking
+	 *
+	 * @param flight The follower's flight
+	 * @param data The follower's orchestration data which gets the result data and status
+	 * @return A future completed with the result of the leader's run
+	 */
+	public CompletableFuture<Boolean> followAsync(Flight flight, OrchestrationData data) {
+		if (!data.hasDeadline()) {
+			return flight.call.done.thenApply(v -> take(flight.call, data));
+		}
+		CompletableFuture<Boolean> result = new CompletableFuture<>();
+		AtomicBoolean settled = new AtomicBoolean();
+		ScheduledFuture<?> giveUp = timer().schedule(() -> {
+			if (settled.compareAndSet(false, true)) {
+				data.getStatus().addEvent(InfoType.ERROR, EventType.RULE, OrchestrationErrorCode.ORCH2005,
+						"Workflow deadline passed waiting for an identical workflow");
+				result.complete(false);
+			}
+		}, data.getRemainingMillis(), TimeUnit.MILLISECONDS);
+		flight.call.done.thenRun(() -> {
+			if (settled.compareAndSet(false, true)) {
+				giveUp.cancel(false);
+				result.complete(take(flight.call, data));
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * @return The number of requests that were given the outcome of an identical one instead of running
+	 */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	@Override
+	public void destroy() {
+		if (timer != null) {
+			timer.shutdownNow();
+		}
+	}
+
+	private ScheduledThreadPoolExecutor timer() {
+		if (timer == null) {
+			synchronized (this) {
+				if (timer == null) {
+					ScheduledThreadPoolExecutor t = new ScheduledThreadPoolExecutor(1, r -> {
+						Thread thread = new Thread(r, "orchestration-coalescer-timer");
+						thread.setDaemon(true);
+						return thread;
+					});
+					t.setRemoveOnCancelPolicy(true);
+					timer = t;
+				}
+			}
+		}
+		return timer;
+	}
+
+	private boolean take(Call call, OrchestrationData data) {
+		Map<String, Object> resultData = null;
+		if (call.resultBytes != null) {
+			try {
+				resultData = serializer.deserialize(call.resultBytes);
+			} catch (IOException e) {
+				log.warn("Unable to read a copy of the result data. {}", e.getMessage());
+			}
+		}
+		if (resultData == null) {
+			resultData = call.resultData == null ? new HashMap<>() : new HashMap<>(call.resultData);
+		}
+		data.setResultData(resultData);
+		data.getStatus().addEvents(call.status);
+		coalesced.incrementAndGet();
+		return call.ok;
+	}
+
+	/**
+	 * The outcome of one run shared by every identical request
+	 */
+	private static class Call {
+
+		final CompletableFuture<Void> done = new CompletableFuture<>();
+
+		volatile boolean ok;
+
+		volatile Status status;
+
+		volatile byte[] resultBytes;
+
+		volatile Map<String, Object> resultData;
+
+	}
+
+	/**
+	 * One request's place in a coalesced run
+	 */
+	public static final class Flight {
+
+		private final List<Object> key;
+
+		private final Call call;
+
+		private final boolean leader;
+
+		private Flight(List<Object> key, Call call, boolean leader) {
+			this.key = key;
+			this.call = call;
+			this.leader = leader;
+		}
+
+		/**
+		 * @return true if this request runs the workflow for the others
+		 */
+		public boolean isLeader() {
+			return leader;
+		}
+
+	}
+
+}
@@ -0,0 +1,5 @@
+/**
+ * Runs identical workflows that arrive at the same time once. See
+ * {@link au.com.kahaara.wf.orchestration.coalesce.RequestCoalescer}.
+ */
+package au.com.kahaara.wf.orchestration.coalesce;
@@ -73,6 +73,17 @@ public class Event {
 		this.message = message;
 		this.details = details;
 	}
+
+	/**
+	 * Create a copy of an event
+	 *
+	 * @param event The event to copy
+	 */
+	public Event(Event event) {
+		this(event.infoType, event.eventType, event.code, event.message, event.details);
+		this.transactionId = event.transactionId;
+		this.timestamp = event.timestamp;
+	}
 	
 	/**
 	 * @return the status
@@ -0,0 +1,257 @@
+package au.com.kahaara.wf.orchestration.foreach;
+
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleSetTypeInterface;
+import au.com.kahaara.wf.orchestration.serial.RuleSetTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Locale;
+
+/**
+ * A MAP construct in a rule set. It runs a sub-workflow for each element of a collection and puts what they
+ * produce together in a result class. The construct is written in the rule set like a rule, so it can have its
+ * own conditions, with its settings between square brackets separated by ';'
+ * <pre>
+ * LoadOrder,MAP[in=com.acme.OrderLines;rules=PriceLine+TaxLine;out=com.acme.PricedLines;parallel=8]?Total:Reject,Total
+ * </pre>
+ * <ul>
+ *     <li>in - The class name of the collection, looked for in the result data and then the request data. A
+ *     Collection, an Iterable or an array</li>
+ *     <li>flow - The rule set type of the sub-workflow as enum class#name</li>
+ *     <li>rules - Or the rules of the sub-workflow separated by '+'</li>
+ *     <li>out - The class name of the {@link ForEachResult} the elements are put together in. Optional</li>
+ *     <li>parallel - How many elements run at once. Defaults to orchestration.foreach.parallelism</li>
+ *     <li>order - INPUT to put the elements together in the order of the collection, COMPLETION in the order
+ *     they finished. Default INPUT</li>
+ *     <li>fail - FAST to stop at the first element that fails, ALL to run every element and fail if any did,
+ *     IGNORE to run every element and leave the failed ones out. Default FAST</li>
+ *     <li>check - false to skip the RuleInfo checks in the sub-workflows. Default true</li>
+ * </ul>
+ * <P>Each sub-workflow gets its element in its request data, by the class name of the element. It sees the data
+ * of the parent but what it writes is only given to the result class.
+ */
+public final class ForEach {
+
+	public static final Logger log = LoggerFactory.getLogger(ForEach.class);
+
+	/** Starts a MAP construct in a rule set */
+	public static final String PREFIX = "MAP[";
+
+	/** Ends a MAP construct in a rule set */
+	public static final String SUFFIX = "]";
+
+	/**
+	 * The order the elements are put together in
+	 */
+	public enum Order {
+		INPUT,
+		COMPLETION
+	}
+
+	/**
+	 * What a failed element does to the construct
+	 */
+	public enum Failure {
+		FAST,
+		ALL,
+		IGNORE
+	}
+
+	private final String definition;
+
+	private final String in;
+
+	private final RuleSetTypeInterface flow;
+
+	private final String rules;
+
+	private final Class<? extends ForEachResult> out;
+
+	private final int parallel;
+
+	private final Order order;
+
+	private final Failure failure;
+
+	private final boolean checked;
+
+	private ForEach(String definition, String in, RuleSetTypeInterface flow, String rules,
+	                Class<? extends ForEachResult> out, int parallel, Order order, Failure failure, boolean checked) {
+		this.definition = definition;
+		this.in = in;
+		this.flow = flow;
+		this.rules = rules;
+		this.out = out;
+		this.parallel = parallel;
+		this.order = order;
+		this.failure = failure;
+		this.checked = checked;
+	}
+
+	/**
+	 * @param rule A rule from a rule set with its conditions removed
+	 * @return true if it is a MAP construct
+	 */
+	public static boolean isForEach(String rule) {
+		return rule != null && rule.toUpperCase(Locale.ROOT).startsWith(PREFIX) && rule.endsWith(SUFFIX);
+	}
+
+	/**
+	 * Read a MAP construct
+	 *
+	 * @param rule The construct from the rule set with its conditions removed
+	 * @return The construct
+	 * @throws RulesException If a setting is missing or wrong
+	 */
+	public static ForEach parse(String rule) throws RulesException {
+		if (!isForEach(rule)) {
+			throw new RulesException("Not a MAP construct " + rule);
+		}
+		String in = null;
+		RuleSetTypeInterface flow = null;
+		String rules = null;
+		Class<? extends ForEachResult> out = null;
+		int parallel = 0;
+		Order order = Order.INPUT;
+		Failure failure = Failure.FAST;
+		boolean checked = true;
+		String settings = rule.substring(PREFIX.length(), rule.length() - SUFFIX.length());
+		for (String setting : settings.split(";")) {
+			if (setting.isEmpty()) {
+				continue;
+			}
+			int i = setting.indexOf('=');
+			if (i < 1) {
+				throw new RulesException("MAP setting " + setting + " is not in the form name=value in " + rule);
+			}
+			String name = setting.substring(0, i).toLowerCase(Locale.ROOT);
+			String value = setting.substring(i + 1);
+			try {
+				switch (name) {
+					case "in":
+						in = value;
+						break;
+					case "flow":
+						flow = RuleSetTypes.fromKey(value);
+						break;
+					case "rules":
+						rules = value.replace('+', ',');
+						break;
+					case "out":
+						out = resultClass(value);
+						break;
+					case "parallel":
+						parallel = Integer.parseInt(value);
+						break;
+					case "order":
+						order = Order.valueOf(value.toUpperCase(Locale.ROOT));
+						break;
+					case "fail":
+						failure = Failure.valueOf(value.toUpperCase(Locale.ROOT));
+						break;
+					case "check":
+						checked = Boolean.parseBoolean(value);
+						break;
+					default:
+						throw new RulesException("Unknown MAP setting " + name + " in " + rule);
+				}
+			} catch (IllegalArgumentException e) {
+				throw new RulesException("MAP setting " + setting + " is not valid in " + rule, e);
+			}
+		}
+		if (in == null || in.isEmpty()) {
+			throw new RulesException("MAP construct has no in= collection " + rule);
+		}
+		if ((flow == null) == (rules == null || rules.isEmpty())) {
+			throw new RulesException("MAP construct needs one of flow= or rules= " + rule);
+		}
+		return new ForEach(rule, in, flow, rules, out, parallel, order, failure, checked);
+	}
+
+	private static Class<? extends ForEachResult> resultClass(String name) throws RulesException {
+		try {
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			Class<?> c = Class.forName(name, false, loader == null ? ForEach.class.getClassLoader() : loader);
+			if (!ForEachResult.class.isAssignableFrom(c)) {
+				throw new RulesException("MAP result class " + name + " does not implement ForEachResult");
+			}
+			c.getConstructor();
+			return c.asSubclass(ForEachResult.class);
+		} catch (ClassNotFoundException e) {
+			throw new RulesException("MAP result class " + name + " is not available", e);
+		} catch (NoSuchMethodException e) {
+			throw new RulesException("MAP result class " + name + " has no public no-arg constructor", e);
+		}
+	}
+
+	/**
+	 * @return The construct as written in the rule set
+	 */
+	public String getDefinition() {
+		return definition;
+	}
+
+	/**
+	 * @return The class name of the collection
+	 */
+	public String getIn() {
+		return in;
+	}
+
+	/**
+	 * @return The rule set type of the sub-workflow. CUSTOM when it is given as rules
+	 */
+	public RuleSetTypeInterface getFlow() {
+		return flow == null ? DefaultRuleSetType.CUSTOM : flow;
+	}
+
+	/**
+	 * @return The rules of the sub-workflow separated by commas or null if it is given as a rule set type
+	 */
+	public String getRules() {
+		return rules;
+	}
+
+	/**
+	 * @return The class the elements are put together in or null if they are not
+	 */
+	public Class<? extends ForEachResult> getOut() {
+		return out;
+	}
+
+	/**
+	 * @return How many elements run at once or 0 for the configured default
+	 */
+	public int getParallel() {
+		return parallel;
+	}
+
+	/**
+	 * @return The order the elements are put together in
+	 */
+	public Order getOrder() {
+		return order;
+	}
+
+	/**
+	 * @return What a failed element does to the construct
+	 */
+	public Failure getFailure() {
+		return failure;
+	}
+
+	/**
+	 * @return false if the sub-workflows skip the RuleInfo checks
+	 */
+	public boolean isChecked() {
+		return checked;
+	}
+
+	@Override
+	public String toString() {
+		return definition;
+	}
+
+}
@@ -0,0 +1,28 @@
+package au.com.kahaara.wf.orchestration.foreach;
+
+import au.com.kahaara.wf.orchestration.SubRulesResult;
+
+/**
+ * Puts together what the sub-workflows of a MAP construct produce. The class is named with out= in the construct,
+ * needs a public no-arg constructor and is put in the result data of the parent request once every element is
+ * added.
+ * <pre>
+ * public class PricedLines extends ArrayList&lt;PricedLine&gt; implements ForEachResult {
+ *     public void add(int index, Object element, SubRulesResult.Part part) {
+ *         add((PricedLine) part.getResultData().get(PricedLine.class.getName()));
+ *     }
+ * }
+ * </pre>
+ */
+public interface ForEachResult {
+
+	/**
+	 * Add the outcome of an element. Only elements whose sub-workflow succeeded are added, one at a time.
+	 *
+	 * @param index The position of the element in the collection
+	 * @param element The element
+	 * @param part The outcome of its sub-workflow with the result data it wrote
+	 */
+	void add(int index, Object element, SubRulesResult.Part part);
+
+}
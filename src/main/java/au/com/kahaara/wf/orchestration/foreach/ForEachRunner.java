@@ -0,0 +1,313 @@
+package au.com.kahaara.wf.orchestration.foreach;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.Orchestration;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.SubRulesResult;
+import au.com.kahaara.wf.orchestration.event.EventType;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.Rule;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Array;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the MAP constructs of rule sets. See {@link ForEach}. The sub-workflows of the elements run on a fork/join
+ * pool, with no more of them at once than the parallel= of the construct, through
+ * {@link Orchestration#runSubRules(OrchestrationData, List, Executor, long, boolean, boolean)} and the rule that
+ * runs the construct waits for them. Being on other threads they run outside the transaction of the workflow.
+ * <P>Configured from the orchestration properties
+ * <ul>
+ *     <li>orchestration.foreach.threads - The threads of the pool. 0 for one per processor</li>
+ *     <li>orchestration.foreach.parallelism - How many elements of a construct run at once when it does not say</li>
+ * </ul>
+ * </P>
+ */
+@Component
+public class ForEachRunner implements DisposableBean {
+
+	public static final Logger log = LoggerFactory.getLogger(ForEachRunner.class);
+
+	private static final String TEST_SPACER  = "\n  - ";
+	private static final String TEST_SPACER2 = "\n    - ";
+
+	private static final int DEFAULT_PARALLELISM = 4;
+
+	private final Executor executor;
+
+	private final ForkJoinPool ownedPool;
+
+	private final int parallelism;
+
+	/**
+	 * Run the elements on the common fork/join pool. Fine for rules that don't block for long.
+	 */
+	public ForEachRunner() {
+		this(ForkJoinPool.commonPool(), DEFAULT_PARALLELISM);
+	}
+
+	/**
+	 * @param executor Runs the elements
+	 * @param parallelism How many elements of a construct run at once when it does not say
+	 */
+	public ForEachRunner(Executor executor, int parallelism) {
+		this.executor = executor;
+		this.ownedPool = null;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * The bean constructor used by spring-boot
+	 *
+	 * @param config The orchestration configuration
+	 */
+	@Autowired
+	public ForEachRunner(OrchestrationConfig config) {
+		int threads = config.getForEachThreads() > 0 ? config.getForEachThreads()
+				: Runtime.getRuntime().availableProcessors();
+		this.ownedPool = new ForkJoinPool(threads);
+		this.executor = ownedPool;
+		this.parallelism = Math.max(1, config.getForEachParallelism());
+		log.info("Orchestration MAP constructs run on {} threads with parallelism {}", threads, parallelism);
+	}
+
+	/**
+	 * Run a MAP construct
+	 *
+	 * @param request The request running the construct
+	 * @param forEach The construct
+	 * @return true unless an element failed and the construct does not ignore failures
+	 * @throws RulesException If there is no collection and RuleInfo checks are enforced, it is not a collection or
+	 * a sub-workflow could not be set up
+	 */
+	public RuleResult run(OrchestrationData request, ForEach forEach) throws RulesException {
+		Orchestration orchestration = request.getOrchestration();
+		if (orchestration == null) {
+			throw new RulesException("Unable to run " + forEach + " without an orchestration");
+		}
+		List<Object> elements = elements(request, forEach);
+		List<OrchestrationData> subRequests = new ArrayList<>(elements.size());
+		for (Object element : elements) {
+			OrchestrationData subRequest = new OrchestrationData(null, forEach.getFlow());
+			subRequest.setCustomRules(forEach.getRules());
+			subRequest.setRuleInfoChecked(forEach.isChecked() && request.isRuleInfoChecked());
+			if (element != null) {
+				subRequest.putRequestData(element);
+			}
+			subRequests.add(subRequest);
+		}
+
+		int limit = forEach.getParallel() > 0 ? forEach.getParallel() : parallelism;
+		SubRulesResult result = orchestration.runSubRules(request, subRequests, new BoundedExecutor(executor, limit),
+				0, ForEach.Failure.FAST.equals(forEach.getFailure()), false);
+
+		boolean ok = !result.isTimedOut();
+		List<SubRulesResult.Part> parts = result.getParts();
+		List<Integer> indexes = new ArrayList<>(parts.size());
+		for (int i = 0; i < parts.size(); i++) {
+			indexes.add(i);
+		}
+		if (ForEach.Order.COMPLETION.equals(forEach.getOrder())) {
+			indexes.sort(Comparator.comparingInt(i -> parts.get(i).isFinished() ? parts.get(i).getCompletionOrder()
+					: Integer.MAX_VALUE));
+		}
+		ForEachResult out = newResult(forEach);
+		for (int index : indexes) {
+			SubRulesResult.Part part = parts.get(index);
+			if (part.isSucceeded()) {
+				if (out != null) {
+					out.add(index, elements.get(index), part);
+				}
+			} else if (part.isFinished()) {
+				ok = false;
+				failed(request, forEach, index, part);
+			}
+		}
+		if (out != null) {
+			request.getResultData().put(forEach.getOut().getName(), out);
+		}
+		if (result.isTimedOut()) {
+			request.getStatus().addEvent(InfoType.WARNING, EventType.RULE, OrchestrationErrorCode.ORCH2005,
+					"Workflow deadline passed", "Not every element of " + forEach + " finished in time");
+		}
+		log.debug("Ran {} elements of {}", elements.size(), forEach);
+		return new RuleResult(ok || ForEach.Failure.IGNORE.equals(forEach.getFailure()));
+	}
+
+	/**
+	 * Report a MAP construct when the orchestration is in test mode. Nothing is run, the report gives the
+	 * settings of the construct and where the rule set goes next.
+	 *
+	 * @param rule The rule the construct is in the rule set
+	 * @param forEach The construct
+	 * @return A passing {@link RuleResult} with the report as its test info
+	 */
+	public RuleResult test(Rule rule, ForEach forEach) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(TEST_SPACER + "Rule:").append(rule.getRuleName());
+		sb.append(TEST_SPACER2 + "On pass:").append(rule.getOnTrue().getRuleName());
+		sb.append(TEST_SPACER2 + "On fail:").append(rule.getOnFalse().getRuleName());
+		sb.append(TEST_SPACER + "MAP over ").append(forEach.getIn());
+		if (forEach.getRules() == null) {
+			sb.append(TEST_SPACER2 + "Flow:").append(forEach.getFlow().getEnumName());
+		} else {
+			sb.append(TEST_SPACER2 + "Rules:").append(forEach.getRules());
+		}
+		sb.append(TEST_SPACER2 + "Out:").append(forEach.getOut() == null ? "none" : forEach.getOut().getName());
+		sb.append(TEST_SPACER2 + "Parallel:").append(forEach.getParallel() > 0 ? forEach.getParallel() : parallelism);
+		sb.append(TEST_SPACER2 + "Order:").append(forEach.getOrder());
+		sb.append(TEST_SPACER2 + "Fail:").append(forEach.getFailure());
+		sb.append(TEST_SPACER2 + "Check:").append(forEach.isChecked());
+
+		RuleResult result = new RuleResult(true);
+		result.setTestInfo(sb.toString());
+		return result;
+	}
+
+	@Override
+	public void destroy() {
+		if (ownedPool != null) {
+			ownedPool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Record an element that failed on the parent request. An error unless the construct ignores failures.
+	 */
+	private void failed(OrchestrationData request, ForEach forEach, int index, SubRulesResult.Part part) {
+		String reason = part.getFailure() != null ? part.getFailure().getMessage() : "It ended with an ERROR status";
+		InfoType level = ForEach.Failure.IGNORE.equals(forEach.getFailure()) ? InfoType.WARNING : InfoType.ERROR;
+		request.getStatus().addEvent(level, EventType.RULE, OrchestrationErrorCode.ORCH1001,
+				"Unable to process orchestration engine sub rules", "Element " + index + " of " + forEach + ". " + reason);
+	}
+
+	/**
+	 * Find the collection of the construct. A missing collection is no elements unless RuleInfo checks are
+	 * enforced.
+	 */
+	private static List<Object> elements(OrchestrationData request, ForEach forEach) throws RulesException {
+		Object source = request.getResultData().get(forEach.getIn());
+		if (source == null) {
+			source = request.resolveRequestData(forEach.getIn());
+		}
+		List<Object> elements = new ArrayList<>();
+		if (source == null) {
+			if (forEach.isChecked() && request.isRuleInfoEnforced()) {
+				throw new RulesException("No " + forEach.getIn() + " to run " + forEach + " over");
+			}
+			log.warn("No {} to run {} over", forEach.getIn(), forEach);
+		} else if (source instanceof Iterable) {
+			for (Object element : (Iterable<?>) source) {
+				elements.add(element);
+			}
+		} else if (source.getClass().isArray()) {
+			for (int i = 0; i < Array.getLength(source); i++) {
+				elements.add(Array.get(source, i));
+			}
+		} else {
+			throw new RulesException(forEach.getIn() + " is not a collection to run " + forEach + " over");
+		}
+		return elements;
+	}
+
+	private static ForEachResult newResult(ForEach forEach) throws RulesException {
+		if (forEach.getOut() == null) {
+			return null;
+		}
+		try {
+			return forEach.getOut().getConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new RulesException("Unable to create " + forEach.getOut().getName() + " for " + forEach, e);
+		}
+	}
+
+	/**
+	 * Runs no more than the limit of tasks on the executor at once and queues the rest
+	 */
+	private static final class BoundedExecutor implements Executor {
+
+		private final Executor executor;
+
+		private final int limit;
+
+		private final Queue<Runnable> waiting = new ArrayDeque<>();
+
+		private int running;
+
+		BoundedExecutor(Executor executor, int limit) {
+			this.executor = executor;
+			this.limit = limit;
+		}
+
+		@Override
+		public void execute(Runnable task) {
+			synchronized (this) {
+				if (running >= limit) {
+					waiting.add(task);
+					return;
+				}
+				running++;
+			}
+			try {
+				submit(task);
+			} catch (RejectedExecutionException e) {
+				synchronized (this) {
+					running--;
+				}
+				throw e;
+			}
+		}
+
+		private void submit(Runnable task) {
+			executor.execute(() -> {
+				try {
+					task.run();
+				} finally {
+					next();
+				}
+			});
+		}
+
+		private void next() {
+			// Keeps the place of the task that finished until the queue is empty or a task is handed on
+			while (true) {
+				Runnable task;
+				synchronized (this) {
+					task = waiting.poll();
+					if (task == null) {
+						running--;
+						return;
+					}
+				}
+				try {
+					submit(task);
+					return;
+				} catch (RejectedExecutionException e) {
+					log.debug("Running a queued element on the current thread. {}", e.getMessage());
+					try {
+						task.run();
+					} catch (RuntimeException ex) {
+						log.warn("Queued element failed on the current thread. {}", ex.getMessage());
+					}
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,5 @@
+/**
+ * The MAP construct of rule sets, running a sub-workflow for each element of a collection. See
+ * {@link au.com.kahaara.wf.orchestration.foreach.ForEach}.
+ */
+package au.com.kahaara.wf.orchestration.foreach;
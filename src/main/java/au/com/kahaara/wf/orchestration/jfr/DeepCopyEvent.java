@@ -0,0 +1,32 @@
+package au.com.kahaara.wf.orchestration.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event covering the deep copy of an object held in the orchestration data.
+ */
+@Name(DeepCopyEvent.NAME)
+@Label("Deep Copy")
+@Category({JfrEvents.CATEGORY, "Data"})
+@Description("Deep copy of orchestration data through JSON")
+@StackTrace(false)
+public class DeepCopyEvent extends Event {
+
+	public static final String NAME = JfrEvents.PREFIX + "DeepCopy";
+
+	@Label("Data Class")
+	public String dataClass;
+
+	@Label("Source")
+	@Description("request or result data")
+	public String source;
+
+	@Label("Success")
+	public boolean success;
+
+}
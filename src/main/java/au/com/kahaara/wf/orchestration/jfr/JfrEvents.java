@@ -0,0 +1,22 @@
+package au.com.kahaara.wf.orchestration.jfr;
+
+/**
+ * Constants shared by the orchestration flight recorder events.
+ */
+public final class JfrEvents {
+
+	/**
+	 * The prefix of every event name
+	 */
+	public static final String PREFIX = "au.com.kahaara.wf.";
+
+	/**
+	 * The top level category shown in JDK Mission Control
+	 */
+	public static final String CATEGORY = "Orchestration";
+
+	private JfrEvents() {
+		// Constants only
+	}
+
+}
@@ -0,0 +1,33 @@
+package au.com.kahaara.wf.orchestration.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event covering the execution of a single rule from start to finish.
+ */
+@Name(RuleExecutionEvent.NAME)
+@Label("Rule Execution")
+@Category({JfrEvents.CATEGORY, "Rule"})
+@Description("Execution of a single orchestration workflow rule")
+@StackTrace(false)
+public class RuleExecutionEvent extends Event {
+
+	public static final String NAME = JfrEvents.PREFIX + "RuleExecution";
+
+	@Label("Rule Name")
+	@Description("The rule name as defined in the rule set")
+	public String ruleName;
+
+	@Label("Rule Type")
+	@Description("The rule name as defined by the workflow annotation")
+	public String ruleType;
+
+	@Label("Outcome")
+	public String outcome;
+
+}
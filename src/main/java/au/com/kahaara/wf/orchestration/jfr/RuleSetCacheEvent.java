@@ -0,0 +1,29 @@
+package au.com.kahaara.wf.orchestration.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for a rule set cache lookup, including the time waiting on the cache lock.
+ */
+@Name(RuleSetCacheEvent.NAME)
+@Label("Rule Set Cache Lookup")
+@Category({JfrEvents.CATEGORY, "Rule Set"})
+@Description("Lookup of a rule set in the rule set cache")
+@StackTrace(false)
+public class RuleSetCacheEvent extends Event {
+
+	public static final String NAME = JfrEvents.PREFIX + "RuleSetCacheLookup";
+
+	@Label("Key")
+	@Description("The rule set string used as the cache key")
+	public String key;
+
+	@Label("Hit")
+	public boolean hit;
+
+}
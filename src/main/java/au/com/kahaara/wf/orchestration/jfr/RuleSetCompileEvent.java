@@ -0,0 +1,32 @@
+package au.com.kahaara.wf.orchestration.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event covering the compilation of a rule set string into rules.
+ */
+@Name(RuleSetCompileEvent.NAME)
+@Label("Rule Set Compile")
+@Category({JfrEvents.CATEGORY, "Rule Set"})
+@Description("Compilation of a rule set string into the rule graph")
+@StackTrace(false)
+public class RuleSetCompileEvent extends Event {
+
+	public static final String NAME = JfrEvents.PREFIX + "RuleSetCompile";
+
+	@Label("Rules")
+	@Description("The rule set string")
+	public String rules;
+
+	@Label("Rule Count")
+	public int ruleCount;
+
+	@Label("Success")
+	public boolean success;
+
+}
@@ -0,0 +1,36 @@
+package au.com.kahaara.wf.orchestration.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event covering a rule set being run by the workflow runner from start to finish.
+ */
+@Name(WorkflowExecutionEvent.NAME)
+@Label("Workflow Execution")
+@Category({JfrEvents.CATEGORY, "Workflow"})
+@Description("Execution of an orchestration rule set")
+@StackTrace(false)
+public class WorkflowExecutionEvent extends Event {
+
+	public static final String NAME = JfrEvents.PREFIX + "WorkflowExecution";
+
+	@Label("Workflow Type")
+	@Description("The rule set type name")
+	public String workflowType;
+
+	@Label("Top Level")
+	@Description("False when run as sub rules")
+	public boolean topLevel;
+
+	@Label("Rules Run")
+	public int rulesRun;
+
+	@Label("Outcome")
+	public String outcome;
+
+}
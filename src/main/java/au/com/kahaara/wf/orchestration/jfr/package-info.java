@@ -0,0 +1,10 @@
+/**
+ * JDK Flight Recorder events for the orchestration.
+ * <p>Events are emitted for rule and workflow execution, rule set compilation, rule set cache lookups and
+ * deep copies of orchestration data. Each event is created, begun and only populated and committed if
+ * {@code shouldCommit()} is true so that disabled events cost next to nothing. Turn them on in a recording
+ * with, for example, {@code -XX:StartFlightRecording:settings=profile} and filter on the
+ * {@value au.com.kahaara.wf.orchestration.jfr.JfrEvents#PREFIX} prefix.</p>
+ * <p>Requires a JVM with the jdk.jfr module. That is Java 11 or later, or Java 8 from update 262.</p>
+ */
+package au.com.kahaara.wf.orchestration.jfr;
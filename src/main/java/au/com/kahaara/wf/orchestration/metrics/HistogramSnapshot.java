@@ -0,0 +1,103 @@
+package au.com.kahaara.wf.orchestration.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An immutable copy of a {@link LatencyHistogram} at a point in time. All values are in nanoseconds.
+ */
+public class HistogramSnapshot {
+
+	private final long[] counts;
+
+	private final long count;
+
+	private final long total;
+
+	private final long min;
+
+	private final long max;
+
+	HistogramSnapshot(long[] counts, long count, long total, long min, long max) {
+		this.counts = counts;
+		this.count = count;
+		this.total = total;
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * @return The number of values recorded
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return The sum of all values recorded
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return The smallest value recorded or 0 if empty
+	 */
+	public long getMin() {
+		return min;
+	}
+
+	/**
+	 * @return The largest value recorded or 0 if empty
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * @return The mean of the values recorded or 0 if empty
+	 */
+	public double getMean() {
+		return count == 0 ? 0 : (double) total / count;
+	}
+
+	/**
+	 * Get the value at the given percentile. The value returned is the highest value that is equivalent
+	 * to the recorded values in that bucket, capped at the recorded maximum.
+	 *
+	 * @param percentile The percentile between 0 and 100
+	 * @return The value at that percentile or 0 if empty
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		double p = Math.min(Math.max(percentile, 0.0), 100.0);
+		long countAtPercentile = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+		long running = 0;
+		for (int i = 0; i < counts.length; i++) {
+			running += counts[i];
+			if (running >= countAtPercentile) {
+				return Math.min(LatencyHistogram.highestValueInBucket(i), max);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Get the value at the given percentile in the time unit requested
+	 *
+	 * @param percentile The percentile between 0 and 100
+	 * @param unit The {@link TimeUnit} to convert to
+	 * @return The converted value
+	 */
+	public double getValueAtPercentile(double percentile, TimeUnit unit) {
+		return (double) getValueAtPercentile(percentile) / unit.toNanos(1);
+	}
+
+	@Override
+	public String toString() {
+		return "[count:" + count + ",min:" + min + ",mean:" + (long) getMean() + ",p50:" + getValueAtPercentile(50)
+				+ ",p99:" + getValueAtPercentile(99) + ",max:" + max + "]";
+	}
+
+}
@@ -0,0 +1,159 @@
+package au.com.kahaara.wf.orchestration.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed size, lock free latency histogram in the style of HdrHistogram. Values are recorded in nanoseconds
+ * into log-linear buckets, each power of 2 being split into {@value #SUB_BUCKET_COUNT} linear sub buckets. This
+ * gives a relative error of less than 2% for any recorded value while keeping the memory footprint fixed.
+ * <P>Recording is a handful of atomic increments so it is safe to call from every rule execution on any
+ * number of threads. Reading is done through {@link #snapshot()} which copies the counts so that
+ * percentiles can be calculated without blocking any recording threads.</P>
+ * <P>Values above {@link #HIGHEST_TRACKABLE_VALUE} are counted in the highest bucket. The exact maximum is
+ * always retained.</P>
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Number of bits used for the linear sub buckets within each power of 2
+	 */
+	static final int SUB_BUCKET_BITS = 6;
+
+	/**
+	 * Number of linear sub buckets for each power of 2
+	 */
+	static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/**
+	 * The highest power of 2 that is tracked. 2^36 nanoseconds is a little over 68 seconds.
+	 */
+	private static final int HIGHEST_EXPONENT = 36;
+
+	/**
+	 * Any value higher than this is recorded in the last bucket
+	 */
+	public static final long HIGHEST_TRACKABLE_VALUE = (1L << (HIGHEST_EXPONENT + 1)) - 1;
+
+	/**
+	 * Total number of buckets required
+	 */
+	static final int BUCKET_COUNT = (HIGHEST_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+	private final LongAdder totalCount = new LongAdder();
+
+	private final LongAdder totalValue = new LongAdder();
+
+	private final AtomicLong minValue = new AtomicLong(Long.MAX_VALUE);
+
+	private final AtomicLong maxValue = new AtomicLong(0);
+
+	/**
+	 * Record a single value
+	 *
+	 * @param value The value in nanoseconds. Negative values are recorded as 0
+	 */
+	public void recordValue(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(bucketIndex(value));
+		totalCount.increment();
+		totalValue.add(value);
+		if (value < minValue.get()) {
+			minValue.accumulateAndGet(value, Math::min);
+		}
+		if (value > maxValue.get()) {
+			maxValue.accumulateAndGet(value, Math::max);
+		}
+	}
+
+	/**
+	 * Take a copy of the histogram as it is right now. Recording may continue while the copy is being
+	 * made so the snapshot can be very slightly out of step with itself under load, which is fine for reporting.
+	 *
+	 * @return The {@link HistogramSnapshot}
+	 */
+	public HistogramSnapshot snapshot() {
+		long[] copy = new long[BUCKET_COUNT];
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			copy[i] = counts.get(i);
+			count += copy[i];
+		}
+		long min = count == 0 ? 0 : minValue.get();
+		return new HistogramSnapshot(copy, count, totalValue.sum(), min, maxValue.get());
+	}
+
+	/**
+	 * Reset the histogram back to empty
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts.set(i, 0);
+		}
+		totalCount.reset();
+		totalValue.reset();
+		minValue.set(Long.MAX_VALUE);
+		maxValue.set(0);
+	}
+
+	/**
+	 * @return The number of values recorded
+	 */
+	public long getCount() {
+		return totalCount.sum();
+	}
+
+	/**
+	 * Work out which bucket a value falls into
+	 *
+	 * @param value The value (not negative)
+	 * @return The bucket index
+	 */
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		if (value > HIGHEST_TRACKABLE_VALUE) {
+			return BUCKET_COUNT - 1;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+		return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	/**
+	 * The lowest value that is recorded into the bucket
+	 *
+	 * @param index The bucket index
+	 * @return The lowest value
+	 */
+	static long lowestValueInBucket(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long subBucket = index % SUB_BUCKET_COUNT;
+		return (SUB_BUCKET_COUNT + subBucket) << shift;
+	}
+
+	/**
+	 * The highest value that is recorded into the bucket
+	 *
+	 * @param index The bucket index
+	 * @return The highest value
+	 */
+	static long highestValueInBucket(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		return lowestValueInBucket(index) + (1L << shift) - 1;
+	}
+
+}
@@ -0,0 +1,192 @@
+package au.com.kahaara.wf.orchestration.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the execution counts and latency histograms for every rule run by the
+ * {@link au.com.kahaara.wf.orchestration.rules.RuleRunner RuleRunner} and every workflow run by
+ * {@link au.com.kahaara.wf.orchestration.Orchestration Orchestration}. Each rule or workflow name
+ * has a {@link LatencyHistogram} per {@link Outcome} and the count is the number of values in that histogram.
+ * Rules also have their CPU time and allocated bytes kept as histograms, see {@link ResourceAccounting}.
+ * <P>The snapshots are designed to be polled. To bridge to Micrometer register, per {@link TimerSnapshot},
+ * a FunctionCounter on {@link TimerSnapshot#getCount()} and gauges on the percentiles required, tagging
+ * with the name and outcome.</P>
+ */
+@Component
+public class OrchestrationMetrics {
+
+	public static final Logger log = LoggerFactory.getLogger(OrchestrationMetrics.class);
+
+	private final Map<String, Timers> ruleTimers = new ConcurrentHashMap<>();
+
+	private final Map<String, Timers> workflowTimers = new ConcurrentHashMap<>();
+
+	private final Map<String, Resources> ruleResources = new ConcurrentHashMap<>();
+
+	/**
+	 * Record the execution of a single rule
+	 *
+	 * @param ruleName The rule name as defined by the rule type
+	 * @param outcome The {@link Outcome}
+	 * @param nanos The elapsed wall time in nanoseconds
+	 */
+	public void recordRule(String ruleName, Outcome outcome, long nanos) {
+		timers(ruleTimers, ruleName).get(outcome).recordValue(nanos);
+	}
+
+	/**
+	 * Record the CPU time and heap allocated by a single rule execution. Values that were not
+	 * measured, being negative, are ignored.
+	 *
+	 * @param ruleName The rule name as defined by the rule type
+	 * @param cpuNanos The CPU time of the rule thread in nanoseconds
+	 * @param allocatedBytes The bytes allocated by the rule thread
+	 */
+	public void recordRuleResources(String ruleName, long cpuNanos, long allocatedBytes) {
+		if (cpuNanos < 0 && allocatedBytes < 0) {
+			return;
+		}
+		Resources r = ruleResources.get(ruleName);
+		if (r == null) {
+			r = ruleResources.computeIfAbsent(ruleName, k -> new Resources());
+		}
+		if (cpuNanos >= 0) {
+			r.cpuTime.recordValue(cpuNanos);
+		}
+		if (allocatedBytes >= 0) {
+			r.allocatedBytes.recordValue(allocatedBytes);
+		}
+	}
+
+	/**
+	 * Record the end to end execution of a workflow
+	 *
+	 * @param workflowName The rule set type name
+	 * @param outcome The {@link Outcome}
+	 * @param nanos The elapsed wall time in nanoseconds
+	 */
+	public void recordWorkflow(String workflowName, Outcome outcome, long nanos) {
+		timers(workflowTimers, workflowName).get(outcome).recordValue(nanos);
+	}
+
+	/**
+	 * @return A snapshot of every rule timer that has at least one recorded value
+	 */
+	public List<TimerSnapshot> getRuleSnapshots() {
+		return snapshots(ruleTimers);
+	}
+
+	/**
+	 * @return A snapshot of every workflow timer that has at least one recorded value
+	 */
+	public List<TimerSnapshot> getWorkflowSnapshots() {
+		return snapshots(workflowTimers);
+	}
+
+	/**
+	 * Get the snapshot for a single rule and outcome
+	 *
+	 * @param ruleName The rule name
+	 * @param outcome The {@link Outcome}
+	 * @return The snapshot which will be empty if the rule has not been run
+	 */
+	public TimerSnapshot getRuleSnapshot(String ruleName, Outcome outcome) {
+		Timers t = ruleTimers.get(ruleName);
+		LatencyHistogram h = t == null ? new LatencyHistogram() : t.get(outcome);
+		return new TimerSnapshot(ruleName, outcome, h.snapshot());
+	}
+
+	/**
+	 * @return The CPU time and allocated bytes of every rule that has been measured
+	 */
+	public List<ResourceSnapshot> getRuleResourceSnapshots() {
+		List<ResourceSnapshot> list = new ArrayList<>();
+		for (Map.Entry<String, Resources> entry : ruleResources.entrySet()) {
+			list.add(entry.getValue().snapshot(entry.getKey()));
+		}
+		return list;
+	}
+
+	/**
+	 * Get the CPU time and allocated bytes for a single rule
+	 *
+	 * @param ruleName The rule name
+	 * @return The snapshot which will be empty if the rule has not been measured
+	 */
+	public ResourceSnapshot getRuleResourceSnapshot(String ruleName) {
+		Resources r = ruleResources.get(ruleName);
+		return (r == null ? new Resources() : r).snapshot(ruleName);
+	}
+
+	/**
+	 * Clear all recorded values
+	 */
+	public void reset() {
+		log.debug("Resetting orchestration metrics");
+		ruleTimers.clear();
+		workflowTimers.clear();
+		ruleResources.clear();
+	}
+
+	private static Timers timers(Map<String, Timers> map, String name) {
+		// get first as computeIfAbsent locks the bin even when present on Java 8
+		Timers t = map.get(name);
+		if (t == null) {
+			t = map.computeIfAbsent(name, k -> new Timers());
+		}
+		return t;
+	}
+
+	private static List<TimerSnapshot> snapshots(Map<String, Timers> map) {
+		List<TimerSnapshot> list = new ArrayList<>();
+		for (Map.Entry<String, Timers> entry : map.entrySet()) {
+			for (Outcome outcome : Outcome.values()) {
+				LatencyHistogram h = entry.getValue().get(outcome);
+				if (h.getCount() > 0) {
+					list.add(new TimerSnapshot(entry.getKey(), outcome, h.snapshot()));
+				}
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * The histograms for a single name, one per outcome
+	 */
+	private static class Timers {
+
+		private final LatencyHistogram[] histograms = new LatencyHistogram[Outcome.values().length];
+
+		Timers() {
+			for (int i = 0; i < histograms.length; i++) {
+				histograms[i] = new LatencyHistogram();
+			}
+		}
+
+		LatencyHistogram get(Outcome outcome) {
+			return histograms[outcome.ordinal()];
+		}
+	}
+
+	/**
+	 * The resource histograms for a single rule name
+	 */
+	private static class Resources {
+
+		private final LatencyHistogram cpuTime = new LatencyHistogram();
+
+		private final LatencyHistogram allocatedBytes = new LatencyHistogram();
+
+		ResourceSnapshot snapshot(String name) {
+			return new ResourceSnapshot(name, cpuTime.snapshot(), allocatedBytes.snapshot());
+		}
+	}
+
+}
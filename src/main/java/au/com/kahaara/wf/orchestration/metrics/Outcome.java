@@ -0,0 +1,36 @@
+package au.com.kahaara.wf.orchestration.metrics;
+
+/**
+ * The outcome recorded against a rule or workflow timing
+ * <ul>
+ *   <li>{@link #PASS}
+ *   <li>{@link #FAIL}
+ *   <li>{@link #EXCEPTION}
+ *   <li>{@link #REJECTED}
+ *   <li>{@link #MEMOIZED}
+ * </ul>
+ */
+public enum Outcome {
+
+	/**
+	 * The rule returned a true result or the workflow completed without error
+	 */
+	PASS,
+	/**
+	 * The rule returned a false result or the workflow completed with an error status
+	 */
+	FAIL,
+	/**
+	 * An exception was thrown
+	 */
+	EXCEPTION,
+	/**
+	 * The workflow was turned away by admission control or the rule by its bulkhead
+	 */
+	REJECTED,
+	/**
+	 * The rule was not run as its memoized result was replayed
+	 */
+	MEMOIZED
+
+}
@@ -0,0 +1,149 @@
+package au.com.kahaara.wf.orchestration.metrics;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Reads the CPU time and allocated bytes of the current thread so that the cost of a rule can be split
+ * into time on CPU, heap allocated and, by difference with the wall time, time spent waiting.
+ * <P>CPU time comes from {@link ThreadMXBean#getCurrentThreadCpuTime()}. Allocated bytes need the HotSpot
+ * extension {@code com.sun.management.ThreadMXBean} and are reported as -1 on a JVM without it. Both are
+ * per thread so any work a rule hands off to another thread is not counted against it.</P>
+ * <P>Configured from the orchestration properties
+ * <ul>
+ *     <li>orchestration.metrics.resources.enabled - Measure CPU and allocation per rule. Default is on</li>
+ * </ul>
+ * </P>
+ */
+@Component
+public class ResourceAccounting {
+
+	public static final Logger log = LoggerFactory.getLogger(ResourceAccounting.class);
+
+	/**
+	 * Returned when a value is not measured
+	 */
+	public static final long NOT_MEASURED = -1;
+
+	private final ThreadMXBean threadBean;
+
+	private final com.sun.management.ThreadMXBean allocationBean;
+
+	private final boolean cpuEnabled;
+
+	/**
+	 * Measure everything the JVM supports
+	 */
+	public ResourceAccounting() {
+		this(true);
+	}
+
+	/**
+	 * The bean constructor used by spring-boot
+	 *
+	 * @param config The orchestration configuration
+	 */
+	@Autowired
+	public ResourceAccounting(OrchestrationConfig config) {
+		this(config.isResourceAccountingEnabled());
+	}
+
+	/**
+	 * Create the accounting turned on or off
+	 *
+	 * @param enabled If false nothing is measured
+	 */
+	public ResourceAccounting(boolean enabled) {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		this.threadBean = bean;
+		this.cpuEnabled = enabled && enableCpuTime(bean);
+		this.allocationBean = enabled ? allocationBean(bean) : null;
+		if (enabled) {
+			log.info("Rule resource accounting cpu={} allocation={}", cpuEnabled, allocationBean != null);
+		}
+	}
+
+	/**
+	 * @return The CPU time of the current thread in nanoseconds or {@link #NOT_MEASURED}
+	 */
+	public long currentThreadCpuTime() {
+		return cpuEnabled ? threadBean.getCurrentThreadCpuTime() : NOT_MEASURED;
+	}
+
+	/**
+	 * @return The total bytes allocated by the current thread or {@link #NOT_MEASURED}
+	 */
+	public long currentThreadAllocatedBytes() {
+		return allocationBean == null ? NOT_MEASURED
+				: allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * @return true if CPU time is being measured
+	 */
+	public boolean isCpuTimeMeasured() {
+		return cpuEnabled;
+	}
+
+	/**
+	 * @return true if allocated bytes are being measured
+	 */
+	public boolean isAllocationMeasured() {
+		return allocationBean != null;
+	}
+
+	/**
+	 * The difference between two readings
+	 *
+	 * @param start The reading before
+	 * @param end The reading after
+	 * @return The difference or {@link #NOT_MEASURED} if either reading was not measured
+	 */
+	public static long delta(long start, long end) {
+		if (start < 0 || end < 0) {
+			return NOT_MEASURED;
+		}
+		return end - start;
+	}
+
+	private static boolean enableCpuTime(ThreadMXBean bean) {
+		try {
+			if (!bean.isCurrentThreadCpuTimeSupported()) {
+				return false;
+			}
+			if (!bean.isThreadCpuTimeEnabled()) {
+				bean.setThreadCpuTimeEnabled(true);
+			}
+			return true;
+		} catch (UnsupportedOperationException | SecurityException e) {
+			log.warn("Thread CPU time not available. {}", e.getMessage());
+			return false;
+		}
+	}
+
+	private static com.sun.management.ThreadMXBean allocationBean(ThreadMXBean bean) {
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		try {
+			if (!sunBean.isThreadAllocatedMemorySupported()) {
+				return null;
+			}
+			if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+				sunBean.setThreadAllocatedMemoryEnabled(true);
+			}
+			return sunBean;
+		} catch (UnsupportedOperationException | SecurityException e) {
+			log.warn("Thread allocated bytes not available. {}", e.getMessage());
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+package au.com.kahaara.wf.orchestration.metrics;
+
+/**
+ * The CPU time and allocated bytes recorded for a single rule across all of its executions.
+ */
+public class ResourceSnapshot {
+
+	private final String name;
+
+	private final HistogramSnapshot cpuTime;
+
+	private final HistogramSnapshot allocatedBytes;
+
+	public ResourceSnapshot(String name, HistogramSnapshot cpuTime, HistogramSnapshot allocatedBytes) {
+		this.name = name;
+		this.cpuTime = cpuTime;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	/**
+	 * @return The rule name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The CPU time per execution in nanoseconds
+	 */
+	public HistogramSnapshot getCpuTime() {
+		return cpuTime;
+	}
+
+	/**
+	 * @return The bytes allocated per execution
+	 */
+	public HistogramSnapshot getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	@Override
+	public String toString() {
+		return "[name:" + name + ",cpu:" + cpuTime + ",allocated:" + allocatedBytes + "]";
+	}
+
+}
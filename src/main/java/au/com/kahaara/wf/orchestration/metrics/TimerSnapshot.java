@@ -0,0 +1,53 @@
+package au.com.kahaara.wf.orchestration.metrics;
+
+/**
+ * The snapshot of a single named timer, being a rule or a workflow, for a single {@link Outcome}.
+ */
+public class TimerSnapshot {
+
+	private final String name;
+
+	private final Outcome outcome;
+
+	private final HistogramSnapshot histogram;
+
+	public TimerSnapshot(String name, Outcome outcome, HistogramSnapshot histogram) {
+		this.name = name;
+		this.outcome = outcome;
+		this.histogram = histogram;
+	}
+
+	/**
+	 * @return The rule or workflow name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The {@link Outcome}
+	 */
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * @return The number of executions recorded
+	 */
+	public long getCount() {
+		return histogram.getCount();
+	}
+
+	/**
+	 * @return The latency {@link HistogramSnapshot}
+	 */
+	public HistogramSnapshot getHistogram() {
+		return histogram;
+	}
+
+	@Override
+	public String toString() {
+		return "[name:" + name + ",outcome:" + outcome + "," + histogram + "]";
+	}
+
+}
@@ -0,0 +1,7 @@
+/**
+ * Execution metrics for the orchestration.
+ * <p>Every rule and every workflow has a count and a latency histogram per outcome which can be
+ * read as snapshots from {@link au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics}. Rules also
+ * have their CPU time and allocated bytes recorded so a slow rule can be told apart from a waiting one.</p>
+ */
+package au.com.kahaara.wf.orchestration.metrics;
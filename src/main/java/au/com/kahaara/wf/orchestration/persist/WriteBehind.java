@@ -0,0 +1,127 @@
+package au.com.kahaara.wf.orchestration.persist;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The changes a workflow will write to the database once it ends. Rules register entities to persist or merge
+ * and SQL statements to run instead of writing them as they go. When the workflow reaches END, without an ERROR
+ * status, {@link WriteBehindFlusher} writes them all in one transaction with SQL statements batched. Otherwise
+ * they are thrown away.
+ * <pre>
+ * request.getWriteBehind().persist(new AuditEntry(...));
+ * request.getWriteBehind().update("update orders set state = ? where id = ?", "CHECKED", orderId);
+ * </pre>
+ * <P>The changes are written in the order they were registered. A sub workflow, or a rule attempt with a timeout,
+ * registers its changes in a unit of its own which is added to the unit of its parent when its data is put into the
+ * parent. When its data is dropped, e.g. it ends with an ERROR status or is abandoned, so are its changes.
+ * A rule reading the database does not see the changes of earlier rules that are still pending.
+ * <P>The unit is not part of a checkpoint, so a workflow that is checkpointed can't use it as the changes would be
+ * lost when it is resumed. Asking for the unit then throws an {@link IllegalStateException}.
+ */
+public class WriteBehind {
+
+	/**
+	 * What an operation does
+	 */
+	enum Kind {
+		PERSIST, MERGE, SQL
+	}
+
+	/**
+	 * One pending change
+	 */
+	static final class Operation {
+
+		final Kind kind;
+
+		final Object entity;
+
+		final String sql;
+
+		final Object[] args;
+
+		private Operation(Kind kind, Object entity, String sql, Object[] args) {
+			this.kind = kind;
+			this.entity = entity;
+			this.sql = sql;
+			this.args = args;
+		}
+
+	}
+
+	private final List<Operation> operations = new ArrayList<>();
+
+	/**
+	 * Insert a new entity
+	 *
+	 * @param entity The JPA entity
+	 */
+	public synchronized void persist(Object entity) {
+		operations.add(new Operation(Kind.PERSIST, entity, null, null));
+	}
+
+	/**
+	 * Update an entity
+	 *
+	 * @param entity The JPA entity
+	 */
+	public synchronized void merge(Object entity) {
+		operations.add(new Operation(Kind.MERGE, entity, null, null));
+	}
+
+	/**
+	 * Run an insert, update or delete statement. Consecutive statements with the same SQL are sent as one batch.
+	 *
+	 * @param sql The SQL with ? for each argument
+	 * @param args The arguments
+	 */
+	public synchronized void update(String sql, Object... args) {
+		operations.add(new Operation(Kind.SQL, null, sql, args));
+	}
+
+	/**
+	 * @return The number of pending changes
+	 */
+	public synchronized int size() {
+		return operations.size();
+	}
+
+	/**
+	 * @return true if there is nothing to write
+	 */
+	public synchronized boolean isEmpty() {
+		return operations.isEmpty();
+	}
+
+	/**
+	 * Move the pending changes of another unit to the end of this one
+	 *
+	 * @param other The unit of a sub workflow. It is left empty
+	 */
+	public void append(WriteBehind other) {
+		List<Operation> moved = other.drain();
+		synchronized (this) {
+			operations.addAll(moved);
+		}
+	}
+
+	/**
+	 * Throw the pending changes away
+	 */
+	public synchronized void discard() {
+		operations.clear();
+	}
+
+	/**
+	 * Take the pending changes leaving the unit empty
+	 *
+	 * @return The changes in the order they were registered
+	 */
+	synchronized List<Operation> drain() {
+		List<Operation> drained = new ArrayList<>(operations);
+		operations.clear();
+		return drained;
+	}
+
+}
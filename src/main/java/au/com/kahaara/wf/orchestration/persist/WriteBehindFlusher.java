@@ -0,0 +1,165 @@
+package au.com.kahaara.wf.orchestration.persist;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the pending changes of a {@link WriteBehind} in one transaction. Consecutive SQL statements with the same
+ * SQL go to the database as one JDBC batch. Entities are persisted or merged and the entity manager flushed once
+ * before the next SQL statement and at the end, so set spring.jpa.properties.hibernate.jdbc.batch_size, along with
+ * hibernate.order_inserts and hibernate.order_updates, to have them batched too.
+ * <P>The transaction joins the workflow transaction if there is one. Without a transaction manager the statements
+ * are sent without one and entities can't be written.
+ */
+@Component
+public class WriteBehindFlusher {
+
+	public static final Logger log = LoggerFactory.getLogger(WriteBehindFlusher.class);
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final EntityManager entityManager;
+
+	private final TransactionTemplate transactionTemplate;
+
+	/**
+	 * A flusher that can't write anything. Fine as long as no rule registers a change.
+	 */
+	public WriteBehindFlusher() {
+		this((DataSource) null, null, null);
+	}
+
+	/**
+	 * @param dataSource The data source for SQL statements or null if there is none
+	 * @param entityManagerFactory The entity manager factory for entities or null if there is none
+	 * @param transactionManager The transaction manager or null to write without a transaction
+	 */
+	public WriteBehindFlusher(DataSource dataSource, EntityManagerFactory entityManagerFactory,
+	                          PlatformTransactionManager transactionManager) {
+		this.jdbcTemplate = dataSource == null ? null : new JdbcTemplate(dataSource);
+		this.entityManager = entityManagerFactory == null ? null
+				: SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory);
+		this.transactionTemplate = transactionManager == null ? null : new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * The bean constructor used by spring-boot
+	 *
+	 * @param dataSources The data source if the application has one
+	 * @param entityManagerFactories The entity manager factory if the application has one
+	 * @param transactionManagers The transaction manager if the application has one
+	 */
+	@Autowired
+	public WriteBehindFlusher(ObjectProvider<DataSource> dataSources,
+	                          ObjectProvider<EntityManagerFactory> entityManagerFactories,
+	                          ObjectProvider<PlatformTransactionManager> transactionManagers) {
+		this(dataSources.getIfAvailable(), entityManagerFactories.getIfAvailable(), transactionManagers.getIfAvailable());
+	}
+
+	/**
+	 * Write the pending changes and empty the unit
+	 *
+	 * @param unit The pending changes
+	 * @return The number of changes written
+	 * @throws DataAccessException If they could not be written. Nothing is written if it is in a transaction
+	 */
+	public int flush(WriteBehind unit) {
+		List<WriteBehind.Operation> operations = unit.drain();
+		if (operations.isEmpty()) {
+			return 0;
+		}
+		long start = System.nanoTime();
+		if (transactionTemplate == null) {
+			write(operations);
+		} else {
+			transactionTemplate.executeWithoutResult(status -> write(operations));
+		}
+		log.debug("Wrote {} pending changes in {}ms", operations.size(), (System.nanoTime() - start) / 1_000_000);
+		return operations.size();
+	}
+
+	private void write(List<WriteBehind.Operation> operations) {
+		String batchSql = null;
+		List<Object[]> batch = new ArrayList<>();
+		boolean entitiesPending = false;
+		for (WriteBehind.Operation op : operations) {
+			if (WriteBehind.Kind.SQL.equals(op.kind)) {
+				if (entitiesPending) {
+					flushEntities();
+					entitiesPending = false;
+				}
+				if (!op.sql.equals(batchSql)) {
+					sendBatch(batchSql, batch);
+					batchSql = op.sql;
+				}
+				batch.add(op.args);
+			} else {
+				sendBatch(batchSql, batch);
+				batchSql = null;
+				writeEntity(op);
+				entitiesPending = true;
+			}
+		}
+		sendBatch(batchSql, batch);
+		if (entitiesPending) {
+			flushEntities();
+		}
+	}
+
+	private void sendBatch(String sql, List<Object[]> batch) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		if (jdbcTemplate == null) {
+			throw new InvalidDataAccessApiUsageException("No data source to run pending SQL with");
+		}
+		jdbcTemplate.batchUpdate(sql, batch);
+		batch.clear();
+	}
+
+	private void writeEntity(WriteBehind.Operation op) {
+		if (entityManager == null) {
+			throw new InvalidDataAccessApiUsageException("No entity manager to write pending entities with");
+		}
+		try {
+			if (WriteBehind.Kind.PERSIST.equals(op.kind)) {
+				entityManager.persist(op.entity);
+			} else {
+				entityManager.merge(op.entity);
+			}
+		} catch (PersistenceException | IllegalStateException e) {
+			throw translate(e);
+		}
+	}
+
+	private void flushEntities() {
+		try {
+			entityManager.flush();
+		} catch (PersistenceException | IllegalStateException e) {
+			throw translate(e);
+		}
+	}
+
+	private static DataAccessException translate(RuntimeException e) {
+		DataAccessException translated = EntityManagerFactoryUtils.convertJpaAccessExceptionIfPossible(e);
+		return translated != null ? translated : new InvalidDataAccessApiUsageException(e.getMessage(), e);
+	}
+
+}
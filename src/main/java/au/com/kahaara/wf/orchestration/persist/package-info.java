@@ -0,0 +1,5 @@
+/**
+ * Write-behind of the changes a workflow makes to the database. See
+ * {@link au.com.kahaara.wf.orchestration.persist.WriteBehind}.
+ */
+package au.com.kahaara.wf.orchestration.persist;
@@ -0,0 +1,248 @@
+package au.com.kahaara.wf.orchestration.prefetch;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.rules.Rule;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Starts fetching the request data that rules declare in their {@link RuleInfo} before the rules run, so the
+ * fetching overlaps the rules ahead of them. A {@link DataProvider} is registered for each class of request data
+ * that can be fetched.
+ * <pre>
+ * prefetcher.register(Customer.class, data -&gt; customers.load(((Order) data.get(Order.class.getName())).getCustomerId()));
+ * </pre>
+ * <P>Each fetch is put on the {@link OrchestrationData} with
+ * {@link OrchestrationData#prefetchRequestData(String, java.util.concurrent.Future)} and a rule reading the data
+ * waits only if it is not there yet. Data already in the request is never fetched. Fetches no rule has read when
+ * the workflow ends are cancelled.
+ * <P>With a lookahead of 0 every rule in the rule set has its data fetched when the workflow starts. Otherwise
+ * only the data of the next lookahead rules on the pass path is fetched as each rule runs. The rule info of each
+ * rule is read once and kept by rule name.
+ * <P>Configured from the orchestration properties
+ * <ul>
+ *     <li>orchestration.prefetch.enabled - Turn prefetching on or off. Default is off</li>
+ *     <li>orchestration.prefetch.threads - The number of threads fetching data</li>
+ *     <li>orchestration.prefetch.lookahead - How many rules ahead to fetch for. 0 for the whole rule set</li>
+ * </ul>
+ * </P>
+ */
+@Component
+public class DataPrefetcher implements DisposableBean {
+
+	public static final Logger log = LoggerFactory.getLogger(DataPrefetcher.class);
+
+	private final boolean enabled;
+
+	private final int lookahead;
+
+	private final Executor executor;
+
+	private final ExecutorService ownedExecutor;
+
+	private final Map<String, DataProvider<?>> providers = new ConcurrentHashMap<>();
+
+	private final Map<String, List<String>> ruleInputs = new ConcurrentHashMap<>();
+
+	private final AtomicLong fetches = new AtomicLong();
+
+	/**
+	 * A prefetcher that never fetches
+	 */
+	public DataPrefetcher() {
+		this.enabled = false;
+		this.lookahead = 0;
+		this.executor = null;
+		this.ownedExecutor = null;
+	}
+
+	/**
+	 * Create a prefetcher that is turned on
+	 *
+	 * @param executor Runs the fetches
+	 * @param lookahead How many rules ahead to fetch for. 0 for the whole rule set when the workflow starts
+	 */
+	public DataPrefetcher(Executor executor, int lookahead) {
+		this.enabled = true;
+		this.lookahead = Math.max(0, lookahead);
+		this.executor = executor;
+		this.ownedExecutor = null;
+	}
+
+	/**
+	 * The bean constructor used by spring-boot
+	 *
+	 * @param config The orchestration configuration
+	 */
+	@Autowired
+	public DataPrefetcher(OrchestrationConfig config) {
+		this.enabled = config.isPrefetchEnabled();
+		this.lookahead = Math.max(0, config.getPrefetchLookahead());
+		if (enabled) {
+			AtomicInteger threadCount = new AtomicInteger();
+			this.ownedExecutor = Executors.newFixedThreadPool(Math.max(1, config.getPrefetchThreads()), r -> {
+				Thread t = new Thread(r, "orchestration-prefetch-" + threadCount.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			});
+			log.info("Orchestration prefetching enabled with {} threads and lookahead {}",
+					config.getPrefetchThreads(), lookahead);
+		} else {
+			this.ownedExecutor = null;
+		}
+		this.executor = ownedExecutor;
+	}
+
+	/**
+	 * Fetch request data of this class for the rules that declare it
+	 *
+	 * @param dataClass The class of the request data
+	 * @param provider Fetches it
+	 * @param <T> The class of the data
+	 */
+	public <T> void register(Class<T> dataClass, DataProvider<? extends T> provider) {
+		providers.put(dataClass.getName(), provider);
+	}
+
+	/**
+	 * Stop fetching request data of this class
+	 *
+	 * @param dataClass The class of the request data
+	 */
+	public void unregister(Class<?> dataClass) {
+		providers.remove(dataClass.getName());
+	}
+
+	/**
+	 * @return true if prefetching is turned on
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return The number of fetches started
+	 */
+	public long getFetchCount() {
+		return fetches.get();
+	}
+
+	/**
+	 * A rule set is about to run. With no lookahead start fetching the data of every rule in it.
+	 *
+	 * @param request The request with its rule set
+	 */
+	public void start(OrchestrationData request) {
+		if (!isActive() || lookahead > 0 || request.getRuleSet() == null) {
+			return;
+		}
+		Map<String, Object> snapshot = null;
+		for (Rule rule : request.getRuleSet().getRules()) {
+			snapshot = fetchInputs(request, rule, snapshot);
+		}
+	}
+
+	/**
+	 * A rule is about to run. With a lookahead start fetching the data of the rule and the ones after it on
+	 * the pass path. Only the true conditions are followed, not the false conditions or outcome tables, so a rule
+	 * set that branches on them has the data of the rules off that path read when they run.
+	 *
+	 * @param request The request
+	 * @param rule The rule about to run
+	 */
+	public void ahead(OrchestrationData request, Rule rule) {
+		if (!isActive() || lookahead == 0) {
+			return;
+		}
+		Map<String, Object> snapshot = null;
+		Rule next = rule;
+		for (int i = 0; i <= lookahead && next != null; i++) {
+			snapshot = fetchInputs(request, next, snapshot);
+			next = next.getOnTrue();
+		}
+	}
+
+	@Override
+	public void destroy() {
+		if (ownedExecutor != null) {
+			ownedExecutor.shutdownNow();
+		}
+	}
+
+	private boolean isActive() {
+		return enabled && !providers.isEmpty();
+	}
+
+	/**
+	 * Start fetching the request data the rule declares that isn't there or being fetched already
+	 *
+	 * @return The copy of the request data given to the providers, made when the first fetch is started
+	 */
+	private Map<String, Object> fetchInputs(OrchestrationData request, Rule rule, Map<String, Object> snapshot) {
+		for (String className : inputs(rule)) {
+			DataProvider<?> provider = providers.get(className);
+			if (provider == null || request.hasRequestData(className)) {
+				continue;
+			}
+			if (snapshot == null) {
+				snapshot = Collections.unmodifiableMap(new HashMap<>(request.getRequestData()));
+			}
+			Map<String, Object> requestData = snapshot;
+			try {
+				request.prefetchRequestData(className, CompletableFuture.supplyAsync(() -> {
+					try {
+						return provider.provide(requestData);
+					} catch (Exception e) {
+						throw new CompletionException(e);
+					}
+				}, executor));
+				fetches.incrementAndGet();
+			} catch (RejectedExecutionException e) {
+				log.debug("Not prefetching {}. {}", className, e.getMessage());
+			}
+		}
+		return snapshot;
+	}
+
+	private List<String> inputs(Rule rule) {
+		if (rule == null || rule.getRuleType() == null) {
+			return Collections.emptyList();
+		}
+		return ruleInputs.computeIfAbsent(rule.getRuleType().getRuleName(), name -> {
+			Object ruleClass = rule.getRuleType().getRuleClass();
+			if (!(ruleClass instanceof WorkflowRuleInterface)) {
+				return Collections.emptyList();
+			}
+			try {
+				RuleInfo info = ((WorkflowRuleInterface) ruleClass).getInfo();
+				return info == null ? Collections.<String>emptyList()
+						: new ArrayList<>(info.getExpectedRequestClasses());
+			} catch (RuntimeException e) {
+				log.debug("Unable to read the rule info of {}. {}", name, e.getMessage());
+				return Collections.emptyList();
+			}
+		});
+	}
+
+}
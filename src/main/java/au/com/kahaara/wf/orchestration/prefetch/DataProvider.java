@@ -0,0 +1,22 @@
+package au.com.kahaara.wf.orchestration.prefetch;
+
+import java.util.Map;
+
+/**
+ * Fetches one class of request data, e.g. by loading it from a database or another service
+ *
+ * @param <T> The class of the data
+ */
+@FunctionalInterface
+public interface DataProvider<T> {
+
+	/**
+	 * Fetch the data. Runs on a prefetch thread.
+	 *
+	 * @param requestData A copy of the request data, by class name, when the fetch was started
+	 * @return The data or null if there is none
+	 * @throws Exception If it can't be fetched. Rules reading it get null
+	 */
+	T provide(Map<String, Object> requestData) throws Exception;
+
+}
@@ -0,0 +1,5 @@
+/**
+ * Fetching the request data rules declare before they run. See
+ * {@link au.com.kahaara.wf.orchestration.prefetch.DataPrefetcher}.
+ */
+package au.com.kahaara.wf.orchestration.prefetch;
@@ -0,0 +1,339 @@
+package au.com.kahaara.wf.orchestration.queue;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the queue in an append-only log file in a directory. Every change is a JSON line appended to the
+ * log and forced to disk before the call returns, so nothing acknowledged to a caller is lost in a crash.
+ * When the queue is opened the log is replayed and then rewritten with only the live requests, and the same
+ * happens whenever the log holds many more lines than there are live requests.
+ * <P>The state is held in memory and the log is owned by one process, so this is for a single node. Use
+ * {@link JdbcWorkQueue} to share a queue between nodes.
+ */
+public class FileWorkQueue implements WorkQueue, AutoCloseable {
+
+	public static final Logger log = LoggerFactory.getLogger(FileWorkQueue.class);
+
+	public static final String LOG_FILE = "queue.log";
+
+	private static final String TMP_SUFFIX = ".tmp";
+
+	/** Compact once the log has this many lines more than there are live requests */
+	private static final int COMPACT_SLACK = 10000;
+
+	private static final byte NEW_LINE = '\n';
+
+	private final Path file;
+
+	private final ObjectMapper objectMapper = new ObjectMapper()
+			.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+	/** Request id to its entry in submission order */
+	private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+	private FileChannel channel;
+
+	private int lines;
+
+	/**
+	 * @param directory The directory to keep the log in. It is created if it does not exist
+	 * @throws IOException If the log cannot be read or rewritten
+	 */
+	public FileWorkQueue(Path directory) throws IOException {
+		this.file = Files.createDirectories(directory).resolve(LOG_FILE);
+		replay();
+		compact();
+	}
+
+	@Override
+	public synchronized void submit(QueuedRequest request) throws IOException {
+		if (entries.containsKey(request.getId())) {
+			throw new IOException("Request " + request.getId() + " is already on the queue");
+		}
+		if (request.getCreated() == 0) {
+			request.setCreated(System.currentTimeMillis());
+		}
+		Record r = new Record(Op.SUBMIT, request.getId());
+		r.request = copy(request);
+		r.at = System.currentTimeMillis();
+		append(r);
+		apply(r);
+	}
+
+	@Override
+	public synchronized List<QueuedRequest> lease(String owner, int max, long visibilityMillis) throws IOException {
+		long now = System.currentTimeMillis();
+		List<Record> leases = new ArrayList<>();
+		for (Entry e : entries.values()) {
+			if (leases.size() >= max) {
+				break;
+			}
+			if (e.state != QueueState.DEAD && e.availableAt <= now) {
+				Record r = new Record(Op.LEASE, e.request.getId());
+				r.owner = owner;
+				r.at = now + visibilityMillis;
+				leases.add(r);
+			}
+		}
+		if (leases.isEmpty()) {
+			return new ArrayList<>();
+		}
+		append(leases);
+		List<QueuedRequest> leased = new ArrayList<>(leases.size());
+		for (Record r : leases) {
+			leased.add(copy(apply(r).request));
+		}
+		return leased;
+	}
+
+	@Override
+	public synchronized boolean ack(String id, String owner) throws IOException {
+		return change(new Record(Op.ACK, id), owner);
+	}
+
+	@Override
+	public synchronized boolean retry(String id, String owner, long delayMillis, String error) throws IOException {
+		Record r = new Record(Op.RETRY, id);
+		r.at = System.currentTimeMillis() + delayMillis;
+		r.error = error;
+		return change(r, owner);
+	}
+
+	@Override
+	public synchronized boolean release(String id, String owner, long delayMillis) throws IOException {
+		Record r = new Record(Op.RELEASE, id);
+		r.at = System.currentTimeMillis() + delayMillis;
+		return change(r, owner);
+	}
+
+	@Override
+	public synchronized boolean deadLetter(String id, String owner, String error) throws IOException {
+		Record r = new Record(Op.DEAD, id);
+		r.error = error;
+		return change(r, owner);
+	}
+
+	@Override
+	public synchronized Map<QueueState, Integer> counts() {
+		Map<QueueState, Integer> counts = new EnumMap<>(QueueState.class);
+		for (QueueState s : QueueState.values()) {
+			counts.put(s, 0);
+		}
+		for (Entry e : entries.values()) {
+			counts.merge(e.state, 1, Integer::sum);
+		}
+		return counts;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * Apply a change made by the owner of the lease
+	 */
+	private boolean change(Record r, String owner) throws IOException {
+		Entry e = entries.get(r.id);
+		if (e == null || e.state != QueueState.LEASED || !owner.equals(e.owner)) {
+			return false;
+		}
+		append(r);
+		apply(r);
+		if (lines > entries.size() + COMPACT_SLACK) {
+			compact();
+		}
+		return true;
+	}
+
+	private Entry apply(Record r) {
+		Entry e = entries.get(r.id);
+		switch (r.op) {
+			case SUBMIT:
+				e = new Entry(r.request);
+				e.state = r.state == null ? QueueState.READY : r.state;
+				e.owner = r.owner;
+				e.availableAt = r.at;
+				entries.put(r.id, e);
+				break;
+			case LEASE:
+				e.state = QueueState.LEASED;
+				e.owner = r.owner;
+				e.availableAt = r.at;
+				e.request.setAttempts(e.request.getAttempts() + 1);
+				break;
+			case RETRY:
+				e.state = QueueState.READY;
+				e.owner = null;
+				e.availableAt = r.at;
+				e.request.setLastError(r.error);
+				break;
+			case RELEASE:
+				e.state = QueueState.READY;
+				e.owner = null;
+				e.availableAt = r.at;
+				e.request.setAttempts(Math.max(0, e.request.getAttempts() - 1));
+				break;
+			case DEAD:
+				e.state = QueueState.DEAD;
+				e.owner = null;
+				e.request.setLastError(r.error);
+				break;
+			case ACK:
+			default:
+				entries.remove(r.id);
+				break;
+		}
+		return e;
+	}
+
+	private void replay() throws IOException {
+		if (!Files.exists(file)) {
+			return;
+		}
+		int bad = 0;
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty()) {
+					continue;
+				}
+				try {
+					Record r = objectMapper.readValue(line, Record.class);
+					if (r.op == Op.SUBMIT || entries.containsKey(r.id)) {
+						apply(r);
+					}
+				} catch (IOException e) {
+					// Only the last line can be torn by a crash mid write
+					bad++;
+				}
+			}
+		}
+		if (bad > 0) {
+			log.warn("Skipped {} unreadable lines in {}", bad, file);
+		}
+		log.info("Replayed work queue {} with {} requests", file, entries.size());
+	}
+
+	/**
+	 * Rewrite the log with one line per live request that puts it straight into its current state
+	 */
+	private void compact() throws IOException {
+		close();
+		Path tmp = file.resolveSibling(LOG_FILE + TMP_SUFFIX);
+		try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			for (Entry e : entries.values()) {
+				Record r = new Record(Op.SUBMIT, e.request.getId());
+				r.request = e.request;
+				r.state = e.state;
+				r.owner = e.owner;
+				r.at = e.availableAt;
+				write(out, r);
+			}
+			out.force(true);
+		}
+		try {
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+		lines = entries.size();
+		channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	private void append(Record r) throws IOException {
+		List<Record> list = new ArrayList<>(1);
+		list.add(r);
+		append(list);
+	}
+
+	private void append(List<Record> records) throws IOException {
+		if (channel == null) {
+			throw new IOException("Work queue " + file + " is closed");
+		}
+		for (Record r : records) {
+			write(channel, r);
+		}
+		channel.force(false);
+		lines += records.size();
+	}
+
+	private void write(FileChannel out, Record r) throws IOException {
+		byte[] bytes = objectMapper.writeValueAsBytes(r);
+		ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 1);
+		buffer.put(bytes).put(NEW_LINE);
+		// Through Buffer so the class still runs on java 8 when built with a later jdk
+		((Buffer) buffer).flip();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+	}
+
+	private QueuedRequest copy(QueuedRequest r) {
+		return objectMapper.convertValue(r, QueuedRequest.class);
+	}
+
+	enum Op { SUBMIT, LEASE, RETRY, RELEASE, DEAD, ACK }
+
+	/**
+	 * One line in the log
+	 */
+	static class Record {
+		public Op op;
+		public String id;
+		public QueuedRequest request;
+		/** Only set on submit lines written by compaction */
+		public QueueState state;
+		public String owner;
+		public long at;
+		public String error;
+
+		Record() {
+			// For serialization
+		}
+
+		Record(Op op, String id) {
+			this.op = op;
+			this.id = id;
+		}
+	}
+
+	/**
+	 * A request and where it is up to
+	 */
+	private static class Entry {
+		private final QueuedRequest request;
+		private QueueState state = QueueState.READY;
+		private String owner;
+		private long availableAt;
+
+		Entry(QueuedRequest request) {
+			this.request = request;
+		}
+	}
+
+}
@@ -0,0 +1,218 @@
+package au.com.kahaara.wf.orchestration.queue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the queue in the {@value #TABLE} table so workers on several nodes sharing the database spread the
+ * requests between them. The table can be created with {@link #createTable()} or by the application's own
+ * schema scripts using {@link #CREATE_TABLE} and {@link #CREATE_INDEX}.
+ * <P>The {@code available_at} column is when a ready request can be leased or when the lease of a leased
+ * request runs out, so both are found with the same query. A worker claims a request by updating its row
+ * only if it is still available. If two workers pick the same row only one update matches, and the loser
+ * moves on to the next candidate. Candidates are shuffled so workers on different nodes rarely collide.
+ * This works on any database without relying on vendor specific locking such as skip locked.
+ * <P>Lease times come from the clock of the node taking the lease so the nodes' clocks need to be roughly
+ * in step compared to the visibility timeout.
+ */
+public class JdbcWorkQueue implements WorkQueue {
+
+	public static final Logger log = LoggerFactory.getLogger(JdbcWorkQueue.class);
+
+	public static final String TABLE = "orchestration_queue";
+
+	private static final int ERROR_LENGTH = 4000;
+
+	/** How many more candidates than wanted are read so losing a race still leaves some to try */
+	private static final int CANDIDATE_FACTOR = 4;
+
+	public static final String CREATE_TABLE = "CREATE TABLE " + TABLE + " ("
+			+ "id VARCHAR(64) NOT NULL PRIMARY KEY, "
+			+ "workflow_id VARCHAR(128), "
+			+ "rule_set_type VARCHAR(512), "
+			+ "custom_rules VARCHAR(4000), "
+			+ "request_data BLOB, "
+			+ "state VARCHAR(16) NOT NULL, "
+			+ "attempts INT NOT NULL, "
+			+ "available_at TIMESTAMP NOT NULL, "
+			+ "lease_owner VARCHAR(256), "
+			+ "last_error VARCHAR(" + ERROR_LENGTH + "), "
+			+ "created_at TIMESTAMP NOT NULL)";
+
+	public static final String CREATE_INDEX = "CREATE INDEX " + TABLE + "_available ON " + TABLE
+			+ " (state, available_at)";
+
+	private static final String INSERT = "INSERT INTO " + TABLE + " (id, workflow_id, rule_set_type, custom_rules, "
+			+ "request_data, state, attempts, available_at, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+	private static final String CANDIDATES = "SELECT id FROM " + TABLE + " WHERE state IN ('"
+			+ QueueState.READY + "', '" + QueueState.LEASED + "') AND available_at <= ? ORDER BY available_at";
+
+	private static final String CLAIM = "UPDATE " + TABLE + " SET state = '" + QueueState.LEASED
+			+ "', lease_owner = ?, available_at = ?, attempts = attempts + 1 WHERE id = ? AND state IN ('"
+			+ QueueState.READY + "', '" + QueueState.LEASED + "') AND available_at <= ?";
+
+	private static final String SELECT_LEASED = "SELECT id, workflow_id, rule_set_type, custom_rules, request_data, "
+			+ "attempts, last_error, created_at FROM " + TABLE + " WHERE id = ? AND lease_owner = ?";
+
+	private static final String ACK = "DELETE FROM " + TABLE + " WHERE id = ? AND lease_owner = ? AND state = '"
+			+ QueueState.LEASED + "'";
+
+	private static final String RETRY = "UPDATE " + TABLE + " SET state = '" + QueueState.READY
+			+ "', lease_owner = NULL, available_at = ?, last_error = ? WHERE id = ? AND lease_owner = ? AND state = '"
+			+ QueueState.LEASED + "'";
+
+	private static final String RELEASE = "UPDATE " + TABLE + " SET state = '" + QueueState.READY
+			+ "', lease_owner = NULL, available_at = ?, attempts = attempts - 1 WHERE id = ? AND lease_owner = ? "
+			+ "AND state = '" + QueueState.LEASED + "' AND attempts > 0";
+
+	private static final String DEAD = "UPDATE " + TABLE + " SET state = '" + QueueState.DEAD
+			+ "', lease_owner = NULL, last_error = ? WHERE id = ? AND lease_owner = ? AND state = '"
+			+ QueueState.LEASED + "'";
+
+	private static final String COUNTS = "SELECT state, COUNT(*) FROM " + TABLE + " GROUP BY state";
+
+	private static final RowMapper<QueuedRequest> ROW_MAPPER = (rs, i) -> {
+		QueuedRequest r = new QueuedRequest();
+		r.setId(rs.getString("id"));
+		r.setWorkflowId(rs.getString("workflow_id"));
+		r.setRuleSetType(rs.getString("rule_set_type"));
+		r.setCustomRules(rs.getString("custom_rules"));
+		r.setRequestData(rs.getBytes("request_data"));
+		r.setAttempts(rs.getInt("attempts"));
+		r.setLastError(rs.getString("last_error"));
+		r.setCreated(rs.getTimestamp("created_at").getTime());
+		return r;
+	};
+
+	private final JdbcTemplate jdbcTemplate;
+
+	public JdbcWorkQueue(DataSource dataSource) {
+		this(new JdbcTemplate(dataSource));
+	}
+
+	public JdbcWorkQueue(JdbcTemplate jdbcTemplate) {
+		this.jdbcTemplate = jdbcTemplate;
+	}
+
+	/**
+	 * Create the queue table and its index
+	 */
+	public void createTable() {
+		jdbcTemplate.execute(CREATE_TABLE);
+		jdbcTemplate.execute(CREATE_INDEX);
+	}
+
+	@Override
+	public void submit(QueuedRequest request) throws IOException {
+		try {
+			Timestamp now = new Timestamp(System.currentTimeMillis());
+			jdbcTemplate.update(INSERT, request.getId(), request.getWorkflowId(), request.getRuleSetType(),
+					request.getCustomRules(), request.getRequestData(), QueueState.READY.name(), 0, now,
+					request.getCreated() > 0 ? new Timestamp(request.getCreated()) : now);
+		} catch (DataAccessException e) {
+			throw new IOException("Unable to submit request " + request.getId(), e);
+		}
+	}
+
+	@Override
+	public List<QueuedRequest> lease(String owner, int max, long visibilityMillis) throws IOException {
+		try {
+			long now = System.currentTimeMillis();
+			Timestamp nowTs = new Timestamp(now);
+			List<String> candidates = jdbcTemplate.query(con -> {
+				PreparedStatement ps = con.prepareStatement(CANDIDATES);
+				ps.setMaxRows(max * CANDIDATE_FACTOR);
+				ps.setTimestamp(1, nowTs);
+				return ps;
+			}, (rs, i) -> rs.getString(1));
+			Collections.shuffle(candidates);
+
+			Timestamp until = new Timestamp(now + visibilityMillis);
+			List<QueuedRequest> leased = new ArrayList<>();
+			for (String id : candidates) {
+				if (leased.size() >= max) {
+					break;
+				}
+				if (jdbcTemplate.update(CLAIM, owner, until, id, nowTs) == 1) {
+					leased.addAll(jdbcTemplate.query(SELECT_LEASED, ROW_MAPPER, id, owner));
+				}
+			}
+			return leased;
+		} catch (DataAccessException e) {
+			throw new IOException("Unable to lease requests for " + owner, e);
+		}
+	}
+
+	@Override
+	public boolean ack(String id, String owner) throws IOException {
+		try {
+			return jdbcTemplate.update(ACK, id, owner) == 1;
+		} catch (DataAccessException e) {
+			throw new IOException("Unable to acknowledge request " + id, e);
+		}
+	}
+
+	@Override
+	public boolean retry(String id, String owner, long delayMillis, String error) throws IOException {
+		try {
+			return jdbcTemplate.update(RETRY, new Timestamp(System.currentTimeMillis() + delayMillis),
+					truncate(error), id, owner) == 1;
+		} catch (DataAccessException e) {
+			throw new IOException("Unable to retry request " + id, e);
+		}
+	}
+
+	@Override
+	public boolean release(String id, String owner, long delayMillis) throws IOException {
+		try {
+			return jdbcTemplate.update(RELEASE, new Timestamp(System.currentTimeMillis() + delayMillis), id,
+					owner) == 1;
+		} catch (DataAccessException e) {
+			throw new IOException("Unable to release request " + id, e);
+		}
+	}
+
+	@Override
+	public boolean deadLetter(String id, String owner, String error) throws IOException {
+		try {
+			return jdbcTemplate.update(DEAD, truncate(error), id, owner) == 1;
+		} catch (DataAccessException e) {
+			throw new IOException("Unable to dead letter request " + id, e);
+		}
+	}
+
+	@Override
+	public Map<QueueState, Integer> counts() throws IOException {
+		Map<QueueState, Integer> counts = new EnumMap<>(QueueState.class);
+		for (QueueState s : QueueState.values()) {
+			counts.put(s, 0);
+		}
+		try {
+			jdbcTemplate.query(COUNTS, rs -> {
+				counts.put(QueueState.valueOf(rs.getString(1)), rs.getInt(2));
+			});
+		} catch (DataAccessException e) {
+			throw new IOException("Unable to count requests", e);
+		}
+		return counts;
+	}
+
+	private static String truncate(String s) {
+		return s == null || s.length() <= ERROR_LENGTH ? s : s.substring(0, ERROR_LENGTH);
+	}
+
+}
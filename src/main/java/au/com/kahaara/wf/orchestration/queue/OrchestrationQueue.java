@@ -0,0 +1,378 @@
+package au.com.kahaara.wf.orchestration.queue;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.Orchestration;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.event.Event;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.serial.DataSerializer;
+import au.com.kahaara.wf.orchestration.serial.JsonDataSerializer;
+import au.com.kahaara.wf.orchestration.serial.RuleSetTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs orchestration requests from a durable {@link WorkQueue} on a pool of worker threads so a caller can
+ * hand over a request with {@link #submit(OrchestrationData)} instead of holding a thread for the whole of
+ * {@link Orchestration#run(OrchestrationData)}. A burst of requests waits on the queue rather than
+ * overloading the node, and requests submitted before a crash are still there afterwards.
+ * <P>Each worker leases one request at a time for the visibility timeout and runs it. A request whose
+ * orchestration completes without an ERROR status is acknowledged and removed, even if its rules took the false
+ * branch, as that is the outcome of the request and is recorded by the event recorder as usual. A request that
+ * throws, does not complete or ends with an ERROR status is retried after a backoff that doubles each attempt,
+ * and is dead lettered once it has used its attempts. If checkpointing is on a retry resumes from the last
+ * checkpoint instead of starting again. A request turned away by admission control never ran, so it is put back
+ * after the retry backoff without using up an attempt.
+ * <P>Only the rule set type, custom rules and request data are queued. The workflow's own rules are
+ * responsible for saving anything the caller needs from the result.
+ * <P>Configured from the orchestration properties
+ * <ul>
+ *     <li>orchestration.queue.enabled - Turn the queue and workers on or off. Default is off</li>
+ *     <li>orchestration.queue.store - file or jdbc. jdbc uses the application DataSource and expects the
+ *     {@value JdbcWorkQueue#TABLE} table to exist</li>
+ *     <li>orchestration.queue.directory - The directory for the file store</li>
+ *     <li>orchestration.queue.workers - The number of worker threads on this node</li>
+ *     <li>orchestration.queue.poll.millis - How long an idle worker waits before looking again</li>
+ *     <li>orchestration.queue.visibility.millis - How long a worker holds a request</li>
+ *     <li>orchestration.queue.max.attempts - Attempts before a request is dead lettered</li>
+ *     <li>orchestration.queue.retry.backoff.millis - The delay before the first retry</li>
+ * </ul>
+ * </P>
+ */
+@Component
+public class OrchestrationQueue implements InitializingBean, DisposableBean {
+
+	public static final Logger log = LoggerFactory.getLogger(OrchestrationQueue.class);
+
+	public static final String STORE_JDBC = "jdbc";
+
+	private static final String STR_NOT_COMPLETED = "Orchestration did not complete";
+
+	private final boolean enabled;
+
+	private final Orchestration orchestration;
+
+	private final WorkQueue queue;
+
+	private final DataSerializer serializer;
+
+	private final OrchestrationConfig config;
+
+	private final Object idle = new Object();
+
+	private final List<Thread> workers = new ArrayList<>();
+
+	private volatile boolean running = false;
+
+	/**
+	 * Create a queue that is turned on. Call {@link #start()} to start the workers.
+	 *
+	 * @param orchestration The orchestration to run the requests with
+	 * @param queue The {@link WorkQueue}
+	 * @param serializer The {@link DataSerializer} for the request data
+	 * @param config The orchestration configuration for the worker settings and the restored requests
+	 */
+	public OrchestrationQueue(Orchestration orchestration, WorkQueue queue, DataSerializer serializer,
+	                          OrchestrationConfig config) {
+		this.enabled = true;
+		this.orchestration = orchestration;
+		this.queue = queue;
+		this.serializer = serializer;
+		this.config = config;
+	}
+
+	/**
+	 * The bean constructor used by spring-boot. The workers start once the bean is ready.
+	 *
+	 * @param orchestration The orchestration to run the requests with
+	 * @param config The orchestration configuration
+	 * @param dataSource The application data source which is only needed for the jdbc store
+	 */
+	@Autowired
+	public OrchestrationQueue(Orchestration orchestration, OrchestrationConfig config,
+	                          ObjectProvider<DataSource> dataSource) {
+		this.enabled = config.isQueueEnabled();
+		this.orchestration = orchestration;
+		this.config = config;
+		this.serializer = new JsonDataSerializer();
+		if (!enabled) {
+			this.queue = null;
+		} else if (STORE_JDBC.equalsIgnoreCase(config.getQueueStore())) {
+			DataSource ds = dataSource.getIfAvailable();
+			if (ds == null) {
+				throw new IllegalStateException("Queue store is jdbc but there is no DataSource available");
+			}
+			this.queue = new JdbcWorkQueue(ds);
+		} else {
+			try {
+				this.queue = new FileWorkQueue(Paths.get(config.getQueueDirectory()));
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to open work queue in " + config.getQueueDirectory(), e);
+			}
+		}
+	}
+
+	/**
+	 * @return true if requests can be submitted
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Put a request on the queue to be run by a worker. The request runs as the workflow id already set
+	 * on it or, if there is none, as the queue id.
+	 *
+	 * @param orchestrationData The request as it would be passed to {@link Orchestration#run(OrchestrationData)}
+	 * @return The id of the request on the queue
+	 * @throws RulesException If the queue is off, the request already has an error or it cannot be stored
+	 */
+	public String submit(OrchestrationData orchestrationData) throws RulesException {
+		if (!enabled) {
+			throw new RulesException("The orchestration queue is not enabled");
+		}
+		if (InfoType.ERROR.equals(orchestrationData.getStatusInfoType())) {
+			throw new RulesException("Request has an error status and would not be run");
+		}
+		QueuedRequest request = new QueuedRequest();
+		request.setId(UUID.randomUUID().toString());
+		request.setWorkflowId(orchestrationData.getWorkflowId() == null ? request.getId()
+				: orchestrationData.getWorkflowId());
+		request.setRuleSetType(RuleSetTypes.toKey(orchestrationData.getRuleSetType()));
+		request.setCustomRules(orchestrationData.getCustomRules());
+		request.setCreated(System.currentTimeMillis());
+		try {
+			orchestrationData.materializeRequestData();
+			request.setRequestData(serializer.serialize(orchestrationData.getRequestData()));
+			queue.submit(request);
+		} catch (IOException e) {
+			throw new RulesException("Unable to queue request. " + e.getMessage(), e);
+		}
+		synchronized (idle) {
+			idle.notify();
+		}
+		return request.getId();
+	}
+
+	/**
+	 * Start the workers
+	 */
+	public synchronized void start() {
+		if (!enabled || running) {
+			return;
+		}
+		running = true;
+		String node = ManagementFactory.getRuntimeMXBean().getName();
+		for (int i = 0; i < config.getQueueWorkers(); i++) {
+			String owner = node + "-" + i;
+			Thread t = new Thread(() -> workLoop(owner), "orchestration-queue-worker-" + i);
+			t.setDaemon(true);
+			workers.add(t);
+			t.start();
+		}
+		log.info("Started {} orchestration queue workers on {}", workers.size(), queue.getClass().getSimpleName());
+	}
+
+	/**
+	 * Stop the workers after the requests they are running have finished
+	 */
+	public synchronized void stop() {
+		running = false;
+		synchronized (idle) {
+			idle.notifyAll();
+		}
+		for (Thread t : workers) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		workers.clear();
+	}
+
+	/**
+	 * @return The number of requests in each state
+	 * @throws RulesException If the queue is off or cannot be read
+	 */
+	public Map<QueueState, Integer> counts() throws RulesException {
+		if (!enabled) {
+			throw new RulesException("The orchestration queue is not enabled");
+		}
+		try {
+			return queue.counts();
+		} catch (IOException e) {
+			throw new RulesException("Unable to count queued requests. " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return The queue or null if the queue is off
+	 */
+	public WorkQueue getQueue() {
+		return queue;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		start();
+	}
+
+	@Override
+	public void destroy() throws IOException {
+		stop();
+		if (queue instanceof FileWorkQueue) {
+			((FileWorkQueue) queue).close();
+		}
+	}
+
+	private void workLoop(String owner) {
+		while (running) {
+			List<QueuedRequest> leased;
+			try {
+				leased = queue.lease(owner, 1, config.getQueueVisibilityMillis());
+			} catch (IOException e) {
+				log.error("Worker {} unable to lease a request. {}", owner, e.getMessage());
+				leased = new ArrayList<>();
+			}
+			if (leased.isEmpty()) {
+				waitForWork();
+			}
+			for (QueuedRequest request : leased) {
+				process(request, owner);
+			}
+		}
+	}
+
+	/**
+	 * Wait for a local submit or the poll interval with some jitter so the nodes don't poll in step
+	 */
+	private void waitForWork() {
+		long poll = config.getQueuePollMillis();
+		long wait = poll + ThreadLocalRandom.current().nextLong(poll / 4 + 1);
+		synchronized (idle) {
+			if (!running) {
+				return;
+			}
+			try {
+				TimeUnit.MILLISECONDS.timedWait(idle, wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				running = false;
+			}
+		}
+	}
+
+	private void process(QueuedRequest request, String owner) {
+		int attempts = request.getAttempts();
+		int maxAttempts = config.getQueueMaxAttempts();
+		try {
+			if (attempts > maxAttempts) {
+				// The lease ran out on the last attempt so the worker probably died running it
+				deadLetter(request, owner, "Used all " + maxAttempts + " attempts. " + request.getLastError());
+				return;
+			}
+
+			OrchestrationData data;
+			try {
+				data = restore(request);
+			} catch (RulesException | IOException e) {
+				deadLetter(request, owner, "Unable to restore request. " + e.getMessage());
+				return;
+			}
+
+			boolean completed;
+			String error = null;
+			try {
+				completed = orchestration.run(data) && !InfoType.ERROR.equals(data.getStatusInfoType());
+				if (!completed) {
+					error = lastError(data);
+				}
+			} catch (RuntimeException e) {
+				log.error("Queued request {} failed", request.getId(), e);
+				completed = false;
+				error = e.toString();
+			}
+
+			if (completed) {
+				if (!queue.ack(request.getId(), owner)) {
+					log.warn("Queued request {} finished after its lease ran out and may run again", request.getId());
+				}
+			} else if (rejected(data)) {
+				log.debug("Queued request {} was rejected by admission control. {}", request.getId(), error);
+				queue.release(request.getId(), owner, config.getQueueRetryBackoffMillis());
+			} else if (attempts >= maxAttempts) {
+				deadLetter(request, owner, error);
+			} else {
+				long delay = config.getQueueRetryBackoffMillis() << Math.min(attempts - 1, 20);
+				log.info("Queued request {} attempt {} failed. Retrying in {}ms. {}", request.getId(), attempts,
+						delay, error);
+				queue.retry(request.getId(), owner, delay, error);
+			}
+		} catch (IOException e) {
+			// Leave it to the lease running out
+			log.error("Unable to update queued request {}. {}", request.getId(), e.getMessage());
+		}
+	}
+
+	/**
+	 * Rebuild the orchestration data. A retry carries on from the checkpoint if there is one.
+	 */
+	private OrchestrationData restore(QueuedRequest request) throws RulesException, IOException {
+		if (request.getAttempts() > 1 && orchestration.canResume(request.getWorkflowId())) {
+			return orchestration.restore(request.getWorkflowId());
+		}
+		OrchestrationData data = new OrchestrationData(config, RuleSetTypes.fromKey(request.getRuleSetType()));
+		data.setCustomRules(request.getCustomRules());
+		data.setWorkflowId(request.getWorkflowId());
+		data.setRequestData(serializer.deserialize(request.getRequestData()));
+		return data;
+	}
+
+	private void deadLetter(QueuedRequest request, String owner, String error) throws IOException {
+		log.error("Dead lettering queued request {} after {} attempts. {}", request.getId(), request.getAttempts(), error);
+		queue.deadLetter(request.getId(), owner, error);
+	}
+
+	/**
+	 * @return true if admission control turned the request away before it ran
+	 */
+	private static boolean rejected(OrchestrationData data) {
+		for (Event e : data.getStatus().getEvents()) {
+			if (OrchestrationErrorCode.ORCH2006.equals(e.getCode())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String lastError(OrchestrationData data) {
+		List<Event> events = data.getStatus().getEvents();
+		for (int i = events.size() - 1; i >= 0; i--) {
+			Event e = events.get(i);
+			if (InfoType.ERROR.equals(e.getInfoType())) {
+				return e.getMessage() + ". " + e.getDetails();
+			}
+		}
+		return STR_NOT_COMPLETED;
+	}
+
+}
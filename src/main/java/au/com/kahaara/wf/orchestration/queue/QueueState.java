@@ -0,0 +1,13 @@
+package au.com.kahaara.wf.orchestration.queue;
+
+/**
+ * The state of a request on the {@link WorkQueue}
+ */
+public enum QueueState {
+	/** Waiting to be leased once its available time has passed */
+	READY,
+	/** Leased by a worker. Becomes available again when the lease runs out */
+	LEASED,
+	/** Failed too many times or could not be read. Kept for someone to look at */
+	DEAD
+}
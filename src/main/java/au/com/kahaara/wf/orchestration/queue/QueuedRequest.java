@@ -0,0 +1,107 @@
+package au.com.kahaara.wf.orchestration.queue;
+
+/**
+ * An orchestration request waiting on the {@link WorkQueue}. The request data is held serialized by the
+ * {@link au.com.kahaara.wf.orchestration.serial.DataSerializer} so a queue only has to move bytes.
+ */
+public class QueuedRequest {
+
+	private String id;
+
+	private String workflowId;
+
+	private String ruleSetType;
+
+	private String customRules;
+
+	private byte[] requestData;
+
+	private int attempts;
+
+	private String lastError;
+
+	private long created;
+
+	/**
+	 * @return The id of the request on the queue
+	 */
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	/**
+	 * @return The workflow id the request runs as, which is also used to resume it from a checkpoint
+	 */
+	public String getWorkflowId() {
+		return workflowId;
+	}
+
+	public void setWorkflowId(String workflowId) {
+		this.workflowId = workflowId;
+	}
+
+	/**
+	 * @return The rule set type as created by {@link au.com.kahaara.wf.orchestration.serial.RuleSetTypes#toKey}
+	 */
+	public String getRuleSetType() {
+		return ruleSetType;
+	}
+
+	public void setRuleSetType(String ruleSetType) {
+		this.ruleSetType = ruleSetType;
+	}
+
+	public String getCustomRules() {
+		return customRules;
+	}
+
+	public void setCustomRules(String customRules) {
+		this.customRules = customRules;
+	}
+
+	public byte[] getRequestData() {
+		return requestData;
+	}
+
+	public void setRequestData(byte[] requestData) {
+		this.requestData = requestData;
+	}
+
+	/**
+	 * @return How many times the request has been leased, including the current lease
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	/**
+	 * @return Why the last attempt failed or null
+	 */
+	public String getLastError() {
+		return lastError;
+	}
+
+	public void setLastError(String lastError) {
+		this.lastError = lastError;
+	}
+
+	/**
+	 * @return When the request was submitted in epoch millis
+	 */
+	public long getCreated() {
+		return created;
+	}
+
+	public void setCreated(long created) {
+		this.created = created;
+	}
+
+}
@@ -0,0 +1,86 @@
+package au.com.kahaara.wf.orchestration.queue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A durable queue of orchestration requests. A worker leases requests for a visibility timeout, and if it
+ * does not acknowledge, retry or dead letter a request before the lease runs out the request can be leased
+ * again by any worker. The owner passed to each call is the worker holding the lease, so a worker whose
+ * lease has already run out cannot change a request another worker now holds.
+ */
+public interface WorkQueue {
+
+	/**
+	 * Add a request. It is available to lease straight away.
+	 *
+	 * @param request The request with its id set
+	 * @throws IOException If the request cannot be stored
+	 */
+	void submit(QueuedRequest request) throws IOException;
+
+	/**
+	 * Lease up to {@code max} available requests, oldest first where possible. The attempts of each leased
+	 * request are increased by one.
+	 *
+	 * @param owner The worker taking the lease
+	 * @param max The most requests to lease
+	 * @param visibilityMillis How long the lease lasts
+	 * @return The leased requests which may be empty
+	 * @throws IOException If the queue cannot be read
+	 */
+	List<QueuedRequest> lease(String owner, int max, long visibilityMillis) throws IOException;
+
+	/**
+	 * The request is done and is removed
+	 *
+	 * @param id The request id
+	 * @param owner The worker holding the lease
+	 * @return false if the worker no longer holds the lease
+	 * @throws IOException If the queue cannot be updated
+	 */
+	boolean ack(String id, String owner) throws IOException;
+
+	/**
+	 * Make the request available again after a delay
+	 *
+	 * @param id The request id
+	 * @param owner The worker holding the lease
+	 * @param delayMillis How long before the request can be leased again
+	 * @param error Why the attempt failed
+	 * @return false if the worker no longer holds the lease
+	 * @throws IOException If the queue cannot be updated
+	 */
+	boolean retry(String id, String owner, long delayMillis, String error) throws IOException;
+
+	/**
+	 * Make the request available again after a delay without counting the attempt, e.g. when the node was too
+	 * busy to run it
+	 *
+	 * @param id The request id
+	 * @param owner The worker holding the lease
+	 * @param delayMillis How long before the request can be leased again
+	 * @return false if the worker no longer holds the lease
+	 * @throws IOException If the queue cannot be updated
+	 */
+	boolean release(String id, String owner, long delayMillis) throws IOException;
+
+	/**
+	 * Park the request so it is not leased again
+	 *
+	 * @param id The request id
+	 * @param owner The worker holding the lease
+	 * @param error Why the request was given up on
+	 * @return false if the worker no longer holds the lease
+	 * @throws IOException If the queue cannot be updated
+	 */
+	boolean deadLetter(String id, String owner, String error) throws IOException;
+
+	/**
+	 * @return The number of requests in each state
+	 * @throws IOException If the queue cannot be read
+	 */
+	Map<QueueState, Integer> counts() throws IOException;
+
+}
@@ -0,0 +1,5 @@
+/**
+ * A durable queue of orchestration requests and the pool of workers that runs them.
+ * See {@link au.com.kahaara.wf.orchestration.queue.OrchestrationQueue}.
+ */
+package au.com.kahaara.wf.orchestration.queue;
@@ -0,0 +1,75 @@
+package au.com.kahaara.wf.orchestration.resilience;
+
+import au.com.kahaara.wf.orchestration.workflow.Bulkhead;
+
+import java.util.Objects;
+
+/**
+ * The bulkhead settings of a rule as read from its {@link Bulkhead} annotation, or created directly for
+ * rules that are added without one.
+ */
+public class BulkheadPolicy {
+
+	private final int maxConcurrent;
+
+	private final int maxWaiting;
+
+	private final long maxWaitMillis;
+
+	/**
+	 * See {@link Bulkhead} for what each value does
+	 */
+	public BulkheadPolicy(int maxConcurrent, int maxWaiting, long maxWaitMillis) {
+		this.maxConcurrent = Math.max(1, maxConcurrent);
+		this.maxWaiting = Math.max(0, maxWaiting);
+		this.maxWaitMillis = Math.max(0, maxWaitMillis);
+	}
+
+	/**
+	 * @param annotation The annotation
+	 * @return The policy or null if the annotation asks for no bulkhead
+	 */
+	public static BulkheadPolicy from(Bulkhead annotation) {
+		if (annotation == null || annotation.maxConcurrent() <= 0) {
+			return null;
+		}
+		return new BulkheadPolicy(annotation.maxConcurrent(), annotation.maxWaiting(), annotation.maxWaitMillis());
+	}
+
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+
+	public int getMaxWaiting() {
+		return maxWaiting;
+	}
+
+	public long getMaxWaitMillis() {
+		return maxWaitMillis;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof BulkheadPolicy)) {
+			return false;
+		}
+		BulkheadPolicy other = (BulkheadPolicy) o;
+		return maxConcurrent == other.maxConcurrent && maxWaiting == other.maxWaiting
+				&& maxWaitMillis == other.maxWaitMillis;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(maxConcurrent, maxWaiting, maxWaitMillis);
+	}
+
+	@Override
+	public String toString() {
+		return "BulkheadPolicy[maxConcurrent=" + maxConcurrent + ", maxWaiting=" + maxWaiting
+				+ ", maxWaitMillis=" + maxWaitMillis + "]";
+	}
+
+}
@@ -0,0 +1,103 @@
+package au.com.kahaara.wf.orchestration.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A circuit breaker for one rule. It opens after a number of failures in a row and rejects every call until
+ * the open time has passed. It is then half open and lets a limited number of probe calls through. A probe
+ * that succeeds closes the breaker and one that fails opens it again.
+ * <P>The methods are synchronized but only update a few fields, so a rejected call costs well under a
+ * microsecond.
+ */
+public class CircuitBreaker {
+
+	public enum State { CLOSED, OPEN, HALF_OPEN }
+
+	private final int failureThreshold;
+
+	private final long openNanos;
+
+	private final int probes;
+
+	private State state = State.CLOSED;
+
+	private int failures;
+
+	private int probesRunning;
+
+	private long openedAt;
+
+	/**
+	 * @param failureThreshold Failures in a row that open the breaker
+	 * @param openMillis How long the breaker stays open
+	 * @param probes How many probe calls can run at once while half open
+	 */
+	public CircuitBreaker(int failureThreshold, long openMillis, int probes) {
+		this.failureThreshold = failureThreshold;
+		this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+		this.probes = probes;
+	}
+
+	/**
+	 * Ask to make a call. Every call allowed must be followed by {@link #onSuccess()}, {@link #onFailure()} or,
+	 * when it was not made after all, {@link #release()}.
+	 *
+	 * @return false if the call is rejected
+	 */
+	public synchronized boolean tryAcquire() {
+		if (state == State.OPEN) {
+			if (System.nanoTime() - openedAt < openNanos) {
+				return false;
+			}
+			state = State.HALF_OPEN;
+			probesRunning = 0;
+		}
+		if (state == State.HALF_OPEN) {
+			if (probesRunning >= probes) {
+				return false;
+			}
+			probesRunning++;
+		}
+		return true;
+	}
+
+	/**
+	 * The call succeeded
+	 */
+	public synchronized void onSuccess() {
+		failures = 0;
+		if (state == State.HALF_OPEN) {
+			state = State.CLOSED;
+			probesRunning = 0;
+		}
+	}
+
+	/**
+	 * The call failed
+	 */
+	public synchronized void onFailure() {
+		failures++;
+		if (state == State.HALF_OPEN || failures >= failureThreshold) {
+			state = State.OPEN;
+			openedAt = System.nanoTime();
+			probesRunning = 0;
+		}
+	}
+
+	/**
+	 * The call allowed was not made, e.g. there was no thread to run it, so it says nothing about the dependency
+	 */
+	public synchronized void release() {
+		if (state == State.HALF_OPEN && probesRunning > 0) {
+			probesRunning--;
+		}
+	}
+
+	/**
+	 * @return The state. An open breaker whose open time has passed still shows as open until the next call
+	 */
+	public synchronized State getState() {
+		return state;
+	}
+
+}
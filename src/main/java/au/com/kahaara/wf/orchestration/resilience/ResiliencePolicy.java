@@ -0,0 +1,124 @@
+package au.com.kahaara.wf.orchestration.resilience;
+
+import au.com.kahaara.wf.orchestration.workflow.Resilience;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The resilience settings of a rule as read from its {@link Resilience} annotation, or created directly for
+ * rules that are added without one.
+ */
+public class ResiliencePolicy {
+
+	private final int maxAttempts;
+
+	private final long backoffMillis;
+
+	private final double backoffMultiplier;
+
+	private final long maxBackoffMillis;
+
+	private final double jitter;
+
+	private final long timeoutMillis;
+
+	private final int breakerFailures;
+
+	private final long breakerOpenMillis;
+
+	private final int breakerProbes;
+
+	private final Class<? extends Throwable>[] retryOn;
+
+	/**
+	 * See {@link Resilience} for what each value does
+	 */
+	@SafeVarargs
+	@SuppressWarnings("unchecked")
+	public ResiliencePolicy(int maxAttempts, long backoffMillis, double backoffMultiplier, long maxBackoffMillis,
+	                        double jitter, long timeoutMillis, int breakerFailures, long breakerOpenMillis,
+	                        int breakerProbes, Class<? extends Throwable>... retryOn) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.backoffMillis = Math.max(0, backoffMillis);
+		this.backoffMultiplier = Math.max(1.0, backoffMultiplier);
+		this.maxBackoffMillis = Math.max(this.backoffMillis, maxBackoffMillis);
+		this.jitter = Math.min(1.0, Math.max(0.0, jitter));
+		this.timeoutMillis = Math.max(0, timeoutMillis);
+		this.breakerFailures = Math.max(0, breakerFailures);
+		this.breakerOpenMillis = Math.max(0, breakerOpenMillis);
+		this.breakerProbes = Math.max(1, breakerProbes);
+		this.retryOn = retryOn == null || retryOn.length == 0 ? new Class[]{Exception.class} : retryOn.clone();
+	}
+
+	/**
+	 * @param annotation The annotation
+	 * @return The policy or null if the annotation asks for nothing
+	 */
+	public static ResiliencePolicy from(Resilience annotation) {
+		if (annotation == null || (annotation.maxAttempts() <= 1 && annotation.timeoutMillis() <= 0
+				&& annotation.breakerFailures() <= 0)) {
+			return null;
+		}
+		return new ResiliencePolicy(annotation.maxAttempts(), annotation.backoffMillis(),
+				annotation.backoffMultiplier(), annotation.maxBackoffMillis(), annotation.jitter(),
+				annotation.timeoutMillis(), annotation.breakerFailures(), annotation.breakerOpenMillis(),
+				annotation.breakerProbes(), annotation.retryOn());
+	}
+
+	/**
+	 * The delay before the given retry, with jitter taken off
+	 *
+	 * @param attempt The attempt that has just failed starting at 1
+	 * @return The delay in millis
+	 */
+	public long backoff(int attempt) {
+		double delay = Math.min(maxBackoffMillis, backoffMillis * Math.pow(backoffMultiplier, attempt - 1.0));
+		return (long) (delay * (1.0 - jitter * ThreadLocalRandom.current().nextDouble()));
+	}
+
+	/**
+	 * @param t The exception thrown by the rule
+	 * @return true if it is one of the exceptions to retry on
+	 */
+	public boolean isRetryable(Throwable t) {
+		for (Class<? extends Throwable> c : retryOn) {
+			if (c.isInstance(t)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public long getTimeoutMillis() {
+		return timeoutMillis;
+	}
+
+	public boolean hasBreaker() {
+		return breakerFailures > 0;
+	}
+
+	public int getBreakerFailures() {
+		return breakerFailures;
+	}
+
+	public long getBreakerOpenMillis() {
+		return breakerOpenMillis;
+	}
+
+	public int getBreakerProbes() {
+		return breakerProbes;
+	}
+
+	@Override
+	public String toString() {
+		return "ResiliencePolicy[maxAttempts=" + maxAttempts + ", backoffMillis=" + backoffMillis
+				+ ", timeoutMillis=" + timeoutMillis + ", breakerFailures=" + breakerFailures
+				+ ", retryOn=" + Arrays.toString(retryOn) + "]";
+	}
+
+}
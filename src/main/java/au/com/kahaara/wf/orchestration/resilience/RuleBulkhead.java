@@ -0,0 +1,89 @@
+package au.com.kahaara.wf.orchestration.resilience;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The places for running one rule. A semaphore holds a place for each workflow that can run the rule at once
+ * and a counter limits how many more can wait for one.
+ */
+public class RuleBulkhead {
+
+	private final BulkheadPolicy policy;
+
+	private final Semaphore places;
+
+	private final AtomicInteger waiting = new AtomicInteger();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * @param policy The bulkhead settings
+	 */
+	public RuleBulkhead(BulkheadPolicy policy) {
+		this.policy = policy;
+		this.places = new Semaphore(policy.getMaxConcurrent(), true);
+	}
+
+	/**
+	 * Take a place to run the rule. Every call that returns true must be followed by {@link #exit()}.
+	 *
+	 * @param maxWaitMillis The longest to wait, which is already bounded by the workflow deadline
+	 * @return false if the rule is full and there was no room or time to wait
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public boolean tryEnter(long maxWaitMillis) throws InterruptedException {
+		if (places.tryAcquire()) {
+			return true;
+		}
+		long wait = Math.min(maxWaitMillis, policy.getMaxWaitMillis());
+		if (wait > 0 && waiting.incrementAndGet() <= policy.getMaxWaiting()) {
+			try {
+				if (places.tryAcquire(wait, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			} finally {
+				waiting.decrementAndGet();
+			}
+		} else if (wait > 0) {
+			waiting.decrementAndGet();
+		}
+		rejected.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Give back the place taken by {@link #tryEnter(long)}
+	 */
+	public void exit() {
+		places.release();
+	}
+
+	/**
+	 * @return How many workflows are running the rule
+	 */
+	public int getInUse() {
+		return policy.getMaxConcurrent() - places.availablePermits();
+	}
+
+	/**
+	 * @return How many workflows are waiting for a place
+	 */
+	public int getWaiting() {
+		return Math.max(0, Math.min(waiting.get(), policy.getMaxWaiting()));
+	}
+
+	/**
+	 * @return How many times the rule has been full
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	public BulkheadPolicy getPolicy() {
+		return policy;
+	}
+
+}
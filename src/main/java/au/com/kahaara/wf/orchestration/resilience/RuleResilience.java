@@ -0,0 +1,377 @@
+package au.com.kahaara.wf.orchestration.resilience;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.event.EventType;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.Rule;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.tracing.Span;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies the {@link ResiliencePolicy} of a rule when the {@link au.com.kahaara.wf.orchestration.rules.RuleRunner}
+ * runs it. Each attempt is retried with an exponential backoff while the exception is retryable and attempts are
+ * left, and is abandoned if it runs past its timeout. A circuit breaker per rule rejects calls straight away while
+ * the dependency behind the rule is failing, so requests fail fast and follow the false path of the rule
+ * instead of each one waiting for the dependency to time out.
+ * <P>A rule with a {@link BulkheadPolicy} has to take a place in its {@link RuleBulkhead} before it runs. When it
+ * can't a warning {@link OrchestrationErrorCode#ORCH2007} is recorded and the rule fails. When the policy of the
+ * rule changes it is given a new bulkhead and the places taken in the old one are given back to it.
+ * <P>Retries stop at the deadline of the workflow and neither the backoff nor the timeout of an attempt goes past it.
+ * <P>An attempt that has a timeout or may be retried works on an {@link OrchestrationData#newOverlay() overlay} of
+ * the request. What it does is put into the request when it succeeds or is the last attempt, and is dropped when
+ * it is retried, so each retry starts from the request as it was. An attempt with a timeout runs on a bounded pool
+ * of threads. When it times out the overlay is abandoned so the attempt, which may carry on running until the rule
+ * notices it has been interrupted, can no longer change the request. When every thread of the pool is busy a
+ * warning {@link OrchestrationErrorCode#ORCH2008} is recorded and the rule fails straight away, without a retry or
+ * a failure counted against the breaker, as it says nothing about the dependency behind the rule.
+ * <P>Every outcome is recorded as an event on the request status
+ * <ul>
+ *     <li>{@link OrchestrationErrorCode#ORCH2001} - A warning for each retry</li>
+ *     <li>{@link OrchestrationErrorCode#ORCH2002} - A warning for each attempt that timed out</li>
+ *     <li>{@link OrchestrationErrorCode#ORCH2003} - A warning when the breaker rejects the rule</li>
+ *     <li>{@link OrchestrationErrorCode#ORCH2004} - An error when the rule has failed for good</li>
+ *     <li>{@link OrchestrationErrorCode#ORCH2008} - A warning when there is no thread free to time an attempt</li>
+ * </ul>
+ * </P>
+ */
+@Component
+public class RuleResilience implements DisposableBean {
+
+	public static final Logger log = LoggerFactory.getLogger(RuleResilience.class);
+
+	/**
+	 * The default number of threads running attempts with a timeout
+	 */
+	public static final int DEFAULT_TIMEOUT_THREADS = 64;
+
+	private static final String SPAN_ATTEMPT = "attempt";
+
+	/**
+	 * One attempt at running the rule
+	 */
+	public interface Attempt {
+
+		/**
+		 * @param request The request to run the rule with. An overlay of the request when the attempt is timed
+		 * @return The rule result
+		 * @throws RulesException If the rule could not be run
+		 */
+		RuleResult run(OrchestrationData request) throws RulesException;
+	}
+
+	private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+	private final Map<String, RuleBulkhead> bulkheads = new ConcurrentHashMap<>();
+
+	private final AtomicInteger threadCount = new AtomicInteger();
+
+	private final int timeoutThreads;
+
+	/** Only used for attempts with a timeout. Created when first needed */
+	private volatile ExecutorService executor;
+
+	/**
+	 * Create the resilience with the default number of threads for timed attempts
+	 */
+	public RuleResilience() {
+		this(DEFAULT_TIMEOUT_THREADS);
+	}
+
+	/**
+	 * Create the resilience with a bound on the attempts with a timeout running at once
+	 *
+	 * @param timeoutThreads The most threads running attempts with a timeout, including the ones that timed out
+	 *                       and have not stopped yet
+	 */
+	public RuleResilience(int timeoutThreads) {
+		this.timeoutThreads = Math.max(1, timeoutThreads);
+	}
+
+	/**
+	 * The bean constructor used by spring-boot
+	 *
+	 * @param config The orchestration configuration
+	 */
+	@Autowired
+	public RuleResilience(OrchestrationConfig config) {
+		this(config.getResilienceTimeoutThreads());
+	}
+
+	/**
+	 * Run the rule under its policy
+	 *
+	 * @param rule The rule
+	 * @param policy The rule's policy
+	 * @param request The orchestration data to record events on
+	 * @param attempt Runs the rule once
+	 * @return The rule result, or a failed result if the rule could not be run successfully
+	 * @throws RulesException If the thread is interrupted while waiting
+	 */
+	public RuleResult run(Rule rule, ResiliencePolicy policy, OrchestrationData request, Attempt attempt)
+			throws RulesException {
+
+		String name = rule.getRuleType().getRuleName();
+		CircuitBreaker breaker = policy.hasBreaker() ? getBreaker(name, policy) : null;
+		for (int attemptNo = 1; ; attemptNo++) {
+			if (breaker != null && !breaker.tryAcquire()) {
+				log.debug("Circuit breaker for rule {} is open", name);
+				request.getStatus().addEvent(InfoType.WARNING, EventType.RULE, OrchestrationErrorCode.ORCH2003,
+						"Circuit breaker for rule " + name + " is open");
+				return failed("Circuit breaker open");
+			}
+
+			OrchestrationData overlay = isolated(policy) ? request.newOverlay() : request;
+			boolean abandoned = false;
+			Throwable failure;
+			try {
+				RuleResult result = runAttempt(name, policy, request, overlay, attempt);
+				if (result == null) {
+					if (breaker != null) {
+						breaker.release();
+					}
+					return failed("No thread free to time the rule");
+				}
+				if (overlay != request) {
+					request.commitOverlay(overlay);
+				}
+				if (breaker != null) {
+					breaker.onSuccess();
+				}
+				return result;
+			} catch (TimeoutException e) {
+				abandoned = true;
+				failure = e;
+				request.getStatus().addEvent(InfoType.WARNING, EventType.RULE, OrchestrationErrorCode.ORCH2002,
+						"Rule " + name + " attempt " + attemptNo + " timed out after " + policy.getTimeoutMillis() + "ms");
+			} catch (RulesException | RuntimeException e) {
+				if (Thread.currentThread().isInterrupted()) {
+					if (overlay != request) {
+						request.abandonOverlay(overlay);
+					}
+					throw e;
+				}
+				failure = e.getCause() == null ? e : e.getCause();
+			}
+			if (breaker != null) {
+				breaker.onFailure();
+			}
+
+			String message = failure.getMessage() == null ? failure.toString() : failure.getMessage();
+			boolean last = attemptNo >= policy.getMaxAttempts() || !policy.isRetryable(failure)
+					|| request.isDeadlineExpired();
+			if (overlay != request && !abandoned) {
+				// What a failed attempt did is only kept when there is no retry to start from the request again
+				if (last) {
+					request.commitOverlay(overlay);
+				} else {
+					request.abandonOverlay(overlay);
+				}
+			}
+			if (last) {
+				log.warn("Rule {} failed after {} attempts. {}", name, attemptNo, message);
+				request.getStatus().addEvent(InfoType.ERROR, EventType.EXCEPTION, OrchestrationErrorCode.ORCH2004,
+						"Rule " + name + " failed after " + attemptNo + " attempts", message);
+				return failed(message);
+			}
+
+			long delay = Math.min(policy.backoff(attemptNo), request.getRemainingMillis());
+			log.debug("Rule {} attempt {} failed. Retrying in {}ms. {}", name, attemptNo, delay, message);
+			request.getStatus().addEvent(InfoType.WARNING, EventType.RULE, OrchestrationErrorCode.ORCH2001,
+					"Rule " + name + " attempt " + attemptNo + " failed. Retrying in " + delay + "ms", message);
+			sleep(delay);
+		}
+	}
+
+	/**
+	 * Take a place in the bulkhead of the rule. The bulkhead is replaced when the policy of the rule changes, so
+	 * the place must be given back with {@link RuleBulkhead#exit()} on the bulkhead returned.
+	 *
+	 * @param rule The rule
+	 * @param policy The rule's bulkhead policy
+	 * @param request The orchestration data to record the event on
+	 * @return The bulkhead a place was taken in or null if the rule is full
+	 * @throws RulesException If the thread is interrupted while waiting
+	 */
+	public RuleBulkhead enterBulkhead(Rule rule, BulkheadPolicy policy, OrchestrationData request)
+			throws RulesException {
+		String name = rule.getRuleType().getRuleName();
+		RuleBulkhead bulkhead = bulkheads.compute(name.toUpperCase(Locale.ROOT),
+				(k, b) -> b != null && b.getPolicy().equals(policy) ? b : new RuleBulkhead(policy));
+		try {
+			if (bulkhead.tryEnter(request.getRemainingMillis())) {
+				return bulkhead;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RulesException("Interrupted while waiting to run rule " + name, e);
+		}
+		log.debug("Bulkhead for rule {} is full", name);
+		request.getStatus().addEvent(InfoType.WARNING, EventType.RULE, OrchestrationErrorCode.ORCH2007,
+				"Rule " + name + " is running " + bulkhead.getInUse() + " of " + policy.getMaxConcurrent() + " at once");
+		return null;
+	}
+
+	/**
+	 * @param ruleName The rule type name
+	 * @return The bulkhead of the rule, to see how full it is, or null if it has none yet
+	 */
+	public RuleBulkhead getBulkhead(String ruleName) {
+		return bulkheads.get(ruleName.toUpperCase(Locale.ROOT));
+	}
+
+	/**
+	 * @param ruleName The rule type name
+	 * @return The state of the rule's breaker or null if it has none yet
+	 */
+	public CircuitBreaker.State getBreakerState(String ruleName) {
+		CircuitBreaker b = breakers.get(ruleName.toUpperCase(Locale.ROOT));
+		return b == null ? null : b.getState();
+	}
+
+	@Override
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	private CircuitBreaker getBreaker(String name, ResiliencePolicy policy) {
+		return breakers.computeIfAbsent(name.toUpperCase(Locale.ROOT), k -> new CircuitBreaker(policy.getBreakerFailures(),
+				policy.getBreakerOpenMillis(), policy.getBreakerProbes()));
+	}
+
+	/**
+	 * @return true if the attempts of the policy work on an overlay of the request
+	 */
+	private static boolean isolated(ResiliencePolicy policy) {
+		return policy.getTimeoutMillis() > 0 || policy.getMaxAttempts() > 1;
+	}
+
+	/**
+	 * Run one attempt on the overlay, or the request itself when it is not isolated. The caller commits or
+	 * abandons the overlay except when the attempt times out or is interrupted, when it has been abandoned already.
+	 *
+	 * @return The rule result or null if there was no thread free to time the attempt
+	 */
+	private RuleResult runAttempt(String name, ResiliencePolicy policy, OrchestrationData request,
+	                              OrchestrationData overlay, Attempt attempt) throws RulesException, TimeoutException {
+		if (policy.getTimeoutMillis() <= 0) {
+			return attempt.run(overlay);
+		}
+		// Don't wait past the deadline of the workflow
+		long timeout = Math.min(policy.getTimeoutMillis(), request.getRemainingMillis());
+		Span parentSpan = request.getSpan();
+		Future<RuleResult> future;
+		try {
+			future = executor().submit(() -> runOverlay(attempt, overlay, parentSpan));
+		} catch (RejectedExecutionException e) {
+			log.debug("No thread free to time rule {}", name);
+			request.abandonOverlay(overlay);
+			request.getStatus().addEvent(InfoType.WARNING, EventType.RULE, OrchestrationErrorCode.ORCH2008,
+					"Rule " + name + " could not be timed. All " + timeoutThreads + " threads are busy");
+			return null;
+		}
+		try {
+			return future.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			request.abandonOverlay(overlay);
+			future.cancel(true);
+			throw e;
+		} catch (InterruptedException e) {
+			request.abandonOverlay(overlay);
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new RulesException("Interrupted while waiting for the rule", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RulesException) {
+				throw (RulesException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RulesException(cause.getMessage(), cause);
+		}
+	}
+
+	/**
+	 * Run an attempt on its overlay with a span of its own, as the span of the rule is ended by the calling thread
+	 * when the attempt times out
+	 */
+	private static RuleResult runOverlay(Attempt attempt, OrchestrationData overlay, Span parentSpan)
+			throws RulesException {
+		Span span = parentSpan.startChild(SPAN_ATTEMPT);
+		overlay.setSpan(span);
+		try {
+			return attempt.run(overlay);
+		} catch (RulesException | RuntimeException e) {
+			span.recordException(e);
+			throw e;
+		} finally {
+			span.end();
+			overlay.setSpan(Span.NOOP);
+		}
+	}
+
+	/**
+	 * The threads are created as they are needed, up to the bound, and attempts are rejected rather than queued
+	 * once they are all busy as a queued attempt would use up its timeout waiting
+	 */
+	private ExecutorService executor() {
+		if (executor == null) {
+			synchronized (this) {
+				if (executor == null) {
+					ThreadPoolExecutor pool = new ThreadPoolExecutor(timeoutThreads, timeoutThreads, 60L,
+							TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+						Thread t = new Thread(r, "orchestration-rule-timeout-" + threadCount.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}, new ThreadPoolExecutor.AbortPolicy());
+					pool.allowCoreThreadTimeOut(true);
+					executor = pool;
+				}
+			}
+		}
+		return executor;
+	}
+
+	private static void sleep(long millis) throws RulesException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RulesException("Interrupted while waiting to retry the rule", e);
+		}
+	}
+
+	private static RuleResult failed(String info) {
+		RuleResult result = new RuleResult(false);
+		result.setResultInfo(info);
+		return result;
+	}
+
+}
@@ -0,0 +1,5 @@
+/**
+ * Retry, timeout, circuit breaker and bulkhead policies for rules. See
+ * {@link au.com.kahaara.wf.orchestration.resilience.RuleResilience}.
+ */
+package au.com.kahaara.wf.orchestration.resilience;
@@ -1,5 +1,10 @@
 package au.com.kahaara.wf.orchestration.rules;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
 /**
  * A rule is a RuleType. Each rule is a stage in the workflow that can return
  * a true or false result from processing the request. On return then the true 
@@ -13,6 +18,10 @@ package au.com.kahaara.wf.orchestration.rules;
  * many times and thus allowing the workflow control to select the correct rule if multiple
  * definitions</p>
  *  e.g: <code>WorkflowRule?RuleOnTrue:RuleOnFalse, 1.RuleOnTrue?2.RuleOnTrue, RuleOnFalse,2.RuleOnTrue,1.NextRule, etc</code>
+ * <p>A rule can also branch on the outcome label of its {@link RuleResult} with a table of label:rule pairs, where
+ * * is any other label. A result without a label, or with one the table does not have, follows the true or false
+ * condition</p>
+ *  e.g: <code>Decide{APPROVE:Approve,REFER:Refer,*:END}, Approve, Refer</code>
  * 
  * @author excdsn
  *
@@ -36,6 +45,20 @@ public class Rule {
 	 * The false condition to follow if set
 	 */
 	private Rule onFalse = null;
+	/**
+	 * The rules to follow for the outcome labels, by upper case label, if any. A null rule follows the
+	 * true or false condition
+	 */
+	private Map<String, Rule> onOutcome = null;
+	/**
+	 * The rules to follow for the outcome labels when the rule fails, by upper case label, where they differ
+	 * from those of {@link #onOutcome}. Set on the inlined copies of outcomes that end a sub-workflow
+	 */
+	private Map<String, Rule> onOutcomeFailed = null;
+	/**
+	 * The label in the outcome table for any other label
+	 */
+	public static final String ANY_OUTCOME = "*";
 	
 	public Rule(RuleType crt) {
 		this.ruleType = crt;
@@ -101,12 +124,83 @@ public class Rule {
 		this.onFalse = onFalse;
 	}
 	
+	/**
+	 * Get the outcome table
+	 *
+	 * @return The rules to follow by upper case outcome label. Empty if the rule has no table
+	 */
+	public Map<String, Rule> getOnOutcome() {
+		return onOutcome == null ? Collections.emptyMap() : Collections.unmodifiableMap(onOutcome);
+	}
+
+	/**
+	 * @param outcome The outcome label or {@link #ANY_OUTCOME}
+	 * @param rule The rule to follow or null to follow the true or false condition
+	 */
+	void setOnOutcome(String outcome, Rule rule) {
+		if (onOutcome == null) {
+			onOutcome = new HashMap<>();
+		}
+		onOutcome.put(outcome.toUpperCase(Locale.ROOT), rule);
+	}
+
+	/**
+	 * @return The rules to follow by upper case outcome label when the rule fails, where they differ from
+	 * {@link #getOnOutcome()}. Empty if there are none
+	 */
+	Map<String, Rule> getOnOutcomeFailed() {
+		return onOutcomeFailed == null ? Collections.emptyMap() : Collections.unmodifiableMap(onOutcomeFailed);
+	}
+
+	/**
+	 * @param outcome The upper case outcome label or {@link #ANY_OUTCOME}
+	 * @param rule The rule to follow for the label when the rule fails
+	 */
+	void setOnOutcomeFailed(String outcome, Rule rule) {
+		if (onOutcomeFailed == null) {
+			onOutcomeFailed = new HashMap<>();
+		}
+		onOutcomeFailed.put(outcome.toUpperCase(Locale.ROOT), rule);
+	}
+
+	/**
+	 * Get the rule to run after this one
+	 *
+	 * @param result The result of this rule
+	 * @return The rule for its outcome label if the table has one, otherwise the true or false condition
+	 */
+	public Rule getNext(RuleResult result) {
+		String outcome = result.getOutcome();
+		if (onOutcome != null && outcome != null) {
+			String label = outcome;
+			if (!onOutcome.containsKey(label)) {
+				label = outcome.toUpperCase(Locale.ROOT);
+				if (!onOutcome.containsKey(label)) {
+					label = ANY_OUTCOME;
+				}
+			}
+			Rule next = onOutcome.get(label);
+			if (!result.isOk() && onOutcomeFailed != null && onOutcomeFailed.containsKey(label)) {
+				next = onOutcomeFailed.get(label);
+			}
+			if (next != null) {
+				return next;
+			}
+		}
+		return result.isOk() ? onTrue : onFalse;
+	}
+
 	@Override
 	public String toString() {
 		String onTrueStr = this.onTrue != null ? this.onTrue.getRuleName() : "null";
 		String onFalseStr = this.onFalse != null ? this.onFalse.getRuleName() : "null";
 
-		return "[rule:"+this.ruleName+",pass:"+onTrueStr+",fail:"+onFalseStr+"]";
+		StringBuilder outcomes = new StringBuilder();
+		if (this.onOutcome != null) {
+			this.onOutcome.forEach((label, rule) -> outcomes.append(",").append(label).append(":")
+					.append(rule != null ? rule.getRuleName() : "null"));
+		}
+		return "[rule:"+this.ruleName+",pass:"+onTrueStr+",fail:"+onFalseStr+outcomes+"]";
 	}
 
 }
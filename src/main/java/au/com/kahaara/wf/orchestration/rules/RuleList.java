@@ -10,8 +10,14 @@ import java.util.Set;
 
 import au.com.kahaara.wf.OrchestrationConfig;
 import au.com.kahaara.wf.orchestration.exception.WorkflowException;
+import au.com.kahaara.wf.orchestration.cache.MemoizePolicy;
+import au.com.kahaara.wf.orchestration.resilience.BulkheadPolicy;
+import au.com.kahaara.wf.orchestration.resilience.ResiliencePolicy;
+import au.com.kahaara.wf.orchestration.subflow.SubWorkflowRegistry;
+import au.com.kahaara.wf.orchestration.subflow.SubWorkflowResolver;
 import au.com.kahaara.wf.orchestration.utils.BeanLoader;
 import au.com.kahaara.wf.orchestration.utils.JavaClassLoader;
+import au.com.kahaara.wf.orchestration.workflow.TransactionPolicy;
 import au.com.kahaara.wf.orchestration.workflow.Workflow;
 import au.com.kahaara.wf.orchestration.workflow.WorkflowMethod;
 import org.slf4j.Logger;
@@ -78,6 +84,11 @@ public class RuleList {
 	 */
 	ClassPathScanningCandidateComponentProvider scanner;
 
+	/**
+	 * Finds the sub-workflows inlined in rule sets as @Name. Set by the {@link SubWorkflowRegistry}
+	 */
+	private SubWorkflowResolver subWorkflowResolver;
+
 	/**
 	 * The bean constructor used by spring-boot
 	 *
@@ -98,6 +109,20 @@ public class RuleList {
 		return rules;
 	}
 
+	/**
+	 * @return What finds the sub-workflows inlined in rule sets or null if there is none
+	 */
+	public SubWorkflowResolver getSubWorkflowResolver() {
+		return subWorkflowResolver;
+	}
+
+	/**
+	 * @param subWorkflowResolver What finds the sub-workflows inlined in rule sets
+	 */
+	public void setSubWorkflowResolver(SubWorkflowResolver subWorkflowResolver) {
+		this.subWorkflowResolver = subWorkflowResolver;
+	}
+
 	/**
 	 * Perform any post construction activities
 	 *
@@ -294,10 +319,16 @@ public class RuleList {
 	 * @param o The object to examine
 	 * @param classRuleName The rulename from the Workflow annotation
 	 * @return A map of either a single rule or multiple rules.
+	 * @throws WorkflowException If a rule has a timeout and a transaction policy
 	 */
-	private Map<String, RuleType> getRuleMethods(Object o, String classRuleName) {
+	private Map<String, RuleType> getRuleMethods(Object o, String classRuleName) throws WorkflowException {
 
 		Class<?> clazz = o.getClass();
+		Workflow workflow = clazz.getAnnotation(Workflow.class);
+		ResiliencePolicy classPolicy = workflow == null ? null : ResiliencePolicy.from(workflow.resilience());
+		BulkheadPolicy classBulkhead = workflow == null ? null : BulkheadPolicy.from(workflow.bulkhead());
+		MemoizePolicy classMemoize = workflow == null ? null : MemoizePolicy.from(workflow.memoize());
+		TransactionPolicy classTransaction = workflow == null ? TransactionPolicy.DEFAULT : workflow.transaction();
 		Map<String, RuleType> methodMap = new HashMap<>();
 		for (Method method : clazz.getDeclaredMethods()) {
 			if (method.isAnnotationPresent(WorkflowMethod.class)) {
@@ -305,9 +336,23 @@ public class RuleList {
 				WorkflowMethod[] keys = method.getAnnotationsByType(WorkflowMethod.class);
 				String key = keys[0].rulename();
 				RuleType rt = new RuleType(key, o, method);
+				ResiliencePolicy methodPolicy = ResiliencePolicy.from(keys[0].resilience());
+				rt.setPolicy(methodPolicy == null ? classPolicy : methodPolicy);
+				BulkheadPolicy methodBulkhead = BulkheadPolicy.from(keys[0].bulkhead());
+				rt.setBulkhead(methodBulkhead == null ? classBulkhead : methodBulkhead);
+				MemoizePolicy methodMemoize = MemoizePolicy.from(keys[0].memoize());
+				rt.setMemoize(methodMemoize == null ? classMemoize : methodMemoize);
+				TransactionPolicy methodTransaction = keys[0].transaction();
+				rt.setTransaction(TransactionPolicy.DEFAULT.equals(methodTransaction) ? classTransaction : methodTransaction);
+				checkTimedTransaction(rt);
 				methodMap.put(key, rt);
 			} else if (method.getName().equals("runRule")) {
 				RuleType rt = new RuleType(classRuleName, o, method);
+				rt.setPolicy(classPolicy);
+				rt.setBulkhead(classBulkhead);
+				rt.setMemoize(classMemoize);
+				rt.setTransaction(classTransaction);
+				checkTimedTransaction(rt);
 				methodMap.put(classRuleName, rt);
 			}
 		}
@@ -315,6 +360,24 @@ public class RuleList {
 		return methodMap;
 	}
 
+	/**
+	 * A rule with a resilience timeout runs its attempts on a thread of the timeout pool, which does not have the
+	 * transaction spring binds to the workflow thread. A transaction started around the attempt would be on the
+	 * wrong thread, and one started on the timeout thread would carry on after an abandoned attempt, so the two
+	 * are not allowed together. NONE is, as it asks for nothing.
+	 *
+	 * @param rt The rule with its policies set
+	 * @throws WorkflowException If it has a timeout and a policy that asks for a transaction
+	 */
+	private void checkTimedTransaction(RuleType rt) throws WorkflowException {
+		TransactionPolicy transaction = rt.getTransaction();
+		if (rt.getPolicy() != null && rt.getPolicy().getTimeoutMillis() > 0 && transaction != null
+				&& !TransactionPolicy.DEFAULT.equals(transaction) && !TransactionPolicy.NONE.equals(transaction)) {
+			throw new WorkflowException("Rule " + rt.getRuleName() + " from class " + rt.getRuleClass()
+					+ " has a resilience timeout so it cannot run in a " + transaction + " transaction");
+		}
+	}
+
 	private boolean workflowAnnotation(Object object) {
 		if (Objects.isNull(object)) {
 			return false;
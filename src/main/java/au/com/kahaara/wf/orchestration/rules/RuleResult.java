@@ -6,7 +6,8 @@ import java.time.OffsetDateTime;
 /**
  * Each rule must return a RuleResult object. Currently, it contains a boolean true/false flag which is used
  * by the orchestration workflow control and a string that can return information about the processing of
- * the rule
+ * the rule. It can also carry an outcome label, e.g. APPROVE, for a rule with an outcome table in the rule
+ * set to branch on. See {@link Rule}
  * 
  * @author excdsn
  *
@@ -27,11 +28,36 @@ public class RuleResult {
 	 * Used for sub rules if required
 	 */
 	private String resultInfo = "";
+
+	/**
+	 * The outcome label a rule with an outcome table branches on
+	 */
+	private String outcome = null;
 	
 	/**
 	 * Used for the rule's start time in assessment if required;
 	 */
 	private Date startTime = null;
+
+	/**
+	 * Set by the orchestration when the rule has finished running
+	 */
+	private Date endTime = null;
+
+	/**
+	 * Set by the orchestration to the elapsed time of the rule in nanoseconds
+	 */
+	private long durationNanos = 0;
+
+	/**
+	 * Set by the orchestration to the CPU time used by the rule thread in nanoseconds or -1 if not measured
+	 */
+	private long cpuTimeNanos = -1;
+
+	/**
+	 * Set by the orchestration to the bytes allocated by the rule thread or -1 if not measured
+	 */
+	private long allocatedBytes = -1;
 	
 	public RuleResult() {
 		this(false);
@@ -42,6 +68,15 @@ public class RuleResult {
 		this.ok = ok;
 	}
 
+	/**
+	 * @param ok The flag followed when the outcome is not in the outcome table of the rule
+	 * @param outcome The outcome label
+	 */
+	public RuleResult(boolean ok, String outcome) {
+		this(ok);
+		this.outcome = outcome;
+	}
+
 	/**
 	 * @return the ok
 	 */
@@ -99,6 +134,24 @@ public class RuleResult {
 		this.resultInfo = resultInfo;
 	}
 
+	/**
+	 * Get the outcome label
+	 *
+	 * @return The label or null if there is none
+	 */
+	public String getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * Set the outcome label for a rule with an outcome table to branch on
+	 *
+	 * @param outcome The label, e.g. APPROVE
+	 */
+	public void setOutcome(String outcome) {
+		this.outcome = outcome;
+	}
+
 	public Date getStartTime() {
 		return startTime;
 	}
@@ -107,4 +160,77 @@ public class RuleResult {
 		this.startTime = startTime;
 	}
 
+	/**
+	 * Get the time the rule finished running
+	 *
+	 * @return The end time or null if not run by the orchestration
+	 */
+	public Date getEndTime() {
+		return endTime;
+	}
+
+	/**
+	 * Used internally by the orchestration once the rule has finished running
+	 *
+	 * @param endTime The end time
+	 */
+	public void setEndTime(Date endTime) {
+		this.endTime = endTime;
+	}
+
+	/**
+	 * Get the elapsed wall time of the rule as measured by the orchestration
+	 *
+	 * @return The elapsed time in nanoseconds
+	 */
+	public long getDurationNanos() {
+		return durationNanos;
+	}
+
+	/**
+	 * Used internally by the orchestration once the rule has finished running
+	 *
+	 * @param durationNanos The elapsed time in nanoseconds
+	 */
+	public void setDurationNanos(long durationNanos) {
+		this.durationNanos = durationNanos;
+	}
+
+	/**
+	 * Get the CPU time used by the thread running the rule. Any work the rule hands off to other
+	 * threads is not included.
+	 *
+	 * @return The CPU time in nanoseconds or -1 if not measured
+	 */
+	public long getCpuTimeNanos() {
+		return cpuTimeNanos;
+	}
+
+	/**
+	 * Used internally by the orchestration once the rule has finished running
+	 *
+	 * @param cpuTimeNanos The CPU time in nanoseconds
+	 */
+	public void setCpuTimeNanos(long cpuTimeNanos) {
+		this.cpuTimeNanos = cpuTimeNanos;
+	}
+
+	/**
+	 * Get the heap allocated by the thread running the rule
+	 *
+	 * @return The allocated bytes or -1 if not measured
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * Used internally by the orchestration once the rule has finished running
+	 *
+	 * @param allocatedBytes The allocated bytes
+	 */
+	public void setAllocatedBytes(long allocatedBytes) {
+		this.allocatedBytes = allocatedBytes;
+	}
+
 }
@@ -1,21 +1,38 @@
 package au.com.kahaara.wf.orchestration.rules;
 
 import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.cache.MemoizePolicy;
+import au.com.kahaara.wf.orchestration.cache.RuleMemoizer;
 import au.com.kahaara.wf.orchestration.OrchestrationMode;
 import au.com.kahaara.wf.orchestration.event.EventType;
 import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.jfr.RuleExecutionEvent;
+import au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics;
+import au.com.kahaara.wf.orchestration.metrics.Outcome;
+import au.com.kahaara.wf.orchestration.metrics.ResourceAccounting;
+import au.com.kahaara.wf.orchestration.resilience.BulkheadPolicy;
+import au.com.kahaara.wf.orchestration.resilience.RuleBulkhead;
+import au.com.kahaara.wf.orchestration.resilience.ResiliencePolicy;
+import au.com.kahaara.wf.orchestration.resilience.RuleResilience;
+import au.com.kahaara.wf.orchestration.tracing.Span;
+import au.com.kahaara.wf.orchestration.transaction.RuleTransactions;
 import au.com.kahaara.wf.orchestration.utils.Helper;
+import au.com.kahaara.wf.orchestration.workflow.TransactionPolicy;
 import au.com.kahaara.wf.orchestration.workflow.Workflow;
 import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
 import au.com.kahaara.wf.orchestration.OrchestrationData;
 import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This runs an individual rule. If there is a RuleInfo object available from a method annotated with
@@ -29,6 +46,18 @@ import java.util.Arrays;
  *     <li>From addCreatedResponseData - Make sure any new data to be created does not exist in the response data prior
  *     to running this rule</li>
  * </ol>
+ * <P>Every rule run in normal mode is timed and recorded against the rule name and outcome in
+ * {@link OrchestrationMetrics}, along with the CPU time and bytes allocated on the running thread as measured by
+ * {@link ResourceAccounting}. Attempts run with a timeout are measured on the thread of the timeout pool and
+ * added in, except for the work an abandoned attempt does after the rule has finished. If the request is being traced the rule also gets its own child {@link Span} and
+ * a {@link RuleExecutionEvent} is committed when flight recorder is recording it.</P>
+ * <P>A rule with a {@link ResiliencePolicy} is run through {@link RuleResilience} which retries it, times it out
+ * and fails it fast while its circuit breaker is open. The timing covers all the attempts.</P>
+ * <P>A rule with a {@link BulkheadPolicy} only runs if it can take a place in its bulkhead. Otherwise it fails without
+ * running and the time spent waiting is recorded with the REJECTED outcome.</P>
+ * <P>A rule with a {@link MemoizePolicy} is only run when {@link RuleMemoizer} has no result for its inputs.</P>
+ * <P>A rule with a {@link TransactionPolicy} other than DEFAULT is run in the transaction it asks for by
+ * {@link RuleTransactions}, once it has a place in its bulkhead.</P>
  * 
  * @author excdsn
  *
@@ -43,6 +72,87 @@ public class RuleRunner {
 
 	private static final String STR_NORUN = "Unable to run ";
 
+	private static final String SPAN_PREFIX = "rule ";
+
+	private final OrchestrationMetrics metrics;
+
+	private final ResourceAccounting resources;
+
+	private final RuleResilience resilience;
+
+	private final RuleMemoizer memoizer;
+
+	private final RuleTransactions transactions;
+
+	/**
+	 * Create a rule runner with its own metrics. Mostly used outside of spring-boot.
+	 */
+	public RuleRunner() {
+		this(new OrchestrationMetrics());
+	}
+
+	/**
+	 * Create a rule runner recording to the given metrics
+	 *
+	 * @param metrics The metrics to record each rule execution against
+	 */
+	public RuleRunner(OrchestrationMetrics metrics) {
+		this(metrics, new ResourceAccounting());
+	}
+
+	/**
+	 * Create a rule runner recording to the given metrics and resource accounting
+	 *
+	 * @param metrics The metrics to record each rule execution against
+	 * @param resources Measures the CPU and allocation of each rule
+	 */
+	public RuleRunner(OrchestrationMetrics metrics, ResourceAccounting resources) {
+		this(metrics, resources, new RuleResilience());
+	}
+
+	/**
+	 * Create a rule runner with the given resilience
+	 *
+	 * @param metrics The metrics to record each rule execution against
+	 * @param resources Measures the CPU and allocation of each rule
+	 * @param resilience Applies the resilience policy of rules that have one
+	 */
+	public RuleRunner(OrchestrationMetrics metrics, ResourceAccounting resources, RuleResilience resilience) {
+		this(metrics, resources, resilience, new RuleMemoizer());
+	}
+
+	/**
+	 * Create a rule runner with the given resilience and memoizer
+	 *
+	 * @param metrics The metrics to record each rule execution against
+	 * @param resources Measures the CPU and allocation of each rule
+	 * @param resilience Applies the resilience policy of rules that have one
+	 * @param memoizer Memoizes the results of rules that ask for it
+	 */
+	public RuleRunner(OrchestrationMetrics metrics, ResourceAccounting resources, RuleResilience resilience,
+	                  RuleMemoizer memoizer) {
+		this(metrics, resources, resilience, memoizer, new RuleTransactions());
+	}
+
+	/**
+	 * The bean constructor used by spring-boot
+	 *
+	 * @param metrics The metrics to record each rule execution against
+	 * @param resources Measures the CPU and allocation of each rule
+	 * @param resilience Applies the resilience policy of rules that have one
+	 * @param memoizer Memoizes the results of rules that ask for it
+	 * @param transactions Runs rules in the transaction their policy asks for
+	 */
+	@Autowired
+	public RuleRunner(OrchestrationMetrics metrics, ResourceAccounting resources, RuleResilience resilience,
+	                  RuleMemoizer memoizer, RuleTransactions transactions) {
+		this.metrics = metrics;
+		this.resources = resources;
+		this.resilience = resilience;
+		this.memoizer = memoizer;
+		this.transactions = transactions;
+	}
+
 	/**
 	 * This method applies a single rule according to the initial list driven by the 
 	 * {@link OrchestrationData} {@link Rule}
@@ -59,8 +169,11 @@ public class RuleRunner {
 		RuleResult result;
 		WorkflowRuleInterface ruleRunner = (WorkflowRuleInterface) getRuleRunnerClass(rule);
 
-		if (OrchestrationMode.NORMAL.equals(mode)) {
-			result = buildNormalResultData(rule, ruleRunner, request);
+		MemoizePolicy memoize = rule.getRuleType().getMemoize();
+		if (OrchestrationMode.NORMAL.equals(mode) && memoize != null) {
+			result = runMemoized(rule, memoize, ruleRunner, request);
+		} else if (OrchestrationMode.NORMAL.equals(mode)) {
+			result = runBulkheaded(rule, ruleRunner, request);
 		} else {
 			// Test mode
 			result = buildTestResultData(rule, ruleRunner);
@@ -69,6 +182,191 @@ public class RuleRunner {
 
 	}
 
+	/**
+	 * Replay the memoized result of the rule or run it. A replayed result never reaches {@link #runTimed} so it is
+	 * recorded here with the MEMOIZED outcome, in the metrics and as a rule span.
+	 *
+	 * @param rule The rule information
+	 * @param memoize The memoize policy of the rule
+	 * @param ruleRunner The actual rule to run
+	 * @param request The orchestration data
+	 * @return The rule result
+	 * @throws RulesException if an unhandled exception is caught
+	 */
+	private RuleResult runMemoized(Rule rule, MemoizePolicy memoize, WorkflowRuleInterface ruleRunner,
+	                               OrchestrationData request) throws RulesException {
+
+		AtomicBoolean ran = new AtomicBoolean();
+		long start = System.nanoTime();
+		RuleResult result = memoizer.run(rule, memoize, ruleRunner.getInfo(), request, () -> {
+			ran.set(true);
+			return runBulkheaded(rule, ruleRunner, request);
+		});
+		if (!ran.get()) {
+			long elapsed = System.nanoTime() - start;
+			metrics.recordRule(rule.getRuleType().getRuleName(), Outcome.MEMOIZED, elapsed);
+			result.setDurationNanos(elapsed);
+			result.setEndTime(new Date());
+			Span span = request.getSpan().startChild(SPAN_PREFIX + rule.getRuleName());
+			if (span.isSampled()) {
+				addSpanAttributes(span, rule, result, Outcome.MEMOIZED);
+			}
+			span.end();
+		}
+		return result;
+	}
+
+	/**
+	 * Run the rule if there is a place for it in its bulkhead
+	 *
+	 * @param rule The rule information
+	 * @param ruleRunner The actual rule to run
+	 * @param request The orchestration data
+	 * @return The rule result which is false if the bulkhead is full
+	 * @throws RulesException if an unhandled exception is caught
+	 */
+	private RuleResult runBulkheaded(Rule rule, WorkflowRuleInterface ruleRunner,
+	                                 OrchestrationData request) throws RulesException {
+
+		BulkheadPolicy policy = rule.getRuleType().getBulkhead();
+		if (policy == null) {
+			return runTransacted(rule, ruleRunner, request);
+		}
+		long start = System.nanoTime();
+		RuleBulkhead bulkhead = resilience.enterBulkhead(rule, policy, request);
+		if (bulkhead == null) {
+			long elapsed = System.nanoTime() - start;
+			metrics.recordRule(rule.getRuleType().getRuleName(), Outcome.REJECTED, elapsed);
+			RuleResult result = new RuleResult(false);
+			result.setResultInfo("Bulkhead full");
+			result.setDurationNanos(elapsed);
+			result.setEndTime(new Date());
+			return result;
+		}
+		try {
+			return runTransacted(rule, ruleRunner, request);
+		} finally {
+			bulkhead.exit();
+		}
+	}
+
+	/**
+	 * Run the rule in the transaction its policy asks for. The rule list does not load a rule that also has a
+	 * timeout, whose attempts would run on another thread outside of this transaction.
+	 *
+	 * @param rule The rule information
+	 * @param ruleRunner The actual rule to run
+	 * @param request The orchestration data
+	 * @return The rule result
+	 * @throws RulesException if an unhandled exception is caught
+	 */
+	private RuleResult runTransacted(Rule rule, WorkflowRuleInterface ruleRunner,
+	                                 OrchestrationData request) throws RulesException {
+
+		return transactions.inRule(rule.getRuleType().getTransaction(), () -> runTimed(rule, ruleRunner, request));
+	}
+
+	/**
+	 * Run the rule in normal mode recording the elapsed time and outcome
+	 *
+	 * @param rule The rule information
+	 * @param ruleRunner The actual rule to run
+	 * @param request The orchestration data
+	 * @return The rule result
+	 * @throws RulesException if an unhandled exception is caught
+	 */
+	private RuleResult runTimed(Rule rule, WorkflowRuleInterface ruleRunner,
+	                            OrchestrationData request) throws RulesException {
+
+		RuleResult result = null;
+		Outcome outcome = Outcome.EXCEPTION;
+		Span parentSpan = request.getSpan();
+		Span span = parentSpan.startChild(SPAN_PREFIX + rule.getRuleName());
+		request.setSpan(span);
+		RuleExecutionEvent event = new RuleExecutionEvent();
+		event.begin();
+		AttemptResources attempts = new AttemptResources();
+		long startCpu = resources.currentThreadCpuTime();
+		long startBytes = resources.currentThreadAllocatedBytes();
+		long start = System.nanoTime();
+		try {
+			result = buildNormalResultData(rule, ruleRunner, request, attempts);
+			outcome = result.isOk() ? Outcome.PASS : Outcome.FAIL;
+		} catch (RulesException | RuntimeException e) {
+			span.recordException(e);
+			throw e;
+		} finally {
+			long elapsed = System.nanoTime() - start;
+			long cpu = attempts.addCpu(ResourceAccounting.delta(startCpu, resources.currentThreadCpuTime()));
+			long bytes = attempts.addBytes(ResourceAccounting.delta(startBytes, resources.currentThreadAllocatedBytes()));
+			String ruleName = rule.getRuleType().getRuleName();
+			metrics.recordRule(ruleName, outcome, elapsed);
+			metrics.recordRuleResources(ruleName, cpu, bytes);
+			if (result != null) {
+				result.setDurationNanos(elapsed);
+				result.setCpuTimeNanos(cpu);
+				result.setAllocatedBytes(bytes);
+				result.setEndTime(new Date());
+			}
+			if (span.isSampled()) {
+				addSpanAttributes(span, rule, result, outcome);
+				addResourceAttributes(span, cpu, bytes);
+			}
+			span.end();
+			request.setSpan(parentSpan);
+			event.end();
+			if (event.shouldCommit()) {
+				event.ruleName = rule.getRuleName();
+				event.ruleType = rule.getRuleType().getRuleName();
+				event.outcome = outcome.name();
+				event.commit();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Describe the rule execution on its trace span
+	 *
+	 * @param span The rule span
+	 * @param rule The rule that was run
+	 * @param result The result or null if an exception was thrown
+	 * @param outcome The {@link Outcome}
+	 */
+	private void addSpanAttributes(Span span, Rule rule, RuleResult result, Outcome outcome) {
+		span.setAttribute("rule.name", rule.getRuleName());
+		span.setAttribute("rule.type", rule.getRuleType().getRuleName());
+		span.setAttribute("rule.outcome", outcome.name());
+		if (result != null) {
+			Rule next = rule.getNext(result);
+			if (result.getOutcome() != null) {
+				span.setAttribute("rule.label", result.getOutcome());
+			}
+			if (next != null) {
+				span.setAttribute("rule.branch", next.getRuleName());
+			}
+			if (!Helper.isEmpty(result.getResultInfo())) {
+				span.setAttribute("rule.resultInfo", result.getResultInfo());
+			}
+		}
+	}
+
+	/**
+	 * Add the CPU time and allocated bytes to the rule span when they were measured
+	 *
+	 * @param span The rule span
+	 * @param cpu The CPU time in nanoseconds
+	 * @param bytes The allocated bytes
+	 */
+	private void addResourceAttributes(Span span, long cpu, long bytes) {
+		if (cpu >= 0) {
+			span.setAttribute("rule.cpu.nanos", cpu);
+		}
+		if (bytes >= 0) {
+			span.setAttribute("rule.allocated.bytes", bytes);
+		}
+	}
+
 	/**
 	 * This is the normal way to run a rule. It runs the rules, reports on any problems and keeps the
 	 * orchestration data up to date.
@@ -76,12 +374,13 @@ public class RuleRunner {
 	 * @param rule The rule information
 	 * @param ruleRunner The actual rule to run
 	 * @param request The orchestration data
+	 * @param attempts Collects the cost of attempts run on other threads
 	 * @return The rule result
 	 * @throws RulesException if an unhandled exception is caught
 	 */
 	@SuppressWarnings({"squid:S2139"})
-	private RuleResult buildNormalResultData(Rule rule, WorkflowRuleInterface ruleRunner,
-	                                         OrchestrationData request) throws RulesException {
+	private RuleResult buildNormalResultData(Rule rule, WorkflowRuleInterface ruleRunner, OrchestrationData request,
+	                                         AttemptResources attempts) throws RulesException {
 
 		Method method; // Use reflection for running the rule
 		RuleResult result;
@@ -98,6 +397,48 @@ public class RuleRunner {
 		// TODO We need to find another way to hook this in if we do pre rule tests
 		//OrchestrationDataRule.testInfoRequirements(orchestrationConfig, request, ruleRunner.getInfo(), rule.getRuleName())
 
+		ResiliencePolicy policy = rule.getRuleType().getPolicy();
+		if (policy != null) {
+			Method m = method;
+			Thread caller = Thread.currentThread();
+			result = resilience.run(rule, policy, request, r -> {
+				if (Thread.currentThread() == caller) {
+					return invokeRule(rule, m, ruleRunner, r, false);
+				}
+				// A timed attempt runs on the timeout pool so the calling thread doesn't see what it costs
+				long startCpu = resources.currentThreadCpuTime();
+				long startBytes = resources.currentThreadAllocatedBytes();
+				try {
+					return invokeRule(rule, m, ruleRunner, r, false);
+				} finally {
+					attempts.add(ResourceAccounting.delta(startCpu, resources.currentThreadCpuTime()),
+							ResourceAccounting.delta(startBytes, resources.currentThreadAllocatedBytes()));
+				}
+			});
+		} else {
+			result = invokeRule(rule, method, ruleRunner, request, true);
+		}
+		log.debug("Executed rule {} with result {}",rule.getRuleName(),result.getOk()?"pass":"fail");
+		return result;
+	}
+
+	/**
+	 * Run the rule once
+	 *
+	 * @param rule The rule information
+	 * @param method The method to run
+	 * @param ruleRunner The actual rule to run
+	 * @param request The orchestration data
+	 * @param recordEvent Add an error event when the rule throws. Not wanted when the resilience policy
+	 *                    records the outcome instead
+	 * @return The rule result
+	 * @throws RulesException if an unhandled exception is caught
+	 */
+	@SuppressWarnings({"squid:S2139"})
+	private RuleResult invokeRule(Rule rule, Method method, WorkflowRuleInterface ruleRunner,
+	                              OrchestrationData request, boolean recordEvent) throws RulesException {
+
+		RuleResult result;
 		log.debug("Executing rule {}",rule.getRuleName());
 		try {
 			if (method == null) {
@@ -111,13 +452,14 @@ public class RuleRunner {
 			}
 		} catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
 			Throwable e2 = e.getCause();
-			log.error("{}{},{}",STR_NORUN,rule.getRuleType(), rule.getRuleName(), e2);
 			String msg = getExceptionMessage(e);
-			request.getStatus().addEvent(InfoType.ERROR, EventType.EXCEPTION, OrchestrationErrorCode.ORCH5003,
-					STR_NORUN + rule.getRuleType()+", "+ rule.getRuleName() + ". "+msg);
+			if (recordEvent) {
+				log.error("{}{},{}",STR_NORUN,rule.getRuleType(), rule.getRuleName(), e2);
+				request.getStatus().addEvent(InfoType.ERROR, EventType.EXCEPTION, OrchestrationErrorCode.ORCH5003,
+						STR_NORUN + rule.getRuleType()+", "+ rule.getRuleName() + ". "+msg);
+			}
 			throw new RulesException(STR_NORUN + rule.getRuleType()+", "+ rule.getRuleName()+ ". " + msg, e2);
 		}
-		log.debug("Executed rule {} with result {}",rule.getRuleName(),result.getOk()?"pass":"fail");
 		return result;
 	}
 
@@ -160,6 +502,16 @@ public class RuleRunner {
 		sb.append(TEST_SPACER + "Rule:").append(rule.getRuleName());
 		sb.append(TEST_SPACER2 + "On pass:").append(rule.getOnTrue().getRuleName());
 		sb.append(TEST_SPACER2 + "On fail:").append(rule.getOnFalse().getRuleName());
+		rule.getOnOutcome().forEach((label, next) -> {
+			if (next != null) {
+				sb.append(TEST_SPACER2 + "On " + label + ":").append(next.getRuleName());
+			}
+		});
+		rule.getOnOutcomeFailed().forEach((label, next) -> {
+			if (next != null) {
+				sb.append(TEST_SPACER2 + "On " + label + " and fail:").append(next.getRuleName());
+			}
+		});
 
 		addReqsData(sb, ruleRunner);
 		result.setTestInfo(sb.toString());
@@ -234,4 +586,40 @@ public class RuleRunner {
 		return rule.getRuleType().getRuleClass();
 	}
 
+	/**
+	 * The CPU time and bytes allocated by the attempts of a rule that ran on other threads
+	 */
+	private static final class AttemptResources {
+
+		private final AtomicLong cpuNanos = new AtomicLong();
+
+		private final AtomicLong bytes = new AtomicLong();
+
+		void add(long cpu, long allocated) {
+			if (cpu > 0) {
+				cpuNanos.addAndGet(cpu);
+			}
+			if (allocated > 0) {
+				bytes.addAndGet(allocated);
+			}
+		}
+
+		/**
+		 * @param callerCpu The CPU time measured on the calling thread
+		 * @return The total or {@link ResourceAccounting#NOT_MEASURED} if it is not measured
+		 */
+		long addCpu(long callerCpu) {
+			return callerCpu < 0 ? callerCpu : callerCpu + cpuNanos.get();
+		}
+
+		/**
+		 * @param callerBytes The bytes allocated on the calling thread
+		 * @return The total or {@link ResourceAccounting#NOT_MEASURED} if it is not measured
+		 */
+		long addBytes(long callerBytes) {
+			return callerBytes < 0 ? callerBytes : callerBytes + bytes.get();
+		}
+
+	}
+
 }
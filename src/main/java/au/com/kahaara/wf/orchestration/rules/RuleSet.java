@@ -2,13 +2,20 @@ package au.com.kahaara.wf.orchestration.rules;
 
 import au.com.kahaara.wf.OrchestrationConfig;
 import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.foreach.ForEach;
+import au.com.kahaara.wf.orchestration.jfr.RuleSetCompileEvent;
+import au.com.kahaara.wf.orchestration.subflow.SubWorkflowResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Creates and then contains a valid set of ruleSet for orchestration. The rule set is the orchestration workflow
@@ -29,6 +36,17 @@ import java.util.Map;
  *  <p>If a rule needs to be repeated but not as a result of a loop in the workflow then
  *  the repeated rules may be prefixed with a number followed by an underscore "." then the workflow
  *  rule name</p>
+ *  <p>A rule can be followed by a table of outcome labels and the rules to go to for them, where * is any other
+ *  label. See {@link Rule}</p>
+ *  <pre>
+ *  SCORE,DECIDE{APPROVE:ISSUE,REFER:1.REVIEW,DECLINE:NOTIFY,*:END},ISSUE,1.REVIEW,NOTIFY
+ *  </pre>
+ *  <p>A MAP[...] construct runs a sub-workflow for each element of a collection in place of a rule. See
+ *  {@link ForEach}</p>
+ *  <p>A registered sub-workflow written as @Name, or 1.@Name to use it more than once, has its rules copied into
+ *  the rule set in its place when the rule set is compiled. The copies are named @Name/Rule and where the
+ *  sub-workflow would end they carry on with the true or false condition of @Name, depending on whether its last
+ *  rule passed. They run as rules of this workflow, with its data and status, rather than as a sub-workflow.</p>
  * 
  * @author (excdsn) Simon Haddon
  *
@@ -41,6 +59,13 @@ public class RuleSet {
 	private static final int ONTRUE = 1;
 	private static final int ONFALSE = 2;
 
+	/**
+	 * A sub-workflow to inline with an optional sequence number
+	 */
+	private static final Pattern SUB_WORKFLOW = Pattern.compile("^(?:[0-9]+\\.)?@(.+)$");
+
+	private static final String SUB_WORKFLOW_SEPARATOR = "/";
+
 
 	/**
 	 * The rule list string converted into an array of rule objects.
@@ -67,7 +92,7 @@ public class RuleSet {
 	 */
 	public RuleSet(DefaultRuleSetType ruleset, RuleList ruleList) throws RulesException {
 		String rules = ruleset.getRules();
-		create(rules, ruleList.getRuleList());
+		create(rules, ruleList.getRuleList(), ruleList.getSubWorkflowResolver());
 	}
 
 	/**
@@ -78,19 +103,19 @@ public class RuleSet {
 	 * @throws RulesException If there is an exception thrown
 	 */
 	public RuleSet(String rules, RuleList ruleList) throws RulesException {
-		create(rules, ruleList.getRuleList());
+		create(rules, ruleList.getRuleList(), ruleList.getSubWorkflowResolver());
 	}
 
 	public RuleSet(String rules, Map<String, RuleType> availableRules) throws RulesException {
-		create(rules, availableRules);
+		create(rules, availableRules, null);
 	}
 
 	public void setRules(String rules, Map<String, RuleType> availableRules) throws RulesException {
-		create(rules, availableRules);
+		create(rules, availableRules, null);
 	}
 	
 	public void setRules(String rules, RuleList ruleList) throws RulesException {
-		create(rules, ruleList.getRuleList());
+		create(rules, ruleList.getRuleList(), ruleList.getSubWorkflowResolver());
 	}
 	
 	/**
@@ -98,9 +123,39 @@ public class RuleSet {
 	 * @param rules THe string list of rules
 	 * @param availableRules a list of available rules created by the {@link RuleList} component
 	 * on startup
+	 * @param subWorkflows Finds the sub-workflows to inline. May be null if there are none
 	 * @throws RulesException If a rule is defined in the string but not defined in the allowable
 	 */
-	private void create(String rules, Map<String, RuleType> availableRules) throws RulesException {
+	private void create(String rules, Map<String, RuleType> availableRules, SubWorkflowResolver subWorkflows)
+			throws RulesException {
+
+		RuleSetCompileEvent event = new RuleSetCompileEvent();
+		event.begin();
+		boolean success = false;
+		try {
+			compile(rules, availableRules, subWorkflows);
+			success = true;
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.rules = rules;
+				event.ruleCount = mainRules == null ? 0 : mainRules.size();
+				event.success = success;
+				event.commit();
+			}
+		}
+	}
+
+	/**
+	 * Build the rules and their conditions from the string list of rules
+	 *
+	 * @param rules THe string list of rules
+	 * @param availableRules a list of available rules created by the {@link RuleList} component
+	 * @param subWorkflows Finds the sub-workflows to inline. May be null if there are none
+	 * @throws RulesException If a rule is defined in the string but not defined in the allowable
+	 */
+	private void compile(String rules, Map<String, RuleType> availableRules, SubWorkflowResolver subWorkflows)
+			throws RulesException {
 
 		log.info("Creating rule set from {}",rules);
 		this.mainRules = new ArrayList<>();
@@ -110,6 +165,7 @@ public class RuleSet {
 		} else {
 			ruleList = createRuleList(rules);
 		}
+		Map<String, String> outcomeTables = takeOutcomeTables(ruleList);
 
 		// Test the rules
 		for (String r : ruleList) {
@@ -130,6 +186,8 @@ public class RuleSet {
 		// Create the rules
 		createMainRules(ruleList, availableRules);
 		createMainRuleConditions(ruleList);
+		createOutcomeTables(outcomeTables);
+		inlineSubWorkflows(subWorkflows);
 
 		log.debug("Created rule set {}",this.mainRules);
 
@@ -206,7 +264,15 @@ public class RuleSet {
 				log.error("Cannot have the same rule defined more than once in a rule set {}",splitRule[RULE]);
 				throw new RulesException("Cannot have the same rule defined more than once in a rule set. Following rule is incorrect: "+splitRule[RULE]);
 			} else {
-				RuleType crt = getRuleType(splitRule[RULE], availableRules);
+				RuleType crt;
+				if (SUB_WORKFLOW.matcher(splitRule[RULE]).matches()) {
+					// Replaced by the rules of the sub-workflow once the conditions are in place
+					crt = null;
+				} else if (ForEach.isForEach(splitRule[RULE])) {
+					crt = new RuleType(splitRule[RULE], ForEach.parse(splitRule[RULE]));
+				} else {
+					crt = getRuleType(splitRule[RULE], availableRules);
+				}
 				rule = new Rule(crt, splitRule[RULE]);
 				mainRules.add(rule);
 			}
@@ -254,6 +320,167 @@ public class RuleSet {
 	}
 
 
+	/**
+	 * Take the outcome tables off the rules in the list so the rest of the compiling sees plain rules
+	 *
+	 * @param ruleList The list of rules, changed in place
+	 * @return The outcome tables by the rule name they follow
+	 * @throws RulesException If a table is not closed or is not straight after the rule name
+	 */
+	private Map<String, String> takeOutcomeTables(String[] ruleList) throws RulesException {
+
+		Map<String, String> outcomeTables = new HashMap<>();
+		for (int i = 0; i < ruleList.length; i++) {
+			String r = ruleList[i];
+			int open = r.indexOf('{');
+			if (open < 0) {
+				continue;
+			}
+			int close = r.indexOf('}', open);
+			String name = r.substring(0, open);
+			if (close < 0 || name.isEmpty() || name.contains("?") || name.contains(":")) {
+				throw new RulesException("Outcome table must follow the rule name and be closed. Following rule is incorrect: "+r);
+			}
+			outcomeTables.put(name, r.substring(open + 1, close));
+			ruleList[i] = name + r.substring(close + 1);
+		}
+		return outcomeTables;
+	}
+
+	/**
+	 * Attach the outcome tables to their rules
+	 *
+	 * @param outcomeTables The outcome tables by the rule name they follow
+	 * @throws RulesException If an entry is not label:rule, a label is repeated or a rule is not in the list
+	 */
+	private void createOutcomeTables(Map<String, String> outcomeTables) throws RulesException {
+
+		for (Map.Entry<String, String> table : outcomeTables.entrySet()) {
+			Rule rule = getRule(table.getKey(), mainRules);
+			if (rule == null || rule.getRuleType() == null) {
+				throw new RulesException("Outcome table not allowed on "+table.getKey());
+			}
+			for (String entry : table.getValue().split(",")) {
+				int i = entry.indexOf(':');
+				if (i < 1 || i == entry.length() - 1) {
+					throw new RulesException("Outcome "+entry+" is not in the form label:rule for rule "+table.getKey());
+				}
+				String label = entry.substring(0, i);
+				Rule next = getRule(entry.substring(i + 1), mainRules);
+				if (next == null) {
+					log.error("Cannot locate outcome {} rule defined for {}",entry,table.getKey());
+					throw new RulesException("Cannot locate outcome rule in main list. Following outcome is incorrect: "+entry);
+				}
+				if (rule.getOnOutcome().containsKey(label.toUpperCase(Locale.ROOT))) {
+					throw new RulesException("Outcome "+label+" is defined more than once for rule "+table.getKey());
+				}
+				rule.setOnOutcome(label, next);
+			}
+			log.trace("Created outcome table for rule {} {}", table.getKey(), rule);
+		}
+	}
+
+	/**
+	 * Replace each @Name in the main rules with copies of the rules of the sub-workflow, leaving out its start and
+	 * end. Rules going to @Name go to the first copy instead and copies going to the end of the sub-workflow go to
+	 * the true or false condition of @Name. So does an outcome label going to the end, by whether the rule passed.
+	 *
+	 * @param subWorkflows Finds the sub-workflows
+	 * @throws RulesException If a sub-workflow is not registered or has no rules
+	 */
+	private void inlineSubWorkflows(SubWorkflowResolver subWorkflows) throws RulesException {
+
+		Map<Rule, Rule> entries = new HashMap<>();
+		List<Rule> inlined = new ArrayList<>();
+		for (Rule rule : mainRules) {
+			if (rule.getRuleType() != null) {
+				inlined.add(rule);
+				continue;
+			}
+			Matcher m = SUB_WORKFLOW.matcher(rule.getRuleName());
+			if (!m.matches() || subWorkflows == null) {
+				throw new RulesException("No registered sub-workflows to inline "+rule.getRuleName()+" from");
+			}
+			entries.put(rule, splice(rule, subWorkflows.resolve(m.group(1)), inlined));
+			log.trace("Inlined sub-workflow {}",rule.getRuleName());
+		}
+		if (entries.isEmpty()) {
+			return;
+		}
+		for (Rule rule : inlined) {
+			if (entries.containsKey(rule.getOnTrue())) {
+				rule.setOnTrue(entries.get(rule.getOnTrue()));
+			}
+			if (entries.containsKey(rule.getOnFalse())) {
+				rule.setOnFalse(entries.get(rule.getOnFalse()));
+			}
+			for (Map.Entry<String, Rule> outcome : rule.getOnOutcome().entrySet()) {
+				if (entries.containsKey(outcome.getValue())) {
+					rule.setOnOutcome(outcome.getKey(), entries.get(outcome.getValue()));
+				}
+			}
+			for (Map.Entry<String, Rule> outcome : rule.getOnOutcomeFailed().entrySet()) {
+				if (entries.containsKey(outcome.getValue())) {
+					rule.setOnOutcomeFailed(outcome.getKey(), entries.get(outcome.getValue()));
+				}
+			}
+		}
+		this.mainRules = inlined;
+	}
+
+	/**
+	 * Copy the rules of a sub-workflow in place of a rule
+	 *
+	 * @param at The @Name rule
+	 * @param subWorkflow The compiled sub-workflow
+	 * @param inlined Where the copies are added
+	 * @return The copy of the first rule of the sub-workflow
+	 * @throws RulesException If the sub-workflow has no rules
+	 */
+	private Rule splice(Rule at, RuleSet subWorkflow, List<Rule> inlined) throws RulesException {
+
+		Map<Rule, Rule> copies = new HashMap<>();
+		Rule start = null;
+		for (Rule r : subWorkflow.getRules()) {
+			String name = r.getRuleType().getRuleName();
+			if (name.equals(OrchestrationConfig.WORKFLOW_START)) {
+				start = r;
+			} else if (!name.equals(OrchestrationConfig.WORKFLOW_END)) {
+				Rule copy = new Rule(r.getRuleType(), at.getRuleName()+SUB_WORKFLOW_SEPARATOR+r.getRuleName());
+				copies.put(r, copy);
+				inlined.add(copy);
+			}
+		}
+		if (start == null || copies.isEmpty()) {
+			throw new RulesException("Sub-workflow "+at.getRuleName()+" has no rules to inline");
+		}
+		for (Map.Entry<Rule, Rule> copy : copies.entrySet()) {
+			copy.getValue().setOnTrue(copyOf(copy.getKey().getOnTrue(), copies, start, at.getOnTrue()));
+			copy.getValue().setOnFalse(copyOf(copy.getKey().getOnFalse(), copies, start, at.getOnFalse()));
+			// An outcome going to the end of the sub-workflow goes where @Name would on the result of the rule
+			for (Map.Entry<String, Rule> outcome : copy.getKey().getOnOutcome().entrySet()) {
+				Rule next = copyOf(outcome.getValue(), copies, start, null);
+				if (next == null) {
+					copy.getValue().setOnOutcome(outcome.getKey(), at.getOnTrue());
+					copy.getValue().setOnOutcomeFailed(outcome.getKey(), at.getOnFalse());
+				} else {
+					copy.getValue().setOnOutcome(outcome.getKey(), next);
+				}
+			}
+			// A sub-workflow inlined already has the failed outcomes of its own sub-workflows
+			for (Map.Entry<String, Rule> outcome : copy.getKey().getOnOutcomeFailed().entrySet()) {
+				copy.getValue().setOnOutcomeFailed(outcome.getKey(),
+						copyOf(outcome.getValue(), copies, start, at.getOnFalse()));
+			}
+		}
+		return copyOf(start.getOnTrue(), copies, start, at.getOnTrue());
+	}
+
+	private static Rule copyOf(Rule r, Map<Rule, Rule> copies, Rule start, Rule atEnd) {
+		Rule target = r == start ? start.getOnTrue() : r;
+		return copies.containsKey(target) ? copies.get(target) : atEnd;
+	}
+
 	/**
 	 * Wrap the rule list string with and start end rule if required then split into a string
 	 * array.
@@ -274,11 +501,36 @@ public class RuleSet {
 		rules = rules.replace(" ","");     // No spaces
 		rules = rules.replaceAll("["+System.lineSeparator()+"]",""); // Any lf or cr
 
-		String[] splitRuleList = rules.split(",");
+		String[] splitRuleList = splitRules(rules);
 		log.trace("Rule list {}", Arrays.stream(splitRuleList).toArray());
 		return splitRuleList;
 	}
 
+	/**
+	 * Split the rules on the commas that are not in an outcome table
+	 *
+	 * @param rules The cleaned rules
+	 * @return The rules one by one
+	 */
+	private static String[] splitRules(String rules) {
+		List<String> split = new ArrayList<>();
+		int depth = 0;
+		int from = 0;
+		for (int i = 0; i < rules.length(); i++) {
+			char c = rules.charAt(i);
+			if (c == '{') {
+				depth++;
+			} else if (c == '}') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				split.add(rules.substring(from, i));
+				from = i + 1;
+			}
+		}
+		split.add(rules.substring(from));
+		return split.toArray(new String[0]);
+	}
+
 	private Rule getRule(String string, List<Rule> mainRules) {
 		for (Rule r : mainRules) {
 			if (r.getRuleName().equalsIgnoreCase(string)) {
@@ -1,5 +1,8 @@
 package au.com.kahaara.wf.orchestration.rules;
 
+import au.com.kahaara.wf.orchestration.admission.Priority;
+import au.com.kahaara.wf.orchestration.workflow.TransactionPolicy;
+
 /**
  * This interface must be implemented by any enum classes that are defining their own rule sets. Each
  * enum type must be a name with the rules, if any, defined as a single parameter string of rules following
@@ -25,4 +28,22 @@ public interface RuleSetTypeInterface {
 	 */
 	public String getEnumName();
 
+	/**
+	 * The priority of this rule set type when admission control has to turn workflows away
+	 *
+	 * @return The {@link Priority}. NORMAL unless overridden
+	 */
+	default Priority getPriority() {
+		return Priority.NORMAL;
+	}
+
+	/**
+	 * The transaction around a whole workflow of this rule set type
+	 *
+	 * @return The {@link TransactionPolicy}. DEFAULT, for the configured policy, unless overridden
+	 */
+	default TransactionPolicy getTransactionPolicy() {
+		return TransactionPolicy.DEFAULT;
+	}
+
 }
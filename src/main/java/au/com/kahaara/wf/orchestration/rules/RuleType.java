@@ -2,6 +2,10 @@ package au.com.kahaara.wf.orchestration.rules;
 
 import au.com.kahaara.wf.orchestration.workflow.Workflow;
 import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.cache.MemoizePolicy;
+import au.com.kahaara.wf.orchestration.resilience.BulkheadPolicy;
+import au.com.kahaara.wf.orchestration.resilience.ResiliencePolicy;
+import au.com.kahaara.wf.orchestration.workflow.TransactionPolicy;
 import org.springframework.stereotype.Component;
 
 import java.lang.reflect.Method;
@@ -28,6 +32,26 @@ public class RuleType {
 	private Object ruleClass;
 
 	private Method method;
+
+	/**
+	 * The resilience policy from the annotations or null if the rule has none
+	 */
+	private ResiliencePolicy policy;
+
+	/**
+	 * The bulkhead from the annotations or null if the rule has none
+	 */
+	private BulkheadPolicy bulkhead;
+
+	/**
+	 * The memoize policy from the annotations or null if the rule is not memoized
+	 */
+	private MemoizePolicy memoize;
+
+	/**
+	 * The transaction policy from the annotations
+	 */
+	private TransactionPolicy transaction = TransactionPolicy.DEFAULT;
 	
 	public RuleType(String ruleName, Object o) {
 		this.ruleName = ruleName;
@@ -77,4 +101,60 @@ public class RuleType {
 		this.ruleClass = ruleClass;
 	}
 
+	/**
+	 * @return The resilience policy or null if the rule runs once as usual
+	 */
+	public ResiliencePolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @param policy The resilience policy or null for none
+	 */
+	public void setPolicy(ResiliencePolicy policy) {
+		this.policy = policy;
+	}
+
+	/**
+	 * @return The bulkhead or null if the rule can run any number of times at once
+	 */
+	public BulkheadPolicy getBulkhead() {
+		return bulkhead;
+	}
+
+	/**
+	 * @param bulkhead The bulkhead or null for none
+	 */
+	public void setBulkhead(BulkheadPolicy bulkhead) {
+		this.bulkhead = bulkhead;
+	}
+
+	/**
+	 * @return The memoize policy or null if the rule is always run
+	 */
+	public MemoizePolicy getMemoize() {
+		return memoize;
+	}
+
+	/**
+	 * @param memoize The memoize policy or null for none
+	 */
+	public void setMemoize(MemoizePolicy memoize) {
+		this.memoize = memoize;
+	}
+
+	/**
+	 * @return The transaction policy. DEFAULT to run in the transaction of the workflow
+	 */
+	public TransactionPolicy getTransaction() {
+		return transaction;
+	}
+
+	/**
+	 * @param transaction The transaction policy
+	 */
+	public void setTransaction(TransactionPolicy transaction) {
+		this.transaction = transaction;
+	}
+
 }
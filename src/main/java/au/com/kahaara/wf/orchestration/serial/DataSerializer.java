@@ -0,0 +1,31 @@
+package au.com.kahaara.wf.orchestration.serial;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Turns the request or result data map of an {@link au.com.kahaara.wf.orchestration.OrchestrationData} into
+ * bytes and back. The map keys are the class names of the values, as the orchestration data stores them, so
+ * an implementation can use the key to work out the type to read each value back as.
+ */
+public interface DataSerializer {
+
+	/**
+	 * Write the data map
+	 *
+	 * @param data The map of class name to object
+	 * @return The serialized form
+	 * @throws IOException If any value cannot be written
+	 */
+	byte[] serialize(Map<String, Object> data) throws IOException;
+
+	/**
+	 * Read a data map written by {@link #serialize(Map)}
+	 *
+	 * @param bytes The serialized form
+	 * @return A new mutable map of class name to object
+	 * @throws IOException If the bytes cannot be read or a class is not available
+	 */
+	Map<String, Object> deserialize(byte[] bytes) throws IOException;
+
+}
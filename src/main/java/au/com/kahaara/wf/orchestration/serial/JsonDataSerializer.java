@@ -0,0 +1,65 @@
+package au.com.kahaara.wf.orchestration.serial;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes the data map as a JSON object keyed by class name. Each value is read back as the class named by its
+ * key so the values must be plain beans that Jackson can round trip, which is the same requirement the deep
+ * copy in {@link au.com.kahaara.wf.orchestration.OrchestrationData} already places on them.
+ */
+public class JsonDataSerializer implements DataSerializer {
+
+	private final ObjectMapper objectMapper;
+
+	public JsonDataSerializer() {
+		this(new ObjectMapper());
+	}
+
+	/**
+	 * @param objectMapper A mapper configured with any modules the data objects need
+	 */
+	public JsonDataSerializer(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	@Override
+	public byte[] serialize(Map<String, Object> data) throws IOException {
+		ObjectNode node = objectMapper.createObjectNode();
+		for (Map.Entry<String, Object> entry : data.entrySet()) {
+			node.set(entry.getKey(), objectMapper.valueToTree(entry.getValue()));
+		}
+		return objectMapper.writeValueAsBytes(node);
+	}
+
+	@Override
+	public Map<String, Object> deserialize(byte[] bytes) throws IOException {
+		Map<String, Object> data = new HashMap<>();
+		if (bytes == null || bytes.length == 0) {
+			return data;
+		}
+		JsonNode node = objectMapper.readTree(bytes);
+		Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+		while (fields.hasNext()) {
+			Map.Entry<String, JsonNode> field = fields.next();
+			data.put(field.getKey(), objectMapper.treeToValue(field.getValue(), loadClass(field.getKey())));
+		}
+		return data;
+	}
+
+	private static Class<?> loadClass(String name) throws IOException {
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		try {
+			return Class.forName(name, false, loader == null ? JsonDataSerializer.class.getClassLoader() : loader);
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Data class " + name + " is not available", e);
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package au.com.kahaara.wf.orchestration.serial;
+
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.RuleSetTypeInterface;
+
+/**
+ * Converts a {@link RuleSetTypeInterface} to a string and back so a workflow can be stored and picked up
+ * again, possibly on another node. The string is the enum class name and the constant name separated by
+ * {@value #SEPARATOR}.
+ */
+public final class RuleSetTypes {
+
+	public static final String SEPARATOR = "#";
+
+	private RuleSetTypes() {
+		// Nothing to see here
+	}
+
+	/**
+	 * @param type The rule set type which is expected to be an enum constant
+	 * @return The string form
+	 */
+	public static String toKey(RuleSetTypeInterface type) {
+		Class<?> c = type instanceof Enum ? ((Enum<?>) type).getDeclaringClass() : type.getClass();
+		return c.getName() + SEPARATOR + type.getEnumName();
+	}
+
+	/**
+	 * @param key A string created by {@link #toKey(RuleSetTypeInterface)}
+	 * @return The rule set type
+	 * @throws RulesException If the class is not an available enum implementing {@link RuleSetTypeInterface}
+	 * or the constant does not exist
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static RuleSetTypeInterface fromKey(String key) throws RulesException {
+		int i = key == null ? -1 : key.lastIndexOf(SEPARATOR);
+		if (i < 0) {
+			throw new RulesException("Rule set type " + key + " is not in the form class" + SEPARATOR + "name");
+		}
+		String className = key.substring(0, i);
+		String name = key.substring(i + 1);
+		try {
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			Class<?> c = Class.forName(className, true, loader == null ? RuleSetTypes.class.getClassLoader() : loader);
+			if (!c.isEnum() || !RuleSetTypeInterface.class.isAssignableFrom(c)) {
+				throw new RulesException("Rule set type " + className + " is not an enum implementing RuleSetTypeInterface");
+			}
+			return (RuleSetTypeInterface) Enum.valueOf((Class<Enum>) c, name);
+		} catch (ClassNotFoundException e) {
+			throw new RulesException("Rule set type class " + className + " is not available", e);
+		} catch (IllegalArgumentException e) {
+			throw new RulesException("Rule set type " + name + " is not defined in " + className, e);
+		}
+	}
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Serialization of orchestration data and rule set types so a workflow can be stored and restored.
+ */
+package au.com.kahaara.wf.orchestration.serial;
@@ -0,0 +1,84 @@
+package au.com.kahaara.wf.orchestration.subflow;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.rules.RuleSet;
+import au.com.kahaara.wf.orchestration.rules.RuleSetTypeInterface;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The handle of a sub-workflow registered with the {@link SubWorkflowRegistry}. It holds the rule set compiled
+ * when it was registered, so a request created from it runs without the rules being parsed or looked up in the
+ * rule set cache
+ * <pre>
+ * OrchestrationData pricing = pricingFlow.newRequest(request.getOrchestrationConfig());
+ * pricing.putRequestData(line);
+ * request.getOrchestration().runSubRules(request, pricing);
+ * </pre>
+ * Keep the handle, e.g. in a field of the rule, rather than getting it from the registry for every request.
+ */
+public final class SubWorkflow {
+
+	public static final Logger log = LoggerFactory.getLogger(SubWorkflow.class);
+
+	private final String name;
+
+	private final RuleSetTypeInterface type;
+
+	private final String customRules;
+
+	private final RuleSet ruleSet;
+
+	SubWorkflow(String name, RuleSetTypeInterface type, String customRules, RuleSet ruleSet) {
+		this.name = name;
+		this.type = type;
+		this.customRules = customRules;
+		this.ruleSet = ruleSet;
+	}
+
+	/**
+	 * Create a request to run this sub-workflow
+	 *
+	 * @param orchestrationConfig The orchestration configuration data. Replaced by the one of the parent request
+	 * when it is run as a sub-workflow
+	 * @return The request
+	 */
+	public OrchestrationData newRequest(OrchestrationConfig orchestrationConfig) {
+		return new OrchestrationData(orchestrationConfig, this);
+	}
+
+	/**
+	 * @return The name it is registered under, in upper case
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The rule set type. CUSTOM when it was registered with rules
+	 */
+	public RuleSetTypeInterface getType() {
+		return type;
+	}
+
+	/**
+	 * @return The rules it was registered with or null if it was registered with a rule set type
+	 */
+	public String getCustomRules() {
+		return customRules;
+	}
+
+	/**
+	 * @return The compiled rule set
+	 */
+	public RuleSet getRuleSet() {
+		return ruleSet;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
@@ -0,0 +1,225 @@
+package au.com.kahaara.wf.orchestration.subflow;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.exception.WorkflowException;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleSet;
+import au.com.kahaara.wf.orchestration.rules.RuleSetTypeInterface;
+import au.com.kahaara.wf.orchestration.serial.RuleSetTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The named sub-workflows of the application. Each one has its rule set compiled when it is registered and is
+ * run through its {@link SubWorkflow} handle, which skips the rule set cache altogether. A sub-workflow that
+ * does not compile, e.g. because a rule does not exist, stops the application from starting rather than failing
+ * the first request that runs it.
+ * <P>Sub-workflows are registered in code or from the orchestration properties, one per index
+ * <pre>
+ * # A rule set type
+ * orchestration.workflow.subworkflows[0]=PRICING=com.acme.Flows#PRICE_LINE
+ * # Rules
+ * orchestration.workflow.subworkflows[1]=TAX=TaxLine,RoundTotal
+ * # Every rule set type of an enum, named after the constants
+ * orchestration.workflow.subworkflows[2]=com.acme.Flows
+ * </pre>
+ * Names are not case sensitive and each can only be registered once.
+ * <P>The registry is also the {@link SubWorkflowResolver} of the rule list, so a rule set compiled once a
+ * sub-workflow is registered can inline it as {@code @Name}. A sub-workflow can inline the ones registered before
+ * it.
+ */
+@Component
+public class SubWorkflowRegistry implements SubWorkflowResolver {
+
+	public static final Logger log = LoggerFactory.getLogger(SubWorkflowRegistry.class);
+
+	/**
+	 * The maximum number of properties allowed for the sub-workflows.
+	 */
+	private static final int MAX_EXTERNAL_PROPERTIES = 100;
+
+	private final RuleList ruleList;
+
+	private final Map<String, SubWorkflow> subWorkflows = new ConcurrentHashMap<>();
+
+	/**
+	 * A registry with nothing registered yet
+	 *
+	 * @param ruleList The rules the sub-workflows are made of
+	 */
+	public SubWorkflowRegistry(RuleList ruleList) {
+		this.ruleList = ruleList;
+		ruleList.setSubWorkflowResolver(this);
+	}
+
+	/**
+	 * The bean constructor used by spring-boot
+	 *
+	 * @param properties The application environment properties
+	 * @param ruleList The rules the sub-workflows are made of
+	 * @throws WorkflowException If a configured sub-workflow is not valid
+	 */
+	@Autowired
+	public SubWorkflowRegistry(Environment properties, RuleList ruleList) throws WorkflowException {
+		this(ruleList);
+		for (int i = 0; i <= MAX_EXTERNAL_PROPERTIES; i++) {
+			String definition = properties.getProperty(OrchestrationConfig.PROPERTIES_SUB_WORKFLOWS + "[" + i + "]");
+			if (definition == null) {
+				break;
+			}
+			try {
+				register(definition.trim());
+			} catch (RulesException e) {
+				log.error("Unable to register sub-workflow {}. {}", definition, e.getMessage());
+				throw new WorkflowException("Unable to register sub-workflow " + definition + ". " + e.getMessage(), e);
+			}
+		}
+		log.info("Registered {} orchestration sub-workflows", subWorkflows.size());
+	}
+
+	/**
+	 * Register a sub-workflow from its configured form. See the class description.
+	 */
+	private void register(String definition) throws RulesException {
+		int i = definition.indexOf('=');
+		if (i < 0) {
+			registerAll(definition);
+			return;
+		}
+		String name = definition.substring(0, i).trim();
+		String value = definition.substring(i + 1).trim();
+		if (value.contains(RuleSetTypes.SEPARATOR)) {
+			register(name, RuleSetTypes.fromKey(value));
+		} else {
+			register(name, value);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void registerAll(String className) throws RulesException {
+		try {
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			Class<?> c = Class.forName(className, true, loader == null ? getClass().getClassLoader() : loader);
+			if (!c.isEnum() || !RuleSetTypeInterface.class.isAssignableFrom(c)) {
+				throw new RulesException("Rule set type " + className + " is not an enum implementing RuleSetTypeInterface");
+			}
+			registerAll((Class<? extends RuleSetTypeInterface>) c);
+		} catch (ClassNotFoundException e) {
+			throw new RulesException("Rule set type class " + className + " is not available", e);
+		}
+	}
+
+	/**
+	 * Register a rule set type under its enum name
+	 *
+	 * @param type The rule set type
+	 * @return The handle to run it with
+	 * @throws RulesException If the name is taken or its rules do not compile
+	 */
+	public SubWorkflow register(RuleSetTypeInterface type) throws RulesException {
+		return register(type.getEnumName(), type);
+	}
+
+	/**
+	 * Register every rule set type of an enum under their enum names. CUSTOM and UNKNOWN, which have no rules of
+	 * their own, are left out.
+	 *
+	 * @param types The enum class
+	 * @throws RulesException If a name is taken or the rules of a type do not compile
+	 */
+	public void registerAll(Class<? extends RuleSetTypeInterface> types) throws RulesException {
+		for (RuleSetTypeInterface type : types.getEnumConstants()) {
+			if (type.getRules() != null && !type.getRules().isEmpty()) {
+				register(type);
+			}
+		}
+	}
+
+	/**
+	 * Register a rule set type
+	 *
+	 * @param name The name to register it under
+	 * @param type The rule set type
+	 * @return The handle to run it with
+	 * @throws RulesException If the name is taken or its rules do not compile
+	 */
+	public SubWorkflow register(String name, RuleSetTypeInterface type) throws RulesException {
+		return add(name, type, null, type.getRules());
+	}
+
+	/**
+	 * Register rules as a sub-workflow of type CUSTOM
+	 *
+	 * @param name The name to register them under
+	 * @param rules The rules in the same form as custom rules
+	 * @return The handle to run it with
+	 * @throws RulesException If the name is taken or the rules do not compile
+	 */
+	public SubWorkflow register(String name, String rules) throws RulesException {
+		return add(name, DefaultRuleSetType.CUSTOM, rules, rules);
+	}
+
+	private SubWorkflow add(String name, RuleSetTypeInterface type, String customRules, String rules)
+			throws RulesException {
+		if (name == null || name.isEmpty()) {
+			throw new RulesException("A sub-workflow needs a name");
+		}
+		if (rules == null || rules.isEmpty()) {
+			throw new RulesException("Sub-workflow " + name + " has no rules");
+		}
+		String key = name.toUpperCase(Locale.ROOT);
+		SubWorkflow subWorkflow = new SubWorkflow(key, type, customRules, new RuleSet(rules, ruleList));
+		if (subWorkflows.putIfAbsent(key, subWorkflow) != null) {
+			throw new RulesException("Sub-workflow " + key + " is already registered");
+		}
+		log.debug("Registered sub-workflow {} as {}", key, rules);
+		return subWorkflow;
+	}
+
+	/**
+	 * Get the handle of a sub-workflow. Meant to be called once, when a rule is set up, not for every request.
+	 *
+	 * @param name The name it was registered under
+	 * @return The handle
+	 * @throws RulesException If there is no sub-workflow of that name
+	 */
+	public SubWorkflow get(String name) throws RulesException {
+		SubWorkflow subWorkflow = name == null ? null : subWorkflows.get(name.toUpperCase(Locale.ROOT));
+		if (subWorkflow == null) {
+			throw new RulesException("No sub-workflow named " + name + " is registered");
+		}
+		return subWorkflow;
+	}
+
+	@Override
+	public RuleSet resolve(String name) throws RulesException {
+		return get(name).getRuleSet();
+	}
+
+	/**
+	 * @param name A name
+	 * @return true if a sub-workflow is registered under it
+	 */
+	public boolean contains(String name) {
+		return name != null && subWorkflows.containsKey(name.toUpperCase(Locale.ROOT));
+	}
+
+	/**
+	 * @return The names of the registered sub-workflows
+	 */
+	public Set<String> getNames() {
+		return Collections.unmodifiableSet(subWorkflows.keySet());
+	}
+
+}
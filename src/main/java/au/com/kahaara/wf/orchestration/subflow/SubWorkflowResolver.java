@@ -0,0 +1,19 @@
+package au.com.kahaara.wf.orchestration.subflow;
+
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.RuleSet;
+
+/**
+ * Finds the compiled rule set of a named sub-workflow so a rule set can inline it where it is written as
+ * {@code @Name}. The {@link SubWorkflowRegistry} is the one used by the {@link au.com.kahaara.wf.orchestration.rules.RuleList}.
+ */
+public interface SubWorkflowResolver {
+
+	/**
+	 * @param name The name of the sub-workflow without the '@'
+	 * @return Its compiled rule set
+	 * @throws RulesException If there is no sub-workflow of that name
+	 */
+	RuleSet resolve(String name) throws RulesException;
+
+}
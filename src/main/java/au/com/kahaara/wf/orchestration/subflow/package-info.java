@@ -0,0 +1,6 @@
+/**
+ * Named sub-workflows whose rule sets are compiled once, when they are registered, and run through a
+ * {@link au.com.kahaara.wf.orchestration.subflow.SubWorkflow} handle. See
+ * {@link au.com.kahaara.wf.orchestration.subflow.SubWorkflowRegistry}.
+ */
+package au.com.kahaara.wf.orchestration.subflow;
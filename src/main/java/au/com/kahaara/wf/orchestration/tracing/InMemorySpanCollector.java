@@ -0,0 +1,57 @@
+package au.com.kahaara.wf.orchestration.tracing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the most recent spans in memory. Useful for tests and for diagnostic endpoints.
+ */
+public class InMemorySpanCollector implements SpanExporter {
+
+	public static final int DEFAULT_MAX_SPANS = 10000;
+
+	private final ConcurrentLinkedDeque<SampledSpan> spans = new ConcurrentLinkedDeque<>();
+
+	private final AtomicInteger size = new AtomicInteger();
+
+	private final int maxSpans;
+
+	public InMemorySpanCollector() {
+		this(DEFAULT_MAX_SPANS);
+	}
+
+	/**
+	 * @param maxSpans The maximum number of spans to keep. The oldest are dropped first.
+	 */
+	public InMemorySpanCollector(int maxSpans) {
+		this.maxSpans = maxSpans;
+	}
+
+	@Override
+	public void export(List<SampledSpan> trace) {
+		for (SampledSpan span : trace) {
+			spans.addLast(span);
+			if (size.incrementAndGet() > maxSpans && spans.pollFirst() != null) {
+				size.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * @return A copy of the spans collected so far, oldest first
+	 */
+	public List<SampledSpan> getSpans() {
+		return new ArrayList<>(spans);
+	}
+
+	/**
+	 * Remove all collected spans
+	 */
+	public void clear() {
+		spans.clear();
+		size.set(0);
+	}
+
+}
@@ -0,0 +1,38 @@
+package au.com.kahaara.wf.orchestration.tracing;
+
+/**
+ * The span given to requests that are not sampled. Every method does nothing.
+ */
+final class NoopSpan implements Span {
+
+	@Override
+	public Span startChild(String name) {
+		return this;
+	}
+
+	@Override
+	public void setAttribute(String key, Object value) {
+		// Not sampled
+	}
+
+	@Override
+	public void addAttributeValue(String key, String value) {
+		// Not sampled
+	}
+
+	@Override
+	public void recordException(Throwable e) {
+		// Not sampled
+	}
+
+	@Override
+	public void end() {
+		// Not sampled
+	}
+
+	@Override
+	public boolean isSampled() {
+		return false;
+	}
+
+}
@@ -0,0 +1,177 @@
+package au.com.kahaara.wf.orchestration.tracing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes each trace as a single line of OTLP JSON (an ExportTraceServiceRequest) to a file. The file can be
+ * loaded by the OpenTelemetry collector file receiver or any tool that understands OTLP JSON.
+ * <P>Writing is done on a single background thread so the request thread only pays for building the JSON.</P>
+ */
+public class OtlpJsonFileExporter implements SpanExporter, Closeable {
+
+	public static final Logger log = LoggerFactory.getLogger(OtlpJsonFileExporter.class);
+
+	private static final String SCOPE_NAME = "au.com.kahaara.wf.orchestration";
+
+	private static final int SPAN_KIND_INTERNAL = 1;
+	private static final int STATUS_CODE_OK = 1;
+	private static final int STATUS_CODE_ERROR = 2;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final Path file;
+
+	private final String serviceName;
+
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "orchestration-trace-writer");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/**
+	 * @param file The file to append traces to
+	 * @param serviceName The service.name resource attribute
+	 */
+	public OtlpJsonFileExporter(String file, String serviceName) {
+		this.file = Paths.get(file);
+		this.serviceName = serviceName;
+	}
+
+	@Override
+	public void export(List<SampledSpan> spans) {
+		String line;
+		try {
+			line = objectMapper.writeValueAsString(toOtlp(spans));
+		} catch (IOException e) {
+			log.error("Unable to convert trace to OTLP JSON {}", e.getMessage());
+			return;
+		}
+		try {
+			writer.execute(() -> write(line));
+		} catch (RejectedExecutionException e) {
+			log.warn("Trace exporter closed. Dropping trace");
+		}
+	}
+
+	private void write(String line) {
+		try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+			w.write(line);
+			w.write('\n');
+		} catch (IOException e) {
+			log.error("Unable to write trace to {} {}", file, e.getMessage());
+		}
+	}
+
+	/**
+	 * Build the ExportTraceServiceRequest JSON for a single trace
+	 *
+	 * @param spans The spans
+	 * @return The JSON tree
+	 */
+	ObjectNode toOtlp(List<SampledSpan> spans) {
+		ObjectNode root = objectMapper.createObjectNode();
+		ObjectNode resourceSpans = root.putArray("resourceSpans").addObject();
+		ArrayNode resourceAttributes = resourceSpans.putObject("resource").putArray("attributes");
+		addAttribute(resourceAttributes, "service.name", serviceName);
+		ObjectNode scopeSpans = resourceSpans.putArray("scopeSpans").addObject();
+		scopeSpans.putObject("scope").put("name", SCOPE_NAME);
+		ArrayNode spanArray = scopeSpans.putArray("spans");
+
+		for (SampledSpan span : spans) {
+			ObjectNode s = spanArray.addObject();
+			s.put("traceId", span.getTraceId());
+			s.put("spanId", span.getSpanId());
+			if (span.getParentSpanId() != null) {
+				s.put("parentSpanId", span.getParentSpanId());
+			}
+			s.put("name", span.getName());
+			s.put("kind", SPAN_KIND_INTERNAL);
+			// 64 bit integers are strings in OTLP JSON
+			s.put("startTimeUnixNano", Long.toString(span.getStartEpochNanos()));
+			s.put("endTimeUnixNano", Long.toString(span.getEndEpochNanos()));
+			ArrayNode attributes = s.putArray("attributes");
+			for (Map.Entry<String, Object> a : span.getAttributes().entrySet()) {
+				addAttribute(attributes, a.getKey(), a.getValue());
+			}
+			ObjectNode status = s.putObject("status");
+			if (span.isError()) {
+				status.put("code", STATUS_CODE_ERROR);
+				if (span.getErrorMessage() != null) {
+					status.put("message", span.getErrorMessage());
+				}
+				ObjectNode event = s.putArray("events").addObject();
+				event.put("timeUnixNano", Long.toString(span.getExceptionEpochNanos()));
+				event.put("name", "exception");
+				ArrayNode eventAttributes = event.putArray("attributes");
+				addAttribute(eventAttributes, "exception.type", span.getExceptionType());
+				if (span.getErrorMessage() != null) {
+					addAttribute(eventAttributes, "exception.message", span.getErrorMessage());
+				}
+			} else {
+				status.put("code", STATUS_CODE_OK);
+			}
+		}
+		return root;
+	}
+
+	private void addAttribute(ArrayNode attributes, String key, Object value) {
+		ObjectNode a = attributes.addObject();
+		a.put("key", key);
+		setValue(a.putObject("value"), value);
+	}
+
+	private void setValue(ObjectNode v, Object value) {
+		if (value instanceof Boolean) {
+			v.put("boolValue", (Boolean) value);
+		} else if (value instanceof Long || value instanceof Integer) {
+			v.put("intValue", value.toString());
+		} else if (value instanceof Double) {
+			v.put("doubleValue", (Double) value);
+		} else if (value instanceof Set) {
+			ArrayNode values = v.putObject("arrayValue").putArray("values");
+			for (Object o : (Set<?>) value) {
+				values.addObject().put("stringValue", String.valueOf(o));
+			}
+		} else {
+			v.put("stringValue", String.valueOf(value));
+		}
+	}
+
+	/**
+	 * Write any outstanding traces and stop the writer thread
+	 */
+	@Override
+	public void close() {
+		writer.shutdown();
+		try {
+			if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+				log.warn("Timed out writing outstanding traces to {}", file);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
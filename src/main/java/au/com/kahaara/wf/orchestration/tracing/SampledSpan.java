@@ -0,0 +1,239 @@
+package au.com.kahaara.wf.orchestration.tracing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A span that is recorded and exported. Times are held as nanoseconds since the epoch, derived from a single
+ * wall clock reading when the trace started plus the monotonic clock so that child spans line up exactly.
+ * <P>Attributes are only ever touched by the thread running the span but the trace collects finished spans
+ * from any thread.</P>
+ */
+public class SampledSpan implements Span {
+
+	private final Trace trace;
+
+	private final String spanId;
+
+	private final String parentSpanId;
+
+	private final String name;
+
+	private final long startEpochNanos;
+
+	private long endEpochNanos;
+
+	private final Map<String, Object> attributes = new LinkedHashMap<>();
+
+	private boolean error = false;
+
+	private String errorMessage;
+
+	private String exceptionType;
+
+	private long exceptionEpochNanos;
+
+	private boolean ended = false;
+
+	private SampledSpan(Trace trace, String parentSpanId, String name) {
+		this.trace = trace;
+		this.spanId = randomHex(8);
+		this.parentSpanId = parentSpanId;
+		this.name = name;
+		this.startEpochNanos = trace.now();
+	}
+
+	/**
+	 * Start a new trace with this span as the root
+	 *
+	 * @param name The root span name
+	 * @param exporter Where to send the spans once the root has ended
+	 * @return The root span
+	 */
+	static SampledSpan startRoot(String name, SpanExporter exporter) {
+		return new SampledSpan(new Trace(exporter), null, name);
+	}
+
+	@Override
+	public Span startChild(String name) {
+		return new SampledSpan(trace, spanId, name);
+	}
+
+	@Override
+	public void setAttribute(String key, Object value) {
+		if (value == null) {
+			return;
+		}
+		if (!(value instanceof String || value instanceof Boolean || value instanceof Long
+				|| value instanceof Integer || value instanceof Double)) {
+			value = value.toString();
+		}
+		attributes.put(key, value);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void addAttributeValue(String key, String value) {
+		Object current = attributes.get(key);
+		if (!(current instanceof Set)) {
+			current = new LinkedHashSet<String>();
+			attributes.put(key, current);
+		}
+		((Set<String>) current).add(value);
+	}
+
+	@Override
+	public void recordException(Throwable e) {
+		error = true;
+		exceptionType = e.getClass().getName();
+		errorMessage = e.getMessage();
+		exceptionEpochNanos = trace.now();
+	}
+
+	@Override
+	public void end() {
+		if (ended) {
+			return;
+		}
+		ended = true;
+		endEpochNanos = trace.now();
+		trace.finished(this);
+	}
+
+	@Override
+	public boolean isSampled() {
+		return true;
+	}
+
+	/**
+	 * @return The 32 character hex trace id
+	 */
+	public String getTraceId() {
+		return trace.traceId;
+	}
+
+	/**
+	 * @return The 16 character hex span id
+	 */
+	public String getSpanId() {
+		return spanId;
+	}
+
+	/**
+	 * @return The parent span id or null if this is the root
+	 */
+	public String getParentSpanId() {
+		return parentSpanId;
+	}
+
+	/**
+	 * @return The span name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return The start time in nanoseconds since the epoch
+	 */
+	public long getStartEpochNanos() {
+		return startEpochNanos;
+	}
+
+	/**
+	 * @return The end time in nanoseconds since the epoch
+	 */
+	public long getEndEpochNanos() {
+		return endEpochNanos;
+	}
+
+	/**
+	 * @return The attributes. List attributes are returned as a {@link Set} of strings
+	 */
+	public Map<String, Object> getAttributes() {
+		return Collections.unmodifiableMap(attributes);
+	}
+
+	/**
+	 * @return true if an exception was recorded
+	 */
+	public boolean isError() {
+		return error;
+	}
+
+	/**
+	 * @return The message of the recorded exception
+	 */
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	/**
+	 * @return The class name of the recorded exception
+	 */
+	public String getExceptionType() {
+		return exceptionType;
+	}
+
+	/**
+	 * @return When the exception was recorded in nanoseconds since the epoch
+	 */
+	public long getExceptionEpochNanos() {
+		return exceptionEpochNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "[span:" + name + ",id:" + spanId + ",parent:" + parentSpanId + ",durationNanos:"
+				+ (endEpochNanos - startEpochNanos) + "," + attributes + "]";
+	}
+
+	private static String randomHex(int bytes) {
+		StringBuilder sb = new StringBuilder(bytes * 2);
+		ThreadLocalRandom r = ThreadLocalRandom.current();
+		for (int i = 0; i < bytes; i++) {
+			sb.append(String.format("%02x", r.nextInt(256)));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The spans belonging to one workflow run
+	 */
+	private static class Trace {
+
+		private final String traceId = randomHex(16);
+
+		private final long epochNanos = System.currentTimeMillis() * 1_000_000L;
+
+		private final long startNanos = System.nanoTime();
+
+		private final ConcurrentLinkedQueue<SampledSpan> spans = new ConcurrentLinkedQueue<>();
+
+		private final SpanExporter exporter;
+
+		Trace(SpanExporter exporter) {
+			this.exporter = exporter;
+		}
+
+		long now() {
+			return epochNanos + (System.nanoTime() - startNanos);
+		}
+
+		void finished(SampledSpan span) {
+			spans.add(span);
+			if (span.parentSpanId == null) {
+				List<SampledSpan> list = new ArrayList<>(spans);
+				exporter.export(list);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,45 @@
+package au.com.kahaara.wf.orchestration.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Head based sampling. The decision is made once when the workflow starts and is inherited by every
+ * child span so that a trace is either complete or not recorded at all.
+ */
+public interface Sampler {
+
+	/**
+	 * Sample every trace
+	 */
+	Sampler ALWAYS = name -> true;
+
+	/**
+	 * Sample no traces
+	 */
+	Sampler NEVER = name -> false;
+
+	/**
+	 * Should a trace with this root span name be recorded
+	 *
+	 * @param name The root span name
+	 * @return true to record
+	 */
+	boolean shouldSample(String name);
+
+	/**
+	 * Create a sampler that records a fixed ratio of traces
+	 *
+	 * @param ratio Between 0 and 1
+	 * @return The sampler
+	 */
+	static Sampler ratio(double ratio) {
+		if (ratio >= 1.0) {
+			return ALWAYS;
+		}
+		if (ratio <= 0.0) {
+			return NEVER;
+		}
+		return name -> ThreadLocalRandom.current().nextDouble() < ratio;
+	}
+
+}
@@ -0,0 +1,58 @@
+package au.com.kahaara.wf.orchestration.tracing;
+
+/**
+ * A single timed operation within a workflow trace. A workflow run has a root span with every rule execution,
+ * sub rule call and event recording as a child span.
+ * <P>Requests that are not sampled are given {@link #NOOP} which ignores every call so that tracing costs
+ * almost nothing when it is turned off. Before building an expensive attribute value check {@link #isSampled()}.</P>
+ */
+public interface Span {
+
+	/**
+	 * The span used when a request is not sampled or tracing is turned off
+	 */
+	Span NOOP = new NoopSpan();
+
+	/**
+	 * Start a new span as a child of this span
+	 *
+	 * @param name The name of the child span
+	 * @return The child span or {@link #NOOP} if this span is not sampled
+	 */
+	Span startChild(String name);
+
+	/**
+	 * Set an attribute replacing any previous value
+	 *
+	 * @param key The attribute key
+	 * @param value A String, Boolean, Long, Integer or Double value. Anything else is converted to a string
+	 */
+	void setAttribute(String key, Object value);
+
+	/**
+	 * Add a value to a list attribute. Duplicate values are ignored. Used for things like the
+	 * data classes read during a rule.
+	 *
+	 * @param key The attribute key
+	 * @param value The value to add
+	 */
+	void addAttributeValue(String key, String value);
+
+	/**
+	 * Record an exception against the span and mark it as an error
+	 *
+	 * @param e The exception
+	 */
+	void recordException(Throwable e);
+
+	/**
+	 * End the span. Once the root span of a trace has ended the trace is exported.
+	 */
+	void end();
+
+	/**
+	 * @return true if this span is recorded and exported
+	 */
+	boolean isSampled();
+
+}
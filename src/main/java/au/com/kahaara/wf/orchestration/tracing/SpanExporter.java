@@ -0,0 +1,18 @@
+package au.com.kahaara.wf.orchestration.tracing;
+
+import java.util.List;
+
+/**
+ * Receives the spans of a trace once the root span has ended. This is called on the thread that ended the
+ * root span so implementations should hand off any slow work.
+ */
+public interface SpanExporter {
+
+	/**
+	 * Export the finished spans of a single trace
+	 *
+	 * @param spans The spans with the root span last
+	 */
+	void export(List<SampledSpan> spans);
+
+}
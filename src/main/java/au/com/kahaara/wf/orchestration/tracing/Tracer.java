@@ -0,0 +1,108 @@
+package au.com.kahaara.wf.orchestration.tracing;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Starts the root span for each workflow run. The sampling decision is made here and every child span
+ * inherits it, so an unsampled workflow gets {@link Span#NOOP} everywhere.
+ * <P>Configured from the orchestration properties
+ * <ul>
+ *     <li>orchestration.tracing.enabled - Turn tracing on or off. Default is off</li>
+ *     <li>orchestration.tracing.sample.ratio - The ratio of workflows to trace between 0 and 1</li>
+ *     <li>orchestration.tracing.exporter - memory or file</li>
+ *     <li>orchestration.tracing.file - The OTLP JSON file to append traces to</li>
+ * </ul>
+ * </P>
+ */
+@Component
+public class Tracer implements DisposableBean {
+
+	public static final Logger log = LoggerFactory.getLogger(Tracer.class);
+
+	public static final String EXPORTER_FILE = "file";
+
+	private static final String SERVICE_NAME = "orchestration";
+
+	private final boolean enabled;
+
+	private final Sampler sampler;
+
+	private final SpanExporter exporter;
+
+	/**
+	 * A tracer that never traces
+	 */
+	public Tracer() {
+		this.enabled = false;
+		this.sampler = Sampler.NEVER;
+		this.exporter = new InMemorySpanCollector(0);
+	}
+
+	/**
+	 * Create a tracer that is turned on with the given sampler and exporter
+	 *
+	 * @param sampler The {@link Sampler}
+	 * @param exporter The {@link SpanExporter}
+	 */
+	public Tracer(Sampler sampler, SpanExporter exporter) {
+		this.enabled = true;
+		this.sampler = sampler;
+		this.exporter = exporter;
+	}
+
+	/**
+	 * The bean constructor used by spring-boot
+	 *
+	 * @param config The orchestration configuration
+	 */
+	@Autowired
+	public Tracer(OrchestrationConfig config) {
+		this.enabled = config.isTracingEnabled();
+		this.sampler = Sampler.ratio(config.getTracingSampleRatio());
+		if (EXPORTER_FILE.equalsIgnoreCase(config.getTracingExporter())) {
+			this.exporter = new OtlpJsonFileExporter(config.getTracingFile(), SERVICE_NAME);
+		} else {
+			this.exporter = new InMemorySpanCollector();
+		}
+		if (enabled) {
+			log.info("Orchestration tracing enabled with sample ratio {} to {}", config.getTracingSampleRatio(),
+					exporter.getClass().getSimpleName());
+		}
+	}
+
+	/**
+	 * Start the root span of a new trace
+	 *
+	 * @param name The span name
+	 * @return A new root span or {@link Span#NOOP} if not sampled
+	 */
+	public Span startTrace(String name) {
+		if (!enabled || !sampler.shouldSample(name)) {
+			return Span.NOOP;
+		}
+		return SampledSpan.startRoot(name, exporter);
+	}
+
+	/**
+	 * @return The exporter which is an {@link InMemorySpanCollector} unless configured otherwise
+	 */
+	public SpanExporter getExporter() {
+		return exporter;
+	}
+
+	@Override
+	public void destroy() throws IOException {
+		if (exporter instanceof Closeable) {
+			((Closeable) exporter).close();
+		}
+	}
+
+}
@@ -0,0 +1,8 @@
+/**
+ * Span based tracing of a single workflow run.
+ * <p>{@link au.com.kahaara.wf.orchestration.Orchestration#run Orchestration.run} opens the root span and every
+ * rule execution, sub rule call and event recording becomes a child span. Finished traces are exported as
+ * OTLP JSON to a file or kept in memory. Sampling is decided once per workflow so unsampled requests only
+ * ever see a no-op span.</p>
+ */
+package au.com.kahaara.wf.orchestration.tracing;
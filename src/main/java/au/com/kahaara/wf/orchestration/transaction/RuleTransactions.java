@@ -0,0 +1,177 @@
+package au.com.kahaara.wf.orchestration.transaction;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.RuleSetTypeInterface;
+import au.com.kahaara.wf.orchestration.workflow.TransactionPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Runs workflows and rules in the transaction their {@link TransactionPolicy} asks for. Without a transaction
+ * manager, e.g. outside of spring-boot, everything runs as it is.
+ * <P>The workflow policy decides the transaction around the whole workflow. JOIN, the default, keeps one
+ * transaction and its database connection for the whole run. NONE runs the workflow without one so rules doing
+ * remote calls or just computing hold no connection and the rules that do need one say so with their own policy.
+ * <P>As with a &#64;Transactional method a RulesException does not roll the transaction back, a runtime
+ * exception does.
+ * <P>Configured from the orchestration properties
+ * <ul>
+ *     <li>orchestration.transaction.workflow - The policy of workflows whose rule set type does not give one.
+ *     Default is JOIN</li>
+ * </ul>
+ * </P>
+ */
+@Component
+public class RuleTransactions {
+
+	public static final Logger log = LoggerFactory.getLogger(RuleTransactions.class);
+
+	/**
+	 * The work to run in a transaction
+	 *
+	 * @param <T> The result of the work
+	 */
+	public interface Work<T> {
+		T run() throws RulesException;
+	}
+
+	private final TransactionPolicy workflowPolicy;
+
+	private final Map<TransactionPolicy, TransactionTemplate> templates = new EnumMap<>(TransactionPolicy.class);
+
+	/**
+	 * Run everything without starting transactions
+	 */
+	public RuleTransactions() {
+		this(null, TransactionPolicy.JOIN);
+	}
+
+	/**
+	 * @param transactionManager The transaction manager or null to run everything without starting transactions
+	 * @param workflowPolicy The policy of workflows whose rule set type does not give one
+	 */
+	public RuleTransactions(PlatformTransactionManager transactionManager, TransactionPolicy workflowPolicy) {
+		this.workflowPolicy = TransactionPolicy.DEFAULT.equals(workflowPolicy) ? TransactionPolicy.JOIN : workflowPolicy;
+		if (transactionManager != null) {
+			templates.put(TransactionPolicy.NONE, template(transactionManager,
+					TransactionDefinition.PROPAGATION_NOT_SUPPORTED, false));
+			templates.put(TransactionPolicy.JOIN, template(transactionManager,
+					TransactionDefinition.PROPAGATION_REQUIRED, false));
+			templates.put(TransactionPolicy.REQUIRES_NEW, template(transactionManager,
+					TransactionDefinition.PROPAGATION_REQUIRES_NEW, false));
+			templates.put(TransactionPolicy.READ_ONLY, template(transactionManager,
+					TransactionDefinition.PROPAGATION_REQUIRED, true));
+		}
+	}
+
+	/**
+	 * The bean constructor used by spring-boot
+	 *
+	 * @param config The orchestration configuration
+	 * @param transactionManagers The transaction manager if the application has one
+	 */
+	@Autowired
+	public RuleTransactions(OrchestrationConfig config, ObjectProvider<PlatformTransactionManager> transactionManagers) {
+		this(transactionManagers.getIfAvailable(), policy(config.getTransactionWorkflow()));
+		log.info("Orchestration workflow transaction policy {}", workflowPolicy);
+	}
+
+	/**
+	 * Run a whole workflow in the transaction of its rule set type
+	 *
+	 * @param type The rule set type of the workflow
+	 * @param work Runs the workflow
+	 * @param <T> The result of the workflow
+	 * @return The result
+	 * @throws RulesException If the workflow throws it
+	 */
+	public <T> T inWorkflow(RuleSetTypeInterface type, Work<T> work) throws RulesException {
+		return execute(getWorkflowPolicy(type), work);
+	}
+
+	/**
+	 * Run a rule in the transaction its policy asks for
+	 *
+	 * @param policy The policy of the rule. DEFAULT or null runs it in the transaction of the workflow
+	 * @param work Runs the rule
+	 * @param <T> The result of the rule
+	 * @return The result
+	 * @throws RulesException If the rule throws it
+	 */
+	public <T> T inRule(TransactionPolicy policy, Work<T> work) throws RulesException {
+		if (policy == null || TransactionPolicy.DEFAULT.equals(policy)) {
+			return work.run();
+		}
+		return execute(policy, work);
+	}
+
+	/**
+	 * @param type The rule set type
+	 * @return The policy of the rule set type or the configured one if it does not give one
+	 */
+	public TransactionPolicy getWorkflowPolicy(RuleSetTypeInterface type) {
+		TransactionPolicy policy = type == null ? null : type.getTransactionPolicy();
+		return policy == null || TransactionPolicy.DEFAULT.equals(policy) ? workflowPolicy : policy;
+	}
+
+	/**
+	 * @return true if there is a transaction manager to start transactions with
+	 */
+	public boolean isEnabled() {
+		return !templates.isEmpty();
+	}
+
+	private <T> T execute(TransactionPolicy policy, Work<T> work) throws RulesException {
+		TransactionTemplate template = templates.get(policy);
+		if (template == null || (TransactionPolicy.NONE.equals(policy)
+				&& !TransactionSynchronizationManager.isActualTransactionActive())) {
+			return work.run();
+		}
+		RulesException[] failure = new RulesException[1];
+		T result = template.execute(status -> {
+			try {
+				return work.run();
+			} catch (RulesException e) {
+				failure[0] = e;
+				return null;
+			}
+		});
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+		return result;
+	}
+
+	private static TransactionTemplate template(PlatformTransactionManager transactionManager, int propagation,
+	                                            boolean readOnly) {
+		TransactionTemplate template = new TransactionTemplate(transactionManager);
+		template.setPropagationBehavior(propagation);
+		template.setReadOnly(readOnly);
+		return template;
+	}
+
+	private static TransactionPolicy policy(String name) {
+		if (name == null) {
+			return TransactionPolicy.JOIN;
+		}
+		try {
+			return TransactionPolicy.valueOf(name.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			log.warn("Unknown workflow transaction policy {}. Using JOIN", name);
+			return TransactionPolicy.JOIN;
+		}
+	}
+
+}
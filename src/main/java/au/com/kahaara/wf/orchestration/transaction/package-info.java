@@ -0,0 +1,5 @@
+/**
+ * Transaction demarcation for workflows and the rules in them. See
+ * {@link au.com.kahaara.wf.orchestration.transaction.RuleTransactions}.
+ */
+package au.com.kahaara.wf.orchestration.transaction;
@@ -0,0 +1,39 @@
+package au.com.kahaara.wf.orchestration.workflow;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The bulkhead of a rule, given as the bulkhead parameter of {@link Workflow} or {@link WorkflowMethod}. It limits
+ * how many workflows can be running the rule at once so a slow dependency behind one rule can't take every request
+ * thread. A bulkhead on a method replaces the bulkhead on its class.
+ * <pre>
+ * &#64;Workflow(rulename = "CheckAlerts", bulkhead = &#64;Bulkhead(maxConcurrent = 20, maxWaiting = 10, maxWaitMillis = 50))
+ * </pre>
+ * <P>When the rule is full a workflow waits for a place if there is room in the queue, but no longer than
+ * maxWaitMillis or its deadline. Otherwise the rule fails straight away and the workflow follows its false path.
+ * See {@link au.com.kahaara.wf.orchestration.resilience.RuleBulkhead}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+@Documented
+public @interface Bulkhead {
+
+	/**
+	 * How many workflows can run the rule at once. 0 for no bulkhead.
+	 */
+	int maxConcurrent() default 0;
+
+	/**
+	 * How many workflows can wait for a place when the rule is full
+	 */
+	int maxWaiting() default 0;
+
+	/**
+	 * How long a workflow waits for a place
+	 */
+	long maxWaitMillis() default 0;
+
+}
@@ -0,0 +1,36 @@
+package au.com.kahaara.wf.orchestration.workflow;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Memoize the result of a rule, given as the memoize parameter of {@link Workflow} or {@link WorkflowMethod}. A
+ * memoize on a method replaces the memoize on its class.
+ * <pre>
+ * &#64;Workflow(rulename = "LookupCountry", memoize = &#64;Memoize(maxEntries = 10000, ttlMillis = 300000))
+ * </pre>
+ * <P>The inputs of the rule are the request and response data declared in its
+ * {@link au.com.kahaara.wf.orchestration.rules.RuleInfo} as expected, optional or modified. When a rule is run again
+ * with equal inputs within the time to live the rule is not run. Its result is returned and the data it created or
+ * modified the first time is put back into the result data. Only use it on rules that read nothing else and have no
+ * other side effects. A run that throws or adds events to the status is not memoized.
+ * See {@link au.com.kahaara.wf.orchestration.cache.RuleMemoizer}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+@Documented
+public @interface Memoize {
+
+	/**
+	 * How many results are kept for the rule. 0 to not memoize.
+	 */
+	int maxEntries() default 0;
+
+	/**
+	 * How long a result is kept
+	 */
+	long ttlMillis() default 60000;
+
+}
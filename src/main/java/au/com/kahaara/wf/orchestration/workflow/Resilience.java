@@ -0,0 +1,78 @@
+package au.com.kahaara.wf.orchestration.workflow;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The resilience policy of a rule, given as the resilience parameter of {@link Workflow} or {@link WorkflowMethod}.
+ * A policy on a method replaces the policy on its class. With every value left as the default there is no policy
+ * and the rule runs once as usual.
+ * <pre>
+ * &#64;Workflow(rulename = "CheckAlerts", resilience = &#64;Resilience(maxAttempts = 3, timeoutMillis = 2000,
+ *         breakerFailures = 5, breakerOpenMillis = 30000))
+ * </pre>
+ * <P>Once a rule has a policy an exception no longer stops the workflow. When the attempts are used up, or the
+ * circuit breaker is open, the rule fails and the workflow follows its false path. Each retry, timeout, rejection
+ * and final failure is recorded as an event on the status. See
+ * {@link au.com.kahaara.wf.orchestration.resilience.RuleResilience}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+@Documented
+public @interface Resilience {
+
+	/**
+	 * How many times the rule is run before giving up. Only exceptions and timeouts are retried, not a false result.
+	 */
+	int maxAttempts() default 1;
+
+	/**
+	 * The delay before the first retry
+	 */
+	long backoffMillis() default 100;
+
+	/**
+	 * What the delay is multiplied by for each further retry
+	 */
+	double backoffMultiplier() default 2.0;
+
+	/**
+	 * The longest delay between retries
+	 */
+	long maxBackoffMillis() default 10000;
+
+	/**
+	 * The fraction of each delay, between 0 and 1, that is taken off at random so retries spread out
+	 */
+	double jitter() default 0.5;
+
+	/**
+	 * How long an attempt can run before it is abandoned. 0 for no timeout. An attempt with a timeout runs on a
+	 * separate thread so it does not see the caller's transaction or other thread bound state. A rule with a timeout
+	 * can't also have a transaction policy other than NONE.
+	 */
+	long timeoutMillis() default 0;
+
+	/**
+	 * How many failures in a row open the circuit breaker. 0 for no breaker.
+	 */
+	int breakerFailures() default 0;
+
+	/**
+	 * How long the breaker stays open before it lets probe requests through
+	 */
+	long breakerOpenMillis() default 30000;
+
+	/**
+	 * How many probe requests can run at once while the breaker is half open
+	 */
+	int breakerProbes() default 1;
+
+	/**
+	 * The exceptions thrown by the rule that are worth retrying
+	 */
+	Class<? extends Throwable>[] retryOn() default {Exception.class};
+
+}
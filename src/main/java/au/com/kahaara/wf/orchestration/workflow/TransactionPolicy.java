@@ -0,0 +1,44 @@
+package au.com.kahaara.wf.orchestration.workflow;
+
+/**
+ * The transaction a rule runs in, given as the transaction parameter of {@link Workflow} or {@link WorkflowMethod}.
+ * A policy on a method replaces the policy on its class.
+ * <pre>
+ * &#64;Workflow(rulename = "SaveOrder", transaction = TransactionPolicy.JOIN)
+ * </pre>
+ * <P>A rule set type also has a policy for the whole workflow, see
+ * {@link au.com.kahaara.wf.orchestration.rules.RuleSetTypeInterface#getTransactionPolicy()}. A workflow run with
+ * NONE holds no database connection between rules so only the rules that need one take one.
+ * See {@link au.com.kahaara.wf.orchestration.transaction.RuleTransactions}.
+ * <ul>
+ *   <li>{@link #DEFAULT}
+ *   <li>{@link #NONE}
+ *   <li>{@link #JOIN}
+ *   <li>{@link #REQUIRES_NEW}
+ *   <li>{@link #READ_ONLY}
+ * </ul>
+ */
+public enum TransactionPolicy {
+
+	/**
+	 * A rule runs in whatever transaction the workflow has. A workflow uses the configured policy.
+	 */
+	DEFAULT,
+	/**
+	 * Run without a transaction. A transaction already running is suspended.
+	 */
+	NONE,
+	/**
+	 * Join the transaction already running or start one
+	 */
+	JOIN,
+	/**
+	 * Always run in a transaction of its own, suspending any already running
+	 */
+	REQUIRES_NEW,
+	/**
+	 * Join the transaction already running or start a read only one
+	 */
+	READ_ONLY
+
+}
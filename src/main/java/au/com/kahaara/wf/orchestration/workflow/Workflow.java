@@ -29,5 +29,25 @@ public @interface Workflow {
 	 * The rulename as optional parameter. If not defined then the class name becomes the rulename
 	 */
 	public String rulename() default "";
-	
+
+	/**
+	 * The optional {@link Resilience} policy for the rule, or for every rule in the class
+	 */
+	public Resilience resilience() default @Resilience;
+
+	/**
+	 * The optional {@link Bulkhead} for the rule, or for each rule in the class
+	 */
+	public Bulkhead bulkhead() default @Bulkhead;
+
+	/**
+	 * Optionally {@link Memoize} the result of the rule, or of each rule in the class
+	 */
+	public Memoize memoize() default @Memoize;
+
+	/**
+	 * The {@link TransactionPolicy} of the rule, or of each rule in the class
+	 */
+	public TransactionPolicy transaction() default TransactionPolicy.DEFAULT;
+
 }
@@ -20,4 +20,24 @@ public @interface WorkflowMethod {
      */
     public String rulename();
 
+    /**
+     * The optional {@link Resilience} policy for this rule. Replaces the policy on the class.
+     */
+    public Resilience resilience() default @Resilience;
+
+    /**
+     * The optional {@link Bulkhead} for this rule. Replaces the bulkhead on the class.
+     */
+    public Bulkhead bulkhead() default @Bulkhead;
+
+    /**
+     * Optionally {@link Memoize} the result of this rule. Replaces the memoize on the class.
+     */
+    public Memoize memoize() default @Memoize;
+
+    /**
+     * The {@link TransactionPolicy} of this rule. Replaces the policy on the class unless DEFAULT.
+     */
+    public TransactionPolicy transaction() default TransactionPolicy.DEFAULT;
+
 }
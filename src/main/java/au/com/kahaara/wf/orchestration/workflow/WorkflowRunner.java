@@ -1,15 +1,27 @@
 package au.com.kahaara.wf.orchestration.workflow;
 
 import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.InfoType;
 import au.com.kahaara.wf.orchestration.OrchestrationMode;
 import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.checkpoint.Checkpointer;
+import au.com.kahaara.wf.orchestration.event.EventType;
 import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.foreach.ForEach;
+import au.com.kahaara.wf.orchestration.foreach.ForEachRunner;
+import au.com.kahaara.wf.orchestration.jfr.WorkflowExecutionEvent;
+import au.com.kahaara.wf.orchestration.persist.WriteBehind;
+import au.com.kahaara.wf.orchestration.persist.WriteBehindFlusher;
+import au.com.kahaara.wf.orchestration.prefetch.DataPrefetcher;
 import au.com.kahaara.wf.orchestration.rules.*;
 import au.com.kahaara.wf.orchestration.rules.def.WorkflowEnd;
+import au.com.kahaara.wf.orchestration.transaction.RuleTransactions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.lang.reflect.Method;
 import java.util.List;
@@ -29,31 +41,123 @@ public class WorkflowRunner {
 
 	private static final int RULE_MAX_RUN = 500;
 
+	private static final String STR_PASS = "PASS";
+	private static final String STR_FAIL = "FAIL";
+	private static final String STR_EXCEPTION = "EXCEPTION";
+
 	private final RuleRunner runner;
+
+	private final Checkpointer checkpointer;
+
+	private final RuleTransactions transactions;
+
+	private final WriteBehindFlusher flusher;
+
+	private final DataPrefetcher prefetcher;
+
+	private final ForEachRunner forEach;
 	
 	public WorkflowRunner(RuleRunner runner) {
 
+		this(runner, new Checkpointer());
+	}
+
+	public WorkflowRunner(RuleRunner runner, Checkpointer checkpointer) {
+
+		this(runner, checkpointer, new RuleTransactions());
+	}
+
+	public WorkflowRunner(RuleRunner runner, Checkpointer checkpointer, RuleTransactions transactions) {
+
+		this(runner, checkpointer, transactions, new WriteBehindFlusher());
+	}
+
+	public WorkflowRunner(RuleRunner runner, Checkpointer checkpointer, RuleTransactions transactions,
+	                      WriteBehindFlusher flusher) {
+
+		this(runner, checkpointer, transactions, flusher, new DataPrefetcher());
+	}
+
+	public WorkflowRunner(RuleRunner runner, Checkpointer checkpointer, RuleTransactions transactions,
+	                      WriteBehindFlusher flusher, DataPrefetcher prefetcher) {
+
+		this(runner, checkpointer, transactions, flusher, prefetcher, new ForEachRunner());
+	}
+
+	@Autowired
+	public WorkflowRunner(RuleRunner runner, Checkpointer checkpointer, RuleTransactions transactions,
+	                      WriteBehindFlusher flusher, DataPrefetcher prefetcher, ForEachRunner forEach) {
+
 		this.runner = runner;
+		this.checkpointer = checkpointer;
+		this.transactions = transactions;
+		this.flusher = flusher;
+		this.prefetcher = prefetcher;
+		this.forEach = forEach;
 	}
 	
 	/**
 	 * Apply the appropriate ruleSet to the to result set. The ruleSet can be a predetermined set 
 	 * of ruleSet {@link RuleSetTypeInterface} or a custom list of ruleSet {@link RuleType}. The rule to apply
 	 * is dependent on the entry on the rule profile.
+	 * <P>The workflow runs in the transaction of the {@link TransactionPolicy}
+	 * of its rule set type. See {@link RuleTransactions}.
+	 * <P>Once the workflow has ended the changes registered with its {@link WriteBehind} unit are written in the
+	 * same transaction, unless it ended with an ERROR status in which case they are thrown away.
 	 * 
-	 * @throws RulesException If there is an error processing rules
+	 * @throws RulesException If there is an error processing rules or writing the changes
 	 */
-	@Transactional
 	public RuleResult processRules(OrchestrationData request, OrchestrationMode mode) throws RulesException{
 		
-		RuleResult ruleResult = runRuleSet(request, mode, true);
+		RuleResult ruleResult;
+		try {
+			ruleResult = transactions.inWorkflow(request.getRuleSetType(), () -> {
+				RuleResult result = runRuleSet(request, mode, true);
+				writePending(request);
+				return result;
+			});
+		} catch (DataAccessException e) {
+			throw new RulesException("Unable to write the pending changes of the workflow. " + e.getMessage(), e);
+		} finally {
+			if (request.hasWriteBehind()) {
+				request.getWriteBehind().discard();
+			}
+			request.cancelPrefetches();
+		}
 		log.debug("Success status from running rules are {}",ruleResult.getOk());
 		return ruleResult;
 
 	}
 
+	/**
+	 * Write the changes registered with the write-behind unit or throw them away if the workflow failed
+	 *
+	 * @param request The request data
+	 */
+	private void writePending(OrchestrationData request) {
+		if (!request.hasWriteBehind()) {
+			return;
+		}
+		WriteBehind unit = request.getWriteBehind();
+		if (InfoType.ERROR.equals(request.getStatusInfoType())) {
+			log.debug("Discarding {} pending changes of the failed workflow", unit.size());
+			unit.discard();
+		} else {
+			flusher.flush(unit);
+		}
+	}
+
 	/**
 	 * Run the rule set. If this is a sub workflow then don't run the start.end rules
+	 * <P>A top level workflow starts from the resume rule if one is set and, when checkpointing is on, has a
+	 * checkpoint taken after each rule. The checkpoint is removed once the END rule has run. A checkpointed workflow
+	 * can't use the {@link WriteBehind} unit as it is not part of the checkpoint.
+	 * <P>The deadline of the request is checked before each rule. Once it has passed a top level workflow goes
+	 * straight to END and a sub workflow returns false.
+	 * <P>The {@link DataPrefetcher} is told when the rule set starts and before each rule so it can start fetching
+	 * the request data of the rules ahead.
+	 * <P>A MAP construct is run by the {@link ForEachRunner} in place of a rule. In test mode it is reported rather
+	 * than run.
 	 *
 	 * @param request The request data
 	 * @param mode The {@link OrchestrationMode}
@@ -70,36 +174,79 @@ public class WorkflowRunner {
 		RuleResult result = new RuleResult(true);
 
 		log.debug("applyRules: Processing profile rule set {}",ruleSet);
+		if (OrchestrationMode.NORMAL.equals(mode)) {
+			prefetcher.start(request);
+		}
 
-		// Handles conditions
-		if (!ruleSet.isEmpty()) {
-			Rule rule = ruleSet.get(0);
-			while (hasMoreRules) {
-				if (rule.getRuleType().getRuleName().equals(OrchestrationConfig.WORKFLOW_END)) {
-					// The end but still run the end rule
-					hasMoreRules = false;
-					if (!topLevelRunner) {
-						// Get straight out as we don't run the END rule
-						break;
-					}
-				} else if (!topLevelRunner && rule.getRuleType().getRuleName().equals(OrchestrationConfig.WORKFLOW_START)) {
-					// Skip the start as not top level
-					rule = getRule(rule.getOnTrue().getRuleType(), request.getRuleSet().getRules());
+		WorkflowExecutionEvent event = new WorkflowExecutionEvent();
+		event.begin();
+		String outcome = STR_EXCEPTION;
+		try {
+			// Handles conditions
+			if (!ruleSet.isEmpty()) {
+				Rule rule = ruleSet.get(0);
+				boolean checkpointing = topLevelRunner && checkpointer.isEnabled() && request.getWorkflowId() != null;
+				if (checkpointing) {
+					request.refuseWriteBehind("Write-behind is not available to workflow " + request.getWorkflowId()
+							+ " as it is checkpointed and the changes would be lost on resume");
 				}
-
-				// Go ahead and run the rule
-				result = runRule(request, rule, mode);
-				if (result.isOk()) {
-					rule = rule.getOnTrue();
-				} else {
-					rule = rule.getOnFalse();
+				if (topLevelRunner && request.getResumeRule() != null) {
+					rule = getResumeRule(request.getResumeRule(), ruleSet);
+					log.debug("Resuming workflow {} from {}", request.getWorkflowId(), rule);
+					request.setResumeRule(null);
 				}
+				while (hasMoreRules) {
+					if (request.isDeadlineExpired() && !isEnd(rule)) {
+						deadlinePassed(request, rule);
+						if (!topLevelRunner) {
+							result = new RuleResult(false);
+							break;
+						}
+						rule = getRule(null, ruleSet);
+					}
+					if (isEnd(rule)) {
+						// The end but still run the end rule
+						hasMoreRules = false;
+						if (!topLevelRunner) {
+							// Get straight out as we don't run the END rule
+							break;
+						}
+					} else if (!topLevelRunner && rule.getRuleType().getRuleName().equals(OrchestrationConfig.WORKFLOW_START)) {
+						// Skip the start as not top level
+						rule = rule.getOnTrue();
+					}
 
-				// Sanity check
-				if (ruleCount++ >= RULE_MAX_RUN && hasMoreRules) {
-					throw new RulesException("Limit of "+ RULE_MAX_RUN +" reached while running rules");
+					// Go ahead and run the rule
+					if (OrchestrationMode.NORMAL.equals(mode)) {
+						prefetcher.ahead(request, rule);
+					}
+					result = runRule(request, rule, mode);
+					Rule lastRule = rule;
+					rule = rule.getNext(result);
+					if (checkpointing) {
+						if (hasMoreRules) {
+							checkpointer.checkpoint(request, lastRule, rule);
+						} else {
+							checkpointer.complete(request);
+						}
+					}
+
+					// Sanity check
+					if (ruleCount++ >= RULE_MAX_RUN && hasMoreRules) {
+						throw new RulesException("Limit of "+ RULE_MAX_RUN +" reached while running rules");
+					}
 				}
 			}
+			outcome = result.isOk() ? STR_PASS : STR_FAIL;
+		} finally {
+			event.end();
+			if (event.shouldCommit()) {
+				event.workflowType = request.getRuleSetType().getEnumName();
+				event.topLevel = topLevelRunner;
+				event.rulesRun = ruleCount;
+				event.outcome = outcome;
+				event.commit();
+			}
 		}
 		return result;
 
@@ -108,7 +255,18 @@ public class WorkflowRunner {
 	private RuleResult runRule(OrchestrationData request, Rule rule, OrchestrationMode mode) throws RulesException {
 
 		request.setCurrentRule(rule);
-		RuleResult result = runner.run(request, rule, mode);
+		RuleResult result;
+		if (rule.getRuleType().getRuleClass() instanceof ForEach) {
+			ForEach each = (ForEach) rule.getRuleType().getRuleClass();
+			if (OrchestrationMode.TEST.equals(mode)) {
+				result = forEach.test(rule, each);
+			} else {
+				result = forEach.run(request, each);
+				result.setTestInfo(rule.getRuleName());
+			}
+		} else {
+			result = runner.run(request, rule, mode);
+		}
 		if (OrchestrationMode.TEST.equals(mode)) {
 			log.debug(result.getTestInfo());
 			request.getTestResults().add(result.getTestInfo());
@@ -116,6 +274,44 @@ public class WorkflowRunner {
 		return result;
 	}
 
+	private static boolean isEnd(Rule rule) {
+		return rule.getRuleType().getRuleName().equals(OrchestrationConfig.WORKFLOW_END);
+	}
+
+	/**
+	 * Record that the workflow ran out of time before the rule
+	 *
+	 * @param request The request data
+	 * @param rule The rule that is not run
+	 */
+	private void deadlinePassed(OrchestrationData request, Rule rule) {
+		String name = rule.getRuleType().getRuleName();
+		log.warn("Deadline passed for {} before rule {}", request.getRuleSetType().getEnumName(), name);
+		request.getStatus().addEvent(InfoType.ERROR, EventType.RULE, OrchestrationErrorCode.ORCH2005,
+				"Workflow deadline passed before rule " + name);
+	}
+
+	/**
+	 * Find the rule a resumed workflow starts from. Checkpoints hold the name of the rule in the rule set, which
+	 * tells apart rules of the same type such as 1.RuleA or the copies of an inlined sub-workflow. Checkpoints
+	 * taken before that hold the rule type name and resume at the first rule of that type.
+	 *
+	 * @param name The rule name from the checkpoint
+	 * @param ruleSet The rules
+	 * @return The rule
+	 * @throws RulesException If the rule is no longer in the rule set
+	 */
+	private Rule getResumeRule(String name, List<Rule> ruleSet) throws RulesException {
+		Optional<Rule> r = ruleSet.stream().filter(p -> p.getRuleName().equalsIgnoreCase(name)).findFirst();
+		if (!r.isPresent()) {
+			r = ruleSet.stream().filter(p -> p.getRuleType().getRuleName().equalsIgnoreCase(name)).findFirst();
+		}
+		if (!r.isPresent()) {
+			throw new RulesException("Unable to resume workflow from " + name + " as it is not in the rule set");
+		}
+		return r.get();
+	}
+
 	private Rule getRule(RuleType rule, List<Rule> ruleSet) throws RulesException {
 		Optional<Rule> r = ruleSet.stream().filter(p -> p.getRuleType().equals(rule)).findFirst();
 		
@@ -0,0 +1,145 @@
+package au.com.kahaara.wf.orchestration;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.event.EventRecorder;
+import au.com.kahaara.wf.orchestration.event.EventType;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LayeredDataTest {
+
+    @Test
+    void readsThroughAndKeepsWritesInTheLayer() {
+        Map<String, Object> parent = new HashMap<>();
+        parent.put("a", 1);
+        parent.put("b", 2);
+        LayeredData first = new LayeredData(parent);
+        LayeredData second = new LayeredData(parent);
+
+        assertEquals(1, first.get("a"));
+        assertEquals(1, first.put("a", 10));
+        first.put("c", 3);
+        first.remove("b");
+        second.put("d", 4);
+
+        assertEquals(10, first.get("a"));
+        assertFalse(first.containsKey("b"));
+        assertEquals(2, first.size());
+        assertEquals(1, parent.get("a"));
+        assertEquals(2, parent.size());
+        assertEquals(1, second.get("a"));
+        assertEquals(2, second.get("b"));
+        assertNull(second.get("c"));
+
+        assertEquals(3, first.commit());
+        assertFalse(first.isChanged());
+        second.discard();
+        assertEquals(10, parent.get("a"));
+        assertEquals(3, parent.get("c"));
+        assertFalse(parent.containsKey("b"));
+        assertFalse(parent.containsKey("d"));
+        assertEquals(parent, first);
+    }
+
+    @Test
+    void subRulesMergeOnSuccessAndDropOnFailure() throws Exception {
+        MockEnvironment properties = new MockEnvironment();
+        properties.setProperty(OrchestrationConfig.PROPERTIES_PACKAGES + "[0]", "au.com.kahaara.wf.orchestration.rules.testrules");
+        RuleList ruleList = new RuleList(properties, null);
+        SubRule sub = new SubRule();
+        ruleList.getRuleList().put("SUB", new RuleType("Sub", sub,
+                SubRule.class.getMethod("runRule", OrchestrationData.class)));
+        ruleList.getRuleList().put("WRITE", new RuleType("Write", new WriteRule(),
+                WriteRule.class.getMethod("runRule", OrchestrationData.class)));
+        ruleList.getRuleList().put("FAIL", new RuleType("Fail", new FailRule(),
+                FailRule.class.getMethod("runRule", OrchestrationData.class)));
+        OrchestrationConfig oc = new OrchestrationConfig();
+        oc.setRuleInfoReported(false);
+        oc.setRuleInfoEnforce(false);
+        Orchestration orchestration = new Orchestration(new WorkflowRunner(new RuleRunner()), new EventRecorder(),
+                ruleList, null);
+
+        sub.rules = "Write";
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules("Sub");
+        assertTrue(orchestration.run(data));
+        assertEquals("written", data.getResultData().get(String.class.getName()));
+        assertFalse(data.getResultData() instanceof LayeredData);
+
+        sub.rules = "Write,Fail";
+        OrchestrationData failed = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        failed.setCustomRules("Sub");
+        orchestration.run(failed);
+        assertFalse(failed.getResultData().containsKey(String.class.getName()));
+    }
+
+    /**
+     * Runs the sub workflow of the rules it is given
+     */
+    public static class SubRule implements WorkflowRuleInterface {
+
+        volatile String rules;
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            OrchestrationData subRequest = new OrchestrationData(null, DefaultRuleSetType.CUSTOM);
+            subRequest.setCustomRules(rules);
+            return request.getOrchestration().runSubRules(request, subRequest);
+        }
+    }
+
+    /**
+     * Writes result data
+     */
+    public static class WriteRule implements WorkflowRuleInterface {
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            request.putData("written");
+            return new RuleResult(true);
+        }
+    }
+
+    /**
+     * Ends the workflow with an error
+     */
+    public static class FailRule implements WorkflowRuleInterface {
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) {
+            request.getStatus().addEvent(InfoType.ERROR, EventType.RULE, OrchestrationErrorCode.ORCH1001,
+                    "Failed", "The sub rules failed");
+            return new RuleResult(true);
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+package au.com.kahaara.wf.orchestration;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazyRequestDataTest {
+
+    private final AtomicInteger supplied = new AtomicInteger();
+
+    private OrchestrationData data(boolean deepCopy) {
+        OrchestrationConfig oc = new OrchestrationConfig();
+        oc.setDeepCopyAllowed(deepCopy);
+        return new OrchestrationData(oc);
+    }
+
+    private Customer supply(String name) {
+        supplied.incrementAndGet();
+        Customer customer = new Customer();
+        customer.setName(name);
+        return customer;
+    }
+
+    @Test
+    void notMadeUntilRead() {
+        OrchestrationData data = data(false);
+        data.putRequestData(Customer.class, () -> supply("Fred"));
+        assertTrue(data.hasRequestData(Customer.class.getName()));
+        assertFalse(data.getRequestData().containsKey(Customer.class.getName()));
+        data.cancelPrefetches();
+        assertEquals(0, supplied.get());
+
+        Customer customer = (Customer) data.getRequestData(Customer.class, false, true);
+        assertEquals("Fred", customer.getName());
+        assertSame(customer, data.getRequestData(Customer.class, false, true));
+        assertSame(customer, data.getRequestData().get(Customer.class.getName()));
+        assertEquals(1, supplied.get());
+    }
+
+    @Test
+    void madeOnceAcrossThreads() throws Exception {
+        OrchestrationData data = data(false);
+        CountDownLatch release = new CountDownLatch(1);
+        data.putRequestData(Customer.class, () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return supply("Fred");
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> reads = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                reads.add(executor.submit(() -> data.getRequestData(Customer.class, false, true)));
+            }
+            release.countDown();
+            Object first = reads.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<Object> read : reads) {
+                assertSame(first, read.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, supplied.get());
+    }
+
+    @Test
+    void deepCopiedWhileProcessingRules() {
+        OrchestrationData data = data(true);
+        data.putRequestMessageData(Customer.class, this::supply);
+        data.setRequestMessage("Fred");
+        data.setProcessingRules(true);
+
+        Customer copy = (Customer) data.getRequestData(Customer.class);
+        assertEquals("Fred", copy.getName());
+        assertNotSame(data.getRequestData().get(Customer.class.getName()), copy);
+        assertEquals(1, supplied.get());
+    }
+
+    @Test
+    void materializedForSerializing() {
+        OrchestrationData data = data(false);
+        data.putRequestData(Customer.class, () -> supply("Fred"));
+        data.materializeRequestData();
+        assertEquals(1, supplied.get());
+        assertEquals("Fred", ((Customer) data.getRequestData().get(Customer.class.getName())).getName());
+    }
+
+    @Test
+    void leftPendingForTheParentWhenReadBySubRequests() {
+        OrchestrationData parent = data(false);
+        parent.putRequestData(Customer.class, () -> supply("Fred"));
+
+        OrchestrationData sub = data(false);
+        LayeredData layer = new LayeredData(parent.getRequestData());
+        sub.setRequestData(layer);
+        sub.sharePrefetches(parent);
+        Customer customer = (Customer) sub.getRequestData(Customer.class, false, true);
+        assertEquals("Fred", customer.getName());
+        // The sub request failed so its data is dropped
+        layer.discard();
+
+        assertTrue(parent.isRequestDataPending(Customer.class.getName()));
+        assertSame(customer, parent.getRequestData(Customer.class, false, true));
+        assertFalse(parent.isRequestDataPending(Customer.class.getName()));
+        assertEquals(1, supplied.get());
+    }
+
+    public static class Customer {
+
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+}
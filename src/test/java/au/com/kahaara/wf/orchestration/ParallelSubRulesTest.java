@@ -0,0 +1,248 @@
+package au.com.kahaara.wf.orchestration;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.event.Event;
+import au.com.kahaara.wf.orchestration.event.EventRecorder;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelSubRulesTest {
+
+    private ExecutorService executor;
+
+    private Orchestration orchestration;
+
+    private OrchestrationConfig oc;
+
+    private final CyclicBarrier together = new CyclicBarrier(3);
+
+    @BeforeEach
+    void setup() throws Exception {
+        MockEnvironment properties = new MockEnvironment();
+        properties.setProperty(OrchestrationConfig.PROPERTIES_PACKAGES + "[0]", "au.com.kahaara.wf.orchestration.rules.testrules");
+        RuleList ruleList = new RuleList(properties, null);
+        for (String name : new String[]{"ItemA", "ItemB", "ItemC"}) {
+            ruleList.getRuleList().put(name.toUpperCase(), new RuleType(name, new ItemRule(name, together),
+                    ItemRule.class.getMethod("runRule", OrchestrationData.class)));
+        }
+        ruleList.getRuleList().put("QUICK", new RuleType("Quick", new ItemRule("Quick", null),
+                ItemRule.class.getMethod("runRule", OrchestrationData.class)));
+        ruleList.getRuleList().put("SLOW", new RuleType("Slow", new SlowRule(),
+                SlowRule.class.getMethod("runRule", OrchestrationData.class)));
+        ruleList.getRuleList().put("READER", new RuleType("Reader", new ReaderRule(),
+                ReaderRule.class.getMethod("runRule", OrchestrationData.class)));
+        ReaderRule.sawQuick = false;
+        ruleList.getRuleList().put("FAIL", new RuleType("Fail", new FailRule(),
+                FailRule.class.getMethod("runRule", OrchestrationData.class)));
+        oc = new OrchestrationConfig();
+        oc.setRuleInfoReported(false);
+        oc.setRuleInfoEnforce(false);
+        orchestration = new Orchestration(new WorkflowRunner(new RuleRunner()), new EventRecorder(), ruleList, null);
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterEach
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private OrchestrationData sub(String rules) {
+        OrchestrationData subRequest = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        subRequest.setCustomRules(rules);
+        return subRequest;
+    }
+
+    @Test
+    void runsTogetherAndMerges() throws Exception {
+        OrchestrationData parent = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        SubRulesResult result = orchestration.runSubRules(parent,
+                Arrays.asList(sub("ItemA"), sub("ItemB"), sub("ItemC")), executor, 5000, true);
+
+        assertTrue(result.isOk());
+        assertTrue(result.isComplete());
+        assertFalse(result.isTimedOut());
+        assertEquals(3, result.getResultData().size());
+        assertEquals("ItemB", parent.getResultData().get("ItemB"));
+        assertEquals(3, parent.getResultData().size());
+    }
+
+    @Test
+    void failsFast() throws Exception {
+        OrchestrationData parent = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        long start = System.nanoTime();
+        SubRulesResult result = orchestration.runSubRules(parent,
+                Arrays.asList(sub("Quick,Fail"), sub("Slow")), executor, 5000, true);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertFalse(result.isOk());
+        assertFalse(result.isTimedOut());
+        assertNotNull(result.getParts().get(0).getFailure());
+        assertFalse(result.getParts().get(1).isFinished());
+        assertTrue(parent.getResultData().isEmpty());
+        assertEquals(InfoType.ERROR, parent.getStatusInfoType());
+    }
+
+    @Test
+    void keepsPartialResultsAtTheTimeout() throws Exception {
+        OrchestrationData parent = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        SubRulesResult result = orchestration.runSubRules(parent,
+                Arrays.asList(sub("Quick"), sub("Slow")), executor, 100, false);
+
+        assertTrue(result.isTimedOut());
+        assertFalse(result.isComplete());
+        assertTrue(result.getParts().get(0).isOk());
+        assertEquals("Quick", parent.getResultData().get("Quick"));
+        assertFalse(parent.getResultData().containsKey("Slow"));
+        assertTrue(parent.getStatus().getEvents().stream().map(Event::getCode)
+                .anyMatch(OrchestrationErrorCode.ORCH2005::equals));
+    }
+
+    @Test
+    void runningPartsAreDetachedBeforeAnyIsCommitted() throws Exception {
+        OrchestrationData parent = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        // Lingers after each write so a part still reading the parent would see it
+        parent.setResultData(new HashMap<String, Object>() {
+            @Override
+            public Object put(String key, Object value) {
+                Object previous = super.put(key, value);
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return previous;
+            }
+
+            @Override
+            public void putAll(Map<? extends String, ?> m) {
+                m.forEach(this::put);
+            }
+        });
+        parent.getResultData().put("Before", "Before");
+        SubRulesResult result = orchestration.runSubRules(parent,
+                Arrays.asList(sub("Quick"), sub("Reader")), executor, 100, false);
+
+        assertTrue(result.isTimedOut());
+        assertEquals("Quick", parent.getResultData().get("Quick"));
+        // The reader was still running when Quick was committed but no longer read the parent data
+        assertFalse(ReaderRule.sawQuick);
+    }
+
+    /**
+     * Writes its name to the result data, after waiting for the other items if it is given a barrier
+     */
+    public static class ItemRule implements WorkflowRuleInterface {
+
+        private final String name;
+
+        private final CyclicBarrier together;
+
+        public ItemRule(String name, CyclicBarrier together) {
+            this.name = name;
+            this.together = together;
+        }
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            if (together != null) {
+                try {
+                    together.await(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new RulesException("The items did not run together", e);
+                }
+            }
+            request.getResultData().put(name, name);
+            return new RuleResult(true);
+        }
+    }
+
+    /**
+     * Takes too long
+     */
+    public static class SlowRule implements WorkflowRuleInterface {
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) {
+            try {
+                Thread.sleep(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            request.getResultData().put("Slow", "Slow");
+            return new RuleResult(true);
+        }
+    }
+
+    /**
+     * Keeps reading the parent data until it is detached from it, noting if it sees what Quick wrote
+     */
+    public static class ReaderRule implements WorkflowRuleInterface {
+
+        static volatile boolean sawQuick;
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) {
+            LayeredData resultData = (LayeredData) request.getResultData();
+            long until = System.currentTimeMillis() + 5000;
+            while (!resultData.getParent().isEmpty() && System.currentTimeMillis() < until) {
+                if (request.getResultData().get("Quick") != null) {
+                    sawQuick = true;
+                }
+            }
+            return new RuleResult(true);
+        }
+    }
+
+    /**
+     * Throws
+     */
+    public static class FailRule implements WorkflowRuleInterface {
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            throw new RulesException("Item failed");
+        }
+    }
+
+}
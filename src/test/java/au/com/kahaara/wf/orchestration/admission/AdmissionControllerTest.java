@@ -0,0 +1,208 @@
+package au.com.kahaara.wf.orchestration.admission;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.Orchestration;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.checkpoint.Checkpointer;
+import au.com.kahaara.wf.orchestration.event.Event;
+import au.com.kahaara.wf.orchestration.event.EventRecorder;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics;
+import au.com.kahaara.wf.orchestration.metrics.Outcome;
+import au.com.kahaara.wf.orchestration.metrics.TimerSnapshot;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleSetTypeInterface;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.tracing.Tracer;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+
+    private ExecutorService executor;
+
+    private OrchestrationMetrics metrics;
+
+    private Orchestration orchestration;
+
+    private OrchestrationConfig oc;
+
+    @BeforeEach
+    void setup() throws Exception {
+        MockEnvironment properties = new MockEnvironment();
+        properties.setProperty(OrchestrationConfig.PROPERTIES_PACKAGES + "[0]", "au.com.kahaara.wf.orchestration.rules.testrules");
+        RuleList ruleList = new RuleList(properties, null);
+        ruleList.getRuleList().put("BLOCKING", new RuleType("Blocking", new BlockingRule(),
+                BlockingRule.class.getMethod("runRule", OrchestrationData.class)));
+        BlockingRule.release = new CountDownLatch(1);
+
+        oc = new OrchestrationConfig();
+        oc.setRuleInfoReported(true);
+        oc.setRuleInfoEnforce(false);
+        metrics = new OrchestrationMetrics();
+        AdmissionController admission = new AdmissionController(new AdaptiveLimiter(2, 2, 2, 0.9, 2.0));
+        orchestration = new Orchestration(new WorkflowRunner(new RuleRunner()), new EventRecorder(), ruleList, null,
+                metrics, new Tracer(), new Checkpointer(), admission);
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void close() {
+        BlockingRule.release.countDown();
+        executor.shutdownNow();
+    }
+
+    private OrchestrationData request(TestType type, String rules) {
+        OrchestrationData data = new OrchestrationData(oc, type);
+        data.setCustomRules(rules);
+        return data;
+    }
+
+    @Test
+    void lowerPrioritiesAreShedFirst() throws Exception {
+        // NORMAL can use 1 of the limit of 2 and CRITICAL all of it
+        CompletableFuture<Boolean> first = orchestration.runAsync(request(TestType.ORDER, "Blocking"), executor);
+
+        OrchestrationData shed = request(TestType.ORDER, "RuleReturnTrue");
+        assertFalse(orchestration.run(shed));
+        assertTrue(shed.getStatus().getEvents().stream().map(Event::getCode)
+                .anyMatch(OrchestrationErrorCode.ORCH2006::equals));
+
+        OrchestrationData critical = request(TestType.PAYMENT, "RuleReturnTrue");
+        assertTrue(orchestration.run(critical));
+
+        BlockingRule.release.countDown();
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertTrue(orchestration.run(request(TestType.ORDER, "RuleReturnTrue")));
+
+        long rejected = metrics.getWorkflowSnapshots().stream().filter(t -> t.getOutcome() == Outcome.REJECTED)
+                .mapToLong(TimerSnapshot::getCount).sum();
+        assertEquals(1, rejected);
+    }
+
+    @Test
+    void limitFollowsLatency() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 2, 20, 0.5, 2.0);
+
+        // Fast workflows with most of the limit in use grow it
+        for (int i = 0; i < 200; i++) {
+            for (int j = 0; j < 8; j++) {
+                assertTrue(limiter.tryAcquire(Priority.CRITICAL));
+            }
+            for (int j = 0; j < 8; j++) {
+                limiter.release("ORDER", 1_000_000, false);
+            }
+        }
+        int grown = limiter.getLimit();
+        assertTrue(grown > 10);
+        assertEquals(0, limiter.getInFlight());
+
+        // A slow one cuts it
+        assertTrue(limiter.tryAcquire(Priority.CRITICAL));
+        limiter.release("ORDER", 50_000_000, false);
+        assertTrue(limiter.getLimit() < grown);
+
+        // Never below the minimum
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limiter.tryAcquire(Priority.LOW));
+            limiter.release("ORDER", 1, true);
+            limiter.tryAcquire(Priority.LOW);
+            limiter.release("ORDER", TimeUnit.SECONDS.toNanos(1), true);
+        }
+        assertTrue(limiter.getLimit() >= 2);
+        assertFalse(new AdmissionController().isEnabled());
+    }
+
+    @Test
+    void eachTypeHasItsOwnBaseline() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 2, 20, 0.5, 2.0);
+
+        // A slow type of workflow mixed in with a fast one is not taken as overload
+        for (int i = 0; i < 200; i++) {
+            for (int j = 0; j < 8; j++) {
+                assertTrue(limiter.tryAcquire(Priority.CRITICAL));
+            }
+            for (int j = 0; j < 8; j++) {
+                limiter.release(j % 2 == 0 ? "ORDER" : "PAYMENT", j % 2 == 0 ? 1_000_000 : 50_000_000, false);
+            }
+        }
+        int grown = limiter.getLimit();
+        assertTrue(grown > 10);
+        assertEquals(1_000_000, limiter.getBaselineNanos("ORDER"));
+        assertEquals(50_000_000, limiter.getBaselineNanos("PAYMENT"));
+
+        // A burst of slow responses is cut once per smoothed latency of the type, not collapsed
+        for (int i = 0; i < 20; i++) {
+            assertTrue(limiter.tryAcquire(Priority.CRITICAL));
+            limiter.release("PAYMENT", 500_000_000, false);
+        }
+        assertEquals((int) (grown * 0.5), limiter.getLimit(), 1);
+    }
+
+    enum TestType implements RuleSetTypeInterface {
+        ORDER(Priority.NORMAL),
+        PAYMENT(Priority.CRITICAL);
+
+        private final Priority priority;
+
+        TestType(Priority priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public String getRules() {
+            return null;
+        }
+
+        @Override
+        public String getEnumName() {
+            return name();
+        }
+
+        @Override
+        public Priority getPriority() {
+            return priority;
+        }
+    }
+
+    /**
+     * Holds its workflow until released
+     */
+    public static class BlockingRule implements WorkflowRuleInterface {
+
+        static volatile CountDownLatch release;
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RulesException("Interrupted");
+            }
+            return new RuleResult(true);
+        }
+    }
+
+}
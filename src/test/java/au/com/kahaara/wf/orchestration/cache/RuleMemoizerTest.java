@@ -0,0 +1,159 @@
+package au.com.kahaara.wf.orchestration.cache;
+
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationMode;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics;
+import au.com.kahaara.wf.orchestration.metrics.Outcome;
+import au.com.kahaara.wf.orchestration.metrics.ResourceAccounting;
+import au.com.kahaara.wf.orchestration.resilience.RuleResilience;
+import au.com.kahaara.wf.orchestration.rules.Rule;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.workflow.Memoize;
+import au.com.kahaara.wf.orchestration.workflow.Workflow;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleMemoizerTest {
+
+    private RuleMemoizer memoizer;
+
+    private RuleRunner runner;
+
+    private OrchestrationMetrics metrics;
+
+    private LookupRule lookup;
+
+    @BeforeEach
+    void setup() {
+        memoizer = new RuleMemoizer();
+        metrics = new OrchestrationMetrics();
+        runner = new RuleRunner(metrics, new ResourceAccounting(false), new RuleResilience(), memoizer);
+        lookup = new LookupRule();
+    }
+
+    private Rule rule(MemoizePolicy policy) throws Exception {
+        RuleType rt = new RuleType("Lookup", lookup, LookupRule.class.getMethod("runRule", OrchestrationData.class));
+        rt.setMemoize(policy);
+        return new Rule(rt);
+    }
+
+    private static OrchestrationData request(int code) {
+        OrchestrationData data = new OrchestrationData();
+        data.putRequestData(Integer.valueOf(code));
+        return data;
+    }
+
+    @Test
+    void sameInputsReplayTheResult() throws Exception {
+        Rule rule = rule(new MemoizePolicy(100, 60000));
+
+        OrchestrationData first = request(61);
+        assertTrue(runner.run(first, rule, OrchestrationMode.NORMAL).isOk());
+        OrchestrationData second = request(61);
+        RuleResult result = runner.run(second, rule, OrchestrationMode.NORMAL);
+
+        assertTrue(result.isOk());
+        assertEquals("Country 61", result.getResultInfo());
+        assertEquals("Country 61", second.getResultData().get(String.class.getName()));
+        assertEquals(1, lookup.runs.get());
+
+        assertTrue(runner.run(request(64), rule, OrchestrationMode.NORMAL).isOk());
+        assertEquals(2, lookup.runs.get());
+        TtlLruCache<String, ?> cache = memoizer.getCache("Lookup");
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, metrics.getRuleSnapshot("Lookup", Outcome.MEMOIZED).getCount());
+        assertEquals(2, metrics.getRuleSnapshot("Lookup", Outcome.PASS).getCount());
+
+        memoizer.clear();
+        runner.run(request(61), rule, OrchestrationMode.NORMAL);
+        assertEquals(3, lookup.runs.get());
+    }
+
+    @Test
+    void resultsExpire() throws Exception {
+        Rule rule = rule(new MemoizePolicy(100, 20));
+        runner.run(request(61), rule, OrchestrationMode.NORMAL);
+        Thread.sleep(40);
+        runner.run(request(61), rule, OrchestrationMode.NORMAL);
+        assertEquals(2, lookup.runs.get());
+
+        assertFalse(new RuleRunner(new OrchestrationMetrics(), new ResourceAccounting(false), new RuleResilience(),
+                new RuleMemoizer(false)).run(request(61), rule, OrchestrationMode.NORMAL).getResultInfo().isEmpty());
+        assertEquals(3, lookup.runs.get());
+    }
+
+    @Test
+    void cacheIsSizedByTheCurrentPolicy() throws Exception {
+        runner.run(request(61), rule(new MemoizePolicy(1, 60000)), OrchestrationMode.NORMAL);
+        TtlLruCache<String, ?> small = memoizer.getCache("Lookup");
+        runner.run(request(62), rule(new MemoizePolicy(1, 60000)), OrchestrationMode.NORMAL);
+        assertSame(small, memoizer.getCache("Lookup"));
+
+        Rule bigger = rule(new MemoizePolicy(10, 60000));
+        runner.run(request(61), bigger, OrchestrationMode.NORMAL);
+        runner.run(request(62), bigger, OrchestrationMode.NORMAL);
+        assertNotSame(small, memoizer.getCache("Lookup"));
+        assertEquals(2, memoizer.getCache("Lookup").size());
+        assertEquals(4, lookup.runs.get());
+    }
+
+    @Test
+    void leastRecentlyUsedIsDropped() {
+        TtlLruCache<String, Integer> cache = new TtlLruCache<>(2, 60000);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertTrue(cache.get("a").isPresent());
+        cache.put("c", 3);
+        assertFalse(cache.containsKey("b"));
+        assertTrue(cache.containsKey("a"));
+        assertEquals(2, cache.size());
+
+        assertNull(MemoizePolicy.from(Plain.class.getAnnotation(Workflow.class).memoize()));
+        assertEquals(500, MemoizePolicy.from(Memoized.class.getAnnotation(Workflow.class).memoize()).getMaxEntries());
+    }
+
+    @Workflow(rulename = "Plain")
+    static class Plain {
+    }
+
+    @Workflow(rulename = "Memoized", memoize = @Memoize(maxEntries = 500))
+    static class Memoized {
+    }
+
+    /**
+     * A reference data lookup
+     */
+    public static class LookupRule implements WorkflowRuleInterface {
+
+        final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public RuleInfo getInfo() {
+            RuleInfo info = new RuleInfo();
+            info.addExpectedRequestData(Integer.class);
+            info.addCreatedResponseData(String.class);
+            return info;
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            runs.incrementAndGet();
+            String country = "Country " + request.getRequestData().get(Integer.class.getName());
+            request.putData(country);
+            RuleResult result = new RuleResult(true);
+            result.setResultInfo(country);
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package au.com.kahaara.wf.orchestration.cache;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.Orchestration;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.admission.AdmissionController;
+import au.com.kahaara.wf.orchestration.checkpoint.Checkpointer;
+import au.com.kahaara.wf.orchestration.coalesce.RequestCoalescer;
+import au.com.kahaara.wf.orchestration.event.EventRecorder;
+import au.com.kahaara.wf.orchestration.event.EventType;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.tracing.Tracer;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkflowResultCacheTest {
+
+    private WorkflowResultCache resultCache;
+
+    private Orchestration orchestration;
+
+    private OrchestrationConfig oc;
+
+    private LookupRule lookup;
+
+    @BeforeEach
+    void setup() throws Exception {
+        MockEnvironment properties = new MockEnvironment();
+        properties.setProperty(OrchestrationConfig.PROPERTIES_PACKAGES + "[0]", "au.com.kahaara.wf.orchestration.rules.testrules");
+        RuleList ruleList = new RuleList(properties, null);
+        lookup = new LookupRule();
+        ruleList.getRuleList().put("LOOKUP", new RuleType("Lookup", lookup,
+                LookupRule.class.getMethod("runRule", OrchestrationData.class)));
+
+        oc = new OrchestrationConfig();
+        oc.setRuleInfoReported(false);
+        oc.setRuleInfoEnforce(false);
+        resultCache = new WorkflowResultCache();
+        resultCache.register(DefaultRuleSetType.CUSTOM,
+                d -> String.valueOf(d.getRequestData().get(Integer.class.getName())), 2, 60000);
+        orchestration = new Orchestration(new WorkflowRunner(new RuleRunner()), new EventRecorder(), ruleList, null,
+                new OrchestrationMetrics(), new Tracer(), new Checkpointer(), new AdmissionController(),
+                new RequestCoalescer(), resultCache);
+    }
+
+    private OrchestrationData request(int number) {
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules("Lookup");
+        data.putRequestData(Integer.valueOf(number));
+        return data;
+    }
+
+    @Test
+    void repeatedRequestsSkipTheRules() {
+        OrchestrationData first = request(7);
+        assertTrue(orchestration.run(first));
+        OrchestrationData second = request(7);
+        assertTrue(orchestration.run(second));
+
+        assertEquals(1, lookup.runs.get());
+        assertEquals("Result 7", second.getResultData().get(String.class.getName()));
+        assertNotSame(first.getResultData(), second.getResultData());
+        assertEquals(InfoType.WARNING, second.getStatusInfoType());
+        assertEquals(1, second.getStatus().getEvents().size());
+        assertNotSame(first.getStatus().getEvents().get(0), second.getStatus().getEvents().get(0));
+        assertEquals(1, resultCache.getHits());
+        assertEquals(1, resultCache.getMisses());
+    }
+
+    @Test
+    void invalidateByPrefix() {
+        assertTrue(orchestration.run(request(7)));
+        assertTrue(orchestration.run(request(8)));
+        assertEquals("CUSTOM/Lookup/7", resultCache.key(request(7)));
+
+        assertEquals(1, resultCache.invalidate("CUSTOM/Lookup/7"));
+        assertTrue(orchestration.run(request(8)));
+        assertTrue(orchestration.run(request(7)));
+        assertEquals(3, lookup.runs.get());
+
+        assertEquals(2, resultCache.invalidate("CUSTOM/"));
+        assertEquals(0, resultCache.getCache(DefaultRuleSetType.CUSTOM).size());
+    }
+
+    @Test
+    void failuresAndUnregisteredTypesAreNotCached() {
+        lookup.fail = true;
+        assertTrue(orchestration.run(request(7)));
+        assertTrue(orchestration.run(request(7)));
+        assertEquals(2, lookup.runs.get());
+
+        resultCache.unregister(DefaultRuleSetType.CUSTOM);
+        assertNull(resultCache.key(request(7)));
+    }
+
+    @Test
+    void sizeAndAgeBounds() throws Exception {
+        TtlLruCache<String, String> cache = new TtlLruCache<>(2, 30);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+        assertEquals(2, cache.size());
+        assertFalse(cache.get("a").isPresent());
+        Thread.sleep(50);
+        assertFalse(cache.get("c").isPresent());
+    }
+
+    /**
+     * A lookup that warns as it goes
+     */
+    public static class LookupRule implements WorkflowRuleInterface {
+
+        final AtomicInteger runs = new AtomicInteger();
+
+        volatile boolean fail;
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            runs.incrementAndGet();
+            if (fail) {
+                request.getStatus().addEvent(InfoType.ERROR, EventType.RULE, OrchestrationErrorCode.ORCH5003,
+                        "No number");
+                return new RuleResult(false);
+            }
+            request.getStatus().addEvent(InfoType.WARNING, EventType.RULE, OrchestrationErrorCode.ORCH2001,
+                    "Looked up slowly");
+            request.putData("Result " + request.getRequestData().get(Integer.class.getName()));
+            return new RuleResult(true);
+        }
+    }
+
+}
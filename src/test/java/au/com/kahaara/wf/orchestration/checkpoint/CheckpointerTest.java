@@ -0,0 +1,235 @@
+package au.com.kahaara.wf.orchestration.checkpoint;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.Orchestration;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.event.EventRecorder;
+import au.com.kahaara.wf.orchestration.event.EventType;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.serial.JsonDataSerializer;
+import au.com.kahaara.wf.orchestration.subflow.SubWorkflowRegistry;
+import au.com.kahaara.wf.orchestration.tracing.Tracer;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointerTest {
+
+    @TempDir
+    Path directory;
+
+    private Checkpointer checkpointer;
+
+    private Orchestration orchestration;
+
+    private OrchestrationConfig oc;
+
+    private RuleList ruleList;
+
+    @BeforeEach
+    void setup() throws Exception {
+        MockEnvironment properties = new MockEnvironment();
+        properties.setProperty(OrchestrationConfig.PROPERTIES_PACKAGES + "[0]", "au.com.kahaara.wf.orchestration.rules.testrules");
+        ruleList = new RuleList(properties, null);
+        ruleList.getRuleList().put("FLAKY", new RuleType("Flaky", new FlakyRule(),
+                FlakyRule.class.getMethod("runRule", OrchestrationData.class)));
+        ruleList.getRuleList().put("READ", new RuleType("Read", new ReadRule(),
+                ReadRule.class.getMethod("runRule", OrchestrationData.class)));
+        FlakyRule.RUNS.set(0);
+        FlakyRule.FAIL_ON.set(1);
+
+        oc = new OrchestrationConfig();
+        oc.setRuleInfoReported(true);
+        oc.setRuleInfoEnforce(false);
+        checkpointer = new Checkpointer(new FileCheckpointStore(directory), new JsonDataSerializer(), oc, 10, 5);
+        WorkflowRunner runner = new WorkflowRunner(new RuleRunner(), checkpointer);
+        orchestration = new Orchestration(runner, new EventRecorder(), ruleList, null, new OrchestrationMetrics(),
+                new Tracer(), checkpointer);
+    }
+
+    @AfterEach
+    void close() {
+        checkpointer.destroy();
+    }
+
+    @Test
+    void resumeFromRuleThatFailed() throws Exception {
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules("RuleReturnTrue,Flaky");
+        data.setWorkflowId("order-42");
+        data.putRequestData(Integer.valueOf(42));
+        data.getStatus().addEvent(InfoType.WARNING, EventType.RULE, OrchestrationErrorCode.ORCH5003, "Before run");
+
+        // The node "dies" part way through
+        assertFalse(orchestration.run(data));
+        checkpointer.flush();
+        Optional<Checkpoint> saved = checkpointer.getStore().load("order-42");
+        assertTrue(saved.isPresent());
+        assertEquals("RuleReturnTrue", saved.get().getLastRule());
+        assertEquals("Flaky", saved.get().getNextRule());
+
+        OrchestrationData resumed = orchestration.resume("order-42");
+        assertEquals(2, FlakyRule.RUNS.get());
+        assertEquals("order-42", resumed.getWorkflowId());
+        assertEquals(Integer.valueOf(42), resumed.getRequestData().get(Integer.class.getName()));
+        assertEquals("this is a string", resumed.getResultData().get(String.class.getName()).toString().toLowerCase());
+        assertEquals(Long.valueOf(7), resumed.getResultData().get(Long.class.getName()));
+        assertEquals(InfoType.WARNING, resumed.getStatusInfoType());
+        assertEquals(OrchestrationErrorCode.ORCH5003, resumed.getStatus().getEvents().get(0).getCode());
+        assertNull(resumed.getResumeRule());
+
+        // Finished so the checkpoint has gone
+        checkpointer.flush();
+        assertFalse(checkpointer.getStore().load("order-42").isPresent());
+    }
+
+    @Test
+    void resumeIntoAnInlinedCopy() throws Exception {
+        SubWorkflowRegistry registry = new SubWorkflowRegistry(ruleList);
+        registry.register("STEP", "RuleReturnTrue,Flaky");
+        FlakyRule.FAIL_ON.set(2);
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules("@Step,1.@Step");
+        data.setWorkflowId("order-43");
+
+        // Fails in the second copy of the sub-workflow
+        assertFalse(orchestration.run(data));
+        checkpointer.flush();
+        Optional<Checkpoint> saved = checkpointer.getStore().load("order-43");
+        assertTrue(saved.isPresent());
+        assertEquals("1.@Step/RuleReturnTrue", saved.get().getLastRule());
+        assertEquals("1.@Step/Flaky", saved.get().getNextRule());
+
+        // Only the rest of the second copy runs
+        orchestration.resume("order-43");
+        assertEquals(3, FlakyRule.RUNS.get());
+    }
+
+    @Test
+    void unreadRequestDataIsNotMadeForACheckpoint() throws Exception {
+        AtomicInteger supplied = new AtomicInteger();
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules("RuleReturnTrue,Flaky");
+        data.setWorkflowId("order-44");
+        data.putRequestData(Integer.class, () -> supplied.incrementAndGet());
+
+        assertFalse(orchestration.run(data));
+        assertEquals(0, supplied.get());
+        OrchestrationData resumed = orchestration.resume("order-44");
+        assertFalse(resumed.getRequestData().containsKey(Integer.class.getName()));
+    }
+
+    @Test
+    void requestDataReadBetweenCheckpointsIsCheckpointed() throws Exception {
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules("RuleReturnTrue,Read,Flaky");
+        data.setWorkflowId("order-45");
+        data.prefetchRequestData(Integer.class.getName(), CompletableFuture.completedFuture(42));
+
+        // Read takes the prefetched data into the request data after the first checkpoint
+        assertFalse(orchestration.run(data));
+        OrchestrationData resumed = orchestration.resume("order-45");
+        assertEquals(Integer.valueOf(42), resumed.getRequestData().get(Integer.class.getName()));
+    }
+
+    @Test
+    void idsThatDifferOnlyInUnsafeCharactersKeepTheirOwnFiles() throws Exception {
+        FileCheckpointStore store = new FileCheckpointStore(directory.resolve("ids"));
+        String[] ids = {"order 1", "order_1", "Order_1", "order/1", "order-1"};
+        List<Checkpoint> checkpoints = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            Checkpoint cp = new Checkpoint();
+            cp.setWorkflowId(ids[i]);
+            cp.setSequence(i);
+            checkpoints.add(cp);
+        }
+        store.save(checkpoints);
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i, store.load(ids[i]).get().getSequence());
+        }
+        store.delete(Arrays.asList(ids[0], ids[1]));
+        assertFalse(store.load(ids[0]).isPresent());
+        assertTrue(store.load(ids[2]).isPresent());
+    }
+
+    @Test
+    void resumeWithoutCheckpoint() {
+        assertThrows(RulesException.class, () -> orchestration.resume("missing"));
+    }
+
+    @Test
+    void completedWorkflowLeavesNoCheckpoint() throws Exception {
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules("RuleReturnTrue");
+        assertTrue(orchestration.run(data));
+        assertNotNull(data.getWorkflowId());
+        checkpointer.flush();
+        assertFalse(checkpointer.getStore().load(data.getWorkflowId()).isPresent());
+    }
+
+    /**
+     * Reads the request data, waiting for it if it is being fetched
+     */
+    public static class ReadRule implements WorkflowRuleInterface {
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) {
+            assertEquals(Integer.valueOf(42), request.getRequestData(Integer.class));
+            return new RuleResult(true);
+        }
+    }
+
+    /**
+     * Throws once, the first time it runs unless told otherwise, as if the node had crashed
+     */
+    public static class FlakyRule implements WorkflowRuleInterface {
+
+        static final AtomicInteger RUNS = new AtomicInteger();
+
+        static final AtomicInteger FAIL_ON = new AtomicInteger(1);
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            if (RUNS.incrementAndGet() == FAIL_ON.get()) {
+                throw new RulesException("Node went away");
+            }
+            assertNotNull(request.getData(String.class));
+            request.putData(Long.valueOf(7));
+            return new RuleResult(true);
+        }
+    }
+
+}
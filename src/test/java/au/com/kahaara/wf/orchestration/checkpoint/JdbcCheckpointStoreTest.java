@@ -0,0 +1,120 @@
+package au.com.kahaara.wf.orchestration.checkpoint;
+
+import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.event.Event;
+import au.com.kahaara.wf.orchestration.event.EventType;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JdbcCheckpointStoreTest {
+
+    private JdbcCheckpointStore store;
+
+    private JdbcDataSource ds;
+
+    @BeforeEach
+    void setup() {
+        ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        store = new JdbcCheckpointStore(ds);
+        store.createTable();
+    }
+
+    private Checkpoint checkpoint(String id, long seq, String next) {
+        Checkpoint c = new Checkpoint();
+        c.setWorkflowId(id);
+        c.setRuleSetType("au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType#CUSTOM");
+        c.setCustomRules("A,B,C");
+        c.setLastRule("A");
+        c.setNextRule(next);
+        c.setSequence(seq);
+        c.setStatus(InfoType.WARNING);
+        c.setRequestData("{}".getBytes(StandardCharsets.UTF_8));
+        c.setResultData(("{\"seq\":" + seq + "}").getBytes(StandardCharsets.UTF_8));
+        c.getEvents().add(CheckpointEvent.from(new Event(InfoType.WARNING, EventType.RULE,
+                OrchestrationErrorCode.ORCH5003, "msg", "details")));
+        c.setUpdated(System.currentTimeMillis());
+        return c;
+    }
+
+    @Test
+    void saveReplaceLoadAndDelete() throws Exception {
+        store.save(Arrays.asList(checkpoint("one", 1, "B"), checkpoint("two", 1, "B")));
+        // Mix of an update and an insert in one batch
+        store.save(Arrays.asList(checkpoint("one", 2, "C"), checkpoint("three", 1, "B")));
+
+        Optional<Checkpoint> one = store.load("one");
+        assertTrue(one.isPresent());
+        assertEquals(2, one.get().getSequence());
+        assertEquals("C", one.get().getNextRule());
+        assertEquals(InfoType.WARNING, one.get().getStatus());
+        assertEquals("{\"seq\":2}", new String(one.get().getResultData(), StandardCharsets.UTF_8));
+        assertEquals(OrchestrationErrorCode.ORCH5003, one.get().getEvents().get(0).toEvent().getCode());
+        assertTrue(store.load("three").isPresent());
+
+        store.delete(Arrays.asList("one", "missing"));
+        assertFalse(store.load("one").isPresent());
+        assertTrue(store.load("two").isPresent());
+        store.delete(Collections.emptyList());
+    }
+
+    @Test
+    void batchIsSavedInOneTransaction() throws Exception {
+        store.save(Collections.singletonList(checkpoint("one", 1, "B")));
+        char[] tooLong = new char[200];
+        Arrays.fill(tooLong, 'x');
+
+        assertThrows(IOException.class, () -> store.save(Arrays.asList(checkpoint("one", 2, "C"),
+                checkpoint(new String(tooLong), 1, "B"))));
+        assertEquals(1, store.load("one").get().getSequence());
+    }
+
+    @Test
+    void batchWithoutCountsIsSaved() throws Exception {
+        // Reports every statement of a batch as done without saying how many rows it changed
+        JdbcTemplate noCounts = new JdbcTemplate(ds) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                int[] counts = super.batchUpdate(sql, batchArgs);
+                Arrays.fill(counts, Statement.SUCCESS_NO_INFO);
+                return counts;
+            }
+        };
+        store = new JdbcCheckpointStore(noCounts);
+        store.save(Collections.singletonList(checkpoint("one", 1, "B")));
+        store.save(Arrays.asList(checkpoint("one", 2, "C"), checkpoint("two", 1, "B")));
+
+        assertEquals(2, store.load("one").get().getSequence());
+        assertEquals("C", store.load("one").get().getNextRule());
+        assertTrue(store.load("two").isPresent());
+    }
+
+    @Test
+    void writerBatchesToTheStore() throws Exception {
+        CheckpointWriter writer = new CheckpointWriter(store, 2, 1000);
+        for (int i = 1; i <= 5; i++) {
+            writer.save(checkpoint("wf", i, "B"));
+        }
+        writer.save(checkpoint("other", 1, "B"));
+        writer.delete("other");
+        writer.flush();
+        assertEquals(5, store.load("wf").get().getSequence());
+        assertFalse(store.load("other").isPresent());
+        writer.close();
+    }
+
+}
@@ -0,0 +1,195 @@
+package au.com.kahaara.wf.orchestration.coalesce;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.Orchestration;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.admission.AdmissionController;
+import au.com.kahaara.wf.orchestration.checkpoint.Checkpointer;
+import au.com.kahaara.wf.orchestration.event.EventRecorder;
+import au.com.kahaara.wf.orchestration.event.EventType;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.tracing.Tracer;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCoalescerTest {
+
+    private ExecutorService executor;
+
+    private RequestCoalescer coalescer;
+
+    private Orchestration orchestration;
+
+    private OrchestrationConfig oc;
+
+    private LookupRule lookup;
+
+    @BeforeEach
+    void setup() throws Exception {
+        MockEnvironment properties = new MockEnvironment();
+        properties.setProperty(OrchestrationConfig.PROPERTIES_PACKAGES + "[0]", "au.com.kahaara.wf.orchestration.rules.testrules");
+        RuleList ruleList = new RuleList(properties, null);
+        lookup = new LookupRule();
+        ruleList.getRuleList().put("LOOKUP", new RuleType("Lookup", lookup,
+                LookupRule.class.getMethod("runRule", OrchestrationData.class)));
+
+        oc = new OrchestrationConfig();
+        oc.setRuleInfoReported(false);
+        oc.setRuleInfoEnforce(false);
+        coalescer = new RequestCoalescer();
+        coalescer.register(DefaultRuleSetType.CUSTOM, d -> d.getRequestData().get(Integer.class.getName()));
+        orchestration = new Orchestration(new WorkflowRunner(new RuleRunner()), new EventRecorder(), ruleList, null,
+                new OrchestrationMetrics(), new Tracer(), new Checkpointer(), new AdmissionController(), coalescer);
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void close() {
+        lookup.release.countDown();
+        executor.shutdownNow();
+        coalescer.destroy();
+    }
+
+    private OrchestrationData request(int number) {
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules("Lookup");
+        data.putRequestData(Integer.valueOf(number));
+        return data;
+    }
+
+    @Test
+    void identicalRequestsRunOnce() throws Exception {
+        OrchestrationData leader = request(7);
+        CompletableFuture<Boolean> first = orchestration.runAsync(leader, executor);
+        assertTrue(lookup.started.await(5, TimeUnit.SECONDS));
+
+        OrchestrationData follower = request(7);
+        CompletableFuture<Boolean> second = orchestration.runAsync(follower, executor);
+        OrchestrationData other = request(8);
+        CompletableFuture<Boolean> different = orchestration.runAsync(other, executor);
+
+        lookup.release.countDown();
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+        assertTrue(second.get(5, TimeUnit.SECONDS));
+        assertTrue(different.get(5, TimeUnit.SECONDS));
+
+        assertEquals("Result 7", follower.getResultData().get(String.class.getName()));
+        assertEquals("Result 8", other.getResultData().get(String.class.getName()));
+        assertNotSame(leader.getResultData(), follower.getResultData());
+        assertEquals(2, lookup.runs.get());
+        assertEquals(1, coalescer.getCoalescedCount());
+    }
+
+    @Test
+    void followerWaitsForTheLeader() throws Exception {
+        OrchestrationData leader = request(7);
+        OrchestrationData follower = request(7);
+        RequestCoalescer.Flight lead = coalescer.join(leader);
+        RequestCoalescer.Flight follow = coalescer.join(follower);
+        assertTrue(lead.isLeader());
+        assertFalse(follow.isLeader());
+
+        leader.putData("Result 7");
+        leader.getStatus().addEvent(InfoType.WARNING, EventType.RULE, OrchestrationErrorCode.ORCH2001, "Retried");
+        coalescer.land(lead, leader, true);
+        assertTrue(coalescer.follow(follow, follower));
+        assertEquals("Result 7", follower.getResultData().get(String.class.getName()));
+        assertEquals(InfoType.WARNING, follower.getStatusInfoType());
+        assertEquals(1, follower.getStatus().getEvents().size());
+
+        // Gives up at its own deadline
+        OrchestrationData late = request(9);
+        late.setDeadline(Instant.now().plusMillis(20));
+        assertTrue(coalescer.join(request(9)).isLeader());
+        assertFalse(coalescer.follow(coalescer.join(late), late));
+        assertEquals(InfoType.ERROR, late.getStatusInfoType());
+    }
+
+    @Test
+    void followerGivesUpAtItsTimeout() throws Exception {
+        CompletableFuture<Boolean> first = orchestration.runAsync(request(7), executor);
+        assertTrue(lookup.started.await(5, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        OrchestrationData follower = request(7);
+        follower.setTimeout(50);
+        assertFalse(orchestration.run(follower));
+        assertEquals(InfoType.ERROR, follower.getStatusInfoType());
+
+        OrchestrationData asyncFollower = request(7);
+        asyncFollower.setTimeout(50);
+        assertFalse(orchestration.runAsync(asyncFollower, executor).get(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(InfoType.ERROR, asyncFollower.getStatusInfoType());
+
+        lookup.release.countDown();
+        assertTrue(first.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void finishedRequestsRunAgain() {
+        lookup.release.countDown();
+        assertTrue(orchestration.run(request(7)));
+        assertTrue(orchestration.run(request(7)));
+        assertEquals(2, lookup.runs.get());
+        assertEquals(0, coalescer.getCoalescedCount());
+
+        coalescer.unregister(DefaultRuleSetType.CUSTOM);
+        assertNull(coalescer.join(request(7)));
+    }
+
+    /**
+     * An expensive lookup held until released
+     */
+    public static class LookupRule implements WorkflowRuleInterface {
+
+        final AtomicInteger runs = new AtomicInteger();
+
+        final CountDownLatch started = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            runs.incrementAndGet();
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RulesException("Interrupted");
+            }
+            request.putData("Result " + request.getRequestData().get(Integer.class.getName()));
+            return new RuleResult(true);
+        }
+    }
+
+}
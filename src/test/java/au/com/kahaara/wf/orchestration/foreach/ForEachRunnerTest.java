@@ -0,0 +1,218 @@
+package au.com.kahaara.wf.orchestration.foreach;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.Orchestration;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationMode;
+import au.com.kahaara.wf.orchestration.SubRulesResult;
+import au.com.kahaara.wf.orchestration.checkpoint.Checkpointer;
+import au.com.kahaara.wf.orchestration.event.EventRecorder;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.persist.WriteBehindFlusher;
+import au.com.kahaara.wf.orchestration.prefetch.DataPrefetcher;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleSet;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.transaction.RuleTransactions;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ForEachRunnerTest {
+
+    private static final String MAP = "MAP[in=" + Lines.class.getName() + ";rules=Price;out="
+            + PricedLines.class.getName();
+
+    private ExecutorService executor;
+
+    private RuleList ruleList;
+
+    private Orchestration orchestration;
+
+    private OrchestrationConfig oc;
+
+    private PriceRule price;
+
+    @BeforeEach
+    void setup() throws Exception {
+        MockEnvironment properties = new MockEnvironment();
+        properties.setProperty(OrchestrationConfig.PROPERTIES_PACKAGES + "[0]", "au.com.kahaara.wf.orchestration.rules.testrules");
+        ruleList = new RuleList(properties, null);
+        price = new PriceRule();
+        ruleList.getRuleList().put("PRICE", new RuleType("Price", price,
+                PriceRule.class.getMethod("runRule", OrchestrationData.class)));
+        oc = new OrchestrationConfig();
+        oc.setRuleInfoReported(false);
+        oc.setRuleInfoEnforce(false);
+        executor = Executors.newFixedThreadPool(4);
+        orchestration = new Orchestration(new WorkflowRunner(new RuleRunner(), new Checkpointer(),
+                new RuleTransactions(), new WriteBehindFlusher(), new DataPrefetcher(), new ForEachRunner(executor, 4)),
+                new EventRecorder(), ruleList, null);
+    }
+
+    @AfterEach
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private OrchestrationData request(String rules, Integer... lines) {
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules(rules);
+        Lines l = new Lines();
+        l.addAll(Arrays.asList(lines));
+        data.putRequestData(l);
+        return data;
+    }
+
+    @Test
+    void mapsInOrderWithBoundedParallelism() {
+        OrchestrationData data = request(MAP + ";parallel=2]", 1, 2, 4, 5, 6, 7);
+
+        assertTrue(orchestration.run(data));
+        assertEquals(Arrays.asList(10, 20, 40, 50, 60, 70), data.getResultData().get(PricedLines.class.getName()));
+        assertEquals(6, price.runs.get());
+        assertTrue(price.maxRunning.get() <= 2);
+        assertFalse(data.getResultData().containsKey(Priced.class.getName()));
+        assertNotEquals(InfoType.ERROR, data.getStatusInfoType());
+    }
+
+    @Test
+    void queuedElementsRunWhenThePoolIsFull() {
+        // Takes the first two elements then turns the rest away
+        AtomicInteger accepted = new AtomicInteger();
+        Executor full = task -> {
+            if (accepted.incrementAndGet() > 2) {
+                throw new RejectedExecutionException("Full");
+            }
+            executor.execute(task);
+        };
+        orchestration = new Orchestration(new WorkflowRunner(new RuleRunner(), new Checkpointer(),
+                new RuleTransactions(), new WriteBehindFlusher(), new DataPrefetcher(), new ForEachRunner(full, 4)),
+                new EventRecorder(), ruleList, null);
+        OrchestrationData data = request(MAP + ";parallel=2]", 1, 2, 4, 5, 6, 7);
+        data.setTimeout(5000);
+
+        assertTrue(orchestration.run(data));
+        assertEquals(Arrays.asList(10, 20, 40, 50, 60, 70), data.getResultData().get(PricedLines.class.getName()));
+        assertEquals(6, price.runs.get());
+    }
+
+    @Test
+    void reportedInTestMode() {
+        OrchestrationData data = request("MAP[in=" + Lines.class.getName() + ";rules=Price;fail=IGNORE]?END:Price,Price", 1, 2);
+        orchestration.setMode(OrchestrationMode.TEST);
+
+        assertTrue(orchestration.run(data));
+        assertEquals(0, price.runs.get());
+        String report = data.getTestResults().stream().filter(r -> r.contains("MAP over")).findFirst().orElse("");
+        assertTrue(report.contains("MAP over " + Lines.class.getName()), report);
+        assertTrue(report.contains("Rules:Price"), report);
+        assertTrue(report.contains("Out:none"), report);
+        assertTrue(report.contains("Parallel:4"), report);
+        assertTrue(report.contains("Fail:IGNORE"), report);
+        assertTrue(report.contains("On pass:END"), report);
+        assertTrue(report.contains("On fail:Price"), report);
+    }
+
+    @Test
+    void failurePolicies() {
+        OrchestrationData ignored = request(MAP + ";fail=IGNORE;check=false]", 1, 2, 3, 4);
+        assertTrue(orchestration.run(ignored));
+        assertEquals(Arrays.asList(10, 20, 40), ignored.getResultData().get(PricedLines.class.getName()));
+        assertEquals(InfoType.WARNING, ignored.getStatusInfoType());
+
+        OrchestrationData all = request(MAP + ";fail=ALL;order=COMPLETION]", 1, 2, 3, 4);
+        assertTrue(orchestration.run(all));
+        assertEquals(3, ((PricedLines) all.getResultData().get(PricedLines.class.getName())).size());
+        assertEquals(InfoType.ERROR, all.getStatusInfoType());
+    }
+
+    @Test
+    void badConstructsAreRejected() {
+        assertThrows(RulesException.class, () -> new RuleSet("MAP[rules=Price]", ruleList));
+        assertThrows(RulesException.class, () -> new RuleSet("MAP[in=X;rules=Price;size=3]", ruleList));
+        assertThrows(RulesException.class, () -> new RuleSet("MAP[in=X;rules=Price;out=java.lang.String]", ruleList));
+    }
+
+    public static class Lines extends ArrayList<Integer> {
+    }
+
+    public static class Priced {
+
+        private int value;
+
+        public int getValue() {
+            return value;
+        }
+
+        public void setValue(int value) {
+            this.value = value;
+        }
+    }
+
+    public static class PricedLines extends ArrayList<Integer> implements ForEachResult {
+
+        @Override
+        public void add(int index, Object element, SubRulesResult.Part part) {
+            add(((Priced) part.getResultData().get(Priced.class.getName())).getValue());
+        }
+    }
+
+    /**
+     * Prices a line, failing for line 3
+     */
+    public static class PriceRule implements WorkflowRuleInterface {
+
+        final AtomicInteger runs = new AtomicInteger();
+
+        final AtomicInteger running = new AtomicInteger();
+
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            runs.incrementAndGet();
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+                Integer line = (Integer) request.getRequestData(Integer.class);
+                if (line == 3) {
+                    throw new RulesException("Line 3 has no price");
+                }
+                Priced priced = new Priced();
+                priced.setValue(line * 10);
+                request.putData(priced);
+                return new RuleResult(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new RuleResult(false);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+    }
+
+}
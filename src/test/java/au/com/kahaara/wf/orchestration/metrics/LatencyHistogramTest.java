@@ -0,0 +1,49 @@
+package au.com.kahaara.wf.orchestration.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsCoverValues() {
+        long[] values = {0, 1, 63, 64, 65, 127, 128, 1000, 1_000_000, 123_456_789L, LatencyHistogram.HIGHEST_TRACKABLE_VALUE};
+        for (long v : values) {
+            int i = LatencyHistogram.bucketIndex(v);
+            assertTrue(LatencyHistogram.lowestValueInBucket(i) <= v, "lowest for " + v);
+            assertTrue(LatencyHistogram.highestValueInBucket(i) >= v, "highest for " + v);
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    void percentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            h.recordValue(i * 1000L);
+        }
+        HistogramSnapshot s = h.snapshot();
+        assertEquals(1000, s.getCount());
+        assertEquals(1000, s.getMin());
+        assertEquals(1_000_000, s.getMax());
+        assertEquals(500_500, s.getMean(), 0.001);
+        assertEquals(500_000, s.getValueAtPercentile(50), 500_000 * 0.02);
+        assertEquals(990_000, s.getValueAtPercentile(99), 990_000 * 0.02);
+        assertEquals(1_000_000, s.getValueAtPercentile(100));
+    }
+
+    @Test
+    void metricsPerOutcome() {
+        OrchestrationMetrics m = new OrchestrationMetrics();
+        m.recordRule("RuleA", Outcome.PASS, 10);
+        m.recordRule("RuleA", Outcome.PASS, 20);
+        m.recordRule("RuleA", Outcome.EXCEPTION, 30);
+        assertEquals(2, m.getRuleSnapshot("RuleA", Outcome.PASS).getCount());
+        assertEquals(1, m.getRuleSnapshot("RuleA", Outcome.EXCEPTION).getCount());
+        assertEquals(0, m.getRuleSnapshot("RuleA", Outcome.FAIL).getCount());
+        assertEquals(2, m.getRuleSnapshots().size());
+        assertTrue(m.getWorkflowSnapshots().isEmpty());
+    }
+
+}
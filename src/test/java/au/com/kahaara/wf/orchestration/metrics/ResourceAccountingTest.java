@@ -0,0 +1,88 @@
+package au.com.kahaara.wf.orchestration.metrics;
+
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationMode;
+import au.com.kahaara.wf.orchestration.resilience.ResiliencePolicy;
+import au.com.kahaara.wf.orchestration.resilience.RuleResilience;
+import au.com.kahaara.wf.orchestration.rules.Rule;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResourceAccountingTest {
+
+    private static byte[] sink;
+
+    @Test
+    void measuresAllocationOnCurrentThread() {
+        ResourceAccounting accounting = new ResourceAccounting();
+        long startBytes = accounting.currentThreadAllocatedBytes();
+        long startCpu = accounting.currentThreadCpuTime();
+        sink = new byte[1 << 20];
+        long bytes = ResourceAccounting.delta(startBytes, accounting.currentThreadAllocatedBytes());
+        long cpu = ResourceAccounting.delta(startCpu, accounting.currentThreadCpuTime());
+        if (accounting.isAllocationMeasured()) {
+            assertTrue(bytes >= sink.length, "allocated " + bytes);
+        }
+        if (accounting.isCpuTimeMeasured()) {
+            assertTrue(cpu >= 0);
+        }
+
+        OrchestrationMetrics metrics = new OrchestrationMetrics();
+        metrics.recordRuleResources("rule", cpu, bytes);
+        metrics.recordRuleResources("rule", ResourceAccounting.NOT_MEASURED, ResourceAccounting.NOT_MEASURED);
+        ResourceSnapshot snapshot = metrics.getRuleResourceSnapshot("rule");
+        assertEquals(accounting.isAllocationMeasured() ? 1 : 0, snapshot.getAllocatedBytes().getCount());
+    }
+
+    @Test
+    void timedAttemptsAreMeasuredOnTheirThread() throws Exception {
+        ResourceAccounting accounting = new ResourceAccounting();
+        RuleResilience resilience = new RuleResilience();
+        try {
+            RuleRunner runner = new RuleRunner(new OrchestrationMetrics(), accounting, resilience);
+            RuleType rt = new RuleType("Allocating", new AllocatingRule(),
+                    AllocatingRule.class.getMethod("runRule", OrchestrationData.class));
+            rt.setPolicy(new ResiliencePolicy(1, 0, 1.0, 0, 0, 5000, 0, 0, 1));
+
+            RuleResult result = runner.run(new OrchestrationData(), new Rule(rt), OrchestrationMode.NORMAL);
+            assertTrue(result.isOk());
+            if (accounting.isAllocationMeasured()) {
+                assertTrue(result.getAllocatedBytes() >= 1 << 22, "allocated " + result.getAllocatedBytes());
+            }
+        } finally {
+            resilience.destroy();
+        }
+    }
+
+    @Test
+    void disabledMeasuresNothing() {
+        ResourceAccounting accounting = new ResourceAccounting(false);
+        assertEquals(ResourceAccounting.NOT_MEASURED, accounting.currentThreadCpuTime());
+        assertEquals(ResourceAccounting.NOT_MEASURED, accounting.currentThreadAllocatedBytes());
+        assertEquals(ResourceAccounting.NOT_MEASURED, ResourceAccounting.delta(-1, 10));
+    }
+
+    /**
+     * Allocates a few megabytes
+     */
+    public static class AllocatingRule implements WorkflowRuleInterface {
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) {
+            sink = new byte[1 << 22];
+            return new RuleResult(true);
+        }
+    }
+
+}
@@ -0,0 +1,233 @@
+package au.com.kahaara.wf.orchestration.persist;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.Orchestration;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.checkpoint.Checkpointer;
+import au.com.kahaara.wf.orchestration.checkpoint.FileCheckpointStore;
+import au.com.kahaara.wf.orchestration.event.EventRecorder;
+import au.com.kahaara.wf.orchestration.event.EventType;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.serial.JsonDataSerializer;
+import au.com.kahaara.wf.orchestration.tracing.Tracer;
+import au.com.kahaara.wf.orchestration.transaction.RuleTransactions;
+import au.com.kahaara.wf.orchestration.workflow.TransactionPolicy;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindFlusherTest {
+
+    private JdbcTemplate jdbc;
+
+    private WriteBehindFlusher flusher;
+
+    private Orchestration orchestration;
+
+    private OrchestrationConfig oc;
+
+    private AuditRule audit;
+
+    private SubRule sub;
+
+    private RuleList ruleList;
+
+    private DataSourceTransactionManager transactionManager;
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void setup() throws Exception {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        jdbc = new JdbcTemplate(ds);
+        jdbc.execute("create table audit (id int primary key, step varchar(20))");
+        transactionManager = new DataSourceTransactionManager(ds);
+        flusher = new WriteBehindFlusher(ds, null, transactionManager);
+
+        MockEnvironment properties = new MockEnvironment();
+        properties.setProperty(OrchestrationConfig.PROPERTIES_PACKAGES + "[0]", "au.com.kahaara.wf.orchestration.rules.testrules");
+        ruleList = new RuleList(properties, null);
+        audit = new AuditRule();
+        ruleList.getRuleList().put("AUDIT", new RuleType("Audit", audit,
+                AuditRule.class.getMethod("runRule", OrchestrationData.class)));
+        ruleList.getRuleList().put("CHECK", new RuleType("Check", audit,
+                AuditRule.class.getMethod("runRule", OrchestrationData.class)));
+        sub = new SubRule();
+        ruleList.getRuleList().put("SUB", new RuleType("Sub", sub,
+                SubRule.class.getMethod("runRule", OrchestrationData.class)));
+        ruleList.getRuleList().put("ERR", new RuleType("Err", new ErrorRule(),
+                ErrorRule.class.getMethod("runRule", OrchestrationData.class)));
+        oc = new OrchestrationConfig();
+        oc.setRuleInfoReported(false);
+        oc.setRuleInfoEnforce(false);
+        orchestration = new Orchestration(new WorkflowRunner(new RuleRunner(), new Checkpointer(),
+                new RuleTransactions(transactionManager, TransactionPolicy.NONE), flusher),
+                new EventRecorder(), ruleList, null);
+    }
+
+    private int rows() {
+        return jdbc.queryForObject("select count(*) from audit", Integer.class);
+    }
+
+    private OrchestrationData request(String rules) {
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules(rules);
+        return data;
+    }
+
+    @Test
+    void changesAreWrittenWhenTheWorkflowEnds() {
+        OrchestrationData data = request("Audit,Check");
+        assertTrue(orchestration.run(data));
+        assertEquals(2, rows());
+        assertEquals(1, audit.pendingSeen);
+        assertTrue(data.getWriteBehind().isEmpty());
+    }
+
+    @Test
+    void changesAreDiscardedWhenTheWorkflowFails() {
+        audit.fail = true;
+        OrchestrationData data = request("Audit,Check");
+        assertTrue(orchestration.run(data));
+        assertEquals(InfoType.ERROR, data.getStatusInfoType());
+        assertEquals(0, rows());
+        assertTrue(data.getWriteBehind().isEmpty());
+    }
+
+    @Test
+    void subWorkflowChangesAreKeptOnlyWhenItsDataIs() {
+        sub.rules = "Audit";
+        assertTrue(orchestration.run(request("Sub,Check")));
+        assertEquals(2, rows());
+        assertEquals(1, audit.pendingSeen);
+
+        // The sub workflow ends with an ERROR so its change goes with its data
+        sub.rules = "Audit,Err";
+        assertTrue(orchestration.run(request("Sub,Check")));
+        assertEquals(3, rows());
+        assertEquals(0, audit.pendingSeen);
+    }
+
+    @Test
+    void checkpointedWorkflowsCantUseWriteBehind() throws Exception {
+        Checkpointer checkpointer = new Checkpointer(new FileCheckpointStore(directory), new JsonDataSerializer(), oc, 10, 5);
+        try {
+            Orchestration checkpointed = new Orchestration(new WorkflowRunner(new RuleRunner(), checkpointer,
+                    new RuleTransactions(transactionManager, TransactionPolicy.NONE), flusher),
+                    new EventRecorder(), ruleList, null, new OrchestrationMetrics(), new Tracer(), checkpointer);
+            OrchestrationData data = request("Audit");
+            assertFalse(checkpointed.run(data));
+            assertEquals(InfoType.ERROR, data.getStatusInfoType());
+            assertEquals(0, rows());
+            assertThrows(IllegalStateException.class, data::getWriteBehind);
+        } finally {
+            checkpointer.destroy();
+        }
+    }
+
+    @Test
+    void aFailedWriteWritesNothing() {
+        WriteBehind unit = new WriteBehind();
+        unit.update("insert into audit values (?, ?)", 1, "first");
+        unit.update("insert into audit values (?, ?)", 2, "second");
+        unit.update("update audit set step = ? where id = ?", "checked", 1);
+        assertEquals(3, flusher.flush(unit));
+        assertEquals("checked", jdbc.queryForObject("select step from audit where id = 1", String.class));
+
+        unit.update("insert into audit values (?, ?)", 3, "third");
+        unit.update("insert into audit values (?, ?)", 1, "duplicate");
+        assertThrows(DataAccessException.class, () -> flusher.flush(unit));
+        assertEquals(2, rows());
+        assertTrue(unit.isEmpty());
+
+        unit.persist(new Object());
+        assertThrows(DataAccessException.class, () -> flusher.flush(unit));
+    }
+
+    /**
+     * Runs its rules as a sub workflow
+     */
+    public static class SubRule implements WorkflowRuleInterface {
+
+        volatile String rules;
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            OrchestrationData subRequest = new OrchestrationData(null, DefaultRuleSetType.CUSTOM);
+            subRequest.setCustomRules(rules);
+            return request.getOrchestration().runSubRules(request, subRequest);
+        }
+    }
+
+    public static class ErrorRule implements WorkflowRuleInterface {
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) {
+            request.getStatus().addEvent(InfoType.ERROR, EventType.RULE, OrchestrationErrorCode.ORCH5003, "Failed");
+            return new RuleResult(true);
+        }
+    }
+
+    /**
+     * Records an audit row for each step
+     */
+    public static class AuditRule implements WorkflowRuleInterface {
+
+        volatile boolean fail;
+
+        volatile int pendingSeen;
+
+        private int id;
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            WriteBehind unit = request.getWriteBehind();
+            pendingSeen = unit.size();
+            unit.update("insert into audit values (?, ?)", ++id, "step " + id);
+            if (fail) {
+                request.getStatus().addEvent(InfoType.ERROR, EventType.RULE, OrchestrationErrorCode.ORCH5003,
+                        "Audit failed");
+            }
+            return new RuleResult(true);
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+package au.com.kahaara.wf.orchestration.prefetch;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.Orchestration;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.checkpoint.Checkpointer;
+import au.com.kahaara.wf.orchestration.event.EventRecorder;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.persist.WriteBehindFlusher;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.transaction.RuleTransactions;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataPrefetcherTest {
+
+    private ExecutorService executor;
+
+    private RuleList ruleList;
+
+    private OrchestrationConfig oc;
+
+    private FirstRule first;
+
+    private CustomerRule customerRule;
+
+    private final AtomicInteger provided = new AtomicInteger();
+
+    private final CountDownLatch providing = new CountDownLatch(1);
+
+    @BeforeEach
+    void setup() throws Exception {
+        MockEnvironment properties = new MockEnvironment();
+        properties.setProperty(OrchestrationConfig.PROPERTIES_PACKAGES + "[0]", "au.com.kahaara.wf.orchestration.rules.testrules");
+        ruleList = new RuleList(properties, null);
+        first = new FirstRule();
+        customerRule = new CustomerRule();
+        ruleList.getRuleList().put("FIRST", new RuleType("First", first,
+                FirstRule.class.getMethod("runRule", OrchestrationData.class)));
+        ruleList.getRuleList().put("SECOND", new RuleType("Second", first,
+                FirstRule.class.getMethod("runRule", OrchestrationData.class)));
+        ruleList.getRuleList().put("READCUSTOMER", new RuleType("ReadCustomer", customerRule,
+                CustomerRule.class.getMethod("runRule", OrchestrationData.class)));
+        oc = new OrchestrationConfig();
+        oc.setRuleInfoReported(false);
+        oc.setRuleInfoEnforce(false);
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void close() {
+        executor.shutdownNow();
+    }
+
+    private Orchestration orchestration(DataPrefetcher prefetcher) {
+        prefetcher.register(Customer.class, data -> {
+            provided.incrementAndGet();
+            providing.countDown();
+            Customer customer = new Customer();
+            customer.setName("Customer " + data.get(Integer.class.getName()));
+            return customer;
+        });
+        return new Orchestration(new WorkflowRunner(new RuleRunner(), new Checkpointer(), new RuleTransactions(),
+                new WriteBehindFlusher(), prefetcher), new EventRecorder(), ruleList, null);
+    }
+
+    private OrchestrationData request(String rules) {
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules(rules);
+        data.putRequestData(Integer.valueOf(7));
+        return data;
+    }
+
+    @Test
+    void fetchesTheWholeRuleSetWhenTheWorkflowStarts() {
+        DataPrefetcher prefetcher = new DataPrefetcher(executor, 0);
+        Orchestration orchestration = orchestration(prefetcher);
+        first.waitFor = providing;
+
+        OrchestrationData data = request("First,ReadCustomer");
+        assertTrue(orchestration.run(data));
+        assertTrue(first.overlapped);
+        assertEquals("Customer 7", customerRule.name);
+        assertEquals(1, provided.get());
+        assertTrue(data.getRequestData().containsKey(Customer.class.getName()));
+        assertFalse(data.isRequestDataPending(Customer.class.getName()));
+    }
+
+    @Test
+    void fetchesOnlyTheRulesAhead() {
+        DataPrefetcher prefetcher = new DataPrefetcher(executor, 1);
+        Orchestration orchestration = orchestration(prefetcher);
+
+        OrchestrationData data = request("First,Second,ReadCustomer");
+        assertTrue(orchestration.run(data));
+        assertEquals(0, first.fetchesSeen[0]);
+        assertEquals(1, first.fetchesSeen[1]);
+        assertEquals("Customer 7", customerRule.name);
+
+        // Data already in the request is never fetched
+        OrchestrationData known = request("First,ReadCustomer");
+        Customer customer = new Customer();
+        customer.setName("Known");
+        known.putRequestData(customer);
+        assertTrue(orchestration.run(known));
+        assertEquals("Known", customerRule.name);
+        assertEquals(1, prefetcher.getFetchCount());
+    }
+
+    @Test
+    void failedFetchesReadAsNull() {
+        DataPrefetcher prefetcher = new DataPrefetcher(executor, 0);
+        prefetcher.register(Customer.class, data -> {
+            throw new IllegalStateException("Customer service down");
+        });
+        Orchestration orchestration = new Orchestration(new WorkflowRunner(new RuleRunner(), new Checkpointer(),
+                new RuleTransactions(), new WriteBehindFlusher(), prefetcher), new EventRecorder(), ruleList, null);
+
+        OrchestrationData data = request("ReadCustomer");
+        assertTrue(orchestration.run(data));
+        assertNull(customerRule.name);
+        assertFalse(data.hasRequestData(Customer.class.getName()));
+    }
+
+    /**
+     * Request data fetched by the prefetcher
+     */
+    public static class Customer {
+
+        private String name;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * A rule that runs before the customer is needed
+     */
+    public static class FirstRule implements WorkflowRuleInterface {
+
+        volatile CountDownLatch waitFor;
+
+        volatile boolean overlapped;
+
+        final long[] fetchesSeen = new long[2];
+
+        private int runs;
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            if (waitFor != null) {
+                try {
+                    overlapped = waitFor.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (runs < fetchesSeen.length) {
+                fetchesSeen[runs++] = request.isRequestDataPending(Customer.class.getName()) ? 1 : 0;
+            }
+            return new RuleResult(true);
+        }
+    }
+
+    /**
+     * A rule that reads the customer
+     */
+    public static class CustomerRule implements WorkflowRuleInterface {
+
+        volatile String name;
+
+        @Override
+        public RuleInfo getInfo() {
+            RuleInfo info = new RuleInfo();
+            info.addExpectedRequestData(Customer.class);
+            return info;
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            Customer customer = (Customer) request.getOptionalRequestData(Customer.class);
+            name = customer == null ? null : customer.getName();
+            return new RuleResult(true);
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+package au.com.kahaara.wf.orchestration.queue;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.Orchestration;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.event.EventRecorder;
+import au.com.kahaara.wf.orchestration.event.EventType;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.serial.JsonDataSerializer;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OrchestrationQueueTest {
+
+    @TempDir
+    Path directory;
+
+    private OrchestrationQueue queue;
+
+    private FileWorkQueue workQueue;
+
+    private OrchestrationConfig oc;
+
+    private final AtomicInteger rejections = new AtomicInteger();
+
+    @BeforeEach
+    void setup() throws Exception {
+        MockEnvironment properties = new MockEnvironment();
+        properties.setProperty(OrchestrationConfig.PROPERTIES_PACKAGES + "[0]", "au.com.kahaara.wf.orchestration.rules.testrules");
+        RuleList ruleList = new RuleList(properties, null);
+        ruleList.getRuleList().put("RECORD", new RuleType("Record", new RecordRule(),
+                RecordRule.class.getMethod("runRule", OrchestrationData.class)));
+        RecordRule.SEEN.clear();
+        RecordRule.ATTEMPTS.clear();
+
+        oc = new OrchestrationConfig();
+        oc.setRuleInfoReported(true);
+        oc.setRuleInfoEnforce(false);
+        oc.setQueueWorkers(3);
+        oc.setQueuePollMillis(10);
+        oc.setQueueMaxAttempts(2);
+        oc.setQueueRetryBackoffMillis(1);
+
+        // Turns the "busy" request away as admission control would
+        Orchestration orchestration = new Orchestration(new WorkflowRunner(new RuleRunner()), new EventRecorder(),
+                ruleList, null) {
+            @Override
+            public boolean run(OrchestrationData orchestrationData) {
+                if ("busy".equals(orchestrationData.getRequestData(String.class))
+                        && rejections.getAndDecrement() > 0) {
+                    orchestrationData.getStatus().addEvent(InfoType.ERROR, EventType.RULE,
+                            OrchestrationErrorCode.ORCH2006, "Workflow rejected", "Concurrency limit reached");
+                    return false;
+                }
+                return super.run(orchestrationData);
+            }
+        };
+        workQueue = new FileWorkQueue(directory);
+        queue = new OrchestrationQueue(orchestration, workQueue, new JsonDataSerializer(), oc);
+        queue.start();
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        queue.destroy();
+    }
+
+    private String submit(String value) throws RulesException {
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules("Record");
+        data.putRequestData(value);
+        return queue.submit(data);
+    }
+
+    private void awaitEmpty() throws Exception {
+        long until = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < until) {
+            Map<QueueState, Integer> counts = queue.counts();
+            if (counts.get(QueueState.READY) == 0 && counts.get(QueueState.LEASED) == 0) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("Queue did not drain " + queue.counts());
+    }
+
+    @Test
+    void workersRunSubmittedRequests() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            submit("request " + i);
+        }
+        awaitEmpty();
+        assertEquals(20, RecordRule.SEEN.size());
+        assertTrue(RecordRule.SEEN.contains("request 7"));
+        assertEquals(Integer.valueOf(0), queue.counts().get(QueueState.DEAD));
+    }
+
+    @Test
+    void failingRequestIsRetriedThenDeadLettered() throws Exception {
+        String id = submit("fail");
+        awaitEmpty();
+        assertEquals(Integer.valueOf(1), queue.counts().get(QueueState.DEAD));
+        assertEquals(2, RecordRule.ATTEMPTS.get("fail").intValue());
+        assertFalse(workQueue.ack(id, "anyone"));
+    }
+
+    @Test
+    void businessFailureIsAcknowledgedAndErrorStatusRetried() throws Exception {
+        submit("no");
+        submit("error");
+        awaitEmpty();
+        assertEquals(1, RecordRule.ATTEMPTS.get("no").intValue());
+        assertEquals(2, RecordRule.ATTEMPTS.get("error").intValue());
+        assertEquals(Integer.valueOf(1), queue.counts().get(QueueState.DEAD));
+    }
+
+    @Test
+    void rejectedRequestDoesNotUseAnAttempt() throws Exception {
+        // More rejections than attempts
+        rejections.set(3);
+        submit("busy");
+        awaitEmpty();
+        assertTrue(RecordRule.SEEN.contains("busy"));
+        assertEquals(Integer.valueOf(0), queue.counts().get(QueueState.DEAD));
+    }
+
+    /**
+     * Records the request it ran for, throws if the request is "fail", takes the false branch if it is "no" and
+     * records an error if it is "error"
+     */
+    public static class RecordRule implements WorkflowRuleInterface {
+
+        static final Set<String> SEEN = ConcurrentHashMap.newKeySet();
+
+        static final Map<String, Integer> ATTEMPTS = new ConcurrentHashMap<>();
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            String value = (String) request.getRequestData(String.class);
+            ATTEMPTS.merge(value, 1, Integer::sum);
+            if ("fail".equals(value)) {
+                throw new RulesException("Cannot run this one");
+            }
+            if ("no".equals(value)) {
+                return new RuleResult(false);
+            }
+            if ("error".equals(value)) {
+                request.getStatus().addEvent(InfoType.ERROR, EventType.RULE, OrchestrationErrorCode.ORCH1001,
+                        "Downstream failed", value);
+            }
+            SEEN.add(value);
+            return new RuleResult(true);
+        }
+    }
+
+}
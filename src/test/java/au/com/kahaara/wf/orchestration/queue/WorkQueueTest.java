@@ -0,0 +1,124 @@
+package au.com.kahaara.wf.orchestration.queue;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkQueueTest {
+
+    @TempDir
+    Path directory;
+
+    private JdbcWorkQueue jdbcQueue() {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        JdbcWorkQueue queue = new JdbcWorkQueue(ds);
+        queue.createTable();
+        return queue;
+    }
+
+    private static QueuedRequest request(String id) {
+        QueuedRequest r = new QueuedRequest();
+        r.setId(id);
+        r.setWorkflowId(id);
+        r.setRuleSetType("au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType#CUSTOM");
+        r.setCustomRules("RuleReturnTrue");
+        r.setRequestData(new byte[]{'{', '}'});
+        return r;
+    }
+
+    @Test
+    void jdbcLeaseLifecycle() throws Exception {
+        leaseLifecycle(jdbcQueue());
+    }
+
+    @Test
+    void fileLeaseLifecycle() throws Exception {
+        try (FileWorkQueue queue = new FileWorkQueue(directory)) {
+            leaseLifecycle(queue);
+        }
+    }
+
+    private void leaseLifecycle(WorkQueue queue) throws Exception {
+        for (int i = 0; i < 4; i++) {
+            queue.submit(request("r" + i));
+        }
+
+        // Two workers never get the same request
+        List<QueuedRequest> a = queue.lease("a", 2, 60000);
+        List<QueuedRequest> b = queue.lease("b", 5, 60000);
+        assertEquals(2, a.size());
+        assertEquals(2, b.size());
+        Set<String> ids = new HashSet<>();
+        a.forEach(r -> ids.add(r.getId()));
+        b.forEach(r -> ids.add(r.getId()));
+        assertEquals(4, ids.size());
+        assertEquals(1, a.get(0).getAttempts());
+        assertArrayEquals(new byte[]{'{', '}'}, a.get(0).getRequestData());
+        assertTrue(queue.lease("c", 1, 60000).isEmpty());
+
+        // Only the lease owner can finish a request
+        String first = a.get(0).getId();
+        assertFalse(queue.ack(first, "b"));
+        assertTrue(queue.ack(first, "a"));
+        assertTrue(queue.deadLetter(a.get(1).getId(), "a", "broken"));
+        assertTrue(queue.retry(b.get(0).getId(), "b", 0, "try again"));
+
+        List<QueuedRequest> retried = queue.lease("c", 1, 60000);
+        assertEquals(b.get(0).getId(), retried.get(0).getId());
+        assertEquals(2, retried.get(0).getAttempts());
+        assertEquals("try again", retried.get(0).getLastError());
+
+        // Released without using up the attempt
+        assertTrue(queue.release(retried.get(0).getId(), "c", 0));
+        retried = queue.lease("c", 1, 60000);
+        assertEquals(2, retried.get(0).getAttempts());
+
+        // A lease that runs out can be taken by another worker and the old owner loses it
+        assertTrue(queue.retry(retried.get(0).getId(), "c", 0, null));
+        List<QueuedRequest> shortLease = queue.lease("d", 1, -1);
+        assertEquals(1, shortLease.size());
+        List<QueuedRequest> taken = queue.lease("e", 1, 60000);
+        assertEquals(shortLease.get(0).getId(), taken.get(0).getId());
+        assertFalse(queue.ack(taken.get(0).getId(), "d"));
+
+        assertEquals(Integer.valueOf(1), queue.counts().get(QueueState.DEAD));
+        assertEquals(Integer.valueOf(2), queue.counts().get(QueueState.LEASED));
+        assertEquals(Integer.valueOf(0), queue.counts().get(QueueState.READY));
+    }
+
+    @Test
+    void fileQueueSurvivesRestart() throws Exception {
+        try (FileWorkQueue queue = new FileWorkQueue(directory)) {
+            queue.submit(request("one"));
+            queue.submit(request("two"));
+            queue.submit(request("three"));
+            queue.lease("a", 1, 60000);
+            queue.ack("one", "a");
+            queue.lease("a", 1, 60000);
+            queue.deadLetter("two", "a", "broken");
+            queue.lease("a", 1, -1);
+        }
+        try (FileWorkQueue queue = new FileWorkQueue(directory)) {
+            assertEquals(Integer.valueOf(1), queue.counts().get(QueueState.DEAD));
+            // The lease of the crashed worker has run out
+            List<QueuedRequest> leased = queue.lease("b", 5, 60000);
+            assertEquals(1, leased.size());
+            assertEquals("three", leased.get(0).getId());
+            assertEquals(2, leased.get(0).getAttempts());
+        }
+        try (FileWorkQueue queue = new FileWorkQueue(directory)) {
+            assertEquals(Integer.valueOf(1), queue.counts().get(QueueState.LEASED));
+            assertTrue(queue.ack("three", "b"));
+        }
+    }
+
+}
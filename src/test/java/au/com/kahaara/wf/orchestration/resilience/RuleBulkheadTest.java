@@ -0,0 +1,171 @@
+package au.com.kahaara.wf.orchestration.resilience;
+
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.OrchestrationMode;
+import au.com.kahaara.wf.orchestration.event.Event;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics;
+import au.com.kahaara.wf.orchestration.metrics.Outcome;
+import au.com.kahaara.wf.orchestration.metrics.ResourceAccounting;
+import au.com.kahaara.wf.orchestration.rules.Rule;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.workflow.Bulkhead;
+import au.com.kahaara.wf.orchestration.workflow.Workflow;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleBulkheadTest {
+
+    private RuleResilience resilience;
+
+    private OrchestrationMetrics metrics;
+
+    private RuleRunner runner;
+
+    private ExecutorService executor;
+
+    private BlockingRule blocking;
+
+    @BeforeEach
+    void setup() {
+        resilience = new RuleResilience();
+        metrics = new OrchestrationMetrics();
+        runner = new RuleRunner(metrics, new ResourceAccounting(false), resilience);
+        executor = Executors.newFixedThreadPool(2);
+        blocking = new BlockingRule();
+    }
+
+    @AfterEach
+    void close() {
+        blocking.release.countDown();
+        executor.shutdownNow();
+        resilience.destroy();
+    }
+
+    private Rule rule(BulkheadPolicy policy) throws Exception {
+        RuleType rt = new RuleType("Blocking", blocking, BlockingRule.class.getMethod("runRule", OrchestrationData.class));
+        rt.setBulkhead(policy);
+        return new Rule(rt);
+    }
+
+    @Test
+    void fullRuleFailsFast() throws Exception {
+        Rule rule = rule(new BulkheadPolicy(1, 0, 0));
+        Future<RuleResult> first = executor.submit(() -> runner.run(new OrchestrationData(), rule, OrchestrationMode.NORMAL));
+        assertTrue(blocking.started.await(5, TimeUnit.SECONDS));
+
+        OrchestrationData data = new OrchestrationData();
+        assertFalse(runner.run(data, rule, OrchestrationMode.NORMAL).isOk());
+        assertTrue(data.getStatus().getEvents().stream().map(Event::getCode)
+                .anyMatch(OrchestrationErrorCode.ORCH2007::equals));
+        RuleBulkhead bulkhead = resilience.getBulkhead("Blocking");
+        assertEquals(1, bulkhead.getInUse());
+        assertEquals(1, bulkhead.getRejected());
+        assertEquals(1, metrics.getRuleSnapshot("Blocking", Outcome.REJECTED).getCount());
+
+        blocking.release.countDown();
+        assertTrue(first.get(5, TimeUnit.SECONDS).isOk());
+        assertEquals(0, bulkhead.getInUse());
+    }
+
+    @Test
+    void waitsForAPlace() throws Exception {
+        Rule rule = rule(new BulkheadPolicy(1, 1, 5000));
+        Future<RuleResult> first = executor.submit(() -> runner.run(new OrchestrationData(), rule, OrchestrationMode.NORMAL));
+        assertTrue(blocking.started.await(5, TimeUnit.SECONDS));
+
+        Future<RuleResult> second = executor.submit(() -> runner.run(new OrchestrationData(), rule, OrchestrationMode.NORMAL));
+        RuleBulkhead bulkhead = resilience.getBulkhead("Blocking");
+        long until = System.currentTimeMillis() + 5000;
+        while (bulkhead.getWaiting() == 0 && System.currentTimeMillis() < until) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, bulkhead.getWaiting());
+
+        blocking.release.countDown();
+        assertTrue(first.get(5, TimeUnit.SECONDS).isOk());
+        assertTrue(second.get(5, TimeUnit.SECONDS).isOk());
+        assertEquals(0, bulkhead.getRejected());
+    }
+
+    @Test
+    void changedPolicyGetsANewBulkhead() throws Exception {
+        Rule rule = rule(new BulkheadPolicy(1, 0, 0));
+        Future<RuleResult> first = executor.submit(() -> runner.run(new OrchestrationData(), rule, OrchestrationMode.NORMAL));
+        assertTrue(blocking.started.await(5, TimeUnit.SECONDS));
+        RuleBulkhead old = resilience.getBulkhead("blocking");
+        assertEquals(1, old.getInUse());
+
+        rule.getRuleType().setBulkhead(new BulkheadPolicy(2, 0, 0));
+        Future<RuleResult> second = executor.submit(() -> runner.run(new OrchestrationData(), rule, OrchestrationMode.NORMAL));
+
+        blocking.release.countDown();
+        assertTrue(first.get(5, TimeUnit.SECONDS).isOk());
+        assertTrue(second.get(5, TimeUnit.SECONDS).isOk());
+        RuleBulkhead bulkhead = resilience.getBulkhead("Blocking");
+        assertNotSame(old, bulkhead);
+        assertEquals(2, bulkhead.getPolicy().getMaxConcurrent());
+        assertEquals(0, old.getInUse());
+        assertEquals(0, bulkhead.getInUse());
+        assertEquals(0, bulkhead.getRejected());
+    }
+
+    @Test
+    void policyFromAnnotation() {
+        assertNull(BulkheadPolicy.from(Plain.class.getAnnotation(Workflow.class).bulkhead()));
+        BulkheadPolicy policy = BulkheadPolicy.from(Limited.class.getAnnotation(Workflow.class).bulkhead());
+        assertNotNull(policy);
+        assertEquals(5, policy.getMaxConcurrent());
+        assertEquals(2, policy.getMaxWaiting());
+    }
+
+    @Workflow(rulename = "Plain")
+    static class Plain {
+    }
+
+    @Workflow(rulename = "Limited", bulkhead = @Bulkhead(maxConcurrent = 5, maxWaiting = 2, maxWaitMillis = 10))
+    static class Limited {
+    }
+
+    /**
+     * Holds the first caller until released
+     */
+    public static class BlockingRule implements WorkflowRuleInterface {
+
+        final CountDownLatch started = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RulesException("Interrupted");
+            }
+            return new RuleResult(true);
+        }
+    }
+
+}
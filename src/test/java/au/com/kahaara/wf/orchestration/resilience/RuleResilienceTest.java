@@ -0,0 +1,316 @@
+package au.com.kahaara.wf.orchestration.resilience;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.OrchestrationMode;
+import au.com.kahaara.wf.orchestration.event.Event;
+import au.com.kahaara.wf.orchestration.event.EventType;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.Rule;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.workflow.Resilience;
+import au.com.kahaara.wf.orchestration.workflow.Workflow;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleResilienceTest {
+
+    private RuleResilience resilience;
+
+    private RuleRunner runner;
+
+    @BeforeEach
+    void setup() {
+        resilience = new RuleResilience();
+        runner = new RuleRunner(new au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics(),
+                new au.com.kahaara.wf.orchestration.metrics.ResourceAccounting(false), resilience);
+    }
+
+    @AfterEach
+    void close() {
+        resilience.destroy();
+    }
+
+    private Rule rule(String name, UnstableRule unstable, ResiliencePolicy policy) throws Exception {
+        RuleType rt = new RuleType(name, unstable, UnstableRule.class.getMethod("runRule", OrchestrationData.class));
+        rt.setPolicy(policy);
+        return new Rule(rt);
+    }
+
+    private Rule writing(String name, WritingRule writer, long timeoutMillis) throws Exception {
+        RuleType rt = new RuleType(name, writer, WritingRule.class.getMethod("runRule", OrchestrationData.class));
+        rt.setPolicy(new ResiliencePolicy(1, 0, 1.0, 0, 0, timeoutMillis, 0, 0, 1));
+        return new Rule(rt);
+    }
+
+    private static List<OrchestrationErrorCode> codes(OrchestrationData data) {
+        return data.getStatus().getEvents().stream().map(Event::getCode)
+                .map(OrchestrationErrorCode.class::cast).collect(Collectors.toList());
+    }
+
+    @Test
+    void retriesUntilTheRulePasses() throws Exception {
+        UnstableRule unstable = new UnstableRule(2, 0);
+        Rule rule = rule("Unstable", unstable, new ResiliencePolicy(3, 1, 2.0, 10, 0.5, 0, 0, 0, 1));
+        OrchestrationData data = new OrchestrationData(new OrchestrationConfig());
+
+        RuleResult result = runner.run(data, rule, OrchestrationMode.NORMAL);
+        assertTrue(result.isOk());
+        assertEquals(3, unstable.calls.get());
+        assertEquals(2, codes(data).stream().filter(OrchestrationErrorCode.ORCH2001::equals).count());
+        assertEquals(InfoType.WARNING, data.getStatusInfoType());
+    }
+
+    @Test
+    void failsToFalseWhenAttemptsAreUsedUp() throws Exception {
+        UnstableRule unstable = new UnstableRule(10, 0);
+        Rule rule = rule("Unstable", unstable, new ResiliencePolicy(2, 1, 2.0, 10, 0.5, 0, 0, 0, 1));
+        OrchestrationData data = new OrchestrationData(new OrchestrationConfig());
+
+        RuleResult result = runner.run(data, rule, OrchestrationMode.NORMAL);
+        assertFalse(result.isOk());
+        assertEquals(2, unstable.calls.get());
+        assertTrue(codes(data).contains(OrchestrationErrorCode.ORCH2004));
+        assertFalse(codes(data).contains(OrchestrationErrorCode.ORCH5003));
+    }
+
+    @Test
+    void timesOutSlowAttempts() throws Exception {
+        UnstableRule unstable = new UnstableRule(0, 2000);
+        Rule rule = rule("Slow", unstable, new ResiliencePolicy(1, 0, 1.0, 0, 0, 50, 0, 0, 1));
+        OrchestrationData data = new OrchestrationData(new OrchestrationConfig());
+
+        long start = System.nanoTime();
+        RuleResult result = runner.run(data, rule, OrchestrationMode.NORMAL);
+        assertTrue(System.nanoTime() - start < 1_000_000_000L);
+        assertFalse(result.isOk());
+        assertTrue(codes(data).contains(OrchestrationErrorCode.ORCH2002));
+    }
+
+    @Test
+    void attemptsFinishingInTimeChangeTheRequest() throws Exception {
+        WritingRule writer = new WritingRule(0);
+        Rule rule = writing("Writer", writer, 1000);
+        OrchestrationData data = new OrchestrationData(new OrchestrationConfig());
+
+        assertTrue(runner.run(data, rule, OrchestrationMode.NORMAL).isOk());
+        assertEquals("Writer", data.getResultData().get(WritingRule.KEY));
+        assertSame(writer.info, data.getCurrentRuleInfo());
+        assertTrue(codes(data).contains(OrchestrationErrorCode.UNKNOWN));
+    }
+
+    @Test
+    void abandonedAttemptsCannotChangeTheRequest() throws Exception {
+        WritingRule writer = new WritingRule(300);
+        Rule rule = writing("Writer", writer, 50);
+        OrchestrationData data = new OrchestrationData(new OrchestrationConfig());
+
+        assertFalse(runner.run(data, rule, OrchestrationMode.NORMAL).isOk());
+        assertTrue(writer.written.await(2, TimeUnit.SECONDS));
+        assertFalse(data.getResultData().containsKey(WritingRule.KEY));
+        assertNull(data.getCurrentRuleInfo());
+        assertTrue(codes(data).contains(OrchestrationErrorCode.ORCH2002));
+        assertFalse(codes(data).contains(OrchestrationErrorCode.UNKNOWN));
+    }
+
+    @Test
+    void attemptsFailWhenEveryThreadIsBusy() throws Exception {
+        resilience.destroy();
+        resilience = new RuleResilience(1);
+        runner = new RuleRunner(new au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics(),
+                new au.com.kahaara.wf.orchestration.metrics.ResourceAccounting(false), resilience);
+        WritingRule writer = new WritingRule(300);
+        Rule rule = writing("Writer", writer, 50);
+
+        // The abandoned attempt keeps the only thread until it stops
+        assertFalse(runner.run(new OrchestrationData(new OrchestrationConfig()), rule, OrchestrationMode.NORMAL).isOk());
+        OrchestrationData rejected = new OrchestrationData(new OrchestrationConfig());
+        assertFalse(runner.run(rejected, rule, OrchestrationMode.NORMAL).isOk());
+        assertTrue(codes(rejected).contains(OrchestrationErrorCode.ORCH2008));
+        assertEquals(1, writer.calls.get());
+    }
+
+    @Test
+    void retriedAttemptsLeaveNoTrace() throws Exception {
+        UnstableRule unstable = new UnstableRule(2, 0);
+        Rule rule = rule("Unstable", unstable, new ResiliencePolicy(3, 1, 1.0, 1, 0, 0, 0, 0, 1));
+        OrchestrationData data = new OrchestrationData(new OrchestrationConfig());
+
+        assertTrue(runner.run(data, rule, OrchestrationMode.NORMAL).isOk());
+        assertFalse(data.getResultData().containsKey(UnstableRule.KEY));
+        assertFalse(codes(data).contains(OrchestrationErrorCode.UNKNOWN));
+        assertTrue(codes(data).contains(OrchestrationErrorCode.ORCH2001));
+    }
+
+    @Test
+    void lastFailedAttemptIsKept() throws Exception {
+        UnstableRule unstable = new UnstableRule(5, 0);
+        Rule rule = rule("Unstable", unstable, new ResiliencePolicy(2, 1, 1.0, 1, 0, 1000, 0, 0, 1));
+        OrchestrationData data = new OrchestrationData(new OrchestrationConfig());
+
+        assertFalse(runner.run(data, rule, OrchestrationMode.NORMAL).isOk());
+        assertEquals(2, data.getResultData().get(UnstableRule.KEY));
+        assertEquals(1, codes(data).stream().filter(OrchestrationErrorCode.UNKNOWN::equals).count());
+    }
+
+    @Test
+    void busyThreadsNeitherRetryNorTripTheBreaker() throws Exception {
+        resilience.destroy();
+        resilience = new RuleResilience(1);
+        runner = new RuleRunner(new au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics(),
+                new au.com.kahaara.wf.orchestration.metrics.ResourceAccounting(false), resilience);
+        Rule slow = writing("Writer", new WritingRule(300), 50);
+        UnstableRule unstable = new UnstableRule(0, 0);
+        Rule rule = rule("Remote", unstable, new ResiliencePolicy(3, 1, 1.0, 1, 0, 1000, 1, 10_000, 1));
+
+        assertFalse(runner.run(new OrchestrationData(new OrchestrationConfig()), slow, OrchestrationMode.NORMAL).isOk());
+        OrchestrationData rejected = new OrchestrationData(new OrchestrationConfig());
+        assertFalse(runner.run(rejected, rule, OrchestrationMode.NORMAL).isOk());
+        assertEquals(0, unstable.calls.get());
+        assertTrue(codes(rejected).contains(OrchestrationErrorCode.ORCH2008));
+        assertFalse(codes(rejected).contains(OrchestrationErrorCode.ORCH2001));
+        assertEquals(CircuitBreaker.State.CLOSED, resilience.getBreakerState("Remote"));
+    }
+
+    @Test
+    void openBreakerFailsFastThenProbes() throws Exception {
+        UnstableRule unstable = new UnstableRule(2, 0);
+        Rule rule = rule("Remote", unstable, new ResiliencePolicy(1, 0, 1.0, 0, 0, 0, 2, 100, 1));
+
+        for (int i = 0; i < 2; i++) {
+            assertFalse(runner.run(new OrchestrationData(), rule, OrchestrationMode.NORMAL).isOk());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, resilience.getBreakerState("Remote"));
+
+        OrchestrationData rejected = new OrchestrationData();
+        assertFalse(runner.run(rejected, rule, OrchestrationMode.NORMAL).isOk());
+        assertEquals(2, unstable.calls.get());
+        assertTrue(codes(rejected).contains(OrchestrationErrorCode.ORCH2003));
+
+        Thread.sleep(150);
+        assertTrue(runner.run(new OrchestrationData(), rule, OrchestrationMode.NORMAL).isOk());
+        assertEquals(CircuitBreaker.State.CLOSED, resilience.getBreakerState("Remote"));
+    }
+
+    @Test
+    void policyFromAnnotation() {
+        assertNull(ResiliencePolicy.from(Plain.class.getAnnotation(Workflow.class).resilience()));
+        ResiliencePolicy policy = ResiliencePolicy.from(Annotated.class.getAnnotation(Workflow.class).resilience());
+        assertNotNull(policy);
+        assertEquals(3, policy.getMaxAttempts());
+        assertTrue(policy.hasBreaker());
+        assertTrue(policy.isRetryable(new IllegalStateException()));
+        assertFalse(policy.isRetryable(new IllegalArgumentException()));
+        assertTrue(policy.backoff(3) <= 400);
+    }
+
+    @Workflow(rulename = "Plain")
+    static class Plain {
+    }
+
+    @Workflow(rulename = "Annotated", resilience = @Resilience(maxAttempts = 3, breakerFailures = 5,
+            retryOn = IllegalStateException.class))
+    static class Annotated {
+    }
+
+    /**
+     * Writes to the request once it has slept, whether or not it was interrupted
+     */
+    public static class WritingRule implements WorkflowRuleInterface {
+
+        static final String KEY = "written";
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        final CountDownLatch written = new CountDownLatch(1);
+
+        final RuleInfo info = new RuleInfo();
+
+        private final long sleepMillis;
+
+        WritingRule(long sleepMillis) {
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public RuleInfo getInfo() {
+            return info;
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) {
+            calls.incrementAndGet();
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sleepMillis);
+            while (System.nanoTime() - end < 0) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    // Carry on regardless
+                }
+            }
+            request.getResultData().put(KEY, "Writer");
+            request.getStatus().addEvent(InfoType.OK, EventType.RULE, OrchestrationErrorCode.UNKNOWN, "Written");
+            written.countDown();
+            return new RuleResult(true);
+        }
+    }
+
+    /**
+     * Writes which call it is then throws for the first few calls and can be slow
+     */
+    public static class UnstableRule implements WorkflowRuleInterface {
+
+        static final String KEY = "failedCall";
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        private final int failures;
+
+        private final long sleepMillis;
+
+        UnstableRule(int failures, long sleepMillis) {
+            this.failures = failures;
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            int call = calls.incrementAndGet();
+            if (call <= failures) {
+                request.getResultData().put(KEY, call);
+                request.getStatus().addEvent(InfoType.ERROR, EventType.RULE, OrchestrationErrorCode.UNKNOWN, "Failing");
+                throw new IllegalStateException("Dependency down");
+            }
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RulesException("Interrupted");
+                }
+            }
+            return new RuleResult(true);
+        }
+    }
+
+}
@@ -0,0 +1,183 @@
+package au.com.kahaara.wf.orchestration.rules;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.Orchestration;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.event.EventRecorder;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.subflow.SubWorkflowRegistry;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutcomeTableTest {
+
+    private static final String RULES = "Decide{APPROVE:Approve,REFER:Refer,*:Decline},Approve?END,Refer?END,Decline";
+
+    private final List<String> ran = Collections.synchronizedList(new ArrayList<>());
+
+    private RuleList ruleList;
+
+    private Orchestration orchestration;
+
+    private OrchestrationConfig oc;
+
+    @BeforeEach
+    void setup() throws Exception {
+        MockEnvironment properties = new MockEnvironment();
+        properties.setProperty(OrchestrationConfig.PROPERTIES_PACKAGES + "[0]", "au.com.kahaara.wf.orchestration.rules.testrules");
+        ruleList = new RuleList(properties, null);
+        ruleList.getRuleList().put("DECIDE", new RuleType("Decide", new DecideRule(),
+                DecideRule.class.getMethod("runRule", OrchestrationData.class)));
+        for (String name : new String[]{"Approve", "Refer", "Decline"}) {
+            ruleList.getRuleList().put(name.toUpperCase(), new RuleType(name, new RecordRule(name, ran),
+                    RecordRule.class.getMethod("runRule", OrchestrationData.class)));
+        }
+        oc = new OrchestrationConfig();
+        oc.setRuleInfoReported(false);
+        oc.setRuleInfoEnforce(false);
+        orchestration = new Orchestration(new WorkflowRunner(new RuleRunner()), new EventRecorder(), ruleList, null);
+    }
+
+    private List<String> decide(String outcome) {
+        return decide(RULES, new Decision(outcome));
+    }
+
+    private List<String> decide(String rules, Decision decision) {
+        ran.clear();
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules(rules);
+        data.putRequestData(decision);
+        assertTrue(orchestration.run(data));
+        return new ArrayList<>(ran);
+    }
+
+    @Test
+    void branchesOnTheOutcomeLabel() throws Exception {
+        assertEquals(Collections.singletonList("Approve"), decide("APPROVE"));
+        assertEquals(Collections.singletonList("Refer"), decide("refer"));
+        assertEquals(Collections.singletonList("Decline"), decide("SOMETHING_ELSE"));
+        // No label follows the true condition, which is the next rule
+        assertEquals(Collections.singletonList("Approve"), decide(null));
+
+        RuleSet ruleSet = new RuleSet(RULES, ruleList);
+        Rule decide = ruleSet.getRules().get(1);
+        assertEquals(3, decide.getOnOutcome().size());
+        assertSame(ruleSet.getRules().get(4), decide.getOnOutcome().get(Rule.ANY_OUTCOME));
+    }
+
+    @Test
+    void endingAnInlinedSubWorkflowFollowsItsConditions() throws Exception {
+        new SubWorkflowRegistry(ruleList).register("CHECK", "Decide{*:END},Approve");
+        String rules = "@Check?Refer:Decline,Refer?END,Decline";
+
+        assertEquals(Collections.singletonList("Refer"), decide(rules, new Decision("DONE", true)));
+        assertEquals(Collections.singletonList("Decline"), decide(rules, new Decision("DONE", false)));
+        // No label carries on in the sub-workflow
+        assertEquals(Arrays.asList("Approve", "Refer"), decide(rules, new Decision(null, true)));
+    }
+
+    @Test
+    void nestedSubWorkflowsKeepTheirFailedOutcomes() throws Exception {
+        SubWorkflowRegistry registry = new SubWorkflowRegistry(ruleList);
+        registry.register("CHECK", "Decide{*:END},Approve");
+        registry.register("REVIEW", "@Check?Refer:Decline,Refer?END,Decline");
+
+        assertEquals(Collections.singletonList("Refer"), decide("@Review", new Decision("DONE", true)));
+        assertEquals(Collections.singletonList("Decline"), decide("@Review", new Decision("DONE", false)));
+    }
+
+    @Test
+    void badTablesAreRejected() {
+        assertThrows(RulesException.class, () -> new RuleSet("Decide{APPROVE:Nope},Approve", ruleList));
+        assertThrows(RulesException.class, () -> new RuleSet("Decide{APPROVE},Approve", ruleList));
+        assertThrows(RulesException.class, () -> new RuleSet("Decide{A:Approve,a:Refer},Approve,Refer", ruleList));
+        assertThrows(RulesException.class, () -> new RuleSet("Decide{A:Approve,Approve", ruleList));
+        assertThrows(RulesException.class, () -> new RuleSet("Decide?Approve{A:Approve},Approve", ruleList));
+    }
+
+    public static class Decision {
+
+        private String outcome;
+
+        private boolean ok = true;
+
+        public Decision() {
+        }
+
+        Decision(String outcome) {
+            this.outcome = outcome;
+        }
+
+        Decision(String outcome, boolean ok) {
+            this.outcome = outcome;
+            this.ok = ok;
+        }
+
+        public boolean isOk() {
+            return ok;
+        }
+
+        public void setOk(boolean ok) {
+            this.ok = ok;
+        }
+
+        public String getOutcome() {
+            return outcome;
+        }
+
+        public void setOutcome(String outcome) {
+            this.outcome = outcome;
+        }
+    }
+
+    /**
+     * Returns the outcome in the request data as its label
+     */
+    public static class DecideRule implements WorkflowRuleInterface {
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            Decision decision = (Decision) request.getRequestData(Decision.class);
+            return new RuleResult(decision.isOk(), decision.getOutcome());
+        }
+    }
+
+    public static class RecordRule implements WorkflowRuleInterface {
+
+        private final String name;
+
+        private final List<String> ran;
+
+        RecordRule(String name, List<String> ran) {
+            this.name = name;
+            this.ran = ran;
+        }
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) {
+            ran.add(name);
+            return new RuleResult(true);
+        }
+    }
+
+}
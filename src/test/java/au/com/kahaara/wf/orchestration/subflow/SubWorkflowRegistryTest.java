@@ -0,0 +1,179 @@
+package au.com.kahaara.wf.orchestration.subflow;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.Orchestration;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.event.EventRecorder;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.exception.WorkflowException;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.Rule;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleSet;
+import au.com.kahaara.wf.orchestration.rules.RuleSetTypeInterface;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SubWorkflowRegistryTest {
+
+    private MockEnvironment properties;
+
+    private RuleList ruleList;
+
+    private CountRule count;
+
+    @BeforeEach
+    void setup() throws Exception {
+        properties = new MockEnvironment();
+        properties.setProperty(OrchestrationConfig.PROPERTIES_PACKAGES + "[0]", "au.com.kahaara.wf.orchestration.rules.testrules");
+        ruleList = new RuleList(properties, null);
+        count = new CountRule();
+        ruleList.getRuleList().put("COUNT", new RuleType("Count", count,
+                CountRule.class.getMethod("runRule", OrchestrationData.class)));
+        ruleList.getRuleList().put("NO", new RuleType("No", new NoRule(),
+                NoRule.class.getMethod("runRule", OrchestrationData.class)));
+    }
+
+    @Test
+    void compiledOnceFromConfiguration() throws Exception {
+        properties.setProperty(OrchestrationConfig.PROPERTIES_SUB_WORKFLOWS + "[0]", "pricing=Count");
+        properties.setProperty(OrchestrationConfig.PROPERTIES_SUB_WORKFLOWS + "[1]",
+                "TWICE=" + Flows.class.getName() + "#COUNTING");
+        properties.setProperty(OrchestrationConfig.PROPERTIES_SUB_WORKFLOWS + "[2]", Flows.class.getName());
+        SubWorkflowRegistry registry = new SubWorkflowRegistry(properties, ruleList);
+
+        assertEquals(3, registry.getNames().size());
+        assertTrue(registry.contains("Counting"));
+        assertSame(Flows.COUNTING, registry.get("twice").getType());
+        SubWorkflow pricing = registry.get("Pricing");
+        assertEquals("PRICING", pricing.getName());
+        assertEquals(DefaultRuleSetType.CUSTOM, pricing.getType());
+        assertThrows(RulesException.class, () -> registry.get("missing"));
+        assertThrows(RulesException.class, () -> registry.register("PRICING", "Count"));
+
+        OrchestrationConfig oc = new OrchestrationConfig();
+        oc.setRuleInfoReported(false);
+        oc.setRuleInfoEnforce(false);
+        Orchestration orchestration = new Orchestration(new WorkflowRunner(new RuleRunner()), new EventRecorder(),
+                ruleList, null);
+        OrchestrationData parent = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        for (int i = 0; i < 2; i++) {
+            OrchestrationData sub = pricing.newRequest(oc);
+            assertTrue(orchestration.runSubRules(parent, sub).isOk());
+            assertSame(pricing.getRuleSet(), sub.getRuleSet());
+        }
+        assertEquals(2, count.runs.get());
+
+        OrchestrationData changed = pricing.newRequest(oc);
+        changed.setCustomRules("Count");
+        assertNull(changed.getSubWorkflow());
+    }
+
+    @Test
+    void invalidDefinitionsFailAtStartup() {
+        properties.setProperty(OrchestrationConfig.PROPERTIES_SUB_WORKFLOWS + "[0]", "BROKEN=Count,NoSuchRule");
+        assertThrows(WorkflowException.class, () -> new SubWorkflowRegistry(properties, ruleList));
+
+        properties.setProperty(OrchestrationConfig.PROPERTIES_SUB_WORKFLOWS + "[0]", "BROKEN=com.acme.Missing#FLOW");
+        assertThrows(WorkflowException.class, () -> new SubWorkflowRegistry(properties, ruleList));
+
+        properties.setProperty(OrchestrationConfig.PROPERTIES_SUB_WORKFLOWS + "[0]", "EMPTY=");
+        assertThrows(WorkflowException.class, () -> new SubWorkflowRegistry(properties, ruleList));
+    }
+
+    @Test
+    void inlinedWhenTheRuleSetIsCompiled() throws Exception {
+        SubWorkflowRegistry registry = new SubWorkflowRegistry(ruleList);
+        registry.register("OK", "Count");
+        registry.register("CHECK", "No,Count");
+
+        RuleSet ruleSet = new RuleSet("@Check?:1.@Ok,@Ok,1.@Ok", ruleList);
+        List<String> names = new ArrayList<>();
+        ruleSet.getRules().forEach(r -> names.add(r.getRuleName()));
+        assertEquals(Arrays.asList("START", "@Check/No", "@Check/Count", "@Ok/Count", "1.@Ok/Count", "END"), names);
+        List<Rule> rules = ruleSet.getRules();
+        assertSame(rules.get(1), rules.get(0).getOnTrue());
+        assertSame(rules.get(4), rules.get(1).getOnFalse());
+        assertSame(rules.get(3), rules.get(2).getOnTrue());
+        assertSame(rules.get(4), rules.get(2).getOnFalse());
+
+        OrchestrationConfig oc = new OrchestrationConfig();
+        oc.setRuleInfoReported(false);
+        oc.setRuleInfoEnforce(false);
+        Orchestration orchestration = new Orchestration(new WorkflowRunner(new RuleRunner()), new EventRecorder(),
+                ruleList, null);
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules("@Check?:1.@Ok,@Ok,1.@Ok");
+        assertTrue(orchestration.run(data));
+        // @Check fails at No so it carries on with 1.@Ok, skipping its own Count and @Ok
+        assertEquals(1, count.runs.get());
+
+        assertThrows(RulesException.class, () -> new RuleSet("@Missing", ruleList));
+        assertThrows(RulesException.class, () -> new RuleSet("@Ok", ruleList.getRuleList()));
+    }
+
+    public enum Flows implements RuleSetTypeInterface {
+        COUNTING("Count"),
+        NOTHING("");
+
+        private final String rules;
+
+        Flows(String rules) {
+            this.rules = rules;
+        }
+
+        @Override
+        public String getRules() {
+            return rules;
+        }
+
+        @Override
+        public String getEnumName() {
+            return name();
+        }
+    }
+
+    public static class NoRule implements WorkflowRuleInterface {
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) {
+            return new RuleResult(false);
+        }
+    }
+
+    public static class CountRule implements WorkflowRuleInterface {
+
+        final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) {
+            runs.incrementAndGet();
+            return new RuleResult(true);
+        }
+    }
+
+}
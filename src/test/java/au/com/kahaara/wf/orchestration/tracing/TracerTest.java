@@ -0,0 +1,93 @@
+package au.com.kahaara.wf.orchestration.tracing;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.Orchestration;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.event.EventRecorder;
+import au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRunner;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class TracerTest {
+
+    private RuleList ruleList;
+
+    private OrchestrationConfig oc;
+
+    @BeforeAll
+    void setup() throws Exception {
+        MockEnvironment properties = new MockEnvironment();
+        properties.setProperty(OrchestrationConfig.PROPERTIES_PACKAGES + "[0]", "au.com.kahaara.wf.orchestration.rules.testrules");
+        ruleList = new RuleList(properties, null);
+        oc = new OrchestrationConfig();
+        oc.setRuleInfoReported(true);
+        oc.setRuleInfoEnforce(false);
+    }
+
+    private Orchestration orchestration(Tracer tracer) {
+        WorkflowRunner runner = new WorkflowRunner(new RuleRunner());
+        return new Orchestration(runner, new EventRecorder(), ruleList, null, new OrchestrationMetrics(), tracer);
+    }
+
+    private OrchestrationData request() {
+        OrchestrationData data = new OrchestrationData(oc);
+        data.setRuleSetType(DefaultRuleSetType.CUSTOM);
+        data.setCustomRules("RuleReturnTrue,RuleReturnFalse?:RuleSubRule,RuleSubRule");
+        return data;
+    }
+
+    @Test
+    void sampledWorkflowHasChildSpans() {
+        InMemorySpanCollector collector = new InMemorySpanCollector();
+        Orchestration orchestration = orchestration(new Tracer(Sampler.ALWAYS, collector));
+        assertTrue(orchestration.run(request()));
+
+        List<SampledSpan> spans = collector.getSpans();
+        SampledSpan root = spans.get(spans.size() - 1);
+        assertEquals("workflow CUSTOM", root.getName());
+        assertNull(root.getParentSpanId());
+        assertTrue(spans.stream().allMatch(s -> s.getTraceId().equals(root.getTraceId())));
+
+        Set<String> names = spans.stream().map(SampledSpan::getName).collect(Collectors.toSet());
+        assertTrue(names.contains("rule RuleReturnTrue"));
+        assertTrue(names.contains("rule RuleSubRule"));
+        assertTrue(names.contains("subRules"));
+        assertTrue(names.contains("recordEvents"));
+
+        SampledSpan ruleSpan = spans.stream().filter(s -> s.getName().equals("rule RuleReturnTrue")).findFirst().get();
+        assertEquals(root.getSpanId(), ruleSpan.getParentSpanId());
+        assertEquals("RuleReturnFalse", ruleSpan.getAttributes().get("rule.branch"));
+        assertTrue(((Set<?>) ruleSpan.getAttributes().get("data.result.written")).contains(String.class.getName()));
+
+        SampledSpan falseSpan = spans.stream().filter(s -> s.getName().equals("rule RuleReturnFalse")).findFirst().get();
+        assertEquals("RuleSubRule", falseSpan.getAttributes().get("rule.branch"));
+
+        ObjectNode otlp = new OtlpJsonFileExporter("unused", "test").toOtlp(spans);
+        assertEquals(spans.size(), otlp.get("resourceSpans").get(0).get("scopeSpans").get(0).get("spans").size());
+    }
+
+    @Test
+    void unsampledWorkflowRecordsNothing() {
+        InMemorySpanCollector collector = new InMemorySpanCollector();
+        Orchestration orchestration = orchestration(new Tracer(Sampler.NEVER, collector));
+        OrchestrationData data = request();
+        assertTrue(orchestration.run(data));
+        assertTrue(collector.getSpans().isEmpty());
+        assertSame(Span.NOOP, data.getSpan());
+    }
+
+}
@@ -0,0 +1,131 @@
+package au.com.kahaara.wf.orchestration.transaction;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationMode;
+import au.com.kahaara.wf.orchestration.cache.RuleMemoizer;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.exception.WorkflowException;
+import au.com.kahaara.wf.orchestration.metrics.OrchestrationMetrics;
+import au.com.kahaara.wf.orchestration.metrics.ResourceAccounting;
+import au.com.kahaara.wf.orchestration.resilience.RuleResilience;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.Rule;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import au.com.kahaara.wf.orchestration.workflow.TransactionPolicy;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleTransactionsTest {
+
+    private JdbcTemplate jdbc;
+
+    private DataSourceTransactionManager transactionManager;
+
+    @BeforeEach
+    void setup() {
+        JdbcDataSource ds = new JdbcDataSource();
+        ds.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        jdbc = new JdbcTemplate(ds);
+        jdbc.execute("create table orders (id int)");
+        transactionManager = new DataSourceTransactionManager(ds);
+    }
+
+    private int orders() {
+        return jdbc.queryForObject("select count(*) from orders", Integer.class);
+    }
+
+    @Test
+    void workflowPolicyDecidesTheOuterTransaction() throws Exception {
+        RuleTransactions joined = new RuleTransactions(transactionManager, TransactionPolicy.JOIN);
+        assertTrue(joined.inWorkflow(DefaultRuleSetType.CUSTOM,
+                TransactionSynchronizationManager::isActualTransactionActive));
+        assertFalse(joined.inWorkflow(DefaultRuleSetType.CUSTOM,
+                () -> joined.inRule(TransactionPolicy.NONE, TransactionSynchronizationManager::isActualTransactionActive)));
+
+        RuleTransactions none = new RuleTransactions(transactionManager, TransactionPolicy.NONE);
+        assertEquals(TransactionPolicy.NONE, none.getWorkflowPolicy(DefaultRuleSetType.CUSTOM));
+        assertFalse(none.inWorkflow(DefaultRuleSetType.CUSTOM,
+                TransactionSynchronizationManager::isActualTransactionActive));
+        assertTrue(none.inRule(TransactionPolicy.READ_ONLY,
+                TransactionSynchronizationManager::isCurrentTransactionReadOnly));
+
+        // Without a transaction manager everything runs as it is
+        assertFalse(new RuleTransactions().inRule(TransactionPolicy.JOIN,
+                TransactionSynchronizationManager::isActualTransactionActive));
+    }
+
+    @Test
+    void onlyRuntimeExceptionsRollBack() {
+        RuleTransactions transactions = new RuleTransactions(transactionManager, TransactionPolicy.NONE);
+        assertThrows(RulesException.class, () -> transactions.inRule(TransactionPolicy.REQUIRES_NEW, () -> {
+            jdbc.update("insert into orders values (1)");
+            throw new RulesException("Rule failed");
+        }));
+        assertThrows(IllegalStateException.class, () -> transactions.inRule(TransactionPolicy.JOIN, () -> {
+            jdbc.update("insert into orders values (2)");
+            throw new IllegalStateException("Rule broke");
+        }));
+        assertEquals(1, orders());
+    }
+
+    @Test
+    void ruleRunnerAppliesTheRulePolicy() throws Exception {
+        RuleRunner runner = new RuleRunner(new OrchestrationMetrics(), new ResourceAccounting(false),
+                new RuleResilience(), new RuleMemoizer(false), new RuleTransactions(transactionManager, TransactionPolicy.NONE));
+        TransactionRule transactionRule = new TransactionRule();
+        RuleType rt = new RuleType("Transaction", transactionRule,
+                TransactionRule.class.getMethod("runRule", OrchestrationData.class));
+
+        assertTrue(runner.run(new OrchestrationData(), new Rule(rt), OrchestrationMode.NORMAL).isOk());
+        assertFalse(transactionRule.active);
+
+        rt.setTransaction(TransactionPolicy.JOIN);
+        assertTrue(runner.run(new OrchestrationData(), new Rule(rt), OrchestrationMode.NORMAL).isOk());
+        assertTrue(transactionRule.active);
+    }
+
+    @Test
+    void timedRulesCannotAskForATransaction() {
+        // The attempts would run on the timeout pool, outside of the transaction
+        MockEnvironment properties = new MockEnvironment();
+        properties.setProperty(OrchestrationConfig.PROPERTIES_PACKAGES + "[0]",
+                "au.com.kahaara.wf.orchestration.transaction.timedrules");
+        WorkflowException e = assertThrows(WorkflowException.class, () -> new RuleList(properties, null));
+        assertTrue(e.getMessage().contains("TimedTransaction"));
+    }
+
+    /**
+     * Notes if it ran in a transaction
+     */
+    public static class TransactionRule implements WorkflowRuleInterface {
+
+        volatile boolean active;
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            active = TransactionSynchronizationManager.isActualTransactionActive();
+            return new RuleResult(true);
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package au.com.kahaara.wf.orchestration.transaction.timedrules;
+
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.workflow.Resilience;
+import au.com.kahaara.wf.orchestration.workflow.TransactionPolicy;
+import au.com.kahaara.wf.orchestration.workflow.Workflow;
+import au.com.kahaara.wf.orchestration.workflow.WorkflowRuleInterface;
+
+/**
+ * Asks for a transaction and a timeout, which the rule list refuses
+ */
+@Workflow(rulename = "TimedTransaction", transaction = TransactionPolicy.JOIN,
+        resilience = @Resilience(timeoutMillis = 100))
+public class TimedTransactionRule implements WorkflowRuleInterface {
+
+    @Override
+    public RuleInfo getInfo() {
+        return new RuleInfo();
+    }
+
+    @Override
+    public RuleResult runRule(OrchestrationData request) {
+        return new RuleResult(true);
+    }
+}
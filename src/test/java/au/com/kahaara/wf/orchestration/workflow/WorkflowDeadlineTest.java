@@ -0,0 +1,148 @@
+package au.com.kahaara.wf.orchestration.workflow;
+
+import au.com.kahaara.wf.OrchestrationConfig;
+import au.com.kahaara.wf.orchestration.InfoType;
+import au.com.kahaara.wf.orchestration.Orchestration;
+import au.com.kahaara.wf.orchestration.OrchestrationData;
+import au.com.kahaara.wf.orchestration.OrchestrationErrorCode;
+import au.com.kahaara.wf.orchestration.event.Event;
+import au.com.kahaara.wf.orchestration.event.EventRecorder;
+import au.com.kahaara.wf.orchestration.exception.RulesException;
+import au.com.kahaara.wf.orchestration.rules.DefaultRuleSetType;
+import au.com.kahaara.wf.orchestration.rules.RuleInfo;
+import au.com.kahaara.wf.orchestration.rules.RuleList;
+import au.com.kahaara.wf.orchestration.rules.RuleResult;
+import au.com.kahaara.wf.orchestration.rules.RuleRunner;
+import au.com.kahaara.wf.orchestration.rules.RuleType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkflowDeadlineTest {
+
+    private Orchestration orchestration;
+
+    private OrchestrationConfig oc;
+
+    private SlowRule slow;
+
+    private SubRule sub;
+
+    @BeforeEach
+    void setup() throws Exception {
+        MockEnvironment properties = new MockEnvironment();
+        properties.setProperty(OrchestrationConfig.PROPERTIES_PACKAGES + "[0]", "au.com.kahaara.wf.orchestration.rules.testrules");
+        RuleList ruleList = new RuleList(properties, null);
+        slow = new SlowRule();
+        sub = new SubRule();
+        for (String name : new String[]{"SlowA", "SlowB", "SlowC"}) {
+            ruleList.getRuleList().put(name.toUpperCase(), new RuleType(name, slow,
+                    SlowRule.class.getMethod("runRule", OrchestrationData.class)));
+        }
+        ruleList.getRuleList().put("SUB", new RuleType("Sub", sub,
+                SubRule.class.getMethod("runRule", OrchestrationData.class)));
+
+        oc = new OrchestrationConfig();
+        oc.setRuleInfoReported(true);
+        oc.setRuleInfoEnforce(false);
+        orchestration = new Orchestration(new WorkflowRunner(new RuleRunner()), new EventRecorder(), ruleList, null);
+    }
+
+    private static boolean hasDeadlineEvent(OrchestrationData data) {
+        return data.getStatus().getEvents().stream().map(Event::getCode).anyMatch(OrchestrationErrorCode.ORCH2005::equals);
+    }
+
+    @Test
+    void stopsAtTheDeadline() {
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules("SlowA,SlowB,SlowC");
+        data.setTimeout(50);
+
+        assertTrue(orchestration.run(data));
+        assertEquals(1, slow.runs.get());
+        assertTrue(hasDeadlineEvent(data));
+        assertEquals(InfoType.ERROR, data.getStatusInfoType());
+    }
+
+    @Test
+    void configuredDeadlineAndPassedDeadline() {
+        oc.setDeadlineMillis(50);
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules("SlowA,SlowB,SlowC");
+        assertTrue(orchestration.run(data));
+        assertEquals(1, slow.runs.get());
+
+        OrchestrationData late = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        late.setCustomRules("SlowA,SlowB,SlowC");
+        late.setDeadline(Instant.now().minusSeconds(1));
+        assertTrue(orchestration.run(late));
+        assertEquals(1, slow.runs.get());
+        assertTrue(hasDeadlineEvent(late));
+        assertEquals(0, late.getRemainingMillis());
+    }
+
+    @Test
+    void subRulesInheritTheDeadline() {
+        OrchestrationData data = new OrchestrationData(oc, DefaultRuleSetType.CUSTOM);
+        data.setCustomRules("Sub");
+        data.setDeadline(Instant.now().plusSeconds(60));
+
+        assertTrue(orchestration.run(data));
+        assertNotNull(sub.subRequest);
+        assertTrue(sub.subRequest.hasDeadline());
+        assertTrue(sub.subRequest.getRemainingMillis() <= 60000);
+        assertFalse(new OrchestrationData().hasDeadline());
+        assertEquals(Long.MAX_VALUE, new OrchestrationData().getRemainingMillis());
+    }
+
+    /**
+     * Takes longer than the deadlines in the tests
+     */
+    public static class SlowRule implements WorkflowRuleInterface {
+
+        final AtomicInteger runs = new AtomicInteger();
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            runs.incrementAndGet();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RulesException("Interrupted");
+            }
+            return new RuleResult(true);
+        }
+    }
+
+    /**
+     * Runs a sub workflow and keeps its request
+     */
+    public static class SubRule implements WorkflowRuleInterface {
+
+        OrchestrationData subRequest;
+
+        @Override
+        public RuleInfo getInfo() {
+            return new RuleInfo();
+        }
+
+        @Override
+        public RuleResult runRule(OrchestrationData request) throws RulesException {
+            subRequest = new OrchestrationData(null, DefaultRuleSetType.CUSTOM);
+            subRequest.setCustomRules("RuleReturnTrue");
+            return request.getOrchestration().runSubRules(request, subRequest);
+        }
+    }
+
+}